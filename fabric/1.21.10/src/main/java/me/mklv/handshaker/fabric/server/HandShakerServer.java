@@ -1,28 +1,58 @@
 package me.mklv.handshaker.fabric.server;
 
+import com.mojang.authlib.GameProfile;
 import me.mklv.handshaker.fabric.HandShaker;
+import me.mklv.handshaker.fabric.server.api.HandshakeCompletedEvent;
+import me.mklv.handshaker.fabric.server.api.HandshakeResult;
 import me.mklv.handshaker.fabric.server.configs.ConfigManager;
 import me.mklv.handshaker.fabric.server.configs.ConfigMigrator;
+import me.mklv.handshaker.fabric.server.utils.AuditLog;
+import me.mklv.handshaker.fabric.server.utils.HandShakerExecutors;
+import me.mklv.handshaker.fabric.server.utils.HandshakeAdmission;
+import me.mklv.handshaker.fabric.server.utils.HandshakeChallenge;
+import me.mklv.handshaker.fabric.server.utils.HandshakeEvents;
+import me.mklv.handshaker.fabric.server.utils.HandshakeMetrics;
+import me.mklv.handshaker.fabric.server.utils.HandshakeResults;
+import me.mklv.handshaker.fabric.server.utils.HashedWheelTimer;
+import me.mklv.handshaker.fabric.server.utils.KickReason;
+import me.mklv.handshaker.fabric.server.utils.MetricsEndpoint;
+import me.mklv.handshaker.fabric.server.utils.NonceReplayCache;
 import me.mklv.handshaker.fabric.server.utils.PlayerHistoryDatabase;
+import me.mklv.handshaker.fabric.server.utils.PayloadCapture;
+import me.mklv.handshaker.fabric.server.utils.PayloadFingerprints;
+import me.mklv.handshaker.fabric.server.utils.PayloadRateLimiter;
 import me.mklv.handshaker.fabric.server.utils.PayloadValidator;
+import me.mklv.handshaker.fabric.server.utils.PermissionsAdapter;
 import me.mklv.handshaker.fabric.server.utils.StringUtils;
+import me.mklv.handshaker.fabric.server.utils.TickBudget;
+import me.mklv.handshaker.fabric.server.utils.VerdictTokens;
+import me.mklv.handshaker.fabric.server.utils.ViolationLog;
 import net.fabricmc.api.DedicatedServerModInitializer;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
+import net.fabricmc.fabric.api.networking.v1.ServerConfigurationConnectionEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerConfigurationNetworking;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerConfigurationNetworkHandler;
+import net.minecraft.server.network.ServerPlayerConfigurationTask;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.text.Text;
 import net.minecraft.util.Identifier;
 import net.minecraft.network.PacketByteBuf;
+import net.minecraft.network.packet.Packet;
 import net.minecraft.network.packet.CustomPayload;
 import net.minecraft.network.codec.PacketCodec;
 import net.minecraft.network.codec.PacketCodecs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.security.cert.Certificate;
@@ -33,25 +63,70 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 public class HandShakerServer implements DedicatedServerModInitializer {
     public static boolean DEBUG_MODE = false;
     public static final String MOD_ID = "hand-shaker";
     public static final Identifier VELTON_CHANNEL = Identifier.of("velton", "signature");
     public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID + "-server");
+    private static final long SHUTDOWN_WAIT_SECONDS = 10;
     private static HandShakerServer instance;
     private final Map<UUID, ClientInfo> clients = new ConcurrentHashMap<>();
+    private final NonceReplayCache nonceCache = new NonceReplayCache();
+    private final HandshakeChallenge challenge = new HandshakeChallenge();
+    private final HandShakerExecutors executors = new HandShakerExecutors();
+    private final HandshakeMetrics metrics = new HandshakeMetrics();
+    private MetricsEndpoint metricsEndpoint;
+    private final AuditLog auditLog = new AuditLog(new File(FabricLoader.getInstance().getConfigDir().toFile(), "HandShaker/logs/audit.jsonl"),
+            e -> LOGGER.warn("Audit log stopped: {}", e.getMessage()));
+    private PayloadCapture payloadCapture;
     private ConfigManager configManager;
     private PlayerHistoryDatabase playerHistoryDb;
     private MinecraftServer server;
+    // The server itself once it has started; the load test runs the handshake on a thread of its own
+    private Executor serverThread;
     private PublicKey publicKey;
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    // One wheel for every pending handshake; 100 ms ticks, 512 slots per ~51 s round
+    private final HashedWheelTimer handshakeTimer = new HashedWheelTimer("HandShaker-Handshake", 100, 512);
+    private final Map<UUID, HashedWheelTimer.Timeout> handshakeTimeouts = new ConcurrentHashMap<>();
+    private final HandshakeAdmission admission = new HandshakeAdmission();
+    private final ViolationLog violationLog = new ViolationLog();
+    private final HandshakeResults handshakeResults = new HandshakeResults();
+    private final VerdictTokens verdictTokens = new VerdictTokens();
+    private final TickBudget tickBudget = new TickBudget(e -> LOGGER.warn("Deferred HandShaker task failed: {}", e.getMessage()));
+    // Hands work to the server thread and charges it to the tick budget
+    private final Executor onServerThread = task -> serverThread.execute(() -> tickBudget.run(task));
+    private final PayloadRateLimiter rateLimiter = new PayloadRateLimiter();
+    private final PayloadFingerprints fingerprints = new PayloadFingerprints();
 
-    public record ClientInfo(Set<String> mods, boolean signatureVerified, boolean veltonVerified, String modListNonce, String integrityNonce, String veltonNonce) {}
+    public record ClientInfo(Set<String> mods, boolean signatureVerified, boolean veltonVerified, String modListNonce, String integrityNonce, String veltonNonce, State state) {
+        /**
+         * Handshake progress. A player is AWAITING from join until every expected payload has arrived
+         * or the handshake timeout fires, and JUDGED once the verdict has run.
+         */
+        public enum State { AWAITING, JUDGED }
+
+        public static ClientInfo awaiting() {
+            return new ClientInfo(Collections.emptySet(), false, false, null, null, null, State.AWAITING);
+        }
+
+        /**
+         * Whether the mod list, integrity and (if required) Velton payloads have all arrived
+         */
+        public boolean hasAllPayloads(boolean requireVelton) {
+            return modListNonce != null && integrityNonce != null && (!requireVelton || veltonNonce != null);
+        }
+
+        public ClientInfo withState(State state) {
+            return new ClientInfo(mods, signatureVerified, veltonVerified, modListNonce, integrityNonce, veltonNonce, state);
+        }
+    }
 
     public static HandShakerServer getInstance() {
         return instance;
@@ -59,209 +134,113 @@ public class HandShakerServer implements DedicatedServerModInitializer {
 
     @Override
     public void onInitializeServer() {
-        instance = this;
         LOGGER.info("HandShaker server initializing");
         
         // Migrate config if needed (v3 -> v4)
         ConfigMigrator.migrateIfNeeded();
         
-        configManager = new ConfigManager();
-        configManager.load();
-        
-        loadPublicCertificate();
-        
-        playerHistoryDb = new PlayerHistoryDatabase(configManager.isPlayerdbEnabled());
+        start(loadPublicCertificate());
 
-        ServerLifecycleEvents.SERVER_STARTED.register(server -> this.server = server);
-        ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
-            scheduler.shutdown();
-            if (playerHistoryDb != null) {
-                playerHistoryDb.close();
-            }
+        ServerLifecycleEvents.SERVER_STARTED.register(server -> {
+            this.server = server;
+            setServerThread(server);
         });
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> stop());
 
         // Register payload types
         PayloadTypeRegistry.playC2S().register(HandShaker.ModsListPayload.ID, HandShaker.ModsListPayload.CODEC);
         PayloadTypeRegistry.playC2S().register(HandShaker.IntegrityPayload.ID, HandShaker.IntegrityPayload.CODEC);
         PayloadTypeRegistry.playC2S().register(VeltonPayload.ID, VeltonPayload.CODEC);
+        PayloadTypeRegistry.playS2C().register(HandShaker.ChallengePayload.ID, HandShaker.ChallengePayload.CODEC);
+        PayloadTypeRegistry.configurationC2S().register(HandShaker.ModsListPayload.ID, HandShaker.ModsListPayload.CODEC);
+        PayloadTypeRegistry.configurationC2S().register(HandShaker.IntegrityPayload.ID, HandShaker.IntegrityPayload.CODEC);
+        PayloadTypeRegistry.configurationS2C().register(HandShaker.ChallengePayload.ID, HandShaker.ChallengePayload.CODEC);
+        PayloadTypeRegistry.playS2C().register(HandShaker.VerdictTokenPayload.ID, HandShaker.VerdictTokenPayload.CODEC);
+        PayloadTypeRegistry.playC2S().register(HandShaker.VerdictTokenPayload.ID, HandShaker.VerdictTokenPayload.CODEC);
+        PayloadTypeRegistry.configurationC2S().register(HandShaker.VerdictTokenPayload.ID, HandShaker.VerdictTokenPayload.CODEC);
+
+        // Work deferred by the main-thread budget runs first, before the tick's own work
+        ServerTickEvents.START_SERVER_TICK.register(server -> startTick());
+
+        // Join storms: payloads are queued and processed a few per tick within the configured budget.
+        // Limits are refreshed every tick so reloads apply right away
+        ServerTickEvents.END_SERVER_TICK.register(server -> endTick());
 
         // Register payload handlers
+        // Every receiver hands the payload to the capture first, so a replay sees the same floods the server did
         ServerPlayNetworking.registerGlobalReceiver(HandShaker.ModsListPayload.ID, (payload, context) -> {
             ServerPlayerEntity player = context.player();
-            String playerName = player.getName().getString();
-            try {
-                if (!PayloadValidator.validateNonce(payload.nonce(), player, LOGGER, "mod list")) {
-                    return;
-                }
-                Set<String> mods = new HashSet<>(Arrays.asList(payload.mods().split(",")));
-                if (payload.mods().isEmpty()) {
-                    mods.clear();
-                }
-                if (HandShakerServer.DEBUG_MODE) {
-                    LOGGER.info("Received mod list from {} with nonce: {}", playerName, payload.nonce());
+            payloadCapture.record(player.getUuid(), payload);
+            if (!allowPayload(player.getUuid(), player.getName().getString(), HandShaker.MODS_CHANNEL, player.networkHandler::disconnect)) return;
+            submitPayload(player.getUuid(), HandShaker.MODS_CHANNEL, fingerprint(null, payload.mods(), payload.modListHash(), payload.nonce()), () -> {
+                if (receiveModList(payload, player.getUuid(), player.getName().getString(), player.networkHandler::disconnect)) {
+                    onHandshakePayload(player);
                 }
-                
-                // Sync with database
-                if (playerHistoryDb != null) {
-                    playerHistoryDb.syncPlayerMods(player.getUuid(), playerName, mods);
-                }
-                
-                clients.compute(player.getUuid(), (uuid, oldInfo) ->
-                        new ClientInfo(mods, 
-                                oldInfo != null && oldInfo.signatureVerified(),
-                                oldInfo != null && oldInfo.veltonVerified(),
-                                payload.nonce(),
-                                oldInfo != null ? oldInfo.integrityNonce() : null,
-                                oldInfo != null ? oldInfo.veltonNonce() : null));
-            } catch (Exception e) {
-                LOGGER.error("Failed to decode mod list from {}. Terminating connection.", playerName, e);
-                player.networkHandler.disconnect(Text.of("Corrupted handshake data"));
-            }
+            });
         });
 
         ServerPlayNetworking.registerGlobalReceiver(HandShaker.IntegrityPayload.ID, (payload, context) -> {
             ServerPlayerEntity player = context.player();
-            String playerName = player.getName().getString();
-            try {
-                if (!PayloadValidator.validateNonce(payload.nonce(), player, LOGGER, "integrity payload")) {
-                    return;
-                }
-                
-                byte[] clientSignature = payload.signature();
-                String jarHash = payload.jarHash();
-                boolean verified = false;
-                
-                // Verification logic (matching Paper):
-                // Check if client sent a signature and jar hash
-                if (jarHash != null && !jarHash.isEmpty() && clientSignature != null && clientSignature.length > 0) {
-                    if (publicKey == null) {
-                        LOGGER.warn("Cannot verify signature for {}: public key not loaded", playerName);
-                        verified = false;
-                    } else if (clientSignature.length >= 128) { // Minimum size for a valid signature
-                        // Verify the signature against our public key
-                        try {
-                            verified = verifySignatureWithPublicKey(jarHash, clientSignature);
-                            if (verified) {
-                                LOGGER.info("Integrity check for {}: JAR SIGNED with VALID SIGNATURE (hash: {})", playerName, StringUtils.truncate(jarHash, 8));
-                            } else {
-                                LOGGER.warn("Integrity check for {}: signature verification FAILED - signature was not created with our key", playerName);
-                            }
-                        } catch (Exception e) {
-                            LOGGER.warn("Integrity check for {}: error verifying signature: {}", playerName, e.getMessage());
-                            verified = false;
-                        }
-                    } else {
-                        LOGGER.warn("Integrity check for {}: signature too small to be valid", playerName);
-                        verified = false;
-                    }
-                } else if (clientSignature == null || clientSignature.length == 0) {
-                    LOGGER.warn("Integrity check for {}: no signature data received - client not signed", playerName);
-                    verified = false;
-                } else if (jarHash == null || jarHash.isEmpty()) {
-                    LOGGER.warn("Integrity check for {}: no JAR hash received", playerName);
-                    verified = false;
-                }
-                if (HandShakerServer.DEBUG_MODE) {
-                    LOGGER.info("Integrity check for {} with nonce {}: {}", playerName, payload.nonce(), verified ? "PASSED" : "FAILED");
-                }
-                final boolean finalVerified = verified;
-                clients.compute(player.getUuid(), (uuid, oldInfo) ->
-                        new ClientInfo(oldInfo != null ? oldInfo.mods() : Collections.emptySet(), 
-                                finalVerified,
-                                oldInfo != null && oldInfo.veltonVerified(),
-                                oldInfo != null ? oldInfo.modListNonce() : null,
-                                payload.nonce(),
-                                oldInfo != null ? oldInfo.veltonNonce() : null));
-                configManager.checkPlayer(player, clients.get(player.getUuid()));
-            } catch (Exception e) {
-                LOGGER.error("Failed to decode integrity payload from {}. Terminating connection.", playerName, e);
-                player.networkHandler.disconnect(Text.of("Corrupted handshake data"));
-            }
+            payloadCapture.record(player.getUuid(), payload);
+            if (!allowPayload(player.getUuid(), player.getName().getString(), HandShaker.INTEGRITY_CHANNEL, player.networkHandler::disconnect)) return;
+            submitPayload(player.getUuid(), HandShaker.INTEGRITY_CHANNEL, fingerprint(payload.signature(), payload.jarHash(), payload.nonce()), () -> {
+                receiveIntegrity(payload, player.getUuid(), player.getName().getString(), player.networkHandler::disconnect,
+                        () -> onHandshakePayload(player));
+            });
         });
 
-        ServerPlayNetworking.registerGlobalReceiver(VeltonPayload.ID, (payload, context) -> {
+        // Current clients answer during configuration. These receivers run on the network thread and
+        // only queue the payload; the queued work runs on the server thread
+        ServerConfigurationNetworking.registerGlobalReceiver(HandShaker.ModsListPayload.ID,
+                (payload, context) -> receiveConfigurationModList(payload, new NetworkConnection(context.networkHandler())));
+
+        ServerConfigurationNetworking.registerGlobalReceiver(HandShaker.IntegrityPayload.ID,
+                (payload, context) -> receiveConfigurationIntegrity(payload, new NetworkConnection(context.networkHandler())));
+
+        // Verdict tokens are a single HMAC, so they are checked on arrival instead of queued; that also puts
+        // them ahead of the mod list that follows
+        ServerPlayNetworking.registerGlobalReceiver(HandShaker.VerdictTokenPayload.ID, (payload, context) -> {
             ServerPlayerEntity player = context.player();
-            String playerName = player.getName().getString();
-            try {
-                if (!PayloadValidator.validateNonce(payload.nonce(), player, LOGGER, "Velton payload")) {
-                    return;
-                }
-                
-                byte[] clientSignature = payload.signature();
-                String jarHash = payload.jarHash();
-                boolean verified = false;
-                
-                // Verification logic (matching integrity payload verification):
-                // Check if client sent a signature and jar hash
-                if (jarHash != null && !jarHash.isEmpty() && clientSignature != null && clientSignature.length > 0) {
-                    if (publicKey == null) {
-                        LOGGER.warn("Cannot verify Velton signature for {}: public key not loaded", playerName);
-                        verified = false;
-                    } else if (clientSignature.length >= 128) { // Minimum size for a valid signature
-                        // Verify the signature against our public key
-                        try {
-                            verified = verifySignatureWithPublicKey(jarHash, clientSignature);
-                            if (verified) {
-                                LOGGER.info("Velton integrity check for {}: JAR SIGNED with VALID SIGNATURE (hash: {})", playerName, StringUtils.truncate(jarHash, 8));
-                            } else {
-                                LOGGER.warn("Velton integrity check for {}: signature verification FAILED - signature was not created with our key", playerName);
-                            }
-                        } catch (Exception e) {
-                            LOGGER.warn("Velton integrity check for {}: error verifying signature: {}", playerName, e.getMessage());
-                            verified = false;
-                        }
-                    } else {
-                        LOGGER.warn("Velton integrity check for {}: signature too small to be valid", playerName);
-                        verified = false;
-                    }
-                } else if (clientSignature == null || clientSignature.length == 0) {
-                    LOGGER.warn("Velton integrity check for {}: no signature data received - client not signed", playerName);
-                    verified = false;
-                } else if (jarHash == null || jarHash.isEmpty()) {
-                    LOGGER.warn("Velton integrity check for {}: no JAR hash received", playerName);
-                    verified = false;
-                }
-                
-                if (HandShakerServer.DEBUG_MODE) {
-                    LOGGER.info("Velton check for {} with nonce {}: {}", playerName, payload.nonce(), verified ? "PASSED" : "FAILED");
-                }
+            if (!allowPayload(player.getUuid(), player.getName().getString(), HandShaker.VERDICT_CHANNEL, player.networkHandler::disconnect)) return;
+            receiveVerdictToken(payload, player.getUuid(), player.getName().getString());
+        });
 
-                // Kick player if Velton signature is invalid/missing
-                if (!verified) {
-                    LOGGER.warn("Kicking {} - Velton signature verification failed", playerName);
-                    player.networkHandler.disconnect(Text.of("Anti-cheat verification failed"));
-                    return;
-                }
+        ServerConfigurationNetworking.registerGlobalReceiver(HandShaker.VerdictTokenPayload.ID,
+                (payload, context) -> receiveConfigurationVerdictToken(payload, new NetworkConnection(context.networkHandler())));
 
-                final boolean finalVerified = verified;
-                clients.compute(player.getUuid(), (uuid, oldInfo) ->
-                        new ClientInfo(oldInfo != null ? oldInfo.mods() : Collections.emptySet(), 
-                                oldInfo != null && oldInfo.signatureVerified(),
-                                finalVerified,
-                                oldInfo != null ? oldInfo.modListNonce() : null,
-                                oldInfo != null ? oldInfo.integrityNonce() : null,
-                                payload.nonce()));
-                configManager.checkPlayer(player, clients.get(player.getUuid()));
-            } catch (Exception e) {
-                LOGGER.error("Failed to decode Velton payload from {}. Terminating connection.", playerName, e);
-                player.networkHandler.disconnect(Text.of("Corrupted handshake data"));
-            }
+        ServerPlayNetworking.registerGlobalReceiver(VeltonPayload.ID, (payload, context) -> {
+            ServerPlayerEntity player = context.player();
+            payloadCapture.record(player.getUuid(), payload);
+            if (!allowPayload(player.getUuid(), player.getName().getString(), VELTON_CHANNEL, player.networkHandler::disconnect)) return;
+            submitPayload(player.getUuid(), VELTON_CHANNEL, fingerprint(payload.signature(), payload.jarHash(), payload.nonce()), () -> receiveVelton(payload, player));
         });
 
+        // Run the handshake during configuration, so rejected players never load chunks or entities
+        ServerConfigurationConnectionEvents.CONFIGURE.register((handler, server) ->
+                configure(new NetworkConnection(handler), ServerConfigurationNetworking.canSend(handler, HandShaker.ChallengePayload.ID)));
+
+        ServerConfigurationConnectionEvents.DISCONNECT.register((handler, server) -> configurationClosed(handler.getDebugProfile().id()));
+
         // Register player lifecycle events
         ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> {
-            scheduler.schedule(() -> {
-                server.execute(() -> {
-                    if (handler.player.networkHandler == null) return; // Player disconnected
-                    ClientInfo info = clients.computeIfAbsent(handler.player.getUuid(), uuid -> new ClientInfo(Collections.emptySet(), false, false, null, null, null));
-
-                    configManager.checkPlayer(handler.player, info, false); // Don't execute actions here, just check
-                });
-            }, 5, TimeUnit.SECONDS);
+            ClientInfo configured = clients.get(handler.player.getUuid());
+            // Older clients don't listen for challenges and keep sending random nonces
+            if ((configured == null || configured.modListNonce() == null)
+                    && ServerPlayNetworking.canSend(handler.player, HandShaker.ChallengePayload.ID)) {
+                sender.sendPacket(new HandShaker.ChallengePayload(challenge.issue(handler.player.getUuid())));
+            }
+            tickBudget.run(() -> startHandshake(handler.player));
         });
 
         ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
+            cancelHandshake(handler.player.getUuid());
+            admission.forget(handler.player.getUuid());
+            rateLimiter.forget(handler.player.getUuid());
+            fingerprints.forget(handler.player.getUuid());
             clients.remove(handler.player.getUuid());
+            handshakeResults.forget(handler.player.getUuid());
+            verdictTokens.forget(handler.player.getUuid());
+            configManager.getResumption().suspend(handler.player.getUuid());
             configManager.playerLeft(handler.player);
         });
 
@@ -270,6 +249,743 @@ public class HandShakerServer implements DedicatedServerModInitializer {
         });
     }
 
+    /**
+     * Loads the config and opens the logs and history. {@link #onInitializeServer} passes the bundled
+     * public.cer; the load test passes a throwaway key and registers nothing with Fabric.
+     * @param publicKey The key client signatures are checked against; null fails every signature check
+     */
+    public void start(PublicKey publicKey) {
+        instance = this;
+        configManager = new ConfigManager(executors.io(), metrics, auditLog, tickBudget, violationLog);
+        configManager.load();
+        if (configManager.isAuditLog()) {
+            auditLog.start();
+        }
+        payloadCapture = new PayloadCapture(new File(FabricLoader.getInstance().getConfigDir().toFile(), "HandShaker/captures"),
+                configManager.getCaptureMaxMegabytes() * 1024L * 1024L, reason -> LOGGER.warn("Payload capture stopped: {}", reason));
+        if (configManager.isCapturePayloads()) {
+            payloadCapture.start();
+            LOGGER.info("Capturing handshake payloads to {}", payloadCapture.getFile().getName());
+        }
+        registerMetrics();
+        startMetricsEndpoint();
+        
+        this.publicKey = publicKey;
+        
+        // Skipped entirely when disabled so Hikari and H2 never load; otherwise it opens in the background
+        if (configManager.isPlayerdbEnabled()) {
+            playerHistoryDb = new PlayerHistoryDatabase(true, configManager.getPlayerdbStorage(), executors.io());
+        }
+    }
+
+    /**
+     * Where handshake work that has to run on the server thread goes, set once the server has started
+     */
+    public void setServerThread(Executor serverThread) {
+        this.serverThread = serverThread;
+    }
+
+    public void stop() {
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+        }
+        handshakeTimer.stop();
+        admission.clear();
+        tickBudget.clear();
+        handshakeResults.clear();
+        verdictTokens.clear();
+        configManager.getResumption().clear();
+        rateLimiter.clear();
+        fingerprints.clear();
+        // Let in-flight database syncs and config writes finish before storage closes
+        if (!executors.shutdown(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+            LOGGER.warn("Background tasks did not finish within {}s of shutdown", SHUTDOWN_WAIT_SECONDS);
+        }
+        if (playerHistoryDb != null) {
+            playerHistoryDb.close();
+        }
+        auditLog.stop();
+        payloadCapture.stop();
+    }
+
+    public void startTick() {
+        tickBudget.setBudget(configManager.getMainThreadBudgetMillis());
+        tickBudget.startTick();
+    }
+
+    public void endTick() {
+        admission.setLimits(configManager.getHandshakeConcurrency(), configManager.getHandshakeQueueSize(),
+                configManager.getHandshakeTickBudgetMillis());
+        rateLimiter.setLimits(configManager.getRateLimitMessages(), configManager.getRateLimitWindowSeconds(),
+                configManager.getRateLimitKickAfter());
+        rateLimiter.expireIdle();
+        verdictTokens.configure(configManager.getVerdictTokenSecret(), configManager.getVerdictTokenTtlSeconds(),
+                configManager.getVerdictTokenGeneration());
+        tickBudget.run(admission::tick);
+    }
+
+    private void registerMetrics() {
+        metrics.counter("audit_dropped", "Audit records dropped because the writer fell behind", auditLog::getDroppedCount);
+        metrics.counter("capture_dropped", "Captured payloads dropped because the writer fell behind", payloadCapture::getDroppedCount);
+        metrics.gauge("handshake_queue_depth", "Handshake payloads queued for the tick", admission::getQueueDepth);
+        metrics.gauge("handshake_waiting_depth", "Handshake payloads waiting for room in the queue", admission::getWaitingDepth);
+        metrics.gauge("handshake_tick_seconds", "Main-thread time the last tick spent on handshake work",
+                () -> admission.getLastTickMillis() / 1000.0);
+        metrics.gauge("pending_handshakes", "Players whose handshake timeout is still running", handshakeTimeouts::size);
+        metrics.gauge("executor_in_flight", "Background tasks submitted and not yet finished", executors::getInFlight);
+        metrics.gauge("main_thread_tick_seconds", "Main-thread time HandShaker used in the last tick",
+                () -> tickBudget.getLastTickMillis() / 1000.0);
+        metrics.gauge("main_thread_deferred_depth", "Tasks waiting for a tick with main-thread budget left", tickBudget::getDeferredDepth);
+        metrics.counter("main_thread_deferred", "Tasks pushed to a later tick by the main-thread budget", tickBudget::getDeferredCount);
+        metrics.counter("main_thread_over_budget_ticks", "Ticks in which HandShaker went over its main-thread budget", tickBudget::getOverBudgetTicks);
+        metrics.counter("handshake_shed", "Payloads that found the handshake queue full", admission::getShedCount);
+        metrics.counter("payloads_rate_limited", "Payloads dropped by the rate limiter", rateLimiter::getDroppedCount);
+        metrics.counter("payloads_repeated", "Byte-identical repeat payloads skipped", fingerprints::getRepeatCount);
+        metrics.counter("nonce_replays", "Payloads rejected for a reused nonce", nonceCache::getReplayCount);
+        metrics.counter("verdict_tokens_issued", "Verdict tokens handed to players who passed", verdictTokens::getIssuedCount);
+        metrics.counter("verdict_tokens_accepted", "Signature checks skipped thanks to a verdict token", verdictTokens::getAcceptedCount);
+        metrics.counter("verdict_tokens_rejected", "Verdict tokens that were invalid or did not match the client", verdictTokens::getRejectedCount);
+    }
+
+    private void startMetricsEndpoint() {
+        int port = configManager.getMetricsPort();
+        if (port == 0) {
+            return;
+        }
+        try {
+            metricsEndpoint = new MetricsEndpoint(port, metrics, executors.io());
+            LOGGER.info("Serving metrics at http://localhost:{}/metrics", port);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to start metrics endpoint on port {}: {}", port, e.getMessage());
+        }
+    }
+
+    /**
+     * Applies the per-channel rate limit before a payload is looked at. Floods end in a kick.
+     */
+    private boolean allowPayload(UUID playerUuid, String playerName, Identifier channel, Consumer<Text> disconnect) {
+        String channelName = channel.toString();
+        PayloadRateLimiter.Result result = rateLimiter.tryAcquire(playerUuid, channelName);
+        if (result == PayloadRateLimiter.Result.ABUSE) {
+            LOGGER.warn("Kicking {} - flooding {}", playerName, channel);
+            metrics.recordKick(KickReason.RATE_LIMIT);
+            auditLog.record(AuditLog.Type.KICK, playerUuid, playerName, KickReason.RATE_LIMIT.label(), channelName);
+            violationLog.record(playerUuid, playerName, KickReason.RATE_LIMIT, null, null);
+            disconnect.accept(Text.of("Too many handshake packets"));
+        }
+        if (result != PayloadRateLimiter.Result.ALLOWED) {
+            HandshakeEvents.PayloadReceived event = new HandshakeEvents.PayloadReceived(channelName);
+            event.begin();
+            event.finish(playerUuid, knownModCount(playerUuid), "rate_limited");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queues a payload's processing. A byte-identical repeat of the previous payload on the channel is
+     * skipped when its turn comes, since the first copy already produced the outcome.
+     */
+    private void submitPayload(UUID playerUuid, Identifier channel, long fingerprint, Runnable work) {
+        String channelName = channel.toString();
+        admission.submit(playerUuid, () -> {
+            HandshakeEvents.PayloadReceived event = new HandshakeEvents.PayloadReceived(channelName);
+            event.begin();
+            if (fingerprints.markSeen(playerUuid, channelName, fingerprint)) {
+                work.run();
+                event.finish(playerUuid, knownModCount(playerUuid), "processed");
+            } else {
+                event.finish(playerUuid, knownModCount(playerUuid), "skipped");
+            }
+        });
+    }
+
+    /**
+     * Mods received from a player so far, for the flight recorder events
+     */
+    private int knownModCount(UUID playerUuid) {
+        ClientInfo info = clients.get(playerUuid);
+        return info != null ? info.mods().size() : 0;
+    }
+
+    /**
+     * Fingerprint of a payload's fields. The codec has already consumed the raw bytes by the time
+     * a receiver runs, so the decoded fields stand in for them.
+     */
+    private long fingerprint(byte[] data, String... fields) {
+        long fingerprint = data != null ? fingerprints.hash(data) : 0;
+        for (String field : fields) {
+            fingerprint = PayloadFingerprints.combine(fingerprint, fingerprints.hash(field));
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Records a mod list received during configuration or after joining.
+     * @return False if the payload was rejected and the connection is being closed
+     */
+    private boolean receiveModList(HandShaker.ModsListPayload payload, UUID playerUuid, String playerName, Consumer<Text> disconnect) {
+        try {
+            if (!PayloadValidator.validateNonce(payload.nonce(), challenge, nonceCache, metrics, playerUuid, playerName, disconnect, LOGGER, "mod list")) {
+                return false;
+            }
+            long decodeStart = metrics.start();
+            Set<String> mods = new HashSet<>(Arrays.asList(payload.mods().split(",")));
+            if (payload.mods().isEmpty()) {
+                mods.clear();
+            }
+            metrics.record(HandshakeMetrics.Stage.DECODE, decodeStart);
+            verdictTokens.modListReceived(playerUuid, mods);
+            configManager.getResumption().modListReceived(playerUuid, mods);
+            if (HandShakerServer.DEBUG_MODE) {
+                LOGGER.info("Received mod list from {} with nonce: {}", playerName, payload.nonce());
+            }
+            auditLog.record(AuditLog.Type.MOD_LIST, playerUuid, playerName, "received", mods);
+            
+            // Sync with database on a virtual thread, so a slow write never stalls the tick. Even handing
+            // it off waits for a tick with budget left
+            if (playerHistoryDb != null) {
+                tickBudget.runOrDefer(() -> {
+                    long syncStart = metrics.start();
+                    playerHistoryDb.syncPlayerModsAsync(playerUuid, playerName, mods)
+                            .whenComplete((ignored, e) -> metrics.record(HandshakeMetrics.Stage.DB_SYNC, syncStart))
+                            .exceptionally(e -> {
+                                LOGGER.warn("Failed to sync player mods to database: {}", e.getMessage());
+                                return null;
+                            });
+                });
+            }
+            
+            clients.compute(playerUuid, (uuid, oldInfo) ->
+                    new ClientInfo(mods, 
+                            oldInfo != null && oldInfo.signatureVerified(),
+                            oldInfo != null && oldInfo.veltonVerified(),
+                            payload.nonce(),
+                            oldInfo != null ? oldInfo.integrityNonce() : null,
+                            oldInfo != null ? oldInfo.veltonNonce() : null,
+                            oldInfo != null ? oldInfo.state() : ClientInfo.State.AWAITING));
+            return true;
+        } catch (Exception e) {
+            LOGGER.error("Failed to decode mod list from {}. Terminating connection.", playerName, e);
+            metrics.recordKick(KickReason.MALFORMED);
+            disconnect.accept(Text.of("Corrupted handshake data"));
+            return false;
+        }
+    }
+
+    /**
+     * Verifies and records integrity data received during configuration or after joining. The signature
+     * is checked on the CPU pool and {@code onRecorded} runs on the server thread once the result is in;
+     * it never runs if the payload was rejected and the connection is being closed.
+     */
+    private void receiveIntegrity(HandShaker.IntegrityPayload payload, UUID playerUuid, String playerName, Consumer<Text> disconnect, Runnable onRecorded) {
+        try {
+            if (!PayloadValidator.validateNonce(payload.nonce(), challenge, nonceCache, metrics, playerUuid, playerName, disconnect, LOGGER, "integrity payload")) {
+                return;
+            }
+        } catch (Exception e) {
+            LOGGER.error("Failed to decode integrity payload from {}. Terminating connection.", playerName, e);
+            metrics.recordKick(KickReason.MALFORMED);
+            disconnect.accept(Text.of("Corrupted handshake data"));
+            return;
+        }
+
+        // Another backend verified this JAR moments ago and the mod list matched its token
+        if (verdictTokens.acceptIntegrity(playerUuid, payload.jarHash())) {
+            LOGGER.debug("Integrity check for {}: accepted verdict token (hash: {})", playerName, StringUtils.truncate(payload.jarHash(), 8));
+            recordIntegrity(payload, playerUuid, playerName, true, onRecorded);
+            return;
+        }
+
+        // The same client reconnecting shortly after it left, with the same mods and JAR
+        Boolean resumed = configManager.getResumption().resumeIntegrity(playerUuid, payload.jarHash(), configManager.getGeneration());
+        if (resumed != null) {
+            LOGGER.debug("Integrity check for {}: resumed previous session (hash: {})", playerName, StringUtils.truncate(payload.jarHash(), 8));
+            recordIntegrity(payload, playerUuid, playerName, resumed, onRecorded);
+            return;
+        }
+
+        // The handshake timeout is held until the result is back on the server thread
+        BooleanSupplier release = admission.hold(playerUuid);
+        CompletableFuture.supplyAsync(() -> verifyIntegrity(payload, playerUuid, playerName), executors.cpu())
+                .exceptionally(e -> {
+                    LOGGER.warn("Integrity check for {}: error verifying signature: {}", playerName, e.getMessage());
+                    return false;
+                })
+                .thenAcceptAsync(verified -> {
+                    if (!release.getAsBoolean()) return;
+                    // Only a check run here vouches for a fresh token
+                    verdictTokens.jarChecked(playerUuid, payload.jarHash(), verified);
+                    recordIntegrity(payload, playerUuid, playerName, verified, onRecorded);
+                }, onServerThread);
+    }
+
+    private void recordIntegrity(HandShaker.IntegrityPayload payload, UUID playerUuid, String playerName, boolean verified, Runnable onRecorded) {
+        if (HandShakerServer.DEBUG_MODE) {
+            LOGGER.info("Integrity check for {} with nonce {}: {}", playerName, payload.nonce(), verified ? "PASSED" : "FAILED");
+        }
+        auditLog.record(AuditLog.Type.INTEGRITY, playerUuid, playerName, verified ? "valid" : "invalid", null);
+        configManager.getResumption().jarChecked(playerUuid, payload.jarHash(), verified);
+        clients.compute(playerUuid, (uuid, oldInfo) ->
+                new ClientInfo(oldInfo != null ? oldInfo.mods() : Collections.emptySet(),
+                        verified,
+                        oldInfo != null && oldInfo.veltonVerified(),
+                        oldInfo != null ? oldInfo.modListNonce() : null,
+                        payload.nonce(),
+                        oldInfo != null ? oldInfo.veltonNonce() : null,
+                        oldInfo != null ? oldInfo.state() : ClientInfo.State.AWAITING));
+        onRecorded.run();
+    }
+
+    private void receiveVerdictToken(HandShaker.VerdictTokenPayload payload, UUID playerUuid, String playerName) {
+        if (!verdictTokens.isEnabled()) return;
+        if (!verdictTokens.present(playerUuid, payload.token())) {
+            LOGGER.debug("Ignoring verdict token from {}: forged, expired or from another generation", playerName);
+        }
+    }
+
+    private boolean verifyIntegrity(HandShaker.IntegrityPayload payload, UUID playerUuid, String playerName) {
+        byte[] clientSignature = payload.signature();
+        String jarHash = payload.jarHash();
+        boolean verified = false;
+        
+        // Verification logic (matching Paper):
+        // Check if client sent a signature and jar hash
+        if (jarHash != null && !jarHash.isEmpty() && clientSignature != null && clientSignature.length > 0) {
+            if (publicKey == null) {
+                LOGGER.warn("Cannot verify signature for {}: public key not loaded", playerName);
+                verified = false;
+            } else if (clientSignature.length >= 128) { // Minimum size for a valid signature
+                // Verify the signature against our public key
+                try {
+                    HandshakeEvents.SignatureVerification event = new HandshakeEvents.SignatureVerification("integrity");
+                    event.begin();
+                    long verifyStart = metrics.start();
+                    verified = verifySignatureWithPublicKey(jarHash, clientSignature);
+                    metrics.record(HandshakeMetrics.Stage.SIGNATURE_VERIFY, verifyStart);
+                    event.finish(playerUuid, knownModCount(playerUuid), verified ? "valid" : "invalid");
+                    if (verified) {
+                        LOGGER.debug("Integrity check for {}: JAR SIGNED with VALID SIGNATURE (hash: {})", playerName, StringUtils.truncate(jarHash, 8));
+                    } else {
+                        LOGGER.warn("Integrity check for {}: signature verification FAILED - signature was not created with our key", playerName);
+                    }
+                } catch (Exception e) {
+                    LOGGER.warn("Integrity check for {}: error verifying signature: {}", playerName, e.getMessage());
+                    verified = false;
+                }
+            } else {
+                LOGGER.warn("Integrity check for {}: signature too small to be valid", playerName);
+                verified = false;
+            }
+        } else if (clientSignature == null || clientSignature.length == 0) {
+            LOGGER.warn("Integrity check for {}: no signature data received - client not signed", playerName);
+            verified = false;
+        } else if (jarHash == null || jarHash.isEmpty()) {
+            LOGGER.warn("Integrity check for {}: no JAR hash received", playerName);
+            verified = false;
+        }
+        return verified;
+    }
+
+    private void receiveVelton(VeltonPayload payload, ServerPlayerEntity player) {
+        String playerName = player.getName().getString();
+        try {
+            if (!PayloadValidator.validateNonce(payload.nonce(), challenge, nonceCache, metrics, player, LOGGER, "Velton payload")) {
+                return;
+            }
+        } catch (Exception e) {
+            LOGGER.error("Failed to decode Velton payload from {}. Terminating connection.", playerName, e);
+            metrics.recordKick(KickReason.MALFORMED);
+            player.networkHandler.disconnect(Text.of("Corrupted handshake data"));
+            return;
+        }
+
+        BooleanSupplier release = admission.hold(player.getUuid());
+        CompletableFuture.supplyAsync(() -> verifyVelton(payload, player.getUuid(), playerName), executors.cpu())
+                .exceptionally(e -> {
+                    LOGGER.warn("Velton integrity check for {}: error verifying signature: {}", playerName, e.getMessage());
+                    return false;
+                })
+                .thenAcceptAsync(verified -> {
+                    if (!release.getAsBoolean()) return;
+                    if (HandShakerServer.DEBUG_MODE) {
+                        LOGGER.info("Velton check for {} with nonce {}: {}", playerName, payload.nonce(), verified ? "PASSED" : "FAILED");
+                    }
+                    auditLog.record(AuditLog.Type.VELTON, player.getUuid(), playerName, verified ? "valid" : "invalid", null);
+
+                    // Kick player if Velton signature is invalid/missing
+                    if (!verified) {
+                        LOGGER.warn("Kicking {} - Velton signature verification failed", playerName);
+                        metrics.recordKick(KickReason.VELTON);
+                        auditLog.record(AuditLog.Type.KICK, player.getUuid(), playerName, KickReason.VELTON.label(), "invalid signature");
+                        violationLog.record(player.getUuid(), playerName, KickReason.VELTON, null, null);
+                        player.networkHandler.disconnect(Text.of("Anti-cheat verification failed"));
+                        return;
+                    }
+
+                    clients.compute(player.getUuid(), (uuid, oldInfo) ->
+                            new ClientInfo(oldInfo != null ? oldInfo.mods() : Collections.emptySet(),
+                                    oldInfo != null && oldInfo.signatureVerified(),
+                                    true,
+                                    oldInfo != null ? oldInfo.modListNonce() : null,
+                                    oldInfo != null ? oldInfo.integrityNonce() : null,
+                                    payload.nonce(),
+                                    oldInfo != null ? oldInfo.state() : ClientInfo.State.AWAITING));
+                    onHandshakePayload(player);
+                }, onServerThread);
+    }
+
+    private boolean verifyVelton(VeltonPayload payload, UUID playerUuid, String playerName) {
+        byte[] clientSignature = payload.signature();
+        String jarHash = payload.jarHash();
+        boolean verified = false;
+        
+        // Verification logic (matching integrity payload verification):
+        // Check if client sent a signature and jar hash
+        if (jarHash != null && !jarHash.isEmpty() && clientSignature != null && clientSignature.length > 0) {
+            if (publicKey == null) {
+                LOGGER.warn("Cannot verify Velton signature for {}: public key not loaded", playerName);
+                verified = false;
+            } else if (clientSignature.length >= 128) { // Minimum size for a valid signature
+                // Verify the signature against our public key
+                try {
+                    HandshakeEvents.SignatureVerification event = new HandshakeEvents.SignatureVerification("velton");
+                    event.begin();
+                    long verifyStart = metrics.start();
+                    verified = verifySignatureWithPublicKey(jarHash, clientSignature);
+                    metrics.record(HandshakeMetrics.Stage.SIGNATURE_VERIFY, verifyStart);
+                    event.finish(playerUuid, knownModCount(playerUuid), verified ? "valid" : "invalid");
+                    if (verified) {
+                        LOGGER.debug("Velton integrity check for {}: JAR SIGNED with VALID SIGNATURE (hash: {})", playerName, StringUtils.truncate(jarHash, 8));
+                    } else {
+                        LOGGER.warn("Velton integrity check for {}: signature verification FAILED - signature was not created with our key", playerName);
+                    }
+                } catch (Exception e) {
+                    LOGGER.warn("Velton integrity check for {}: error verifying signature: {}", playerName, e.getMessage());
+                    verified = false;
+                }
+            } else {
+                LOGGER.warn("Velton integrity check for {}: signature too small to be valid", playerName);
+                verified = false;
+            }
+        } else if (clientSignature == null || clientSignature.length == 0) {
+            LOGGER.warn("Velton integrity check for {}: no signature data received - client not signed", playerName);
+            verified = false;
+        } else if (jarHash == null || jarHash.isEmpty()) {
+            LOGGER.warn("Velton integrity check for {}: no JAR hash received", playerName);
+            verified = false;
+        }
+        return verified;
+    }
+
+    /**
+     * A connection in the configuration phase, as the handshake sees it. The server wraps its network
+     * handler; the load test stands in for one.
+     */
+    public interface ConfigurationConnection {
+        GameProfile profile();
+
+        /**
+         * Holds the player in configuration and sends the challenge
+         */
+        void startTask(String challengeToken);
+
+        /**
+         * Lets the player continue into the world
+         */
+        void completeTask();
+
+        void disconnect(Text reason);
+    }
+
+    private record NetworkConnection(ServerConfigurationNetworkHandler handler) implements ConfigurationConnection {
+        @Override
+        public GameProfile profile() {
+            return handler.getDebugProfile();
+        }
+
+        @Override
+        public void startTask(String challengeToken) {
+            handler.addTask(new HandshakeTask(challengeToken));
+        }
+
+        @Override
+        public void completeTask() {
+            handler.completeTask(HandshakeTask.KEY);
+        }
+
+        @Override
+        public void disconnect(Text reason) {
+            handler.disconnect(reason);
+        }
+    }
+
+    /**
+     * A connection entering configuration. Older clients, which can't receive the challenge, only
+     * take part after joining.
+     */
+    public void configure(ConfigurationConnection connection, boolean canChallenge) {
+        warmUp(connection.profile().id());
+        if (canChallenge) {
+            startConfigurationHandshake(connection);
+        }
+    }
+
+    /**
+     * Queues a mod list received during configuration. Called on the network thread.
+     */
+    public void receiveConfigurationModList(HandShaker.ModsListPayload payload, ConfigurationConnection connection) {
+        GameProfile profile = connection.profile();
+        payloadCapture.record(profile.id(), payload);
+        if (!allowPayload(profile.id(), profile.name(), HandShaker.MODS_CHANNEL,
+                reason -> serverThread.execute(() -> connection.disconnect(reason)))) return;
+        submitPayload(profile.id(), HandShaker.MODS_CHANNEL, fingerprint(null, payload.mods(), payload.modListHash(), payload.nonce()), () -> {
+            if (receiveModList(payload, profile.id(), profile.name(), connection::disconnect)) {
+                onConfigurationPayload(connection);
+            }
+        });
+    }
+
+    public void receiveConfigurationIntegrity(HandShaker.IntegrityPayload payload, ConfigurationConnection connection) {
+        GameProfile profile = connection.profile();
+        payloadCapture.record(profile.id(), payload);
+        if (!allowPayload(profile.id(), profile.name(), HandShaker.INTEGRITY_CHANNEL,
+                reason -> serverThread.execute(() -> connection.disconnect(reason)))) return;
+        submitPayload(profile.id(), HandShaker.INTEGRITY_CHANNEL, fingerprint(payload.signature(), payload.jarHash(), payload.nonce()), () -> {
+            receiveIntegrity(payload, profile.id(), profile.name(), connection::disconnect,
+                    () -> onConfigurationPayload(connection));
+        });
+    }
+
+    public void receiveConfigurationVerdictToken(HandShaker.VerdictTokenPayload payload, ConfigurationConnection connection) {
+        GameProfile profile = connection.profile();
+        if (!allowPayload(profile.id(), profile.name(), HandShaker.VERDICT_CHANNEL,
+                reason -> serverThread.execute(() -> connection.disconnect(reason)))) return;
+        receiveVerdictToken(payload, profile.id(), profile.name());
+    }
+
+    /**
+     * Forgets a player who left during configuration
+     */
+    public void configurationClosed(UUID uuid) {
+        cancelHandshake(uuid);
+        admission.forget(uuid);
+        rateLimiter.forget(uuid);
+        fingerprints.forget(uuid);
+        clients.remove(uuid);
+        handshakeResults.forget(uuid);
+        verdictTokens.forget(uuid);
+        configManager.getResumption().suspend(uuid);
+        configManager.forgetWarmUp(uuid);
+    }
+
+    /**
+     * Loads the player's last active mods, Bedrock status and verdict on the I/O executor while
+     * configuration runs, so the checks at the end of it and at join don't start cold
+     */
+    private void warmUp(UUID uuid) {
+        executors.io().execute(() -> {
+            Set<String> lastMods = playerHistoryDb != null ? playerHistoryDb.prefetchActiveMods(uuid) : Set.of();
+            configManager.warmUp(uuid, lastMods);
+        });
+    }
+
+    /**
+     * Sends the challenge as a configuration task. The player stays in the configuration phase
+     * until finishConfiguration completes the task.
+     */
+    private void startConfigurationHandshake(ConfigurationConnection connection) {
+        UUID uuid = connection.profile().id();
+        clients.put(uuid, ClientInfo.awaiting());
+        scheduleConfigurationTimeout(connection);
+        connection.startTask(challenge.issue(uuid));
+    }
+
+    private void scheduleConfigurationTimeout(ConfigurationConnection connection) {
+        UUID uuid = connection.profile().id();
+        HashedWheelTimer.Timeout timeout = handshakeTimer.schedule(() -> {
+            handshakeTimeouts.remove(uuid);
+            if (serverThread != null) {
+                onServerThread.execute(() -> onConfigurationTimeout(connection));
+            }
+        }, configManager.getHandshakeTimeoutSeconds(), TimeUnit.SECONDS);
+        HashedWheelTimer.Timeout previous = handshakeTimeouts.put(uuid, timeout);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    private void onConfigurationTimeout(ConfigurationConnection connection) {
+        if (admission.isPending(connection.profile().id())) {
+            // Payloads are still queued behind a join storm; wait for them rather than judge without them
+            scheduleConfigurationTimeout(connection);
+            return;
+        }
+        finishConfiguration(connection);
+    }
+
+    private void onConfigurationPayload(ConfigurationConnection connection) {
+        GameProfile profile = connection.profile();
+        ClientInfo info = clients.get(profile.id());
+        // Velton only talks after joining, so configuration waits for the mod list and integrity data
+        if (info == null || !info.hasAllPayloads(false)) return;
+        HashedWheelTimer.Timeout timeout = handshakeTimeouts.remove(profile.id());
+        // If the cancel fails the timeout already fired and finishes the configuration itself
+        if (timeout != null && timeout.cancel() && serverThread != null) {
+            onServerThread.execute(() -> finishConfiguration(connection));
+        }
+    }
+
+    /**
+     * Ends the configuration-phase handshake with whatever has arrived. Players the rules reject are
+     * disconnected here; everyone else continues into the world, where the full check (including
+     * action commands) runs as soon as they join.
+     */
+    private void finishConfiguration(ConfigurationConnection connection) {
+        GameProfile profile = connection.profile();
+        ClientInfo info = clients.get(profile.id());
+        if (info == null) return; // Disconnected meanwhile
+        PermissionsAdapter.checkPermission(profile.id(), "handshaker.bypass")
+                .exceptionally(e -> true) // Leave it to the in-world check
+                .thenAcceptAsync(bypass -> {
+                    ConfigManager.Rejection rejection = bypass ? null : configManager.getPreJoinRejection(profile.id(), profile.name(), info);
+                    if (rejection != null) {
+                        LOGGER.debug("Rejected {} during configuration: {}", profile.name(), rejection.message());
+                        metrics.recordKick(rejection.reason());
+                        auditLog.record(AuditLog.Type.KICK, profile.id(), profile.name(), rejection.reason().label(), rejection.message());
+                        violationLog.record(profile.id(), profile.name(), rejection.reason(), rejection.mods(), null);
+                        connection.disconnect(Text.literal(rejection.message()));
+                    } else {
+                        connection.completeTask();
+                    }
+                }, onServerThread);
+    }
+
+    /**
+     * Starts waiting for a joining player's handshake. The verdict runs as soon as every expected
+     * payload has arrived, or when the handshake timeout fires for clients that never finish.
+     * Players that completed the handshake during configuration are judged right away.
+     */
+    private void startHandshake(ServerPlayerEntity player) {
+        UUID uuid = player.getUuid();
+        ClientInfo info = clients.compute(uuid, (key, configured) ->
+                configured != null && configured.modListNonce() != null ? configured : ClientInfo.awaiting());
+        if (info.hasAllPayloads(configManager.isRequireVelton())) {
+            judge(player, info);
+            return;
+        }
+        scheduleTimeout(player);
+    }
+
+    private void scheduleTimeout(ServerPlayerEntity player) {
+        UUID uuid = player.getUuid();
+        HashedWheelTimer.Timeout timeout = handshakeTimer.schedule(() -> {
+            if (serverThread != null) {
+                onServerThread.execute(() -> onHandshakeTimeout(player));
+            }
+        }, configManager.getHandshakeTimeoutSeconds(), TimeUnit.SECONDS);
+        HashedWheelTimer.Timeout previous = handshakeTimeouts.put(uuid, timeout);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    private void cancelHandshake(UUID uuid) {
+        HashedWheelTimer.Timeout timeout = handshakeTimeouts.remove(uuid);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private void onHandshakePayload(ServerPlayerEntity player) {
+        ClientInfo info = clients.get(player.getUuid());
+        if (info == null) return;
+        if (info.state() == ClientInfo.State.JUDGED) {
+            // Late payload after the verdict: re-check without repeating actions, when the tick has time
+            tickBudget.runOrDefer(() -> recheck(player));
+            return;
+        }
+        if (info.hasAllPayloads(configManager.isRequireVelton())) {
+            cancelHandshake(player.getUuid());
+            judge(player, info);
+        }
+    }
+
+    private void onHandshakeTimeout(ServerPlayerEntity player) {
+        handshakeTimeouts.remove(player.getUuid());
+        if (player.networkHandler == null) return; // Player disconnected
+        ClientInfo info = clients.get(player.getUuid());
+        if (info == null || info.state() == ClientInfo.State.JUDGED) return;
+        if (admission.isPending(player.getUuid())) {
+            scheduleTimeout(player);
+            return;
+        }
+        if (configManager.isRequireVelton() && !info.mods().isEmpty() && info.veltonNonce() == null) {
+            LOGGER.warn("Kicking {} - no Velton payload received within {}s", player.getName().getString(), configManager.getHandshakeTimeoutSeconds());
+            metrics.recordKick(KickReason.VELTON);
+            auditLog.record(AuditLog.Type.KICK, player.getUuid(), player.getName().getString(), KickReason.VELTON.label(), "no payload");
+            violationLog.record(player.getUuid(), player.getName().getString(), KickReason.VELTON, null, null);
+            publish(player, new HandshakeResult(player.getUuid(), info.mods(), true, info.signatureVerified(), false,
+                    HandshakeResult.Verdict.KICKED, KickReason.VELTON));
+            player.networkHandler.disconnect(Text.of("Anti-cheat verification failed"));
+            return;
+        }
+        judge(player, info);
+    }
+
+    /**
+     * Re-checks a judged player against their latest handshake data, unless they left meanwhile
+     */
+    private void recheck(ServerPlayerEntity player) {
+        ClientInfo info = clients.get(player.getUuid());
+        if (info == null || player.isDisconnected()) return;
+        HandshakeResult result = configManager.checkPlayer(player, info, false);
+        publish(player, result);
+        sendVerdictToken(player, result);
+    }
+
+    private void judge(ServerPlayerEntity player, ClientInfo info) {
+        ClientInfo judged = info.withState(ClientInfo.State.JUDGED);
+        clients.put(player.getUuid(), judged);
+        HandshakeResult result = configManager.checkPlayer(player, judged);
+        publish(player, result);
+        sendVerdictToken(player, result);
+    }
+
+    /**
+     * Hands a player who passed with a verified JAR a token other backends can accept instead of
+     * checking the signature again
+     */
+    private void sendVerdictToken(ServerPlayerEntity player, HandshakeResult result) {
+        if (result.isKicked() || !result.signatureVerified() || !ServerPlayNetworking.canSend(player, HandShaker.VerdictTokenPayload.ID)) return;
+        String token = verdictTokens.issue(player.getUuid(), result.mods());
+        if (token != null) {
+            ServerPlayNetworking.send(player, new HandShaker.VerdictTokenPayload(token));
+        }
+    }
+
+    /**
+     * Stores a verdict for the lookup API and fires {@link HandshakeCompletedEvent} for the first one
+     */
+    private void publish(ServerPlayerEntity player, HandshakeResult result) {
+        if (!handshakeResults.complete(result)) return;
+        try {
+            HandshakeCompletedEvent.EVENT.invoker().onHandshakeCompleted(player, result);
+        } catch (RuntimeException e) {
+            LOGGER.warn("A HandshakeCompletedEvent listener failed for {}: {}", player.getName().getString(), e.getMessage());
+        }
+    }
+
+    /**
+     * The player's handshake result, completed on the server thread once their check finishes. Already
+     * complete for a judged player. Cancelled for a player who is not connected, or who leaves before
+     * the verdict.
+     */
+    public CompletableFuture<HandshakeResult> getHandshakeResult(UUID player) {
+        boolean connected = clients.containsKey(player) || server != null && server.getPlayerManager().getPlayer(player) != null;
+        return handshakeResults.lookup(player, connected);
+    }
+
     public ConfigManager getConfigManager() {
         return configManager;
     }
@@ -282,6 +998,57 @@ public class HandShakerServer implements DedicatedServerModInitializer {
         return server;
     }
 
+    public NonceReplayCache getNonceCache() {
+        return nonceCache;
+    }
+
+    public HandShakerExecutors getExecutors() {
+        return executors;
+    }
+
+    public HandshakeMetrics getMetrics() {
+        return metrics;
+    }
+
+    public AuditLog getAuditLog() {
+        return auditLog;
+    }
+
+    public PayloadCapture getPayloadCapture() {
+        return payloadCapture;
+    }
+
+    /**
+     * The key client signatures are checked against, or null if public.cer is missing
+     */
+    public PublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    public HandshakeAdmission getAdmission() {
+        return admission;
+    }
+
+    public TickBudget getTickBudget() {
+        return tickBudget;
+    }
+
+    public ViolationLog getViolationLog() {
+        return violationLog;
+    }
+
+    public VerdictTokens getVerdictTokens() {
+        return verdictTokens;
+    }
+
+    public PayloadRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public PayloadFingerprints getFingerprints() {
+        return fingerprints;
+    }
+
     public Map<UUID, ClientInfo> getClients() {
         return clients;
     }
@@ -290,7 +1057,16 @@ public class HandShakerServer implements DedicatedServerModInitializer {
         if (server == null) return;
         LOGGER.info("Re-checking all online players...");
         for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
-            configManager.checkPlayer(player, clients.getOrDefault(player.getUuid(), new ClientInfo(Collections.emptySet(), false, false, null, null, null)), false);
+            ClientInfo info = clients.get(player.getUuid());
+            // Players still mid-handshake get their verdict when it completes
+            if (info != null && info.state() == ClientInfo.State.AWAITING) continue;
+            if (info == null) {
+                // No handshake data at all: the check is a kick, which never waits
+                publish(player, configManager.checkPlayer(player, ClientInfo.awaiting(), false));
+                continue;
+            }
+            // Spread over as many ticks as the main-thread budget needs
+            tickBudget.runOrDefer(() -> recheck(player));
         }
     }
     
@@ -332,23 +1108,22 @@ public class HandShakerServer implements DedicatedServerModInitializer {
         return false;
     }
 
-    private void loadPublicCertificate() {
+    static PublicKey loadPublicCertificate() {
         try (var certStream = HandShakerServer.class.getClassLoader().getResourceAsStream("public.cer")) {
             if (certStream == null) {
                 LOGGER.warn("⚠️  public.cer not found in resources. Signature verification will be disabled.");
                 LOGGER.warn("⚠️  Mods signed with ANY certificate will be accepted.");
-                publicKey = null;
-                return;
+                return null;
             }
             
             CertificateFactory cf = CertificateFactory.getInstance("X.509");
             Certificate cert = cf.generateCertificate(certStream);
-            publicKey = cert.getPublicKey();
             LOGGER.info("✓ Loaded public certificate for signature verification");
+            return cert.getPublicKey();
         } catch (Exception e) {
             LOGGER.warn("Failed to load public.cer: {}", e.getMessage());
             LOGGER.warn("⚠️  Signature verification will be disabled.");
-            publicKey = null;
+            return null;
         }
     }
 
@@ -360,7 +1135,7 @@ public class HandShakerServer implements DedicatedServerModInitializer {
         try {
             // Handle case where signature is actually a certificate chain (1445 bytes)
             if (signatureBytes.length > 512) {
-                LOGGER.info("Signature data is {} bytes, parsing as certificate chain...", signatureBytes.length);
+                LOGGER.debug("Signature data is {} bytes, parsing as certificate chain...", signatureBytes.length);
                 byte[] certValidation = extractSignatureFromCertificate(signatureBytes);
                 if (certValidation != null && certValidation.length > 0) {
                     // Certificate chain validated successfully
@@ -406,22 +1181,22 @@ public class HandShakerServer implements DedicatedServerModInitializer {
                 return null;
             }
             
-            LOGGER.info("Parsed certificate chain with {} certificate(s)", certs.size());
+            LOGGER.debug("Parsed certificate chain with {} certificate(s)", certs.size());
             
             // Check each certificate in the chain
             for (Certificate cert : certs) {
                 PublicKey certPublicKey = cert.getPublicKey();
                 
                 // Log the public key info for debugging
-                if (publicKey != null) {
-                    LOGGER.info("Certificate public key algorithm: {}, size: {}", certPublicKey.getAlgorithm(), 
+                if (publicKey != null && LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Certificate public key algorithm: {}, size: {}", certPublicKey.getAlgorithm(), 
                                (certPublicKey instanceof java.security.interfaces.RSAPublicKey ? 
                                ((java.security.interfaces.RSAPublicKey)certPublicKey).getModulus().bitLength() : "unknown"));
                 }
                 
                 // Check if this certificate's public key matches our trusted key
                 if (certPublicKey.equals(publicKey)) {
-                    LOGGER.info("✓ Certificate public key matches our trusted key - signature VALID");
+                    LOGGER.debug("✓ Certificate public key matches our trusted key - signature VALID");
                     // Return a non-null marker indicating the certificate is valid
                     return new byte[]{1}; // Marker indicating validation passed
                 }
@@ -438,6 +1213,24 @@ public class HandShakerServer implements DedicatedServerModInitializer {
         }
     }
 
+    /**
+     * Configuration task that sends the challenge. The client answers with its mod list and
+     * integrity payloads, and finishConfiguration completes the task.
+     */
+    public record HandshakeTask(String token) implements ServerPlayerConfigurationTask {
+        public static final ServerPlayerConfigurationTask.Key KEY = new ServerPlayerConfigurationTask.Key(MOD_ID + ":handshake");
+
+        @Override
+        public void sendPacket(Consumer<Packet<?>> sender) {
+            sender.accept(ServerConfigurationNetworking.createS2CPacket(new HandShaker.ChallengePayload(token)));
+        }
+
+        @Override
+        public ServerPlayerConfigurationTask.Key getKey() {
+            return KEY;
+        }
+    }
+
     public record VeltonPayload(byte[] signature, String jarHash, String nonce) implements CustomPayload {
         public static final CustomPayload.Id<VeltonPayload> ID = new CustomPayload.Id<>(VELTON_CHANNEL);
         public static final PacketCodec<PacketByteBuf, VeltonPayload> CODEC = PacketCodec.tuple(
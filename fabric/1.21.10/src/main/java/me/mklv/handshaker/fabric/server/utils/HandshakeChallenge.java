@@ -0,0 +1,103 @@
+package me.mklv.handshaker.fabric.server.utils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Stateless login challenges. A token is {@code hs1.<timestamp>.<mac>}, where the mac is an
+ * HMAC-SHA256 over the player UUID and timestamp keyed with a secret generated at startup.
+ * Checking a token is one HMAC computation and a window check, so nothing is stored per nonce.
+ * Clients echo the token in the nonce field of their mod list and integrity payloads; clients
+ * that never receive one keep sending random nonces, which go through {@link NonceReplayCache}.
+ */
+public class HandshakeChallenge {
+    public static final String TOKEN_PREFIX = "hs1.";
+    public static final long DEFAULT_WINDOW_MILLIS = 60 * 1000L;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final long windowMillis;
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+    public HandshakeChallenge() {
+        this(DEFAULT_WINDOW_MILLIS);
+    }
+
+    public HandshakeChallenge(long windowMillis) {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, "HmacSHA256");
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Creates a fresh token for a player that is about to send its handshake.
+     */
+    public String issue(UUID uuid) {
+        long now = System.currentTimeMillis();
+        return TOKEN_PREFIX + now + "." + ENCODER.encodeToString(sign(uuid, now));
+    }
+
+    /**
+     * Whether a nonce is a challenge token rather than a random nonce from a legacy client.
+     */
+    public static boolean isToken(String nonce) {
+        return nonce != null && nonce.startsWith(TOKEN_PREFIX);
+    }
+
+    /**
+     * @return True if the token was issued by this server to this player within the window
+     */
+    public boolean verify(UUID uuid, String token) {
+        if (!isToken(token)) {
+            return false;
+        }
+        int separator = token.indexOf('.', TOKEN_PREFIX.length());
+        if (separator < 0) {
+            return false;
+        }
+
+        long issuedAt;
+        byte[] mac;
+        try {
+            issuedAt = Long.parseLong(token.substring(TOKEN_PREFIX.length(), separator));
+            mac = DECODER.decode(token.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+
+        long age = System.currentTimeMillis() - issuedAt;
+        if (age < 0 || age > windowMillis) {
+            return false;
+        }
+        return MessageDigest.isEqual(sign(uuid, issuedAt), mac);
+    }
+
+    private byte[] sign(UUID uuid, long timestamp) {
+        byte[] message = ByteBuffer.allocate(24)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .putLong(timestamp)
+                .array();
+        return macs.get().doFinal(message);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            // Every JRE is required to ship HmacSHA256
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package me.mklv.handshaker.fabric.server.utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the last payload each player sent on each channel as a 64-bit fingerprint, so a
+ * byte-identical repeat (a reconfiguration resend, a proxy duplicating plugin messages) is skipped
+ * instead of being decoded, synced and judged again; the first copy already produced the outcome.
+ * The hash is a fast seeded multiply-rotate mix, not a cryptographic one. A repeat never changes any
+ * state, so a crafted collision could at most make the server ignore one of the sender's own payloads.
+ */
+public class PayloadFingerprints {
+    private static final long M1 = 0x9E3779B97F4A7C15L;
+    private static final long M2 = 0xC2B2AE3D27D4EB4FL;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // Random per start, so fingerprints can't be precomputed
+    private final long seed = new SecureRandom().nextLong();
+    private final Map<UUID, Map<String, Long>> lastSeen = new ConcurrentHashMap<>();
+    private final LongAdder repeats = new LongAdder();
+
+    public long hash(byte[] data) {
+        long h = seed ^ (data.length * M1);
+        int i = 0;
+        for (; i + 8 <= data.length; i += 8) {
+            h = mix(h, (long) LONGS.get(data, i));
+        }
+        for (; i < data.length; i++) {
+            h = mix(h, data[i] & 0xFFL);
+        }
+        return finish(h);
+    }
+
+    public long hash(String value) {
+        if (value == null) {
+            return finish(seed);
+        }
+        long h = seed ^ (value.length() * M1);
+        for (int i = 0; i < value.length(); i++) {
+            h = mix(h, value.charAt(i));
+        }
+        return finish(h);
+    }
+
+    /**
+     * Folds the fingerprints of a payload's fields into one
+     */
+    public static long combine(long first, long second) {
+        return finish(mix(first, second));
+    }
+
+    /**
+     * Records a payload's fingerprint as the latest on its channel.
+     * @return False if it matches the previous payload on that channel, i.e. the payload is a repeat
+     */
+    public boolean markSeen(UUID uuid, String channel, long fingerprint) {
+        Long previous = lastSeen.computeIfAbsent(uuid, k -> new ConcurrentHashMap<>()).put(channel, fingerprint);
+        if (previous != null && previous == fingerprint) {
+            repeats.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Ends a player's session, e.g. when they quit
+     */
+    public void forget(UUID uuid) {
+        lastSeen.remove(uuid);
+    }
+
+    public void clear() {
+        lastSeen.clear();
+    }
+
+    /**
+     * Repeat payloads skipped so far
+     */
+    public long getRepeatCount() {
+        return repeats.sum();
+    }
+
+    private static long mix(long h, long value) {
+        return Long.rotateLeft(h ^ (value * M1), 31) * M2;
+    }
+
+    private static long finish(long h) {
+        h ^= h >>> 33;
+        h *= M2;
+        h ^= h >>> 29;
+        return h;
+    }
+}
@@ -4,6 +4,9 @@ import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.text.Text;
 import org.slf4j.Logger;
 
+import java.util.UUID;
+import java.util.function.Consumer;
+
 /**
  * Utility methods for validating network payloads and player actions.
  */
@@ -24,4 +27,45 @@ public class PayloadValidator {
         }
         return true;
     }
+
+    /**
+     * Validates a nonce, disconnecting the player if it is missing, a forged or expired challenge token,
+     * or a random nonce that was already used.
+     * @param challenge Verifies challenge tokens echoed back by current clients
+     * @param nonceCache Recently used random nonces from legacy clients
+     * @param metrics Counts the kick when validation fails
+     * @return True if the nonce is present and fresh, false otherwise (player is disconnected on failure)
+     */
+    public static boolean validateNonce(String nonce, HandshakeChallenge challenge, NonceReplayCache nonceCache, HandshakeMetrics metrics, ServerPlayerEntity player, Logger logger, String payloadType) {
+        return validateNonce(nonce, challenge, nonceCache, metrics, player.getUuid(), player.getName().getString(), player.networkHandler::disconnect, logger, payloadType);
+    }
+
+    /**
+     * Same as above for connections that have no player entity yet, i.e. during the configuration phase.
+     * @param disconnect Disconnects the connection with the given reason
+     */
+    public static boolean validateNonce(String nonce, HandshakeChallenge challenge, NonceReplayCache nonceCache, HandshakeMetrics metrics, UUID playerUuid, String playerName, Consumer<Text> disconnect, Logger logger, String payloadType) {
+        if (nonce == null || nonce.isEmpty()) {
+            logger.warn("Received {} from {} with invalid/missing nonce. Rejecting.", payloadType, playerName);
+            metrics.recordKick(KickReason.MALFORMED);
+            disconnect.accept(Text.of("Invalid handshake: missing nonce"));
+            return false;
+        }
+        if (HandshakeChallenge.isToken(nonce)) {
+            if (challenge.verify(playerUuid, nonce)) {
+                return true;
+            }
+            logger.warn("Received {} from {} with invalid or expired challenge token. Kicking.", payloadType, playerName);
+            metrics.recordKick(KickReason.REPLAY);
+            disconnect.accept(Text.of("Invalid handshake: bad challenge token"));
+            return false;
+        }
+        if (!nonceCache.markUsed(nonce)) {
+            logger.warn("Received {} from {} with replay nonce. Kicking.", payloadType, playerName);
+            metrics.recordKick(KickReason.REPLAY);
+            disconnect.accept(Text.of("Replay attack detected"));
+            return false;
+        }
+        return true;
+    }
 }
@@ -3,6 +3,8 @@ package me.mklv.handshaker.fabric.server.utils;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.network.ServerPlayerEntity;
 import java.lang.reflect.Method;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Adapter for handling permissions with fallback support.
@@ -11,10 +13,12 @@ import java.lang.reflect.Method;
  */
 public class PermissionsAdapter {
     private static final Method PERMISSIONS_CHECK;
+    private static final Method PERMISSIONS_CHECK_UUID;
     private static final boolean HAS_FABRIC_PERMISSIONS;
 
     static {
         Method checkMethod = null;
+        Method checkUuidMethod = null;
         boolean hasFabricPermissions = false;
         
         try {
@@ -22,11 +26,18 @@ public class PermissionsAdapter {
             Class<?> permissionsClass = Class.forName("me.lucko.fabric.api.permissions.v0.Permissions");
             checkMethod = permissionsClass.getMethod("check", ServerCommandSource.class, String.class, int.class);
             hasFabricPermissions = true;
+            try {
+                // Offline check, used before the player entity exists
+                checkUuidMethod = permissionsClass.getMethod("check", UUID.class, String.class);
+            } catch (NoSuchMethodException e) {
+                // Older API without offline checks
+            }
         } catch (ClassNotFoundException | NoSuchMethodException e) {
             // fabric-permissions-api not available, will use vanilla fallback
         }
         
         PERMISSIONS_CHECK = checkMethod;
+        PERMISSIONS_CHECK_UUID = checkUuidMethod;
         HAS_FABRIC_PERMISSIONS = hasFabricPermissions;
     }
 
@@ -75,6 +86,29 @@ public class PermissionsAdapter {
         return false;
     }
 
+    /**
+     * Check if a player that has not joined the world yet (e.g. still in the configuration phase) has a
+     * specific permission. The permission manager may need to load the player, so the result is async.
+     * Without fabric-permissions-api this denies, like the ServerPlayerEntity check. If the API is
+     * installed but can't check offline players, this grants so the in-world check decides instead.
+     */
+    @SuppressWarnings("unchecked")
+    public static CompletableFuture<Boolean> checkPermission(UUID uuid, String permission) {
+        if (HAS_FABRIC_PERMISSIONS) {
+            if (PERMISSIONS_CHECK_UUID != null) {
+                try {
+                    return (CompletableFuture<Boolean>) PERMISSIONS_CHECK_UUID.invoke(null, uuid, permission);
+                } catch (Exception e) {
+                    // Fall back below
+                }
+            }
+            return CompletableFuture.completedFuture(true);
+        }
+        
+        // No permission check available - deny by default (only explicit grants count)
+        return CompletableFuture.completedFuture(false);
+    }
+
     /**
      * Check if fabric-permissions-api is available.
      */
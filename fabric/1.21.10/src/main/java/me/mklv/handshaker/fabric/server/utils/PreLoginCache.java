@@ -0,0 +1,83 @@
+package me.mklv.handshaker.fabric.server.utils;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Per-player state loaded while the login is still on an async thread, before the player joins: the
+ * mods they had active last time, whether they connect through Bedrock, and the verdict those mods get
+ * under the current config. Join-time checks read it instead of querying the history database, the
+ * Bedrock APIs and the rule set cold. A warmed verdict is only reused when the player sends exactly the
+ * mods it was computed for under the same config generation. Entries stop being used a minute after
+ * they are loaded, so a login that never reaches join can't leave a stale one behind.
+ */
+public class PreLoginCache<V> {
+    private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final Map<UUID, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public void put(UUID uuid, Set<String> lastMods, boolean bedrock, V verdict, long configGeneration) {
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> now - entry.loadedAt() > TTL_NANOS);
+        entries.put(uuid, new Entry<>(Set.copyOf(lastMods), bedrock, verdict, configGeneration, now));
+    }
+
+    /**
+     * The warmed Bedrock status, or {@code lookup} if nothing was warmed for this player
+     */
+    public boolean isBedrock(UUID uuid, Predicate<UUID> lookup) {
+        Entry<V> entry = get(uuid);
+        return entry != null ? entry.bedrock() : lookup.test(uuid);
+    }
+
+    /**
+     * The warmed verdict if it was computed for exactly {@code mods} under {@code configGeneration},
+     * otherwise {@code evaluate} applied to {@code mods}
+     */
+    public V verdict(UUID uuid, Set<String> mods, long configGeneration, Function<Set<String>, V> evaluate) {
+        Entry<V> entry = get(uuid);
+        if (entry != null && entry.configGeneration() == configGeneration && entry.lastMods().equals(mods)) {
+            hits.increment();
+            return entry.verdict();
+        }
+        misses.increment();
+        return evaluate.apply(mods);
+    }
+
+    /**
+     * Drops a player's entry, e.g. when they quit
+     */
+    public void forget(UUID uuid) {
+        entries.remove(uuid);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private Entry<V> get(UUID uuid) {
+        Entry<V> entry = entries.get(uuid);
+        if (entry == null || System.nanoTime() - entry.loadedAt() > TTL_NANOS) {
+            return null;
+        }
+        return entry;
+    }
+
+    private record Entry<V>(Set<String> lastMods, boolean bedrock, V verdict, long configGeneration, long loadedAt) {}
+}
@@ -0,0 +1,150 @@
+package me.mklv.handshaker.fabric.server.utils;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Per-tick accounting of the main-thread time HandShaker spends. Work that can't wait (verdicts, kicks,
+ * the admission queue) goes through {@link #run} and is only counted. Work that can (action commands,
+ * history syncs, re-checks) goes through {@link #runOrDefer} and is pushed to a later tick once this
+ * tick's budget is spent; deferred work runs in order at the start of the following ticks, as far as
+ * their budget allows. Call everything except the getters from the server thread.
+ */
+public class TickBudget {
+    // Smoothing for the average, roughly the last second of ticks at 20 TPS
+    private static final int AVERAGE_TICKS = 20;
+
+    private final Queue<Runnable> deferred = new ArrayDeque<>();
+    private final Consumer<RuntimeException> onError;
+    private final LongAdder deferredCount = new LongAdder();
+    private final LongAdder overBudgetTicks = new LongAdder();
+
+    private long budgetNanos = TimeUnit.MILLISECONDS.toNanos(10);
+    private long usedNanos;
+    private long runStart;
+    private boolean running;
+
+    private volatile long lastTickNanos;
+    private volatile long averageTickNanos;
+    private volatile long maxTickNanos;
+    private volatile int deferredDepth;
+
+    /**
+     * @param onError Told about deferred work that threw, which has no caller left to handle it
+     */
+    public TickBudget(Consumer<RuntimeException> onError) {
+        this.onError = onError;
+    }
+
+    public void setBudget(long millis) {
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, millis));
+    }
+
+    /**
+     * Runs work now and charges it to this tick. Nested calls are charged once, by the outermost.
+     */
+    public void run(Runnable work) {
+        if (running) {
+            work.run();
+            return;
+        }
+        running = true;
+        runStart = System.nanoTime();
+        try {
+            work.run();
+        } finally {
+            usedNanos += System.nanoTime() - runStart;
+            running = false;
+        }
+    }
+
+    /**
+     * Runs work now if this tick has budget left and nothing is deferred ahead of it, otherwise queues
+     * it for a later tick
+     */
+    public void runOrDefer(Runnable work) {
+        if (deferred.isEmpty() && used() < budgetNanos) {
+            run(work);
+            return;
+        }
+        deferred.add(work);
+        deferredDepth = deferred.size();
+        deferredCount.increment();
+    }
+
+    /**
+     * Closes the previous tick's accounting and runs deferred work while the new tick's budget lasts.
+     * Call once at the start of every server tick.
+     */
+    public void startTick() {
+        long used = usedNanos;
+        lastTickNanos = used;
+        averageTickNanos += (used - averageTickNanos) / AVERAGE_TICKS;
+        if (used > maxTickNanos) {
+            maxTickNanos = used;
+        }
+        if (used > budgetNanos) {
+            overBudgetTicks.increment();
+        }
+        usedNanos = 0;
+
+        Runnable work;
+        while (usedNanos < budgetNanos && (work = deferred.poll()) != null) {
+            try {
+                run(work);
+            } catch (RuntimeException e) {
+                onError.accept(e);
+            }
+        }
+        deferredDepth = deferred.size();
+    }
+
+    /**
+     * Drops deferred work, e.g. when the server stops
+     */
+    public void clear() {
+        deferred.clear();
+        deferredDepth = 0;
+    }
+
+    private long used() {
+        return running ? usedNanos + System.nanoTime() - runStart : usedNanos;
+    }
+
+    public long getBudgetMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(budgetNanos);
+    }
+
+    public double getLastTickMillis() {
+        return lastTickNanos / 1_000_000.0;
+    }
+
+    public double getAverageTickMillis() {
+        return averageTickNanos / 1_000_000.0;
+    }
+
+    public double getMaxTickMillis() {
+        return maxTickNanos / 1_000_000.0;
+    }
+
+    public int getDeferredDepth() {
+        return deferredDepth;
+    }
+
+    /**
+     * Tasks pushed to a later tick since startup
+     */
+    public long getDeferredCount() {
+        return deferredCount.sum();
+    }
+
+    /**
+     * Ticks in which HandShaker's main-thread time went over the budget
+     */
+    public long getOverBudgetTicks() {
+        return overBudgetTicks.sum();
+    }
+}
@@ -0,0 +1,294 @@
+package me.mklv.handshaker.fabric.server.utils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Signed verdicts that let a player move between backends behind a proxy without a new signature
+ * check. A token is {@code hv1.<claims>.<mac>}: the claims are the player UUID, a hash of their mod
+ * set, the JAR hash whose signature this backend verified, the token generation and an expiry, and
+ * the mac is an HMAC-SHA256 over them keyed with a secret every backend shares.
+ * <p>
+ * A backend hands the token to a player who passed. The client presents it to the next backend ahead
+ * of its mod list; if the mac, expiry and generation check out, the mod list hashes to the same set
+ * and the integrity payload names the same JAR, the RSA verification is skipped. Mod rules still run
+ * locally, since backends may use different lists. Raising the generation on every backend voids the
+ * tokens already handed out.
+ * <p>
+ * Each backend accepts a given token once; backends don't share what they accepted, so within its
+ * lifetime a token can still be used once on each of them. A player admitted on a token is handed one
+ * with the same expiry rather than a fresh one, so a single RSA check never vouches for a JAR longer
+ * than the configured lifetime.
+ */
+public class VerdictTokens {
+    public static final String TOKEN_PREFIX = "hv1.";
+    private static final int MAX_TOKEN_LENGTH = 512;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private record Claims(String modSetHash, String jarHash, long expiresAt, String mac) {}
+
+    /**
+     * A JAR this backend vouches for; {@code expiresAt} is 0 after a signature check here, or the
+     * expiry of the token it was accepted on
+     */
+    private record VerifiedJar(String jarHash, long expiresAt) {}
+
+    private final Map<UUID, Claims> presented = new ConcurrentHashMap<>();
+    private final Map<UUID, Claims> matched = new ConcurrentHashMap<>();
+    private final Map<UUID, VerifiedJar> verifiedJars = new ConcurrentHashMap<>();
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    // Null while tokens are disabled
+    private volatile Settings settings;
+
+    /**
+     * Applies the configured secret, lifetime and generation; cheap when nothing changed, so it can run
+     * every tick. An empty secret disables tokens.
+     */
+    public void configure(String secret, long ttlSeconds, long generation) {
+        Settings current = settings;
+        if (secret == null || secret.isEmpty()) {
+            settings = null;
+        } else if (current == null || !current.matches(secret, ttlSeconds, generation)) {
+            settings = new Settings(secret, ttlSeconds, generation);
+        }
+    }
+
+    public boolean isEnabled() {
+        return settings != null;
+    }
+
+    /**
+     * Records the outcome of a signature check this backend ran, so only a verified JAR is ever
+     * vouched for. Not for JARs accepted on a token; {@link #acceptIntegrity} records those itself.
+     */
+    public void jarChecked(UUID player, String jarHash, boolean verified) {
+        if (verified && jarHash != null && !jarHash.isEmpty()) {
+            verifiedJars.put(player, new VerifiedJar(jarHash, 0));
+        } else {
+            verifiedJars.remove(player);
+        }
+    }
+
+    /**
+     * A token for a player who just passed. A player admitted on a token gets one that expires with it.
+     * @return Null if tokens are disabled, the player's JAR was not verified this session or the token
+     * it was accepted on has expired
+     */
+    public String issue(UUID player, Collection<String> mods) {
+        Settings current = settings;
+        VerifiedJar jar = verifiedJars.get(player);
+        if (current == null || jar == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        long expiresAt = jar.expiresAt() != 0 ? jar.expiresAt() : now + current.ttlMillis;
+        if (now > expiresAt) {
+            return null;
+        }
+        String claims = player + "|" + modSetHash(mods) + "|" + jar.jarHash() + "|" + current.generation + "|" + expiresAt;
+        byte[] body = claims.getBytes(StandardCharsets.UTF_8);
+        issued.increment();
+        return TOKEN_PREFIX + ENCODER.encodeToString(body) + "." + ENCODER.encodeToString(current.sign(body));
+    }
+
+    /**
+     * Checks a token the player's client presented. A valid one waits for the player's mod list.
+     * @return False if the token is forged, expired, from another generation or for another player
+     */
+    public boolean present(UUID player, String token) {
+        Settings current = settings;
+        Claims claims = current != null ? parse(current, player, token) : null;
+        if (claims == null) {
+            presented.remove(player);
+            rejected.increment();
+            return false;
+        }
+        presented.put(player, claims);
+        return true;
+    }
+
+    /**
+     * Pairs a presented token with the mod list that followed it. The token stays usable only if the
+     * mod set is the one it was issued for.
+     */
+    public void modListReceived(UUID player, Collection<String> mods) {
+        Claims claims = presented.remove(player);
+        if (claims == null) {
+            return;
+        }
+        if (claims.modSetHash().equals(modSetHash(mods))) {
+            matched.put(player, claims);
+        } else {
+            matched.remove(player);
+            rejected.increment();
+        }
+    }
+
+    /**
+     * Whether the integrity payload's signature check can be skipped: a token matched the mod list,
+     * names this JAR, has not expired since and was not accepted here before
+     */
+    public boolean acceptIntegrity(UUID player, String jarHash) {
+        Claims claims = matched.remove(player);
+        Settings current = settings;
+        if (claims == null || current == null) {
+            return false;
+        }
+        if (!claims.jarHash().equals(jarHash) || System.currentTimeMillis() > claims.expiresAt()
+                || !current.consumed.markUsed(claims.mac())) {
+            rejected.increment();
+            return false;
+        }
+        verifiedJars.put(player, new VerifiedJar(jarHash, claims.expiresAt()));
+        accepted.increment();
+        return true;
+    }
+
+    public void forget(UUID player) {
+        presented.remove(player);
+        matched.remove(player);
+        verifiedJars.remove(player);
+    }
+
+    public void clear() {
+        presented.clear();
+        matched.clear();
+        verifiedJars.clear();
+    }
+
+    public long getIssuedCount() {
+        return issued.sum();
+    }
+
+    /**
+     * Signature checks skipped thanks to a token
+     */
+    public long getAcceptedCount() {
+        return accepted.sum();
+    }
+
+    /**
+     * Tokens that were invalid or did not match the client's mod set or JAR
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * SHA-256 over the sorted, lower-cased mod IDs, so backends agree however the list was sent
+     */
+    public static String modSetHash(Collection<String> mods) {
+        String joined = mods.stream()
+                .map(mod -> mod.trim().toLowerCase(Locale.ROOT))
+                .filter(mod -> !mod.isEmpty())
+                .distinct()
+                .sorted()
+                .collect(Collectors.joining(","));
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(joined.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE is required to ship SHA-256
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static Claims parse(Settings settings, UUID player, String token) {
+        if (token == null || token.length() > MAX_TOKEN_LENGTH || !token.startsWith(TOKEN_PREFIX)) {
+            return null;
+        }
+        int separator = token.indexOf('.', TOKEN_PREFIX.length());
+        if (separator < 0) {
+            return null;
+        }
+
+        byte[] body;
+        byte[] mac;
+        try {
+            body = DECODER.decode(token.substring(TOKEN_PREFIX.length(), separator));
+            mac = DECODER.decode(token.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(settings.sign(body), mac)) {
+            return null;
+        }
+
+        String[] fields = new String(body, StandardCharsets.UTF_8).split("\\|", -1);
+        if (fields.length != 5 || !fields[0].equals(player.toString())) {
+            return null;
+        }
+        try {
+            long generation = Long.parseLong(fields[3]);
+            long expiresAt = Long.parseLong(fields[4]);
+            if (generation != settings.generation || System.currentTimeMillis() > expiresAt) {
+                return null;
+            }
+            return new Claims(fields[1], fields[2], expiresAt, token.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * One configuration of the shared secret, replaced as a whole on reload
+     */
+    private static final class Settings {
+        private final String secret;
+        private final long ttlSeconds;
+        private final long ttlMillis;
+        private final long generation;
+        private final SecretKeySpec key;
+        private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+        // Macs of the tokens accepted here, kept as long as such a token can live. Changing any setting
+        // starts a new record; a new secret or generation voids the old tokens anyway
+        private final NonceReplayCache consumed;
+
+        private Settings(String secret, long ttlSeconds, long generation) {
+            this.secret = secret;
+            this.ttlSeconds = ttlSeconds;
+            this.ttlMillis = TimeUnit.SECONDS.toMillis(Math.max(1, ttlSeconds));
+            this.generation = generation;
+            this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+            this.consumed = new NonceReplayCache(ttlMillis, NonceReplayCache.DEFAULT_BUCKETS, NonceReplayCache.DEFAULT_BUCKET_CAPACITY);
+        }
+
+        private boolean matches(String secret, long ttlSeconds, long generation) {
+            return Objects.equals(this.secret, secret) && this.ttlSeconds == ttlSeconds && this.generation == generation;
+        }
+
+        private byte[] sign(byte[] body) {
+            return macs.get().doFinal(body);
+        }
+
+        private Mac newMac() {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                // Every JRE is required to ship HmacSHA256
+                throw new IllegalStateException("HmacSHA256 not available", e);
+            }
+        }
+    }
+}
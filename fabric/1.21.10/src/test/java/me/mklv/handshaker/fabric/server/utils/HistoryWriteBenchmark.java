@@ -0,0 +1,172 @@
+package me.mklv.handshaker.fabric.server.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Both history storage backends, {@link H2HistoryStorage} and {@link EventLogHistoryStorage}, take the same
+ * seeded stream of mod events from one thread, as the database's executor hands them over: a player's first
+ * sync adds their mods and later ones swap a few, until the stream has added or removed the requested number
+ * of mods. The store is then reopened, which for the event log loads the snapshot written on close, and read
+ * back with the queries the commands run: every player's active mods and first history page, and every mod's
+ * popularity and first page of players. Only the storage calls are timed, and active mods that don't match
+ * what was written are counted. The stores live in a scratch folder that is deleted afterwards.
+ * <p>
+ * Run it with {@code ./gradlew :fabric:1.21.10:historyWriteBenchmark}, optionally with
+ * {@code -PbenchmarkArgs="<mod events>"}; the default is 1,000,000 mod events.
+ */
+@EnabledIfSystemProperty(named = "handshaker.benchmarkArgs", matches = ".*")
+class HistoryWriteBenchmark {
+    private static final long DEFAULT_EVENTS = 1_000_000;
+    private static final int PLAYERS = 20_000;
+    private static final int MODS = 120;
+    private static final int MIN_MODS = 20;
+    private static final int MAX_MODS = 60;
+    private static final int MAX_SWAPS = 3;
+    private static final int PAGE_SIZE = 10;
+    private static final long SEED = 42;
+
+    /**
+     * One storage through the workload: mod events written and the time spent writing them, the time to
+     * reopen the store, and the reads after it with the active mod sets that came back wrong
+     */
+    private record Result(String setup, long events, long syncs, long failures, long writeNanos, long slowestNanos,
+                          long reopenNanos, long reads, long readNanos, long mismatches, long diskBytes) {
+        void print() {
+            double writeSeconds = writeNanos / 1_000_000_000.0;
+            double readSeconds = readNanos / 1_000_000_000.0;
+            System.out.printf(Locale.ROOT, "%-8s write %8d events in %7.2fs  %9.1f events/s  %6d failed  slowest %8.1f ms%n",
+                    setup, events, writeSeconds, events / writeSeconds, failures, slowestNanos / 1_000_000.0);
+            System.out.printf(Locale.ROOT, "%-8s read  %8d reads  in %7.2fs  %9.1f reads/s   %6d wrong   reopen %8.1f ms  %7.1f MB on disk%n",
+                    setup, reads, readSeconds, reads / readSeconds, mismatches, reopenNanos / 1_000_000.0,
+                    diskBytes / (1024.0 * 1024.0));
+        }
+    }
+
+    @Test
+    void compareStorages() throws Exception {
+        String arg = System.getProperty("handshaker.benchmarkArgs").trim();
+        long events = !arg.isEmpty() ? Long.parseLong(arg) : DEFAULT_EVENTS;
+
+        System.out.println(events + " mod events over " + PLAYERS + " players, then reopened and read back");
+        Path scratch = Files.createTempDirectory("handshaker-history-bench");
+        try {
+            File h2 = scratch.resolve("h2").resolve("history.db").toFile();
+            Files.createDirectories(h2.toPath().getParent());
+            run("h2", () -> new H2HistoryStorage(h2), h2.getParentFile(), events).print();
+            File eventLog = scratch.resolve("eventlog").toFile();
+            run("eventlog", () -> new EventLogHistoryStorage(eventLog), eventLog, events).print();
+        } finally {
+            deleteRecursively(scratch);
+        }
+    }
+
+    private static Result run(String setup, Supplier<HistoryStorage> factory, File directory, long events) throws Exception {
+        String[] mods = new String[MODS];
+        for (int i = 0; i < MODS; i++) {
+            mods[i] = "mod-" + i;
+        }
+        // Seeded, so every storage gets the same syncs
+        Random random = new Random(SEED);
+        UUID[] players = new UUID[PLAYERS];
+        List<Set<String>> active = new ArrayList<>(PLAYERS);
+        for (int p = 0; p < PLAYERS; p++) {
+            players[p] = new UUID(random.nextLong(), random.nextLong());
+            active.add(Set.of());
+        }
+
+        HistoryStorage storage = factory.get();
+        storage.open();
+        long written = 0;
+        long syncs = 0;
+        long failures = 0;
+        long writeNanos = 0;
+        long slowest = 0;
+        while (written < events) {
+            int p = random.nextInt(PLAYERS);
+            Set<String> before = active.get(p);
+            Set<String> current = new HashSet<>(before);
+            if (before.isEmpty()) {
+                int count = MIN_MODS + random.nextInt(MAX_MODS - MIN_MODS + 1);
+                while (current.size() < count) {
+                    current.add(mods[random.nextInt(MODS)]);
+                }
+            } else {
+                List<String> installed = new ArrayList<>(before);
+                for (int swaps = 1 + random.nextInt(MAX_SWAPS); swaps > 0; swaps--) {
+                    current.remove(installed.get(random.nextInt(installed.size())));
+                    current.add(mods[random.nextInt(MODS)]);
+                }
+            }
+            long begin = System.nanoTime();
+            boolean synced = storage.syncPlayerMods(players[p], "Player" + p, current, null);
+            long took = System.nanoTime() - begin;
+            writeNanos += took;
+            slowest = Math.max(slowest, took);
+            syncs++;
+            if (!synced) {
+                failures++;
+                continue;
+            }
+            int added = 0;
+            for (String mod : current) {
+                if (!before.contains(mod)) {
+                    added++;
+                }
+            }
+            written += added + before.size() - (current.size() - added);
+            active.set(p, current);
+        }
+        storage.close();
+
+        long begin = System.nanoTime();
+        storage = factory.get();
+        storage.open();
+        long reopenNanos = System.nanoTime() - begin;
+
+        long reads = 0;
+        long mismatches = 0;
+        begin = System.nanoTime();
+        for (int p = 0; p < PLAYERS; p++) {
+            if (!active.get(p).equals(storage.getActiveMods(players[p]))) {
+                mismatches++;
+            }
+            storage.getPlayerHistoryPage(players[p], null, PAGE_SIZE);
+            reads += 2;
+        }
+        storage.getModPopularity();
+        storage.getUniqueActivePlayers();
+        reads += 2;
+        for (String mod : mods) {
+            storage.getPlayersWithModPage(mod, null, PAGE_SIZE);
+            reads++;
+        }
+        long readNanos = System.nanoTime() - begin;
+        storage.close();
+
+        return new Result(setup, written, syncs, failures, writeNanos, slowest, reopenNanos, reads, readNanos,
+                mismatches, directorySize(directory.toPath()));
+    }
+
+    private static long directorySize(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -2,6 +2,8 @@ package me.mklv.handshaker.fabric;
 
 import net.fabricmc.api.ClientModInitializer;
 import net.fabricmc.loader.api.FabricLoader;
+import net.fabricmc.fabric.api.client.networking.v1.ClientConfigurationConnectionEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientConfigurationNetworking;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
 import net.minecraft.client.MinecraftClient;
@@ -15,71 +17,140 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class HandShaker implements ClientModInitializer {
 	public static final String MOD_ID = "hand-shaker";
 	public static final Identifier MODS_CHANNEL = Identifier.of(MOD_ID, "mods");
 	public static final Identifier INTEGRITY_CHANNEL = Identifier.of(MOD_ID, "integrity");
+	public static final Identifier CHALLENGE_CHANNEL = Identifier.of(MOD_ID, "challenge");
+	public static final Identifier VERDICT_CHANNEL = Identifier.of(MOD_ID, "verdict");
+	// Servers that issue challenges send one right after join; older servers never do
+	private static final long CHALLENGE_WAIT_MILLIS = 2000;
 
 	public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
+
+	// Only touched on the client thread
+	private int connectionId;
+	private boolean handshakeSent = true;
+	// Set from the network thread when the handshake already ran during configuration
+	private volatile boolean configuredHandshake;
+	// The mod JAR can't change while the game runs, so it is hashed and verified once, on a virtual thread
+	private CompletableFuture<JarIntegrity> jarIntegrity;
+	// The last server's verdict token, presented to the next one behind the same proxy
+	private volatile String verdictToken;
+
 	@SuppressWarnings("null")
 	@Override
 	public void onInitializeClient() {
 		LOGGER.info("HandShaker client initializing");
+		jarIntegrity = CompletableFuture.supplyAsync(this::inspectJar, task -> Thread.ofVirtual().name("HandShaker-JarHash").start(task));
 
 		// Register payload types for 1.21 custom payload system
 		PayloadTypeRegistry.playC2S().register(ModsListPayload.ID, ModsListPayload.CODEC);
 		PayloadTypeRegistry.playC2S().register(IntegrityPayload.ID, IntegrityPayload.CODEC);
+		PayloadTypeRegistry.playS2C().register(ChallengePayload.ID, ChallengePayload.CODEC);
+		PayloadTypeRegistry.configurationC2S().register(ModsListPayload.ID, ModsListPayload.CODEC);
+		PayloadTypeRegistry.configurationC2S().register(IntegrityPayload.ID, IntegrityPayload.CODEC);
+		PayloadTypeRegistry.configurationS2C().register(ChallengePayload.ID, ChallengePayload.CODEC);
+		PayloadTypeRegistry.playS2C().register(VerdictTokenPayload.ID, VerdictTokenPayload.CODEC);
+		PayloadTypeRegistry.playC2S().register(VerdictTokenPayload.ID, VerdictTokenPayload.CODEC);
+		PayloadTypeRegistry.configurationC2S().register(VerdictTokenPayload.ID, VerdictTokenPayload.CODEC);
+
+		// Current servers send the challenge during configuration, before the world loads
+		ClientConfigurationConnectionEvents.INIT.register((handler, client) -> configuredHandshake = false);
+		ClientConfigurationNetworking.registerGlobalReceiver(ChallengePayload.ID, (payload, context) -> {
+			configuredHandshake = true;
+			// The token goes first, so the server has it when the mod list arrives
+			String token = verdictToken;
+			if (token != null && ClientConfigurationNetworking.canSend(VerdictTokenPayload.ID)) {
+				context.responseSender().sendPacket(new VerdictTokenPayload(token));
+			}
+			context.responseSender().sendPacket(createModList(payload.token()));
+			context.responseSender().sendPacket(createIntegrity(payload.token()));
+		});
+
+		// Echo the server's challenge token as the nonce of both payloads
+		ClientPlayNetworking.registerGlobalReceiver(ChallengePayload.ID, (payload, context) -> sendHandshake(payload.token()));
+
+		// Kept only in memory; servers without the shared secret ignore it
+		ClientPlayNetworking.registerGlobalReceiver(VerdictTokenPayload.ID, (payload, context) -> verdictToken = payload.token());
 
 		// Register event handlers to send data on server join
 		ClientPlayConnectionEvents.JOIN.register((handler, sender, client) -> {
-			sendModList();
-			sendSignature();
+			if (configuredHandshake) return;
+			handshakeSent = false;
+			int joined = ++connectionId;
+			// Fall back to random nonces if no challenge arrives
+			CompletableFuture.delayedExecutor(CHALLENGE_WAIT_MILLIS, TimeUnit.MILLISECONDS).execute(() -> client.execute(() -> {
+				if (connectionId == joined) {
+					sendHandshake(null);
+				}
+			}));
 		});
 	}
 
+	private void sendHandshake(String challenge) {
+		if (handshakeSent) return;
+		handshakeSent = true;
+		MinecraftClient client = MinecraftClient.getInstance();
+		if (client == null || client.getNetworkHandler() == null) return;
+		String token = verdictToken;
+		if (token != null && ClientPlayNetworking.canSend(VerdictTokenPayload.ID)) {
+			ClientPlayNetworking.send(new VerdictTokenPayload(token));
+		}
+		ClientPlayNetworking.send(createModList(challenge));
+		ClientPlayNetworking.send(createIntegrity(challenge));
+	}
+
 	private String generateNonce() {
 		return java.util.UUID.randomUUID().toString();
 	}
 
-	private void sendModList() {
-		MinecraftClient client = MinecraftClient.getInstance();
-		if (client == null || client.getNetworkHandler() == null) return;
+	private ModsListPayload createModList(String challenge) {
 		String payload = FabricLoader.getInstance().getAllMods().stream()
 				.map(m -> m.getMetadata().getId())
 				.sorted()
 				.reduce((a,b) -> a + "," + b)
 				.orElse("");
 		String modListHash = bytesToHex(me.mklv.handshaker.fabric.server.utils.CryptoUtils.hashStringToBytes(payload));
-		String nonce = generateNonce();
-		ClientPlayNetworking.send(new ModsListPayload(payload, modListHash, nonce));
-		LOGGER.info("Sent mod list ({} chars, hash: {}) with nonce: {}", payload.length(), modListHash.substring(0, 8), nonce);
+		String nonce = challenge != null ? challenge : generateNonce();
+		LOGGER.info("Sending mod list ({} chars, hash: {}) with nonce: {}", payload.length(), modListHash.substring(0, 8), nonce);
+		return new ModsListPayload(payload, modListHash, nonce);
 	}
 
-	private void sendSignature() {
-		MinecraftClient client = MinecraftClient.getInstance();
-		if (client == null || client.getNetworkHandler() == null) return;
+	private IntegrityPayload createIntegrity(String challenge) {
+		// Normally finished long before the first server asks
+		JarIntegrity jar = jarIntegrity.join();
+		String nonce = challenge != null ? challenge : generateNonce();
+		if (jar.jarHash().isEmpty()) {
+			LOGGER.warn("Sending empty integrity payload with nonce: {}", nonce);
+		} else {
+			LOGGER.info("Sending JAR signature ({} bytes) with content hash {} and nonce: {}", jar.signature().length, jar.jarHash().substring(0, 8), nonce);
+		}
+		return new IntegrityPayload(jar.signature(), jar.jarHash(), nonce);
+	}
 
+	private JarIntegrity inspectJar() {
 		Optional<byte[]> jarSignature = getJarSignature();
 		Optional<String> jarContentHash = computeJarContentHash();
-		String nonce = generateNonce();
-		
+
 		if (jarSignature.isPresent() && jarContentHash.isPresent()) {
 			// Also verify the signature is valid on our end before sending
 			Optional<Boolean> isSignatureValid = verifyJarSignatureLocally();
 			if (isSignatureValid.isPresent() && isSignatureValid.get()) {
-				ClientPlayNetworking.send(new IntegrityPayload(jarSignature.get(), jarContentHash.get(), nonce));
-				LOGGER.info("Sent JAR signature ({} bytes) with content hash {} and nonce: {}", jarSignature.get().length, jarContentHash.get().substring(0, 8), nonce);
-			} else {
-				LOGGER.error("JAR signature verification FAILED on client side - rejecting!");
-				ClientPlayNetworking.send(new IntegrityPayload(new byte[0], "", nonce));
+				return new JarIntegrity(jarSignature.get(), jarContentHash.get());
 			}
+			LOGGER.error("JAR signature verification FAILED on client side - rejecting!");
 		} else {
 			LOGGER.warn("Could not find JAR signature or hash. Sending empty payload.");
-			ClientPlayNetworking.send(new IntegrityPayload(new byte[0], "", nonce));
 		}
+		return new JarIntegrity(new byte[0], "");
 	}
 
+	private record JarIntegrity(byte[] signature, String jarHash) {}
+
 	private Optional<byte[]> getJarSignature() {
 		try {
 			// Get the location of this mod's JAR file
@@ -278,4 +349,24 @@ public class HandShaker implements ClientModInitializer {
 		@Override public Id<? extends CustomPayload> getId() { return ID; }
 	}
 
+	public record ChallengePayload(String token) implements CustomPayload {
+		public static final CustomPayload.Id<ChallengePayload> ID = new CustomPayload.Id<>(CHALLENGE_CHANNEL);
+		public static final PacketCodec<PacketByteBuf, ChallengePayload> CODEC = PacketCodec.tuple(
+				PacketCodecs.STRING, ChallengePayload::token,
+				ChallengePayload::new);
+		@Override public Id<? extends CustomPayload> getId() { return ID; }
+	}
+
+	/**
+	 * A server's signed verdict, sent to the client after it passed and presented by the client to the
+	 * next server before its mod list
+	 */
+	public record VerdictTokenPayload(String token) implements CustomPayload {
+		public static final CustomPayload.Id<VerdictTokenPayload> ID = new CustomPayload.Id<>(VERDICT_CHANNEL);
+		public static final PacketCodec<PacketByteBuf, VerdictTokenPayload> CODEC = PacketCodec.tuple(
+				PacketCodecs.STRING, VerdictTokenPayload::token,
+				VerdictTokenPayload::new);
+		@Override public Id<? extends CustomPayload> getId() { return ID; }
+	}
+
 }
\ No newline at end of file
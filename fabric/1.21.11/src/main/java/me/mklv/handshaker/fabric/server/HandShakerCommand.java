@@ -7,21 +7,40 @@ import com.mojang.brigadier.context.CommandContext;
 import com.mojang.brigadier.suggestion.Suggestions;
 import com.mojang.brigadier.suggestion.SuggestionsBuilder;
 
+import me.mklv.handshaker.fabric.HandShaker;
 import me.mklv.handshaker.fabric.server.configs.ConfigManager;
+import me.mklv.handshaker.fabric.server.utils.HandshakeAdmission;
+import me.mklv.handshaker.fabric.server.utils.HandshakeMetrics;
+import me.mklv.handshaker.fabric.server.utils.KickReason;
+import me.mklv.handshaker.fabric.server.utils.NonceReplayCache;
+import me.mklv.handshaker.fabric.server.utils.PayloadRateLimiter;
 import me.mklv.handshaker.fabric.server.utils.PermissionsAdapter;
 import me.mklv.handshaker.fabric.server.utils.PlayerHistoryDatabase;
+import me.mklv.handshaker.fabric.server.utils.TickBudget;
+import me.mklv.handshaker.fabric.server.utils.ViolationLog;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.text.*;
 import net.minecraft.util.Formatting;
 
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static net.minecraft.server.command.CommandManager.argument;
 import static net.minecraft.server.command.CommandManager.literal;
 
 public class HandShakerCommand {
+    private static final int MAX_QUERIES_PER_SOURCE = 2;
+    private static final int PAGE_SIZE = 10;
+    private static final int RECENT_LIMIT = 20;
+    private static final DateTimeFormatter RECENT_TIME = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final Map<String, Integer> IN_FLIGHT_QUERIES = new ConcurrentHashMap<>();
     
     public static void register(CommandDispatcher<ServerCommandSource> dispatcher) {
         var handshaker = literal("handshaker")
@@ -30,6 +49,17 @@ public class HandShakerCommand {
             // Core Commands
             .then(literal("reload")
                 .executes(HandShakerCommand::reload))
+            .then(literal("metrics")
+                .executes(HandShakerCommand::showMetrics))
+            .then(literal("recent")
+                .executes(ctx -> showRecent(ctx, "all", null))
+                .then(argument("reason", StringArgumentType.word())
+                    .suggests(HandShakerCommand::suggestRecentReasons)
+                    .executes(ctx -> showRecent(ctx, StringArgumentType.getString(ctx, "reason"), null))
+                    .then(argument("mod", StringArgumentType.word())
+                        .suggests(HandShakerCommand::suggestRecentMods)
+                        .executes(ctx -> showRecent(ctx, StringArgumentType.getString(ctx, "reason"),
+                            StringArgumentType.getString(ctx, "mod"))))))
             .then(literal("info")
                 .executes(HandShakerCommand::showInfo)
                 .then(literal("configured_mods")
@@ -41,7 +71,9 @@ public class HandShakerCommand {
                 .then(literal("mod")
                     .then(argument("modName", StringArgumentType.word())
                         .suggests(HandShakerCommand::suggestAllMods)
-                        .executes(HandShakerCommand::showModInfo))))
+                        .executes(HandShakerCommand::showModInfo)
+                        .then(argument("page", com.mojang.brigadier.arguments.IntegerArgumentType.integer(1))
+                            .executes(HandShakerCommand::showModInfoWithPage)))))
             .then(literal("config")
                 .executes(HandShakerCommand::showConfig)
                 .then(literal("behavior")
@@ -145,6 +177,10 @@ public class HandShakerCommand {
             .append(Text.literal(" - View/change configuration").formatted(Formatting.GRAY)));
         ctx.getSource().sendMessage(Text.literal("/handshaker mode <mods_required|mods_blacklisted|mods_whitelisted> <on|off>").formatted(Formatting.YELLOW)
             .append(Text.literal(" - Toggle mod lists").formatted(Formatting.GRAY)));
+        ctx.getSource().sendMessage(Text.literal("/handshaker metrics").formatted(Formatting.YELLOW)
+            .append(Text.literal(" - Show handshake latencies, kicks and queue depths").formatted(Formatting.GRAY)));
+        ctx.getSource().sendMessage(Text.literal("/handshaker recent [reason] [mod]").formatted(Formatting.YELLOW)
+            .append(Text.literal(" - Show the latest kicks and actions, optionally filtered").formatted(Formatting.GRAY)));
         
         ctx.getSource().sendMessage(Text.empty());
         ctx.getSource().sendMessage(Text.literal("Mod Management:").formatted(Formatting.YELLOW, Formatting.BOLD));
@@ -167,6 +203,79 @@ public class HandShakerCommand {
         return Command.SINGLE_SUCCESS;
     }
 
+    private static int showMetrics(CommandContext<ServerCommandSource> ctx) {
+        ServerCommandSource source = ctx.getSource();
+        HandshakeMetrics metrics = HandShakerServer.getInstance().getMetrics();
+        source.sendMessage(Text.literal("═══════════════════════════════").formatted(Formatting.GOLD));
+        source.sendMessage(Text.literal("HandShaker Metrics").formatted(Formatting.GOLD, Formatting.BOLD));
+        source.sendMessage(Text.literal("═══════════════════════════════").formatted(Formatting.GOLD));
+        for (HandshakeMetrics.Stage stage : HandshakeMetrics.Stage.values()) {
+            source.sendMessage(Text.literal(stage.label() + ": ").formatted(Formatting.YELLOW)
+                .append(Text.literal(String.valueOf(metrics.getCount(stage))).formatted(Formatting.WHITE))
+                .append(Text.literal(String.format(" (%.2f ms avg, p50 ≤ %.2f ms, p99 ≤ %.2f ms)", metrics.getMeanMillis(stage),
+                    metrics.getPercentileMillis(stage, 0.5), metrics.getPercentileMillis(stage, 0.99))).formatted(Formatting.GRAY)));
+        }
+        TickBudget budget = HandShakerServer.getInstance().getTickBudget();
+        source.sendMessage(Text.literal("Main Thread: ").formatted(Formatting.YELLOW)
+            .append(Text.literal(String.format("%.2f ms last tick, %.2f ms avg, %.2f ms max", budget.getLastTickMillis(),
+                budget.getAverageTickMillis(), budget.getMaxTickMillis())).formatted(Formatting.WHITE))
+            .append(Text.literal(" (budget " + budget.getBudgetMillis() + " ms, " + budget.getOverBudgetTicks() + " ticks over, "
+                + budget.getDeferredDepth() + " deferred now, " + budget.getDeferredCount() + " total)").formatted(Formatting.GRAY)));
+        long totalKicks = 0;
+        List<String> byReason = new ArrayList<>();
+        for (KickReason reason : KickReason.values()) {
+            long count = metrics.getKickCount(reason);
+            if (count > 0) {
+                totalKicks += count;
+                byReason.add(reason.label() + ": " + count);
+            }
+        }
+        source.sendMessage(Text.literal("Kicks: ").formatted(Formatting.YELLOW)
+            .append(Text.literal(String.valueOf(totalKicks)).formatted(Formatting.WHITE))
+            .append(Text.literal(byReason.isEmpty() ? "" : " (" + String.join(", ", byReason) + ")").formatted(Formatting.GRAY)));
+        for (Map.Entry<String, Double> entry : metrics.readSampled().entrySet()) {
+            double value = entry.getValue();
+            String formatted = value == Math.rint(value) ? String.valueOf((long) value) : String.format("%.4f", value);
+            source.sendMessage(Text.literal(entry.getKey() + ": ").formatted(Formatting.YELLOW)
+                .append(Text.literal(formatted).formatted(Formatting.WHITE)));
+        }
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int showRecent(CommandContext<ServerCommandSource> ctx, String reasonArg, String mod) {
+        ServerCommandSource source = ctx.getSource();
+        String reason = reasonArg.toLowerCase(Locale.ROOT);
+        List<String> reasons = ViolationLog.reasonLabels();
+        if (!reasons.contains(reason)) {
+            source.sendError(Text.literal("Unknown reason '" + reasonArg + "'. Use one of: " + String.join(", ", reasons)));
+            return 0;
+        }
+        ViolationLog violations = HandShakerServer.getInstance().getViolationLog();
+        List<ViolationLog.Violation> recent = violations.recent(ViolationLog.filter(reason, mod), RECENT_LIMIT);
+        source.sendMessage(Text.literal("═══════════════════════════════").formatted(Formatting.GOLD));
+        source.sendMessage(Text.literal("Recent Verdicts").formatted(Formatting.GOLD, Formatting.BOLD));
+        source.sendMessage(Text.literal("═══════════════════════════════").formatted(Formatting.GOLD));
+        if (recent.isEmpty()) {
+            source.sendMessage(Text.literal("No matching kicks or actions among the last " + violations.capacity() + " verdicts").formatted(Formatting.YELLOW));
+            return Command.SINGLE_SUCCESS;
+        }
+        for (ViolationLog.Violation violation : recent) {
+            MutableText line = Text.literal(RECENT_TIME.format(Instant.ofEpochMilli(violation.time())) + " ").formatted(Formatting.GRAY)
+                .append(Text.literal(violation.name() + " ").formatted(Formatting.WHITE))
+                .append(Text.literal(violation.reasonLabel()).formatted(Formatting.RED));
+            if (!violation.mods().isEmpty()) {
+                line.append(Text.literal(" " + String.join(", ", violation.mods())).formatted(Formatting.YELLOW));
+            }
+            if (violation.action() != null) {
+                line.append(Text.literal(" (action: " + violation.action() + ")").formatted(Formatting.GRAY));
+            }
+            source.sendMessage(line);
+        }
+        source.sendMessage(Text.literal("Newest " + recent.size() + " shown; " + violations.getRecordedCount() + " recorded since startup, last "
+            + violations.capacity() + " kept").formatted(Formatting.GRAY));
+        return Command.SINGLE_SUCCESS;
+    }
+
     private static int showConfig(CommandContext<ServerCommandSource> ctx) {
         ConfigManager config = HandShakerServer.getInstance().getConfigManager();
         ctx.getSource().sendMessage(Text.literal("═══════════════════════════════").formatted(Formatting.GOLD));
@@ -424,37 +533,64 @@ public class HandShakerCommand {
     }
 
     private static int showInfo(CommandContext<ServerCommandSource> ctx) {
-        ConfigManager config = HandShakerServer.getInstance().getConfigManager();
         PlayerHistoryDatabase db = HandShakerServer.getInstance().getPlayerHistoryDb();
+        ServerCommandSource source = ctx.getSource();
         
-        ctx.getSource().sendMessage(Text.literal("═══════════════════════════════").formatted(Formatting.GOLD));
-        ctx.getSource().sendMessage(Text.literal("HandShaker Statistics").formatted(Formatting.GOLD, Formatting.BOLD));
-        ctx.getSource().sendMessage(Text.literal("═══════════════════════════════").formatted(Formatting.GOLD));
-        
-        int uniqueMods = 0;
-        int activePlayers = 0;
-        if (db != null && db.isEnabled()) {
-            Map<String, Integer> popularity = db.getModPopularity();
-            uniqueMods = popularity.size();
-            activePlayers = db.getUniqueActivePlayers();
+        if (db == null || !db.isEnabled()) {
+            sendInfo(source, 0, 0, false);
+            return Command.SINGLE_SUCCESS;
+        }
+        if (!db.isReady()) {
+            ctx.getSource().sendError(Text.literal("Player history database is still warming up, try again in a moment"));
+            return 0;
         }
         
+        return runQuery(source,
+            () -> db.getActiveModCountAsync().thenCombine(db.getUniqueActivePlayersAsync(), (modCount, activePlayers) -> new int[] {modCount, activePlayers}),
+            counts -> sendInfo(source, counts[0], counts[1], true));
+    }
+
+    private static void sendInfo(ServerCommandSource source, int uniqueMods, int activePlayers, boolean dbEnabled) {
+        ConfigManager config = HandShakerServer.getInstance().getConfigManager();
+        
+        source.sendMessage(Text.literal("═══════════════════════════════").formatted(Formatting.GOLD));
+        source.sendMessage(Text.literal("HandShaker Statistics").formatted(Formatting.GOLD, Formatting.BOLD));
+        source.sendMessage(Text.literal("═══════════════════════════════").formatted(Formatting.GOLD));
+        
         int configuredMods = config.getModConfigMap().size();
         
-        ctx.getSource().sendMessage(Text.literal("Unique Mods Detected: ").formatted(Formatting.YELLOW)
+        source.sendMessage(Text.literal("Unique Mods Detected: ").formatted(Formatting.YELLOW)
             .append(Text.literal(uniqueMods + "").formatted(Formatting.WHITE)));
-        ctx.getSource().sendMessage(Text.literal("Configured Mods: ").formatted(Formatting.YELLOW)
+        source.sendMessage(Text.literal("Configured Mods: ").formatted(Formatting.YELLOW)
             .append(Text.literal(configuredMods + "").formatted(Formatting.WHITE)));
-        if (db != null && db.isEnabled()) {
-            ctx.getSource().sendMessage(Text.literal("Active Players: ").formatted(Formatting.YELLOW)
+        if (dbEnabled) {
+            source.sendMessage(Text.literal("Active Players: ").formatted(Formatting.YELLOW)
                 .append(Text.literal(activePlayers + "").formatted(Formatting.WHITE)));
         }
-        
-        ctx.getSource().sendMessage(Text.empty());
-        ctx.getSource().sendMessage(Text.literal("Use /handshaker info configured_mods to list configured mods").formatted(Formatting.GRAY));
-        ctx.getSource().sendMessage(Text.literal("Use /handshaker info all_mods [page] to see all detected mods").formatted(Formatting.GRAY));
-        
-        return Command.SINGLE_SUCCESS;
+        NonceReplayCache nonces = HandShakerServer.getInstance().getNonceCache();
+        source.sendMessage(Text.literal("Replay Cache: ").formatted(Formatting.YELLOW)
+            .append(Text.literal(nonces.size() + "/" + nonces.capacity() + " nonces").formatted(Formatting.WHITE))
+            .append(Text.literal(" (" + nonces.getExpiredCount() + " expired, " + nonces.getEvictedCount() + " evicted, "
+                + nonces.getReplayCount() + " replays blocked)").formatted(Formatting.GRAY)));
+        HandshakeAdmission admission = HandShakerServer.getInstance().getAdmission();
+        source.sendMessage(Text.literal("Handshake Queue: ").formatted(Formatting.YELLOW)
+            .append(Text.literal(admission.getQueueDepth() + "/" + admission.getQueueCapacity() + " queued, "
+                + admission.getWaitingDepth() + " waiting").formatted(Formatting.WHITE))
+            .append(Text.literal(" (" + admission.getShedCount() + " shed, "
+                + String.format("%.1f ms avg / %.1f ms max wait", admission.getAverageWaitMillis(), admission.getMaxWaitMillis()) + ")").formatted(Formatting.GRAY)));
+        PayloadRateLimiter limiter = HandShakerServer.getInstance().getRateLimiter();
+        source.sendMessage(Text.literal("Rate Limit: ").formatted(Formatting.YELLOW)
+            .append(Text.literal(limiter.getDroppedCount() + " dropped").formatted(Formatting.WHITE))
+            .append(Text.literal(" (mods: " + limiter.getDroppedCount(HandShaker.MODS_CHANNEL.toString())
+                + ", integrity: " + limiter.getDroppedCount(HandShaker.INTEGRITY_CHANNEL.toString())
+                + ", velton: " + limiter.getDroppedCount(HandShakerServer.VELTON_CHANNEL.toString())
+                + ", " + limiter.getKickCount() + " kicked)").formatted(Formatting.GRAY)));
+        source.sendMessage(Text.literal("Repeat Payloads: ").formatted(Formatting.YELLOW)
+            .append(Text.literal(HandShakerServer.getInstance().getFingerprints().getRepeatCount() + " skipped").formatted(Formatting.WHITE)));
+        
+        source.sendMessage(Text.empty());
+        source.sendMessage(Text.literal("Use /handshaker info configured_mods to list configured mods").formatted(Formatting.GRAY));
+        source.sendMessage(Text.literal("Use /handshaker info all_mods [page] to see all detected mods").formatted(Formatting.GRAY));
     }
 
     private static int showConfiguredMods(CommandContext<ServerCommandSource> ctx) {
@@ -498,35 +634,40 @@ public class HandShakerCommand {
 
     private static int showAllModsWithPage(CommandContext<ServerCommandSource> ctx, int pageNum) {
         PlayerHistoryDatabase db = HandShakerServer.getInstance().getPlayerHistoryDb();
-        ConfigManager config = HandShakerServer.getInstance().getConfigManager();
         
         if (db == null || !db.isEnabled()) {
             ctx.getSource().sendError(Text.literal("Player history database not available"));
             return 0;
         }
-        
-        Map<String, Integer> popularity = db.getModPopularity();
-        List<Map.Entry<String, Integer>> sortedMods = new ArrayList<>(popularity.entrySet());
-        sortedMods.sort((a, b) -> b.getValue().compareTo(a.getValue()));
-        
-        int pageSize = 10;
-        int totalPages = (int) Math.ceil((double) sortedMods.size() / pageSize);
-        
-        if (pageNum < 1 || pageNum > totalPages) {
-            ctx.getSource().sendError(Text.literal("Invalid page. Total pages: " + totalPages));
+        if (!db.isReady()) {
+            ctx.getSource().sendError(Text.literal("Player history database is still warming up, try again in a moment"));
             return 0;
         }
         
-        int startIdx = (pageNum - 1) * pageSize;
-        int endIdx = Math.min(startIdx + pageSize, sortedMods.size());
+        ServerCommandSource source = ctx.getSource();
+        return runQuery(source,
+            () -> db.getModPopularityPageAsync(pageNum, PAGE_SIZE).thenCombine(db.getActiveModCountAsync(), PopularityPage::new),
+            result -> sendAllMods(source, result.page(), result.totalMods()));
+    }
+
+    private record PopularityPage(PlayerHistoryDatabase.Page<PlayerHistoryDatabase.ModPopularityEntry> page, int totalMods) {}
+
+    private static void sendAllMods(ServerCommandSource source, PlayerHistoryDatabase.Page<PlayerHistoryDatabase.ModPopularityEntry> page, int totalMods) {
+        ConfigManager config = HandShakerServer.getInstance().getConfigManager();
+        int pageNum = page.number();
+        int totalPages = Math.max(1, (int) Math.ceil((double) totalMods / PAGE_SIZE));
         
-        ctx.getSource().sendMessage(Text.literal("═══════════════════════════════").formatted(Formatting.GOLD));
-        ctx.getSource().sendMessage(Text.literal("All Detected Mods (Page " + pageNum + "/" + totalPages + ")").formatted(Formatting.GOLD, Formatting.BOLD));
-        ctx.getSource().sendMessage(Text.literal("═══════════════════════════════").formatted(Formatting.GOLD));
+        if (page.entries().isEmpty() && pageNum > 1) {
+            source.sendError(Text.literal("Invalid page. Total pages: " + totalPages));
+            return;
+        }
         
-        for (int i = startIdx; i < endIdx; i++) {
-            Map.Entry<String, Integer> entry = sortedMods.get(i);
-            ConfigManager.ModConfig modCfg = config.getModConfig(entry.getKey());
+        source.sendMessage(Text.literal("═══════════════════════════════").formatted(Formatting.GOLD));
+        source.sendMessage(Text.literal("All Detected Mods (Page " + pageNum + "/" + totalPages + ")").formatted(Formatting.GOLD, Formatting.BOLD));
+        source.sendMessage(Text.literal("═══════════════════════════════").formatted(Formatting.GOLD));
+        
+        for (PlayerHistoryDatabase.ModPopularityEntry entry : page.entries()) {
+            ConfigManager.ModConfig modCfg = config.getModConfig(entry.modName());
             
             // Format with color based on mode (color the mod name, not a status tag)
             Formatting modeColor = Formatting.GRAY; // default if not configured
@@ -541,17 +682,24 @@ public class HandShakerCommand {
                 }
             }
             
-            ctx.getSource().sendMessage(Text.literal(entry.getKey() + " (" + entry.getValue() + " players)").formatted(modeColor));
+            source.sendMessage(Text.literal(entry.modName() + " (" + entry.playerCount() + " players)").formatted(modeColor));
         }
         
-        if (pageNum < totalPages) {
-            ctx.getSource().sendMessage(Text.literal("Use /handshaker info all_mods " + (pageNum + 1) + " for next page").formatted(Formatting.GRAY));
+        if (page.hasMore()) {
+            source.sendMessage(Text.literal("Use /handshaker info all_mods " + (pageNum + 1) + " for next page").formatted(Formatting.GRAY));
         }
-        
-        return Command.SINGLE_SUCCESS;
     }
 
     private static int showModInfo(CommandContext<ServerCommandSource> ctx) {
+        return showModInfoWithPage(ctx, 1);
+    }
+
+    private static int showModInfoWithPage(CommandContext<ServerCommandSource> ctx) {
+        int page = com.mojang.brigadier.arguments.IntegerArgumentType.getInteger(ctx, "page");
+        return showModInfoWithPage(ctx, page);
+    }
+
+    private static int showModInfoWithPage(CommandContext<ServerCommandSource> ctx, int pageNum) {
         String modName = StringArgumentType.getString(ctx, "modName");
         PlayerHistoryDatabase db = HandShakerServer.getInstance().getPlayerHistoryDb();
         
@@ -559,32 +707,83 @@ public class HandShakerCommand {
             ctx.getSource().sendError(Text.literal("Player history database not available"));
             return 0;
         }
+        if (!db.isReady()) {
+            ctx.getSource().sendError(Text.literal("Player history database is still warming up, try again in a moment"));
+            return 0;
+        }
         
-        List<PlayerHistoryDatabase.PlayerModInfo> players = db.getPlayersWithMod(modName);
-        
+        ServerCommandSource source = ctx.getSource();
+        return runQuery(source, () -> db.getPlayersWithModPageAsync(modName, pageNum, PAGE_SIZE), page -> sendModInfo(source, modName, page));
+    }
+
+    private static void sendModInfo(ServerCommandSource source, String modName, PlayerHistoryDatabase.Page<PlayerHistoryDatabase.PlayerModInfo> page) {
+        List<PlayerHistoryDatabase.PlayerModInfo> players = page.entries();
         if (players.isEmpty()) {
-            ctx.getSource().sendMessage(Text.literal("No players found with mod: " + modName).formatted(Formatting.YELLOW));
-            return Command.SINGLE_SUCCESS;
+            if (page.number() > 1) {
+                source.sendError(Text.literal("No more players on page " + page.number()));
+            } else {
+                source.sendMessage(Text.literal("No players found with mod: " + modName).formatted(Formatting.YELLOW));
+            }
+            return;
         }
         
-        ctx.getSource().sendMessage(Text.literal("═══════════════════════════════").formatted(Formatting.GOLD));
-        ctx.getSource().sendMessage(Text.literal("Mod: " + modName).formatted(Formatting.GOLD, Formatting.BOLD));
-        ctx.getSource().sendMessage(Text.literal("═══════════════════════════════").formatted(Formatting.GOLD));
-        ctx.getSource().sendMessage(Text.literal("Players: " + players.size()).formatted(Formatting.YELLOW));
-        ctx.getSource().sendMessage(Text.empty());
+        source.sendMessage(Text.literal("═══════════════════════════════").formatted(Formatting.GOLD));
+        source.sendMessage(Text.literal("Mod: " + modName + " (Page " + page.number() + ")").formatted(Formatting.GOLD, Formatting.BOLD));
+        source.sendMessage(Text.literal("═══════════════════════════════").formatted(Formatting.GOLD));
+        source.sendMessage(Text.empty());
         
         for (PlayerHistoryDatabase.PlayerModInfo player : players) {
             String status = player.isActive() ? "✓ Active" : "✗ Removed";
             Formatting statusColor = player.isActive() ? Formatting.GREEN : Formatting.RED;
             
-            ctx.getSource().sendMessage(Text.literal(player.currentName()).formatted(Formatting.AQUA)
+            source.sendMessage(Text.literal(player.currentName()).formatted(Formatting.AQUA)
                 .append(Text.literal(" - " + status).formatted(statusColor))
                 .append(Text.literal(" (Since: " + player.getFirstSeenFormatted() + ")").formatted(Formatting.GRAY)));
         }
         
+        if (page.hasMore()) {
+            source.sendMessage(Text.literal("Use /handshaker info mod " + modName + " " + (page.number() + 1) + " for next page").formatted(Formatting.GRAY));
+        }
+    }
+
+    /**
+     * Runs a database query off the server thread and delivers the reply back on it.
+     * Each command source may only have a couple of queries in flight at once.
+     */
+    private static <T> int runQuery(ServerCommandSource source, Supplier<CompletableFuture<T>> query, Consumer<T> reply) {
+        String key = source.getName();
+        if (IN_FLIGHT_QUERIES.merge(key, 1, Integer::sum) > MAX_QUERIES_PER_SOURCE) {
+            releaseQuery(key);
+            source.sendError(Text.literal("Please wait for your previous HandShaker query to finish"));
+            return 0;
+        }
+        
+        CompletableFuture<T> future;
+        try {
+            future = query.get();
+        } catch (RuntimeException e) {
+            releaseQuery(key);
+            throw e;
+        }
+        
+        future.whenComplete((result, error) -> {
+            releaseQuery(key);
+            source.getServer().execute(() -> {
+                if (error != null) {
+                    HandShakerServer.LOGGER.warn("HandShaker database query failed: {}", error.getMessage());
+                    source.sendError(Text.literal("Database query failed, check the console for details"));
+                    return;
+                }
+                reply.accept(result);
+            });
+        });
         return Command.SINGLE_SUCCESS;
     }
 
+    private static void releaseQuery(String key) {
+        IN_FLIGHT_QUERIES.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
     private static int setMode(CommandContext<ServerCommandSource> ctx) {
         String listName = StringArgumentType.getString(ctx, "list").toLowerCase();
         String action = StringArgumentType.getString(ctx, "action").toLowerCase();
@@ -652,6 +851,20 @@ public class HandShakerCommand {
     }
 
     // Suggestion methods
+    private static CompletableFuture<Suggestions> suggestRecentReasons(CommandContext<ServerCommandSource> ctx, SuggestionsBuilder builder) {
+        for (String reason : ViolationLog.reasonLabels()) {
+            builder.suggest(reason);
+        }
+        return builder.buildFuture();
+    }
+
+    private static CompletableFuture<Suggestions> suggestRecentMods(CommandContext<ServerCommandSource> ctx, SuggestionsBuilder builder) {
+        for (String mod : HandShakerServer.getInstance().getViolationLog().recentMods()) {
+            builder.suggest(mod);
+        }
+        return builder.buildFuture();
+    }
+
     private static CompletableFuture<Suggestions> suggestModes(CommandContext<ServerCommandSource> ctx, SuggestionsBuilder builder) {
         return builder.suggest("required")
             .suggest("blacklisted")
@@ -713,18 +926,19 @@ public class HandShakerCommand {
 
     private static CompletableFuture<Suggestions> suggestAllMods(CommandContext<ServerCommandSource> ctx, SuggestionsBuilder builder) {
         PlayerHistoryDatabase db = HandShakerServer.getInstance().getPlayerHistoryDb();
-        if (db == null || !db.isEnabled()) {
+        if (db == null || !db.isEnabled() || !db.isReady()) {
             return Suggestions.empty();
         }
         
-        Map<String, Integer> allMods = db.getModPopularity();
         String remaining = builder.getRemaining().toLowerCase();
-        for (String mod : allMods.keySet()) {
-            if (mod.toLowerCase().startsWith(remaining)) {
-                builder.suggest(mod);
+        return db.getModPopularityAsync().thenApply(allMods -> {
+            for (String mod : allMods.keySet()) {
+                if (mod.toLowerCase().startsWith(remaining)) {
+                    builder.suggest(mod);
+                }
             }
-        }
-        return builder.buildFuture();
+            return builder.build();
+        });
     }
 
     private static CompletableFuture<Suggestions> suggestModeLists(CommandContext<ServerCommandSource> ctx, SuggestionsBuilder builder) {
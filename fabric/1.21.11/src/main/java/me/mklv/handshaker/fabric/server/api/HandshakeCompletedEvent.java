@@ -0,0 +1,22 @@
+package me.mklv.handshaker.fabric.server.api;
+
+import net.fabricmc.fabric.api.event.Event;
+import net.fabricmc.fabric.api.event.EventFactory;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+/**
+ * Fired on the server thread once per session, when a player's handshake gets its first verdict.
+ * A kicked player is still online while listeners run. Re-checks after a config reload don't fire
+ * it again; look the latest result up through {@code HandShakerServer.getHandshakeResult}.
+ */
+@FunctionalInterface
+public interface HandshakeCompletedEvent {
+    Event<HandshakeCompletedEvent> EVENT = EventFactory.createArrayBacked(HandshakeCompletedEvent.class,
+            listeners -> (player, result) -> {
+                for (HandshakeCompletedEvent listener : listeners) {
+                    listener.onHandshakeCompleted(player, result);
+                }
+            });
+
+    void onHandshakeCompleted(ServerPlayerEntity player, HandshakeResult result);
+}
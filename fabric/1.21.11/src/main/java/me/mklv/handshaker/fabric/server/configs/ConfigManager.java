@@ -5,14 +5,28 @@ import org.yaml.snakeyaml.Yaml;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.network.ServerPlayerEntity;
 import me.mklv.handshaker.fabric.server.HandShakerServer;
+import me.mklv.handshaker.fabric.server.api.HandshakeResult;
 import me.mklv.handshaker.fabric.server.utils.PermissionsAdapter;
+import me.mklv.handshaker.fabric.server.utils.AsyncFileWriter;
+import me.mklv.handshaker.fabric.server.utils.AuditLog;
+import me.mklv.handshaker.fabric.server.utils.HandshakeEvents;
+import me.mklv.handshaker.fabric.server.utils.HandshakeMetrics;
+import me.mklv.handshaker.fabric.server.utils.KickReason;
+import me.mklv.handshaker.fabric.server.utils.PreLoginCache;
+import me.mklv.handshaker.fabric.server.utils.ResumptionCache;
+import me.mklv.handshaker.fabric.server.utils.TickBudget;
+import me.mklv.handshaker.fabric.server.utils.ViolationLog;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ConfigManager {
     private final File configDir;
+    // Saves come from commands; the files are written on the I/O executor
+    private final AsyncFileWriter fileWriter;
     private File configYmlFile;
 
     public enum Behavior { STRICT, VANILLA }
@@ -62,6 +76,23 @@ public class ConfigManager {
     private String invalidSignatureKickMessage = "Invalid client signature. Please use the official client.";
     private boolean allowBedrockPlayers = false;
     private boolean playerdbEnabled = false; // Default: disabled for security
+    private String playerdbStorage = "sql";
+    private int handshakeTimeoutSeconds = 5;
+    private boolean requireVelton = false;
+    private int handshakeConcurrency = 16;
+    private int handshakeQueueSize = 256;
+    private int handshakeTickBudgetMillis = 5;
+    private int mainThreadBudgetMillis = 10;
+    private int rateLimitMessages = 8;
+    private int rateLimitWindowSeconds = 10;
+    private int rateLimitKickAfter = 32;
+    private int metricsPort = 0;
+    private boolean auditLog = true;
+    private boolean capturePayloads = false;
+    private int captureMaxMegabytes = 64;
+    private String verdictTokenSecret = "";
+    private int verdictTokenTtlSeconds = 300;
+    private int verdictTokenGeneration = 1;
     
     // Mod list toggle states - persisted in config
     private boolean modsRequiredEnabled = true;
@@ -76,13 +107,46 @@ public class ConfigManager {
     private final Set<String> requiredModsActive = new HashSet<>();
     private final Map<String, ActionDefinition> actionsMap = new LinkedHashMap<>();
     private final Map<String, String> messagesMap = new LinkedHashMap<>();
-
-    public ConfigManager() {
+    // Bumped after every load and save, so verdicts computed ahead of time can tell they are stale
+    private final AtomicLong generation = new AtomicLong();
+    private final PreLoginCache<ModVerdict> preLogin = new PreLoginCache<>();
+    private final ResumptionCache<ModVerdict> resumption = new ResumptionCache<>();
+    private final HandshakeMetrics metrics;
+    private final AuditLog audit;
+    private final TickBudget tickBudget;
+    private final ViolationLog violations;
+
+    /**
+     * The part of a verdict that depends only on the mod set
+     */
+    public record ModVerdict(Set<String> missingRequired, Set<String> blacklisted) {}
+
+    /**
+     * A failed check: the message shown to the player, the reason it is counted under and the mods
+     * behind it (missing or blacklisted; empty for integrity and handshake failures)
+     */
+    public record Rejection(KickReason reason, String message, Set<String> mods) {}
+
+    public ConfigManager(Executor ioExecutor, HandshakeMetrics metrics, AuditLog audit, TickBudget tickBudget, ViolationLog violations) {
+        this.fileWriter = new AsyncFileWriter(ioExecutor);
+        this.metrics = metrics;
+        this.audit = audit;
+        this.tickBudget = tickBudget;
+        this.violations = violations;
+        metrics.counter("prelogin_cache_hits", "Join checks that reused the pre-login verdict", preLogin::getHitCount);
+        metrics.counter("prelogin_cache_misses", "Join checks that evaluated the rules at join", preLogin::getMissCount);
+        metrics.counter("resumption_hits", "Reconnects that reused the previous session's signature check and verdict", resumption::getHitCount);
+        metrics.counter("resumption_misses", "Integrity checks that could not resume a previous session", resumption::getMissCount);
+        metrics.gauge("resumption_entries", "Recently disconnected players whose verified state is kept", resumption::size);
         File configRootDir = FabricLoader.getInstance().getConfigDir().toFile();
         this.configDir = new File(configRootDir, "HandShaker");
     }
 
     public void load() {
+        HandshakeEvents.ConfigOperation event = new HandshakeEvents.ConfigOperation("load");
+        event.begin();
+        // A save still in flight must land before the files are read back
+        fileWriter.flush();
         configDir.mkdirs();
 
         configYmlFile = new File(configDir, "config.yml");
@@ -93,6 +157,8 @@ public class ConfigManager {
         loadConfigYml();
         loadModsYamlFiles();
         loadActionsYamlFile();
+        generation.incrementAndGet();
+        event.finish(modConfigMap.size(), "ok");
     }
 
     private void createDefaultFilesIfNotExist() {
@@ -162,10 +228,54 @@ public class ConfigManager {
                     allowBedrockPlayers = Boolean.parseBoolean(data.get("allow-bedrock-players").toString());
                 }
 
+                if (data.containsKey("handshake-timeout")) {
+                    try {
+                        handshakeTimeoutSeconds = Math.max(1, Integer.parseInt(data.get("handshake-timeout").toString().trim()));
+                    } catch (NumberFormatException e) {
+                        HandShakerServer.LOGGER.warn("Invalid handshake-timeout '{}', using {} seconds", data.get("handshake-timeout"), handshakeTimeoutSeconds);
+                    }
+                }
+                if (data.containsKey("require-velton")) {
+                    requireVelton = Boolean.parseBoolean(data.get("require-velton").toString());
+                }
+                handshakeConcurrency = parsePositiveInt(data, "handshake-concurrency", handshakeConcurrency);
+                handshakeQueueSize = parsePositiveInt(data, "handshake-queue-size", handshakeQueueSize);
+                handshakeTickBudgetMillis = parsePositiveInt(data, "handshake-tick-budget-ms", handshakeTickBudgetMillis);
+                mainThreadBudgetMillis = parsePositiveInt(data, "main-thread-budget-ms", mainThreadBudgetMillis);
+                rateLimitMessages = parsePositiveInt(data, "rate-limit-messages", rateLimitMessages);
+                rateLimitWindowSeconds = parsePositiveInt(data, "rate-limit-window-seconds", rateLimitWindowSeconds);
+                rateLimitKickAfter = parsePositiveInt(data, "rate-limit-kick-after", rateLimitKickAfter);
+                if (data.containsKey("metrics-port")) {
+                    try {
+                        int port = Integer.parseInt(data.get("metrics-port").toString().trim());
+                        if (port < 0 || port > 65535) {
+                            throw new NumberFormatException();
+                        }
+                        metricsPort = port;
+                    } catch (NumberFormatException e) {
+                        HandShakerServer.LOGGER.warn("Invalid metrics-port '{}', using {}", data.get("metrics-port"), metricsPort);
+                    }
+                }
+                if (data.containsKey("audit-log")) {
+                    auditLog = Boolean.parseBoolean(data.get("audit-log").toString());
+                }
+                if (data.containsKey("capture-payloads")) {
+                    capturePayloads = Boolean.parseBoolean(data.get("capture-payloads").toString());
+                }
+                captureMaxMegabytes = parsePositiveInt(data, "capture-max-mb", captureMaxMegabytes);
+                if (data.get("verdict-token-secret") != null) {
+                    verdictTokenSecret = data.get("verdict-token-secret").toString().trim();
+                }
+                verdictTokenTtlSeconds = parsePositiveInt(data, "verdict-token-ttl-seconds", verdictTokenTtlSeconds);
+                verdictTokenGeneration = parsePositiveInt(data, "verdict-token-generation", verdictTokenGeneration);
+
                 // Load playerdb enabled setting
                 if (data.containsKey("playerdb-enabled")) {
                     playerdbEnabled = Boolean.parseBoolean(data.get("playerdb-enabled").toString());
                 }
+                if (data.containsKey("playerdb-storage")) {
+                    playerdbStorage = data.get("playerdb-storage").toString().toLowerCase(Locale.ROOT);
+                }
 
                 // Load mod list toggle states
                 if (data.containsKey("mods-required-enabled")) {
@@ -211,6 +321,18 @@ public class ConfigManager {
         }
     }
 
+    private int parsePositiveInt(Map<String, Object> data, String key, int fallback) {
+        if (!data.containsKey(key)) {
+            return fallback;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(data.get(key).toString().trim()));
+        } catch (NumberFormatException e) {
+            HandShakerServer.LOGGER.warn("Invalid {} '{}', using {}", key, data.get(key), fallback);
+            return fallback;
+        }
+    }
+
     private void loadModsYamlFiles() {
         modConfigMap.clear();
         ignoredMods.clear();
@@ -414,6 +536,23 @@ public class ConfigManager {
     public Set<String> getBlacklistedMods() { return Collections.unmodifiableSet(blacklistedModsActive); }
     public Set<String> getRequiredMods() { return Collections.unmodifiableSet(requiredModsActive); }
     public boolean isPlayerdbEnabled() { return playerdbEnabled; }
+    public String getPlayerdbStorage() { return playerdbStorage; }
+    public int getHandshakeTimeoutSeconds() { return handshakeTimeoutSeconds; }
+    public boolean isRequireVelton() { return requireVelton; }
+    public int getHandshakeConcurrency() { return handshakeConcurrency; }
+    public int getHandshakeQueueSize() { return handshakeQueueSize; }
+    public int getHandshakeTickBudgetMillis() { return handshakeTickBudgetMillis; }
+    public int getMainThreadBudgetMillis() { return mainThreadBudgetMillis; }
+    public int getRateLimitMessages() { return rateLimitMessages; }
+    public int getRateLimitWindowSeconds() { return rateLimitWindowSeconds; }
+    public int getRateLimitKickAfter() { return rateLimitKickAfter; }
+    public int getMetricsPort() { return metricsPort; }
+    public boolean isAuditLog() { return auditLog; }
+    public boolean isCapturePayloads() { return capturePayloads; }
+    public int getCaptureMaxMegabytes() { return captureMaxMegabytes; }
+    public String getVerdictTokenSecret() { return verdictTokenSecret; }
+    public int getVerdictTokenTtlSeconds() { return verdictTokenTtlSeconds; }
+    public int getVerdictTokenGeneration() { return verdictTokenGeneration; }
     public boolean areModsRequiredEnabled() { return modsRequiredEnabled; }
     public boolean areModsBlacklistedEnabled() { return modsBlacklistedEnabled; }
     public boolean areModsWhitelistedEnabled() { return modsWhitelistedEnabled; }
@@ -662,8 +801,13 @@ public class ConfigManager {
 
     @SuppressWarnings("unchecked")
     public void save() {
+        HandshakeEvents.ConfigOperation event = new HandshakeEvents.ConfigOperation("save");
+        event.begin();
+        // Setters are always followed by a save, so this covers every change to the rules
+        generation.incrementAndGet();
         // Save config.yml - preserve messages section from file if it exists
         Map<String, Object> existingMessages = new LinkedHashMap<>();
+        fileWriter.flush();
         try (FileReader reader = new FileReader(configYmlFile)) {
             Yaml yaml = new Yaml();
             Map<String, Object> data = yaml.load(reader);
@@ -683,102 +827,100 @@ public class ConfigManager {
         existingMessages.put("missing-whitelist", missingWhitelistModMessage);
         existingMessages.put("invalid-signature", invalidSignatureKickMessage);
 
-        try (FileWriter writer = new FileWriter(configYmlFile)) {
-            StringBuilder yaml = new StringBuilder();
-            yaml.append("# HandShaker v4 Configuration\n");
-            yaml.append("# Main plugin settings (mod-specific settings are in YAML files)\n\n");
-            yaml.append("config: v4\n\n");
-            yaml.append("behavior: ").append(behavior.toString().toLowerCase()).append("\n");
-            yaml.append("integrity-mode: ").append(integrityMode.toString().toLowerCase()).append("\n");
-            yaml.append("whitelist: ").append(whitelist).append("\n");
-            yaml.append("allow-bedrock-players: ").append(allowBedrockPlayers).append("\n");
-            yaml.append("playerdb-enabled: ").append(playerdbEnabled).append("\n\n");
-            yaml.append("mods-required-enabled: ").append(modsRequiredEnabled).append("\n");
-            yaml.append("mods-blacklisted-enabled: ").append(modsBlacklistedEnabled).append("\n");
-            yaml.append("mods-whitelisted-enabled: ").append(modsWhitelistedEnabled).append("\n\n");
-            yaml.append("messages:\n");
-            for (Map.Entry<String, Object> entry : existingMessages.entrySet()) {
-                yaml.append("  ").append(entry.getKey()).append(": \"").append(escapeYamlString(entry.getValue().toString())).append("\"\n");
-            }
-            writer.write(yaml.toString());
-        } catch (IOException e) {
-            HandShakerServer.LOGGER.error("Could not save config.yml!");
+        StringBuilder yaml = new StringBuilder();
+        yaml.append("# HandShaker v4 Configuration\n");
+        yaml.append("# Main plugin settings (mod-specific settings are in YAML files)\n\n");
+        yaml.append("config: v4\n\n");
+        yaml.append("behavior: ").append(behavior.toString().toLowerCase()).append("\n");
+        yaml.append("integrity-mode: ").append(integrityMode.toString().toLowerCase()).append("\n");
+        yaml.append("whitelist: ").append(whitelist).append("\n");
+        yaml.append("allow-bedrock-players: ").append(allowBedrockPlayers).append("\n");
+        yaml.append("handshake-timeout: ").append(handshakeTimeoutSeconds).append("\n");
+        yaml.append("require-velton: ").append(requireVelton).append("\n");
+        yaml.append("handshake-concurrency: ").append(handshakeConcurrency).append("\n");
+        yaml.append("handshake-queue-size: ").append(handshakeQueueSize).append("\n");
+        yaml.append("handshake-tick-budget-ms: ").append(handshakeTickBudgetMillis).append("\n");
+        yaml.append("main-thread-budget-ms: ").append(mainThreadBudgetMillis).append("\n");
+        yaml.append("rate-limit-messages: ").append(rateLimitMessages).append("\n");
+        yaml.append("rate-limit-window-seconds: ").append(rateLimitWindowSeconds).append("\n");
+        yaml.append("rate-limit-kick-after: ").append(rateLimitKickAfter).append("\n");
+        yaml.append("metrics-port: ").append(metricsPort).append("\n");
+        yaml.append("audit-log: ").append(auditLog).append("\n");
+        yaml.append("capture-payloads: ").append(capturePayloads).append("\n");
+        yaml.append("capture-max-mb: ").append(captureMaxMegabytes).append("\n");
+        yaml.append("verdict-token-secret: \"").append(escapeYamlString(verdictTokenSecret)).append("\"\n");
+        yaml.append("verdict-token-ttl-seconds: ").append(verdictTokenTtlSeconds).append("\n");
+        yaml.append("verdict-token-generation: ").append(verdictTokenGeneration).append("\n");
+        yaml.append("playerdb-enabled: ").append(playerdbEnabled).append("\n");
+        yaml.append("playerdb-storage: ").append(playerdbStorage).append("\n\n");
+        yaml.append("mods-required-enabled: ").append(modsRequiredEnabled).append("\n");
+        yaml.append("mods-blacklisted-enabled: ").append(modsBlacklistedEnabled).append("\n");
+        yaml.append("mods-whitelisted-enabled: ").append(modsWhitelistedEnabled).append("\n\n");
+        yaml.append("messages:\n");
+        for (Map.Entry<String, Object> entry : existingMessages.entrySet()) {
+            yaml.append("  ").append(entry.getKey()).append(": \"").append(escapeYamlString(entry.getValue().toString())).append("\"\n");
         }
+        fileWriter.write(configYmlFile, yaml.toString(), e -> HandShakerServer.LOGGER.error("Could not save config.yml!"));
 
         // Save mods YAML files
         saveModsYamlFiles();
+        event.finish(modConfigMap.size(), "ok");
     }
 
     private void saveModsYamlFiles() {
         // Save ignored mods
         if (!ignoredMods.isEmpty()) {
             File ignoredFile = new File(configDir, "mods-ignored.yml");
-            try (FileWriter writer = new FileWriter(ignoredFile)) {
-                StringBuilder yaml = new StringBuilder();
-                yaml.append("# Mods which will be hidden from commands to show up\n\n");
-                yaml.append("ignored:\n");
-                for (String mod : ignoredMods) {
-                    yaml.append("  - ").append(mod).append("\n");
-                }
-                writer.write(yaml.toString());
-            } catch (IOException e) {
-                HandShakerServer.LOGGER.error("Could not save mods-ignored.yml!");
+            StringBuilder yaml = new StringBuilder();
+            yaml.append("# Mods which will be hidden from commands to show up\n\n");
+            yaml.append("ignored:\n");
+            for (String mod : ignoredMods) {
+                yaml.append("  - ").append(mod).append("\n");
             }
+            fileWriter.write(ignoredFile, yaml.toString(), e -> HandShakerServer.LOGGER.error("Could not save mods-ignored.yml!"));
         }
 
         // Save required mods
         if (!requiredModsActive.isEmpty()) {
             File requiredFile = new File(configDir, "mods-required.yml");
-            try (FileWriter writer = new FileWriter(requiredFile)) {
-                StringBuilder yaml = new StringBuilder();
-                yaml.append("# Required mods to join the server\n\n");
-                yaml.append("required:\n");
-                for (String mod : requiredModsActive) {
-                    ModConfig cfg = modConfigMap.get(mod);
-                    String action = cfg != null ? cfg.getActionName() : "kick";
-                    yaml.append("  ").append(mod).append(": ").append(action).append("\n");
-                }
-                writer.write(yaml.toString());
-            } catch (IOException e) {
-                HandShakerServer.LOGGER.error("Could not save mods-required.yml!");
+            StringBuilder yaml = new StringBuilder();
+            yaml.append("# Required mods to join the server\n\n");
+            yaml.append("required:\n");
+            for (String mod : requiredModsActive) {
+                ModConfig cfg = modConfigMap.get(mod);
+                String action = cfg != null ? cfg.getActionName() : "kick";
+                yaml.append("  ").append(mod).append(": ").append(action).append("\n");
             }
+            fileWriter.write(requiredFile, yaml.toString(), e -> HandShakerServer.LOGGER.error("Could not save mods-required.yml!"));
         }
 
         // Save blacklisted mods
         if (!blacklistedModsActive.isEmpty()) {
             File blacklistedFile = new File(configDir, "mods-blacklisted.yml");
-            try (FileWriter writer = new FileWriter(blacklistedFile)) {
-                StringBuilder yaml = new StringBuilder();
-                yaml.append("# Blacklisted mods: modname: action\n# If a player has any of these mods, they will be kicked\n\n");
-                yaml.append("blacklisted:\n");
-                for (String mod : blacklistedModsActive) {
-                    ModConfig cfg = modConfigMap.get(mod);
-                    String action = cfg != null ? cfg.getActionName() : "kick";
-                    yaml.append("  ").append(mod).append(": ").append(action).append("\n");
-                }
-                writer.write(yaml.toString());
-            } catch (IOException e) {
-                HandShakerServer.LOGGER.error("Could not save mods-blacklisted.yml!");
+            StringBuilder yaml = new StringBuilder();
+            yaml.append("# Blacklisted mods: modname: action\n# If a player has any of these mods, they will be kicked\n\n");
+            yaml.append("blacklisted:\n");
+            for (String mod : blacklistedModsActive) {
+                ModConfig cfg = modConfigMap.get(mod);
+                String action = cfg != null ? cfg.getActionName() : "kick";
+                yaml.append("  ").append(mod).append(": ").append(action).append("\n");
             }
+            fileWriter.write(blacklistedFile, yaml.toString(), e -> HandShakerServer.LOGGER.error("Could not save mods-blacklisted.yml!"));
         }
 
         // Save whitelisted mods
         if (!whitelistedModsActive.isEmpty()) {
             File whitelistedFile = new File(configDir, "mods-whitelisted.yml");
-            try (FileWriter writer = new FileWriter(whitelistedFile)) {
-                StringBuilder yaml = new StringBuilder();
-                yaml.append("# Whitelisted mods which are allowed but not required,\n");
-                yaml.append("# but if in config.yml whitelist: true, only these mods are allowed\n\n");
-                yaml.append("whitelisted:\n");
-                for (String mod : whitelistedModsActive) {
-                    ModConfig cfg = modConfigMap.get(mod);
-                    String action = cfg != null ? cfg.getActionName() : "none";
-                    yaml.append("  ").append(mod).append(": ").append(action).append("\n");
-                }
-                writer.write(yaml.toString());
-            } catch (IOException e) {
-                HandShakerServer.LOGGER.error("Could not save mods-whitelisted.yml!");
+            StringBuilder yaml = new StringBuilder();
+            yaml.append("# Whitelisted mods which are allowed but not required,\n");
+            yaml.append("# but if in config.yml whitelist: true, only these mods are allowed\n\n");
+            yaml.append("whitelisted:\n");
+            for (String mod : whitelistedModsActive) {
+                ModConfig cfg = modConfigMap.get(mod);
+                String action = cfg != null ? cfg.getActionName() : "none";
+                yaml.append("  ").append(mod).append(": ").append(action).append("\n");
             }
+            fileWriter.write(whitelistedFile, yaml.toString(), e -> HandShakerServer.LOGGER.error("Could not save mods-whitelisted.yml!"));
         }
     }
 
@@ -786,94 +928,50 @@ public class ConfigManager {
         return str.replace("\"", "\\\"").replace("\n", "\\n").replace("\r", "\\r");
     }
 
-    public void checkPlayer(net.minecraft.server.network.ServerPlayerEntity player, HandShakerServer.ClientInfo info) {
-        checkPlayer(player, info, true); // Execute actions by default
+    public HandshakeResult checkPlayer(net.minecraft.server.network.ServerPlayerEntity player, HandShakerServer.ClientInfo info) {
+        return checkPlayer(player, info, true); // Execute actions by default
     }
     
-    public void checkPlayer(net.minecraft.server.network.ServerPlayerEntity player, HandShakerServer.ClientInfo info, boolean executeActions) {
-        if (allowBedrockPlayers && isBedrockPlayer(player.getUuid())) {
-            return;
+    public HandshakeResult checkPlayer(net.minecraft.server.network.ServerPlayerEntity player, HandShakerServer.ClientInfo info, boolean executeActions) {
+        if (allowBedrockPlayers && preLogin.isBedrock(player.getUuid(), this::isBedrockPlayer)) {
+            return result(player, info, HandshakeResult.Verdict.BYPASSED, null);
         }
 
         // Check for bypass permission - allows players to bypass all mod checks
         if (PermissionsAdapter.checkPermission(player, "handshaker.bypass")) {
-            return;
-        }
-
-        boolean hasMod = info != null && !info.mods().isEmpty();
-        
-        // Integrity Check - if mode is SIGNED, enforce signature verification
-        // This is checked FIRST because it's the most critical security check
-        if (integrityMode == IntegrityMode.SIGNED) {
-            // If client has the handshaker mod, they MUST send valid integrity data
-            if (hasMod) {
-                // CRITICAL: If IntegrityPayload hasn't been received yet, KICK
-                if (info.integrityNonce() == null) {
-                    // Client has mod but never sent integrity payload - this is a security violation
-                    HandShakerServer.LOGGER.warn("Kicking {} - mod client but no integrity data sent in SIGNED mode", player.getName().getString());
-                    player.networkHandler.disconnect(net.minecraft.text.Text.literal(invalidSignatureKickMessage));
-                    return;
-                } else if (!info.signatureVerified()) {
-                    // Client sent integrity data but verification FAILED
-                    HandShakerServer.LOGGER.warn("Kicking {} - integrity check FAILED in SIGNED mode", player.getName().getString());
-                    player.networkHandler.disconnect(net.minecraft.text.Text.literal(invalidSignatureKickMessage));
-                    return;
-                }
-            }
-        }
-        
-        // If behavior is VANILLA and client doesn't have the mod, skip all checks
-        if (behavior == Behavior.VANILLA && !hasMod) {
-            return;
-        }
-        
-        // If behavior is STRICT and client doesn't have the mod, kick
-        if (behavior == Behavior.STRICT && !hasMod) {
-            player.networkHandler.disconnect(net.minecraft.text.Text.literal(noHandshakeKickMessage));
-            return;
-        }
-
-        if (!hasMod) {
-            return;
+            return result(player, info, HandshakeResult.Verdict.BYPASSED, null);
         }
 
-        Set<String> missingRequired = new HashSet<>();
-        Set<String> blacklistedFound = new HashSet<>();
-
-        // Check required mods (only if enabled)
-        if (modsRequiredEnabled) {
-            for (String modId : requiredModsActive) {
-                if (!info.mods().contains(modId)) {
-                    missingRequired.add(modId);
-                }
-            }
+        ModVerdict verdict = info != null ? verdictFor(player.getUuid(), player.getName().getString(), info.mods()) : null;
+        Rejection rejection = findRejection(player.getName().getString(), info, verdict);
+        if (rejection != null) {
+            metrics.recordKick(rejection.reason());
+            audit.record(AuditLog.Type.KICK, player.getUuid(), player.getName().getString(), rejection.reason().label(), rejection.message());
+            violations.record(player.getUuid(), player.getName().getString(), rejection.reason(), rejection.mods(), null);
+            player.networkHandler.disconnect(net.minecraft.text.Text.literal(rejection.message()));
+            return result(player, info, HandshakeResult.Verdict.KICKED, rejection.reason());
         }
 
-        // Check blacklisted mods (only if enabled)
-        if (modsBlacklistedEnabled) {
-            for (String modId : blacklistedModsActive) {
-                if (info.mods().contains(modId)) {
-                    blacklistedFound.add(modId);
-                }
-            }
+        if (info == null || info.mods().isEmpty()) {
+            return result(player, info, HandshakeResult.Verdict.ALLOWED, null);
         }
 
-        if (!missingRequired.isEmpty()) {
-            String msg = missingWhitelistModMessage.replace("{mod}", String.join(", ", missingRequired));
-            player.networkHandler.disconnect(net.minecraft.text.Text.literal(msg));
-            return;
-        }
+        Set<String> blacklistedFound = verdict.blacklisted();
 
         if (!blacklistedFound.isEmpty()) {
+            metrics.recordKick(KickReason.BLACKLISTED);
+            audit.record(AuditLog.Type.KICK, player.getUuid(), player.getName().getString(), KickReason.BLACKLISTED.label(), blacklistedFound);
             // Get the first blacklisted mod to determine the action
             String firstBlacklistedMod = blacklistedFound.iterator().next();
             ModConfig modCfg = modConfigMap.get(firstBlacklistedMod.toLowerCase(Locale.ROOT));
+            violations.record(player.getUuid(), player.getName().getString(), KickReason.BLACKLISTED, blacklistedFound,
+                modCfg != null ? modCfg.getActionName() : null);
             
             if (modCfg != null) {
                 String actionName = modCfg.getActionName() != null ? modCfg.getActionName().toLowerCase(Locale.ROOT) : "kick";
                 ActionDefinition actionDef = actionsMap.get(actionName);
                 
-                HandShakerServer.LOGGER.info("Blacklisted mod detected: {}. Action: '{}'. ActionDef exists: {}. ActionDef empty: {}", 
+                HandShakerServer.LOGGER.debug("Blacklisted mod detected: {}. Action: '{}'. ActionDef exists: {}. ActionDef empty: {}", 
                     firstBlacklistedMod, actionName, actionDef != null, (actionDef != null && actionDef.isEmpty()));
                 
                 if (actionDef != null && !actionDef.isEmpty()) {
@@ -883,20 +981,32 @@ public class ConfigManager {
                             actionName, player.getName().getString(), blacklistedFound);
                     }
                     
-                    for (String command : actionDef.getCommands()) {
-                        String expandedCommand = expandCommandPlaceholders(command, player.getName().getString(), String.join(", ", blacklistedFound));
-                        MinecraftServer server = HandShakerServer.getInstance().getServer();
-                        if (server != null) {
-                            try {
-                                var parseResults = server.getCommandManager().getDispatcher().parse(expandedCommand, server.getCommandSource());
-                                server.getCommandManager().execute(parseResults, expandedCommand);
-                            } catch (Exception e) {
-                                HandShakerServer.LOGGER.warn("Failed to execute action command '{}': {}", expandedCommand, e.getMessage());
+                    audit.record(AuditLog.Type.ACTION, player.getUuid(), player.getName().getString(), actionName, blacklistedFound);
+                    // The commands may wait for a later tick when this one is out of budget; the kick never does
+                    tickBudget.runOrDefer(() -> {
+                        HandshakeEvents.ActionExecution event = new HandshakeEvents.ActionExecution(actionName, actionDef.getCommands().size());
+                        event.begin();
+                        long dispatchStart = metrics.start();
+                        int failed = 0;
+                        for (String command : actionDef.getCommands()) {
+                            String expandedCommand = expandCommandPlaceholders(command, player.getName().getString(), String.join(", ", blacklistedFound));
+                            MinecraftServer server = HandShakerServer.getInstance().getServer();
+                            if (server != null) {
+                                try {
+                                    var parseResults = server.getCommandManager().getDispatcher().parse(expandedCommand, server.getCommandSource());
+                                    server.getCommandManager().execute(parseResults, expandedCommand);
+                                } catch (Exception e) {
+                                    HandShakerServer.LOGGER.warn("Failed to execute action command '{}': {}", expandedCommand, e.getMessage());
+                                    failed++;
+                                }
+                            } else {
+                                HandShakerServer.LOGGER.warn("Server instance is null, cannot execute action command");
+                                failed++;
                             }
-                        } else {
-                            HandShakerServer.LOGGER.warn("Server instance is null, cannot execute action command");
                         }
-                    }
+                        metrics.record(HandshakeMetrics.Stage.ACTION_DISPATCH, dispatchStart);
+                        event.finish(player.getUuid(), info.mods().size(), failed == 0 ? "ok" : "failed");
+                    });
                     
                     // Still kick the player after executing the action
                     String msg = kickMessage.replace("{mod}", String.join(", ", blacklistedFound));
@@ -949,20 +1059,32 @@ public class ConfigManager {
                                     actionName, player.getName().getString(), allowedMod);
                             }
                             
-                            for (String command : actionDef.getCommands()) {
-                                String expandedCommand = expandCommandPlaceholders(command, player.getName().getString(), allowedMod);
-                                MinecraftServer server = HandShakerServer.getInstance().getServer();
-                                if (server != null) {
-                                    try {
-                                        var parseResults = server.getCommandManager().getDispatcher().parse(expandedCommand, server.getCommandSource());
-                                        server.getCommandManager().execute(parseResults, expandedCommand);
-                                    } catch (Exception e) {
-                                        HandShakerServer.LOGGER.warn("Failed to execute action command '{}': {}", expandedCommand, e.getMessage());
+                            audit.record(AuditLog.Type.ACTION, player.getUuid(), player.getName().getString(), actionName, allowedMod);
+                            violations.record(player.getUuid(), player.getName().getString(), null, List.of(allowedMod), actionName);
+                            tickBudget.runOrDefer(() -> {
+                                HandshakeEvents.ActionExecution event = new HandshakeEvents.ActionExecution(actionName, actionDef.getCommands().size());
+                                event.begin();
+                                long dispatchStart = metrics.start();
+                                int failed = 0;
+                                for (String command : actionDef.getCommands()) {
+                                    String expandedCommand = expandCommandPlaceholders(command, player.getName().getString(), allowedMod);
+                                    MinecraftServer server = HandShakerServer.getInstance().getServer();
+                                    if (server != null) {
+                                        try {
+                                            var parseResults = server.getCommandManager().getDispatcher().parse(expandedCommand, server.getCommandSource());
+                                            server.getCommandManager().execute(parseResults, expandedCommand);
+                                        } catch (Exception e) {
+                                            HandShakerServer.LOGGER.warn("Failed to execute action command '{}': {}", expandedCommand, e.getMessage());
+                                            failed++;
+                                        }
+                                    } else {
+                                        HandShakerServer.LOGGER.warn("Server instance is null, cannot execute action command");
+                                        failed++;
                                     }
-                                } else {
-                                    HandShakerServer.LOGGER.warn("Server instance is null, cannot execute action command");
                                 }
-                            }
+                                metrics.record(HandshakeMetrics.Stage.ACTION_DISPATCH, dispatchStart);
+                                event.finish(player.getUuid(), info.mods().size(), failed == 0 ? "ok" : "failed");
+                            });
                         }
 
                     }
@@ -970,6 +1092,164 @@ public class ConfigManager {
             }
         }
         }
+        return blacklistedFound.isEmpty()
+                ? result(player, info, HandshakeResult.Verdict.ALLOWED, null)
+                : result(player, info, HandshakeResult.Verdict.KICKED, KickReason.BLACKLISTED);
+    }
+
+    private static HandshakeResult result(ServerPlayerEntity player, HandShakerServer.ClientInfo info, HandshakeResult.Verdict verdict, KickReason reason) {
+        if (info == null) {
+            return new HandshakeResult(player.getUuid(), Set.of(), false, false, false, verdict, reason);
+        }
+        return new HandshakeResult(player.getUuid(), info.mods(), !info.mods().isEmpty(), info.signatureVerified(),
+                info.veltonVerified(), verdict, reason);
+    }
+
+    /**
+     * Decides what can be decided before the player enters the world: integrity failures, a missing
+     * handshake in STRICT mode, missing required mods and blacklisted mods whose action is a plain kick.
+     * Blacklisted mods with action commands are left to checkPlayer so the commands run against an
+     * online player. The caller checks the bypass permission.
+     * @return Why the player is kicked, or null if they may continue into the world
+     */
+    public Rejection getPreJoinRejection(UUID playerUuid, String playerName, HandShakerServer.ClientInfo info) {
+        if (allowBedrockPlayers && preLogin.isBedrock(playerUuid, this::isBedrockPlayer)) {
+            return null;
+        }
+
+        ModVerdict verdict = info != null ? verdictFor(playerUuid, playerName, info.mods()) : null;
+        Rejection rejection = findRejection(playerName, info, verdict);
+        if (rejection != null || info == null || info.mods().isEmpty()) {
+            return rejection;
+        }
+
+        Set<String> blacklistedFound = verdict.blacklisted();
+        if (blacklistedFound.isEmpty()) {
+            return null;
+        }
+        ModConfig modCfg = modConfigMap.get(blacklistedFound.iterator().next().toLowerCase(Locale.ROOT));
+        if (modCfg != null) {
+            String actionName = modCfg.getActionName() != null ? modCfg.getActionName().toLowerCase(Locale.ROOT) : "kick";
+            ActionDefinition actionDef = actionsMap.get(actionName);
+            if (actionDef != null && !actionDef.isEmpty()) {
+                return null;
+            }
+        }
+        return new Rejection(KickReason.BLACKLISTED, kickMessage.replace("{mod}", String.join(", ", blacklistedFound)), blacklistedFound);
+    }
+
+    /**
+     * Integrity, STRICT-mode and required-mod checks, which only need the handshake data.
+     * @return The failed check, or null if none of them fail
+     */
+    private Rejection findRejection(String playerName, HandShakerServer.ClientInfo info, ModVerdict verdict) {
+        boolean hasMod = info != null && !info.mods().isEmpty();
+        
+        // Integrity Check - if mode is SIGNED, enforce signature verification
+        // This is checked FIRST because it's the most critical security check
+        if (integrityMode == IntegrityMode.SIGNED) {
+            // If client has the handshaker mod, they MUST send valid integrity data
+            if (hasMod) {
+                // CRITICAL: If IntegrityPayload hasn't been received yet, KICK
+                if (info.integrityNonce() == null) {
+                    // Client has mod but never sent integrity payload - this is a security violation
+                    HandShakerServer.LOGGER.warn("Kicking {} - mod client but no integrity data sent in SIGNED mode", playerName);
+                    return new Rejection(KickReason.INVALID_SIGNATURE, invalidSignatureKickMessage, Set.of());
+                } else if (!info.signatureVerified()) {
+                    // Client sent integrity data but verification FAILED
+                    HandShakerServer.LOGGER.warn("Kicking {} - integrity check FAILED in SIGNED mode", playerName);
+                    return new Rejection(KickReason.INVALID_SIGNATURE, invalidSignatureKickMessage, Set.of());
+                }
+            }
+        }
+        
+        // If behavior is STRICT and client doesn't have the mod, kick
+        if (behavior == Behavior.STRICT && !hasMod) {
+            return new Rejection(KickReason.NO_HANDSHAKE, noHandshakeKickMessage, Set.of());
+        }
+
+        if (!hasMod) {
+            return null;
+        }
+
+        Set<String> missingRequired = verdict.missingRequired();
+        if (!missingRequired.isEmpty()) {
+            return new Rejection(KickReason.MISSING_REQUIRED, missingWhitelistModMessage.replace("{mod}", String.join(", ", missingRequired)), missingRequired);
+        }
+        return null;
+    }
+
+    /**
+     * Required mods missing from {@code mods} and blacklisted mods in it. Needs no player, so it can run
+     * before join; pair the result with {@link #getGeneration()} to know when it goes stale.
+     */
+    public ModVerdict evaluateMods(Set<String> mods) {
+        Set<String> missingRequired = new HashSet<>();
+        Set<String> blacklistedFound = new HashSet<>();
+
+        // Check required mods (only if enabled)
+        if (modsRequiredEnabled) {
+            for (String modId : requiredModsActive) {
+                if (!mods.contains(modId)) {
+                    missingRequired.add(modId);
+                }
+            }
+        }
+
+        // Check blacklisted mods (only if enabled)
+        if (modsBlacklistedEnabled) {
+            for (String modId : blacklistedModsActive) {
+                if (mods.contains(modId)) {
+                    blacklistedFound.add(modId);
+                }
+            }
+        }
+        return new ModVerdict(missingRequired, blacklistedFound);
+    }
+
+    /**
+     * The verdict of a resumed session, else the pre-join verdict if the player's mods are unchanged since
+     * it was warmed up, otherwise a fresh one
+     */
+    private ModVerdict verdictFor(UUID playerUuid, String playerName, Set<String> mods) {
+        HandshakeEvents.RuleEvaluation event = new HandshakeEvents.RuleEvaluation();
+        event.begin();
+        long start = metrics.start();
+        long currentGeneration = generation.get();
+        ModVerdict verdict = resumption.verdict(playerUuid, mods, currentGeneration,
+                unresumed -> preLogin.verdict(playerUuid, unresumed, currentGeneration, this::evaluateMods));
+        metrics.record(HandshakeMetrics.Stage.RULE_EVALUATION, start);
+        String outcome = !verdict.blacklisted().isEmpty() ? KickReason.BLACKLISTED.label()
+                : !verdict.missingRequired().isEmpty() ? KickReason.MISSING_REQUIRED.label() : "allowed";
+        event.finish(playerUuid, mods.size(), outcome);
+        audit.record(AuditLog.Type.VERDICT, playerUuid, playerName, outcome,
+                !verdict.blacklisted().isEmpty() ? verdict.blacklisted() : verdict.missingRequired());
+        return verdict;
+    }
+
+    /**
+     * Loads a connecting player's Bedrock status and the verdict for their last known mods, so the
+     * join-time checks only have to compare. Blocking; called off the server thread during configuration.
+     */
+    public void warmUp(UUID playerUuid, Set<String> lastMods) {
+        boolean bedrock = isBedrockPlayer(playerUuid);
+        long currentGeneration = generation.get();
+        preLogin.put(playerUuid, lastMods, bedrock, evaluateMods(lastMods), currentGeneration);
+    }
+
+    public void forgetWarmUp(UUID playerUuid) {
+        preLogin.forget(playerUuid);
+    }
+
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Verified state of players who just left, reused when they reconnect unchanged
+     */
+    public ResumptionCache<ModVerdict> getResumption() {
+        return resumption;
     }
 
     private boolean isBedrockPlayer(UUID playerUuid) {
@@ -984,6 +1264,7 @@ public class ConfigManager {
     }
 
     public void playerLeft(ServerPlayerEntity player) {
+        forgetWarmUp(player.getUuid());
     }
 
     private String expandCommandPlaceholders(String command, String playerName, String modName) {
@@ -0,0 +1,590 @@
+package me.mklv.handshaker.fabric.server.utils;
+
+import me.mklv.handshaker.fabric.server.HandShakerServer;
+import me.mklv.handshaker.fabric.server.utils.PlayerHistoryDatabase.ModHistoryEntry;
+import me.mklv.handshaker.fabric.server.utils.PlayerHistoryDatabase.ModPopularityEntry;
+import me.mklv.handshaker.fabric.server.utils.PlayerHistoryDatabase.PlayerModInfo;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded backend that needs no JDBC driver. Name and mod add/remove events are appended to
+ * memory-mapped segment files and applied to an in-memory index that answers every query.
+ * On startup the index is loaded from the latest snapshot and the log tail after it is replayed;
+ * a background task periodically writes a fresh snapshot and deletes the segments it covers.
+ */
+public class EventLogHistoryStorage implements HistoryStorage {
+    private static final int SEGMENT_BYTES = 16 * 1024 * 1024;
+    private static final long COMPACTION_INTERVAL_MINUTES = 5;
+    private static final int SNAPSHOT_MAGIC = 0x48534831;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final int MAX_VALUE_CHARS = 256;
+
+    private static final byte EVENT_NAME = 1;
+    private static final byte EVENT_MOD_ADDED = 2;
+    private static final byte EVENT_MOD_REMOVED = 3;
+
+    // Record layout: length, crc32, type, epoch second, uuid, value length, value bytes.
+    // Length is written last, so a torn record reads as zero and marks the end of the log.
+    private static final int RECORD_HEADER_BYTES = 4 + 4 + 1 + 8 + 16 + 2;
+    private static final int CHECKSUMMED_OFFSET = 8;
+
+    private static final Comparator<HistoryRow> NEWEST_FIRST =
+        Comparator.comparingLong((HistoryRow row) -> row.addedAt).thenComparing(row -> row.modName).reversed();
+    private static final Comparator<Map.Entry<String, Integer>> MOST_POPULAR_FIRST =
+        Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey());
+
+    private final File directory;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // In-memory index, guarded by lock
+    private final Map<UUID, PlayerState> players = new HashMap<>();
+    private final Map<String, Integer> activeCounts = new HashMap<>();
+    private final Map<String, TreeSet<String>> modPlayers = new HashMap<>();
+    private int activePlayers;
+
+    // Active segment, written only under the write lock
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+    private long segmentSequence;
+    private long eventsSinceSnapshot;
+
+    private ScheduledExecutorService compactor;
+
+    public EventLogHistoryStorage(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public void open() throws IOException {
+        Files.createDirectories(directory.toPath());
+
+        long fromSequence = 0;
+        int fromPosition = 0;
+        Path snapshot = directory.toPath().resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+                if (in.readInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Unrecognised snapshot file: " + snapshot);
+                }
+                fromSequence = in.readLong();
+                fromPosition = in.readInt();
+                readSnapshot(in);
+            }
+        }
+
+        replay(fromSequence, fromPosition);
+
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "HandShaker-EventLog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compact, COMPACTION_INTERVAL_MINUTES, COMPACTION_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        HandShakerServer.LOGGER.info("Player history event log opened at: {} ({} players)", directory.getAbsolutePath(), players.size());
+    }
+
+    private void replay(long fromSequence, int fromPosition) throws IOException {
+        long lastSequence = -1;
+        int lastPosition = 0;
+        for (long sequence : listSegments()) {
+            // Older segments are already folded into the snapshot and only wait for compaction to delete them
+            if (sequence < fromSequence) continue;
+
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segmentPath(sequence)));
+            int start = sequence == fromSequence ? fromPosition : 0;
+            lastPosition = replaySegment(buffer, start, sequence);
+            lastSequence = sequence;
+        }
+
+        if (lastSequence < 0) {
+            // Never reuse the snapshot's segment number for a fresh file, its offset would skip new events
+            openSegment(fromPosition > 0 ? fromSequence + 1 : fromSequence, 0);
+        } else {
+            openSegment(lastSequence, lastPosition);
+        }
+    }
+
+    private int replaySegment(ByteBuffer buffer, int position, long sequence) {
+        CRC32 crc = new CRC32();
+        while (position + RECORD_HEADER_BYTES <= buffer.limit()) {
+            int length = buffer.getInt(position);
+            if (length == 0) break;
+            if (length < RECORD_HEADER_BYTES || position + length > buffer.limit()) {
+                HandShakerServer.LOGGER.warn("Event log segment {} has a corrupt record at offset {}, ignoring the rest of it", sequence, position);
+                break;
+            }
+
+            ByteBuffer record = buffer.duplicate().position(position + CHECKSUMMED_OFFSET).limit(position + length);
+            crc.reset();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                HandShakerServer.LOGGER.warn("Event log segment {} has a torn record at offset {}, ignoring the rest of it", sequence, position);
+                break;
+            }
+
+            byte type = record.get();
+            long timestamp = record.getLong();
+            UUID uuid = new UUID(record.getLong(), record.getLong());
+            byte[] value = new byte[record.getShort() & 0xFFFF];
+            record.get(value);
+            apply(type, timestamp, uuid, new String(value, StandardCharsets.UTF_8));
+            position += length;
+        }
+        return position;
+    }
+
+    private void openSegment(long sequence, int position) throws IOException {
+        segmentChannel = FileChannel.open(segmentPath(sequence), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+        segment.position(position);
+        segmentSequence = sequence;
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+        if (segmentChannel != null) {
+            segmentChannel.close();
+            segmentChannel = null;
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        long next = segmentSequence + 1;
+        closeSegment();
+        openSegment(next, 0);
+        compactor.execute(this::compact);
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.toPath().resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory.toPath(), SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    sequences.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    HandShakerServer.LOGGER.warn("Ignoring unexpected file in event log directory: {}", name);
+                }
+            }
+        }
+        Collections.sort(sequences);
+        return sequences;
+    }
+
+    private void append(byte type, long timestamp, UUID uuid, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_HEADER_BYTES + bytes.length;
+        if (segment.remaining() < length) {
+            rollSegment();
+        }
+
+        int start = segment.position();
+        segment.position(start + CHECKSUMMED_OFFSET);
+        segment.put(type)
+            .putLong(timestamp)
+            .putLong(uuid.getMostSignificantBits())
+            .putLong(uuid.getLeastSignificantBits())
+            .putShort((short) bytes.length)
+            .put(bytes);
+
+        CRC32 crc = new CRC32();
+        crc.update(segment.duplicate().position(start + CHECKSUMMED_OFFSET).limit(start + length));
+        segment.putInt(start + 4, (int) crc.getValue());
+        segment.putInt(start, length);
+        eventsSinceSnapshot++;
+    }
+
+    private void apply(byte type, long timestamp, UUID uuid, String value) {
+        PlayerState state = players.computeIfAbsent(uuid, id -> new PlayerState());
+        switch (type) {
+            case EVENT_NAME -> state.name = value;
+            case EVENT_MOD_ADDED -> {
+                if (state.active.containsKey(value)) return;
+                restoreRow(uuid, state, new HistoryRow(value, timestamp));
+            }
+            case EVENT_MOD_REMOVED -> {
+                HistoryRow row = state.active.remove(value);
+                if (row == null) return;
+                row.removedAt = timestamp;
+                if (state.active.isEmpty()) {
+                    activePlayers--;
+                }
+                activeCounts.computeIfPresent(value, (mod, count) -> count > 1 ? count - 1 : null);
+            }
+            default -> HandShakerServer.LOGGER.warn("Unknown event type {} in event log", type);
+        }
+    }
+
+    private void restoreRow(UUID uuid, PlayerState state, HistoryRow row) {
+        state.history.add(row);
+        modPlayers.computeIfAbsent(row.modName, mod -> new TreeSet<>()).add(uuid.toString());
+        if (row.removedAt == 0) {
+            if (state.active.isEmpty()) {
+                activePlayers++;
+            }
+            state.active.put(row.modName, row);
+            activeCounts.merge(row.modName, 1, Integer::sum);
+        }
+    }
+
+    private void readSnapshot(DataInputStream in) throws IOException {
+        int playerCount = in.readInt();
+        for (int i = 0; i < playerCount; i++) {
+            UUID uuid = new UUID(in.readLong(), in.readLong());
+            PlayerState state = new PlayerState();
+            String name = in.readUTF();
+            state.name = name.isEmpty() ? null : name;
+            players.put(uuid, state);
+
+            int rows = in.readInt();
+            for (int r = 0; r < rows; r++) {
+                HistoryRow row = new HistoryRow(in.readUTF(), in.readLong());
+                row.removedAt = in.readLong();
+                restoreRow(uuid, state, row);
+            }
+        }
+    }
+
+    private byte[] writeSnapshot(long sequence, int position) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(sequence);
+            out.writeInt(position);
+            out.writeInt(players.size());
+            for (Map.Entry<UUID, PlayerState> entry : players.entrySet()) {
+                PlayerState state = entry.getValue();
+                out.writeLong(entry.getKey().getMostSignificantBits());
+                out.writeLong(entry.getKey().getLeastSignificantBits());
+                out.writeUTF(state.name != null ? state.name : "");
+                out.writeInt(state.history.size());
+                for (HistoryRow row : state.history) {
+                    out.writeUTF(row.modName);
+                    out.writeLong(row.addedAt);
+                    out.writeLong(row.removedAt);
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Folds everything logged so far into a new snapshot, then deletes the segments it covers.
+     */
+    private void compact() {
+        byte[] snapshot;
+        long coveredSequence;
+        lock.writeLock().lock();
+        try {
+            if (segment == null || eventsSinceSnapshot == 0) return;
+            segment.force();
+            coveredSequence = segmentSequence;
+            snapshot = writeSnapshot(segmentSequence, segment.position());
+            eventsSinceSnapshot = 0;
+        } catch (IOException e) {
+            HandShakerServer.LOGGER.warn("Failed to capture event log snapshot: {}", e.getMessage());
+            return;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Path target = directory.toPath().resolve(SNAPSHOT_FILE);
+        Path temp = directory.toPath().resolve(SNAPSHOT_FILE + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            for (long sequence : listSegments()) {
+                if (sequence >= coveredSequence) break;
+                try {
+                    Files.deleteIfExists(segmentPath(sequence));
+                } catch (IOException e) {
+                    // Still mapped on some platforms; the next compaction retries
+                    HandShakerServer.LOGGER.debug("Could not delete compacted segment {}: {}", sequence, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            HandShakerServer.LOGGER.warn("Failed to write event log snapshot: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean syncPlayerMods(UUID uuid, String playerName, Set<String> currentMods, Set<String> knownActive) {
+        // The active set is already in memory, so there is no read to skip
+        lock.writeLock().lock();
+        try {
+            if (segment == null) return false;
+
+            long now = Instant.now().getEpochSecond();
+            PlayerState state = players.get(uuid);
+            Set<String> active = state != null ? new HashSet<>(state.active.keySet()) : Set.of();
+            if (state == null || !playerName.equals(state.name)) {
+                record(EVENT_NAME, now, uuid, playerName);
+            }
+            for (String mod : currentMods) {
+                // Ids this long are not real mods; keep them out of the fixed-size record header
+                if (!active.contains(mod) && mod.length() <= MAX_VALUE_CHARS) {
+                    record(EVENT_MOD_ADDED, now, uuid, mod);
+                }
+            }
+            for (String mod : active) {
+                if (!currentMods.contains(mod)) {
+                    record(EVENT_MOD_REMOVED, now, uuid, mod);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            HandShakerServer.LOGGER.warn("Failed to append player mods to event log: {}", e.getMessage());
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void record(byte type, long timestamp, UUID uuid, String value) throws IOException {
+        append(type, timestamp, uuid, value);
+        apply(type, timestamp, uuid, value);
+    }
+
+    @Override
+    public Set<String> getActiveMods(UUID uuid) {
+        lock.readLock().lock();
+        try {
+            PlayerState state = players.get(uuid);
+            return state != null ? new HashSet<>(state.active.keySet()) : new HashSet<>();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ModHistoryEntry> getPlayerHistory(UUID uuid) {
+        lock.readLock().lock();
+        try {
+            PlayerState state = players.get(uuid);
+            if (state == null) return new ArrayList<>();
+            return state.history.stream()
+                .sorted(NEWEST_FIRST)
+                .map(EventLogHistoryStorage::toEntry)
+                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ModHistoryEntry> getPlayerHistoryPage(UUID uuid, ModHistoryEntry after, int limit) {
+        lock.readLock().lock();
+        try {
+            PlayerState state = players.get(uuid);
+            if (state == null) return new ArrayList<>();
+
+            long afterAdded = after != null ? toEpochSecond(after.addedDate()) : Long.MAX_VALUE;
+            String afterMod = after != null ? after.modName() : null;
+            return state.history.stream()
+                .filter(row -> afterMod == null || row.addedAt < afterAdded
+                    || (row.addedAt == afterAdded && row.modName.compareTo(afterMod) < 0))
+                .sorted(NEWEST_FIRST)
+                .limit(limit)
+                .map(EventLogHistoryStorage::toEntry)
+                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getModPopularity() {
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> popularity = new LinkedHashMap<>();
+            activeCounts.entrySet().stream()
+                .sorted(MOST_POPULAR_FIRST)
+                .forEach(entry -> popularity.put(entry.getKey(), entry.getValue()));
+            return popularity;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ModPopularityEntry> getModPopularityPage(ModPopularityEntry after, int limit) {
+        lock.readLock().lock();
+        try {
+            return activeCounts.entrySet().stream()
+                .filter(entry -> after == null || entry.getValue() < after.playerCount()
+                    || (entry.getValue() == after.playerCount() && entry.getKey().compareTo(after.modName()) > 0))
+                .sorted(MOST_POPULAR_FIRST)
+                .limit(limit)
+                .map(entry -> new ModPopularityEntry(entry.getKey(), entry.getValue()))
+                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getActiveModCount() {
+        lock.readLock().lock();
+        try {
+            return activeCounts.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<PlayerModInfo> getPlayersWithMod(String modName) {
+        lock.readLock().lock();
+        try {
+            List<PlayerModInfo> result = new ArrayList<>();
+            for (String uuid : modPlayers.getOrDefault(modName, new TreeSet<>())) {
+                result.add(toPlayerModInfo(uuid, modName));
+            }
+            result.sort(Comparator.comparing(PlayerModInfo::isActive)
+                .thenComparing(PlayerModInfo::firstSeen)
+                .reversed());
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<PlayerModInfo> getPlayersWithModPage(String modName, UUID after, int limit) {
+        lock.readLock().lock();
+        try {
+            TreeSet<String> uuids = modPlayers.get(modName);
+            List<PlayerModInfo> result = new ArrayList<>();
+            if (uuids == null) return result;
+
+            Iterator<String> iterator = (after != null ? uuids.tailSet(after.toString(), false) : uuids).iterator();
+            while (iterator.hasNext() && result.size() < limit) {
+                result.add(toPlayerModInfo(iterator.next(), modName));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> getPlayerNames(UUID uuid) {
+        lock.readLock().lock();
+        try {
+            List<String> names = new ArrayList<>();
+            PlayerState state = players.get(uuid);
+            if (state != null && state.name != null) {
+                names.add(state.name);
+            }
+            return names;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getUniqueActivePlayers() {
+        lock.readLock().lock();
+        try {
+            return activePlayers;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (compactor != null) {
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // A final snapshot keeps the next startup down to a snapshot read
+        compact();
+
+        lock.writeLock().lock();
+        try {
+            closeSegment();
+            HandShakerServer.LOGGER.info("Player history event log closed");
+        } catch (IOException e) {
+            HandShakerServer.LOGGER.warn("Failed to close event log segment: {}", e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private PlayerModInfo toPlayerModInfo(String uuid, String modName) {
+        UUID id = UUID.fromString(uuid);
+        PlayerState state = players.get(id);
+        long firstSeen = Long.MAX_VALUE;
+        for (HistoryRow row : state.history) {
+            if (row.modName.equals(modName)) {
+                firstSeen = Math.min(firstSeen, row.addedAt);
+            }
+        }
+        return new PlayerModInfo(id, state.name != null ? state.name : uuid, toLocalDateTime(firstSeen), state.active.containsKey(modName));
+    }
+
+    private static ModHistoryEntry toEntry(HistoryRow row) {
+        return new ModHistoryEntry(row.modName, toLocalDateTime(row.addedAt), row.removedAt != 0 ? toLocalDateTime(row.removedAt) : null);
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochSecond) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault());
+    }
+
+    private static long toEpochSecond(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    private static final class PlayerState {
+        private String name;
+        private final List<HistoryRow> history = new ArrayList<>();
+        private final Map<String, HistoryRow> active = new HashMap<>();
+    }
+
+    private static final class HistoryRow {
+        private final String modName;
+        private final long addedAt;
+        private long removedAt;
+
+        private HistoryRow(String modName, long addedAt) {
+            this.modName = modName;
+            this.addedAt = addedAt;
+        }
+    }
+}
@@ -3,6 +3,8 @@ package me.mklv.handshaker.fabric.server.utils;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.network.ServerPlayerEntity;
 import java.lang.reflect.Method;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Adapter for handling permissions with fallback support.
@@ -14,11 +16,13 @@ import java.lang.reflect.Method;
 public class PermissionsAdapter {
     private static final Method PERMISSIONS_CHECK_COMMAND_SOURCE;
     private static final Method PERMISSIONS_CHECK_PLAYER;
+    private static final Method PERMISSIONS_CHECK_UUID;
     private static final boolean HAS_FABRIC_PERMISSIONS;
 
     static {
         Method checkCommandSourceMethod = null;
         Method checkPlayerMethod = null;
+        Method checkUuidMethod = null;
         boolean hasFabricPermissions = false;
         
         try {
@@ -49,6 +53,13 @@ public class PermissionsAdapter {
                 }
             }
             
+            // Offline check, used before the player entity exists
+            try {
+                checkUuidMethod = permissionsClass.getMethod("check", UUID.class, String.class);
+            } catch (NoSuchMethodException e) {
+                // Method not found
+            }
+            
             hasFabricPermissions = checkCommandSourceMethod != null || checkPlayerMethod != null;
         } catch (ClassNotFoundException e) {
             // fabric-permissions-api not available, will use defaults
@@ -56,6 +67,7 @@ public class PermissionsAdapter {
         
         PERMISSIONS_CHECK_COMMAND_SOURCE = checkCommandSourceMethod;
         PERMISSIONS_CHECK_PLAYER = checkPlayerMethod;
+        PERMISSIONS_CHECK_UUID = checkUuidMethod;
         HAS_FABRIC_PERMISSIONS = hasFabricPermissions;
     }
 
@@ -107,6 +119,26 @@ public class PermissionsAdapter {
         return true;
     }
 
+    /**
+     * Check if a player that has not joined the world yet (e.g. still in the configuration phase) has a
+     * specific permission. The permission manager may need to load the player, so the result is async.
+     * Without fabric-permissions-api this allows, like the ServerPlayerEntity check.
+     */
+    @SuppressWarnings("unchecked")
+    public static CompletableFuture<Boolean> checkPermission(UUID uuid, String permission) {
+        if (HAS_FABRIC_PERMISSIONS && PERMISSIONS_CHECK_UUID != null) {
+            try {
+                return (CompletableFuture<Boolean>) PERMISSIONS_CHECK_UUID.invoke(null, uuid, permission);
+            } catch (Exception e) {
+                // If reflection fails, allow by default
+                return CompletableFuture.completedFuture(true);
+            }
+        }
+        
+        // No fabric-permissions-api, allow by default
+        return CompletableFuture.completedFuture(true);
+    }
+
     /**
      * Check if fabric-permissions-api is available.
      */
@@ -1,5 +1,8 @@
 package me.mklv.handshaker.neoforge;
 
+import net.minecraft.client.Minecraft;
+import net.minecraft.network.Connection;
+import net.minecraft.network.ConnectionProtocol;
 import net.minecraft.network.protocol.common.ServerboundCustomPayloadPacket;
 import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
 import net.neoforged.bus.api.IEventBus;
@@ -9,6 +12,7 @@ import net.neoforged.fml.common.Mod;
 import net.neoforged.neoforgespi.language.IModInfo;
 import net.neoforged.neoforge.client.event.ClientPlayerNetworkEvent;
 import net.neoforged.neoforge.common.NeoForge;
+import net.neoforged.neoforge.network.handling.IPayloadContext;
 import me.mklv.handshaker.neoforge.server.HandShakerServerMod;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,25 +22,94 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarFile;
 
 @Mod(HandShakerClientMod.MOD_ID)
 public class HandShakerClientMod {
     public static final String MOD_ID = "hand_shaker";
     public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
+    // Servers that issue challenges send one right after login; older servers never do
+    private static final long CHALLENGE_WAIT_MILLIS = 2000;
+    private static HandShakerClientMod instance;
+
+    // Only touched on the client thread
+    private int connectionId;
+    private boolean handshakeSent = true;
+    // Connection that already answered the challenge during configuration
+    private Connection configuredConnection;
+    // The mod JAR can't change while the game runs, so it is hashed and verified once, on a virtual thread
+    private final CompletableFuture<JarIntegrity> jarIntegrity;
+    // The last server's verdict token, presented to the next one behind the same proxy
+    private volatile String verdictToken;
 
     public HandShakerClientMod(IEventBus modEventBus) {
+        instance = this;
         LOGGER.info("HandShaker client initializing");
+        jarIntegrity = CompletableFuture.supplyAsync(this::inspectJar, task -> Thread.ofVirtual().name("HandShaker-JarHash").start(task));
         NeoForge.EVENT_BUS.register(this);
     }
 
     @SubscribeEvent
     public void onServerJoin(ClientPlayerNetworkEvent.LoggingIn event) {
-        sendModList(event);
-        sendSignature(event);
+        if (event.getConnection() == configuredConnection) return;
+        handshakeSent = false;
+        int joined = ++connectionId;
+        // Fall back to random nonces if no challenge arrives
+        CompletableFuture.delayedExecutor(CHALLENGE_WAIT_MILLIS, TimeUnit.MILLISECONDS).execute(() -> Minecraft.getInstance().execute(() -> {
+            if (connectionId == joined) {
+                sendHandshake(null);
+            }
+        }));
+    }
+
+    /**
+     * Echoes the server's challenge token as the nonce of both payloads. Current servers send it during
+     * configuration and hold the client there until they have judged the answer.
+     */
+    public static void handleChallenge(HandShakerServerMod.ChallengePayload payload, IPayloadContext context) {
+        context.enqueueWork(() -> {
+            if (instance == null) return;
+            if (context.protocol() == ConnectionProtocol.CONFIGURATION) {
+                instance.configuredConnection = context.connection();
+                // The token goes first, so the server has it when the mod list arrives
+                String token = instance.verdictToken;
+                if (token != null && context.listener().hasChannel(HandShakerServerMod.VerdictTokenPayload.TYPE)) {
+                    context.reply(new HandShakerServerMod.VerdictTokenPayload(token));
+                }
+                context.reply(instance.createModList(payload.token()));
+                context.reply(instance.createIntegrity(payload.token()));
+            } else {
+                instance.sendHandshake(payload.token());
+            }
+        });
     }
 
-    private void sendModList(ClientPlayerNetworkEvent.LoggingIn event) {
+    /**
+     * Keeps a server's verdict token in memory only; servers without the shared secret ignore it
+     */
+    public static void handleVerdictToken(HandShakerServerMod.VerdictTokenPayload payload, IPayloadContext context) {
+        context.enqueueWork(() -> {
+            if (instance != null) {
+                instance.verdictToken = payload.token();
+            }
+        });
+    }
+
+    private void sendHandshake(String challenge) {
+        if (handshakeSent) return;
+        handshakeSent = true;
+        String token = verdictToken;
+        var connection = Minecraft.getInstance().getConnection();
+        if (token != null && connection != null && connection.hasChannel(HandShakerServerMod.VerdictTokenPayload.TYPE)) {
+            sendPacket(new HandShakerServerMod.VerdictTokenPayload(token));
+        }
+        sendPacket(createModList(challenge));
+        sendPacket(createIntegrity(challenge));
+    }
+
+    private HandShakerServerMod.ModsListPayload createModList(String challenge) {
         String payload = ModList.get().getMods().stream()
                 .map(IModInfo::getModId)
                 .map(id -> id.equals(MOD_ID) ? "hand-shaker" : id)
@@ -45,33 +118,41 @@ public class HandShakerClientMod {
                 .orElse("");
 
         String modListHash = hashString(payload);
-        String nonce = generateNonce();
-        sendPacket(event, new HandShakerServerMod.ModsListPayload(payload, modListHash, nonce));
-        LOGGER.info("Sent mod list ({} chars, hash: {}) with nonce: {}", payload.length(), modListHash.substring(0, 8), nonce);
+        String nonce = challenge != null ? challenge : generateNonce();
+        LOGGER.info("Sending mod list ({} chars, hash: {}) with nonce: {}", payload.length(), modListHash.substring(0, 8), nonce);
+        return new HandShakerServerMod.ModsListPayload(payload, modListHash, nonce);
     }
 
-    private void sendSignature(ClientPlayerNetworkEvent.LoggingIn event) {
+    private HandShakerServerMod.IntegrityPayload createIntegrity(String challenge) {
+        // Normally finished long before the first server asks
+        JarIntegrity jar = jarIntegrity.join();
+        String nonce = challenge != null ? challenge : generateNonce();
+
+        if (!jar.jarHash().isEmpty()) {
+            LOGGER.info("Sending JAR content hash {} [{}] with nonce: {}", jar.jarHash().substring(0, 8), jar.verified() ? "VERIFIED" : "UNVERIFIED", nonce);
+            return new HandShakerServerMod.IntegrityPayload(jar.signatureIndicator(), jar.jarHash(), nonce);
+        }
+        LOGGER.warn("Could not compute JAR content hash. Sending empty payload.");
+        return new HandShakerServerMod.IntegrityPayload(new byte[0], "", nonce);
+    }
+
+    private JarIntegrity inspectJar() {
         Optional<String> jarContentHash = computeJarContentHash();
-        String nonce = generateNonce();
         Optional<Boolean> isSignatureValid = verifyJarSignatureLocally();
-        
+        boolean verified = isSignatureValid.isPresent() && isSignatureValid.get();
+
         // Send the jarHash. If signature verification failed locally, send empty bytes as indicator
-        byte[] signatureIndicator = (isSignatureValid.isPresent() && isSignatureValid.get()) ? new byte[]{1} : new byte[0];
-        
-        if (jarContentHash.isPresent()) {
-            sendPacket(event, new HandShakerServerMod.IntegrityPayload(signatureIndicator, jarContentHash.get(), nonce));
-            String status = (isSignatureValid.isPresent() && isSignatureValid.get()) ? "VERIFIED" : "UNVERIFIED";
-            LOGGER.info("Sent JAR content hash {} [{}] with nonce: {}", jarContentHash.get().substring(0, 8), status, nonce);
-        } else {
-            LOGGER.warn("Could not compute JAR content hash. Sending empty payload.");
-            sendPacket(event, new HandShakerServerMod.IntegrityPayload(new byte[0], "", nonce));
-        }
+        byte[] signatureIndicator = verified ? new byte[]{1} : new byte[0];
+        return new JarIntegrity(signatureIndicator, jarContentHash.orElse(""), verified);
     }
 
+    private record JarIntegrity(byte[] signatureIndicator, String jarHash, boolean verified) {}
+
     @SuppressWarnings("null")
-    private void sendPacket(ClientPlayerNetworkEvent.LoggingIn event, CustomPacketPayload payload) {
-        if (event.getPlayer() != null && event.getPlayer().connection != null) {
-            event.getPlayer().connection.send(new ServerboundCustomPayloadPacket(payload));
+    private void sendPacket(CustomPacketPayload payload) {
+        var connection = Minecraft.getInstance().getConnection();
+        if (connection != null) {
+            connection.send(new ServerboundCustomPayloadPacket(payload));
         }
     }
 
@@ -1,9 +1,30 @@
 package me.mklv.handshaker.neoforge.server;
 
+import com.mojang.authlib.GameProfile;
 import com.mojang.logging.LogUtils;
 import io.netty.buffer.ByteBuf;
 import me.mklv.handshaker.neoforge.NetworkSetup;
+import me.mklv.handshaker.neoforge.server.api.HandshakeCompletedEvent;
+import me.mklv.handshaker.neoforge.server.api.HandshakeResult;
+import me.mklv.handshaker.neoforge.server.utils.AuditLog;
 import me.mklv.handshaker.neoforge.server.utils.CryptoUtils;
+import me.mklv.handshaker.neoforge.server.utils.HandShakerExecutors;
+import me.mklv.handshaker.neoforge.server.utils.HandshakeAdmission;
+import me.mklv.handshaker.neoforge.server.utils.HandshakeChallenge;
+import me.mklv.handshaker.neoforge.server.utils.HandshakeEvents;
+import me.mklv.handshaker.neoforge.server.utils.HandshakeMetrics;
+import me.mklv.handshaker.neoforge.server.utils.HandshakeResults;
+import me.mklv.handshaker.neoforge.server.utils.HashedWheelTimer;
+import me.mklv.handshaker.neoforge.server.utils.KickReason;
+import me.mklv.handshaker.neoforge.server.utils.MetricsEndpoint;
+import me.mklv.handshaker.neoforge.server.utils.NonceReplayCache;
+import me.mklv.handshaker.neoforge.server.utils.PayloadCapture;
+import me.mklv.handshaker.neoforge.server.utils.PayloadFingerprints;
+import me.mklv.handshaker.neoforge.server.utils.PayloadRateLimiter;
+import me.mklv.handshaker.neoforge.server.utils.StringUtils;
+import me.mklv.handshaker.neoforge.server.utils.TickBudget;
+import me.mklv.handshaker.neoforge.server.utils.VerdictTokens;
+import me.mklv.handshaker.neoforge.server.utils.ViolationLog;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.codec.ByteBufCodecs;
 import net.minecraft.network.codec.StreamCodec;
@@ -11,6 +32,8 @@ import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.server.network.ConfigurationTask;
+import net.minecraft.server.network.ServerConfigurationPacketListenerImpl;
 import net.neoforged.bus.api.IEventBus;
 import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.fml.common.Mod;
@@ -18,38 +41,97 @@ import net.neoforged.neoforge.common.NeoForge;
 import net.neoforged.neoforge.event.RegisterCommandsEvent;
 import net.neoforged.neoforge.event.server.ServerStartingEvent;
 import net.neoforged.neoforge.event.server.ServerStoppingEvent;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
 import net.neoforged.neoforge.event.entity.player.PlayerEvent;
+import net.neoforged.neoforge.network.PacketDistributor;
+import net.neoforged.neoforge.network.configuration.ICustomConfigurationTask;
+import net.neoforged.neoforge.network.event.RegisterConfigurationTasksEvent;
 import net.neoforged.neoforge.network.handling.IPayloadContext;
 import org.slf4j.Logger;
 
+import java.io.File;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateFactory;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 @Mod(HandShakerServerMod.MOD_ID)
 @SuppressWarnings("null")
 public class HandShakerServerMod {
     public static final String MOD_ID = "hand_shaker";
     public static final Logger LOGGER = LogUtils.getLogger();
+    private static final long SHUTDOWN_WAIT_SECONDS = 10;
     private static HandShakerServerMod instance;
 
     private final Map<UUID, ClientInfo> clients = new ConcurrentHashMap<>();
-    private final Set<String> usedNonces = ConcurrentHashMap.newKeySet(); // Track used nonces for replay prevention
+    private final NonceReplayCache nonceCache = new NonceReplayCache(); // Track used nonces for replay prevention
+    private final HandshakeChallenge challenge = new HandshakeChallenge();
+    private final HandShakerExecutors executors = new HandShakerExecutors();
+    private final HandshakeMetrics metrics = new HandshakeMetrics();
+    private final AuditLog auditLog = new AuditLog(new File(net.neoforged.fml.loading.FMLPaths.CONFIGDIR.get().toFile(), "HandShaker/logs/audit.jsonl"),
+            e -> LOGGER.warn("Audit log stopped: {}", e.getMessage()));
+    private PayloadCapture payloadCapture;
+    private MetricsEndpoint metricsEndpoint;
     private BlacklistConfig blacklistConfig;
     private PlayerHistoryDatabase playerHistoryDb;
     private MinecraftServer server;
-    private PublicKey publicKey;
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    // The server itself once it has started; the load test runs the handshake on a thread of its own
+    private Executor serverThread;
+    private final PublicKey publicKey;
+    // One wheel for every pending handshake; 100 ms ticks, 512 slots per ~51 s round
+    private final HashedWheelTimer handshakeTimer = new HashedWheelTimer("HandShaker-Handshake", 100, 512);
+    private final Map<UUID, HashedWheelTimer.Timeout> handshakeTimeouts = new ConcurrentHashMap<>();
+    // Join storms: payloads are queued and processed a few per tick within the configured budget
+    private final HandshakeAdmission admission = new HandshakeAdmission();
+    private final ViolationLog violationLog = new ViolationLog();
+    private final HandshakeResults handshakeResults = new HandshakeResults();
+    private final VerdictTokens verdictTokens = new VerdictTokens();
+    private final TickBudget tickBudget = new TickBudget(e -> LOGGER.warn("Deferred HandShaker task failed: {}", e.getMessage()));
+    // Hands work to the server thread and charges it to the tick budget
+    private final Executor onServerThread = task -> serverThread.execute(() -> tickBudget.run(task));
+    private final PayloadRateLimiter rateLimiter = new PayloadRateLimiter();
+    private final PayloadFingerprints fingerprints = new PayloadFingerprints();
 
-    public record ClientInfo(Set<String> mods, boolean signatureVerified, boolean veltonVerified, String modListNonce, String integrityNonce, String veltonNonce) {}
+    public record ClientInfo(Set<String> mods, boolean signatureVerified, boolean veltonVerified, String modListNonce, String integrityNonce, String veltonNonce, State state) {
+        /**
+         * Handshake progress. A player is AWAITING from join until every expected payload has arrived
+         * or the handshake timeout fires, and JUDGED once the verdict has run.
+         */
+        public enum State { AWAITING, JUDGED }
+
+        public static ClientInfo awaiting() {
+            return new ClientInfo(Collections.emptySet(), false, false, null, null, null, State.AWAITING);
+        }
+
+        /**
+         * Whether the mod list, integrity and (if required) Velton payloads have all arrived
+         */
+        public boolean hasAllPayloads(boolean requireVelton) {
+            return modListNonce != null && integrityNonce != null && (!requireVelton || veltonNonce != null);
+        }
+
+        public ClientInfo withState(State state) {
+            return new ClientInfo(mods, signatureVerified, veltonVerified, modListNonce, integrityNonce, veltonNonce, state);
+        }
+    }
 
     public HandShakerServerMod(IEventBus modEventBus) {
+        this(modEventBus, loadPublicCertificate());
+    }
+
+    /**
+     * Checks client signatures against the given key instead of the bundled public.cer. FML only sees the
+     * public constructor; the load test builds its own instance with a throwaway key.
+     */
+    HandShakerServerMod(IEventBus modEventBus, PublicKey publicKey) {
         instance = this;
         LOGGER.info("HandShaker server initializing");
 
@@ -58,15 +140,30 @@ public class HandShakerServerMod {
             net.neoforged.fml.loading.FMLPaths.CONFIGDIR.get(), LOGGER);
         migrator.migrateIfNeeded();
 
-        blacklistConfig = new BlacklistConfig();
+        blacklistConfig = new BlacklistConfig(executors.io(), metrics, auditLog, violationLog);
         blacklistConfig.load();
+        if (blacklistConfig.isAuditLog()) {
+            auditLog.start();
+        }
+        payloadCapture = new PayloadCapture(new File(net.neoforged.fml.loading.FMLPaths.CONFIGDIR.get().toFile(), "HandShaker/captures"),
+                blacklistConfig.getCaptureMaxMegabytes() * 1024L * 1024L, reason -> LOGGER.warn("Payload capture stopped: {}", reason));
+        if (blacklistConfig.isCapturePayloads()) {
+            payloadCapture.start();
+            LOGGER.info("Capturing handshake payloads to {}", payloadCapture.getFile().getName());
+        }
+        registerMetrics();
+        startMetricsEndpoint();
         
-        loadPublicCertificate();
+        this.publicKey = publicKey;
 
-        playerHistoryDb = new PlayerHistoryDatabase();
+        // Skipped entirely when disabled so Hikari and H2 never load; otherwise it opens in the background
+        if (blacklistConfig.isPlayerdbEnabled()) {
+            playerHistoryDb = new PlayerHistoryDatabase(blacklistConfig.getPlayerdbStorage(), executors.io());
+        }
 
         // Register payloads once via centralized NetworkSetup
         modEventBus.addListener(NetworkSetup::registerPayloads);
+        modEventBus.addListener(this::onRegisterConfigurationTasks);
         NeoForge.EVENT_BUS.register(this);
     }
 
@@ -74,6 +171,42 @@ public class HandShakerServerMod {
         return instance;
     }
 
+    private void registerMetrics() {
+        metrics.gauge("handshake_queue_depth", "Handshake payloads queued for the tick", admission::getQueueDepth);
+        metrics.gauge("handshake_waiting_depth", "Handshake payloads waiting for room in the queue", admission::getWaitingDepth);
+        metrics.gauge("handshake_tick_seconds", "Main-thread time the last tick spent on handshake work",
+                () -> admission.getLastTickMillis() / 1000.0);
+        metrics.gauge("pending_handshakes", "Players whose handshake timeout is still running", handshakeTimeouts::size);
+        metrics.gauge("executor_in_flight", "Background tasks submitted and not yet finished", executors::getInFlight);
+        metrics.gauge("main_thread_tick_seconds", "Main-thread time HandShaker used in the last tick",
+                () -> tickBudget.getLastTickMillis() / 1000.0);
+        metrics.gauge("main_thread_deferred_depth", "Tasks waiting for a tick with main-thread budget left", tickBudget::getDeferredDepth);
+        metrics.counter("main_thread_deferred", "Tasks pushed to a later tick by the main-thread budget", tickBudget::getDeferredCount);
+        metrics.counter("main_thread_over_budget_ticks", "Ticks in which HandShaker went over its main-thread budget", tickBudget::getOverBudgetTicks);
+        metrics.counter("handshake_shed", "Payloads that found the handshake queue full", admission::getShedCount);
+        metrics.counter("payloads_rate_limited", "Payloads dropped by the rate limiter", rateLimiter::getDroppedCount);
+        metrics.counter("payloads_repeated", "Byte-identical repeat payloads skipped", fingerprints::getRepeatCount);
+        metrics.counter("nonce_replays", "Payloads rejected for a reused nonce", nonceCache::getReplayCount);
+        metrics.counter("verdict_tokens_issued", "Verdict tokens handed to players who passed", verdictTokens::getIssuedCount);
+        metrics.counter("verdict_tokens_accepted", "Signature checks skipped thanks to a verdict token", verdictTokens::getAcceptedCount);
+        metrics.counter("verdict_tokens_rejected", "Verdict tokens that were invalid or did not match the client", verdictTokens::getRejectedCount);
+        metrics.counter("audit_dropped", "Audit records dropped because the writer fell behind", auditLog::getDroppedCount);
+        metrics.counter("capture_dropped", "Captured payloads dropped because the writer fell behind", payloadCapture::getDroppedCount);
+    }
+
+    private void startMetricsEndpoint() {
+        int port = blacklistConfig.getMetricsPort();
+        if (port == 0) {
+            return;
+        }
+        try {
+            metricsEndpoint = new MetricsEndpoint(port, metrics, executors.io());
+            LOGGER.info("Serving metrics at http://localhost:{}/metrics", port);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to start metrics endpoint on port {}: {}", port, e.getMessage());
+        }
+    }
+
     private String hashString(String input) {
         byte[] hash = CryptoUtils.hashStringToBytes(input);
         StringBuilder hexString = new StringBuilder();
@@ -86,148 +219,244 @@ public class HandShakerServerMod {
     }
 
     public void handleModsList(final ModsListPayload payload, final IPayloadContext context) {
-        context.enqueueWork(() -> {
-            if (!(context.player() instanceof ServerPlayer player)) return;
+        // Captured before the rate limiter, so a replay sees the same floods the server did
+        payloadCapture.record(profileOf(context).id(), payload);
+        if (!allowPayload(payload.type(), context)) return;
+        submitPayload(profileOf(context).id(), payload.type(), fingerprint(null, payload.mods(), payload.modListHash(), payload.nonce()), () -> {
+            GameProfile profile = profileOf(context);
+            String playerName = profile.name();
             try {
                 if (payload.nonce() == null || payload.nonce().isEmpty()) {
-                    LOGGER.warn("Received mod list from {} with invalid/missing nonce. Rejecting.", player.getName().getString());
-                    player.connection.disconnect(Component.literal("Invalid handshake: missing nonce"));
+                    LOGGER.warn("Received mod list from {} with invalid/missing nonce. Rejecting.", playerName);
+                    metrics.recordKick(KickReason.MALFORMED);
+                    context.disconnect(Component.literal("Invalid handshake: missing nonce"));
                     return;
                 }
                 
-                // Check for replay attack (nonce already used)
-                if (usedNonces.contains(payload.nonce())) {
-                    LOGGER.warn("Received mod list from {} with replay nonce. Kicking.", player.getName().getString());
-                    player.connection.disconnect(Component.literal("Replay attack detected"));
+                // Check the challenge token, or for a replayed nonce from legacy clients
+                if (!checkNonce(profile.id(), playerName, payload.nonce(), "mod list", context)) {
                     return;
                 }
                 
                 // Verify hash matches payload
+                long hashStart = metrics.start();
                 String calculatedHash = hashString(payload.mods());
-                if (!calculatedHash.equals(payload.modListHash())) {
+                boolean hashMatches = calculatedHash.equals(payload.modListHash());
+                metrics.record(HandshakeMetrics.Stage.HASH_CHECK, hashStart);
+                if (!hashMatches) {
                     LOGGER.warn("Received mod list from {} with mismatched hash. Expected {} but got {}", 
-                        player.getName().getString(), calculatedHash, payload.modListHash());
-                    player.connection.disconnect(Component.literal("Invalid handshake: hash mismatch"));
+                        playerName, calculatedHash, payload.modListHash());
+                    metrics.recordKick(KickReason.HASH_MISMATCH);
+                    context.disconnect(Component.literal("Invalid handshake: hash mismatch"));
                     return;
                 }
                 
-                usedNonces.add(payload.nonce());
-                
+                long decodeStart = metrics.start();
                 Set<String> mods = new HashSet<>(Arrays.asList(payload.mods().split(",")));
                 if (payload.mods().isEmpty()) {
                     mods.clear();
                 }
-                LOGGER.info("Received mod list from {} with nonce: {}", player.getName().getString(), payload.nonce());
+                metrics.record(HandshakeMetrics.Stage.DECODE, decodeStart);
+                verdictTokens.modListReceived(profile.id(), mods);
+                blacklistConfig.getResumption().modListReceived(profile.id(), mods);
+                LOGGER.debug("Received mod list from {} with nonce: {}", playerName, payload.nonce());
+                auditLog.record(AuditLog.Type.MOD_LIST, profile.id(), playerName, "received", mods);
 
+                // Sync with database on a virtual thread, so a slow write never stalls the tick. Even handing
+                // it off waits for a tick with budget left
                 if (playerHistoryDb != null) {
-                    playerHistoryDb.syncPlayerMods(player.getUUID(), player.getName().getString(), mods);
+                    tickBudget.runOrDefer(() -> {
+                        long syncStart = metrics.start();
+                        playerHistoryDb.syncPlayerModsAsync(profile.id(), playerName, mods)
+                                .whenComplete((ignored, e) -> metrics.record(HandshakeMetrics.Stage.DB_SYNC, syncStart))
+                                .exceptionally(e -> {
+                                    LOGGER.warn("Failed to sync player mods to database: {}", e.getMessage());
+                                    return null;
+                                });
+                    });
                 }
 
-                clients.compute(player.getUUID(), (uuid, oldInfo) ->
+                clients.compute(profile.id(), (uuid, oldInfo) ->
                         new ClientInfo(mods,
                                 oldInfo != null && oldInfo.signatureVerified(),
                                 oldInfo != null && oldInfo.veltonVerified(),
                                 payload.nonce(),
                                 oldInfo != null ? oldInfo.integrityNonce() : null,
-                                oldInfo != null ? oldInfo.veltonNonce() : null));
+                                oldInfo != null ? oldInfo.veltonNonce() : null,
+                                oldInfo != null ? oldInfo.state() : ClientInfo.State.AWAITING));
+                onHandshakePayload(context, profile);
             } catch (Exception e) {
-                LOGGER.error("Failed to decode mod list from {}. Terminating connection.", player.getName().getString(), e);
-                player.connection.disconnect(Component.literal("Corrupted handshake data"));
+                LOGGER.error("Failed to decode mod list from {}. Terminating connection.", playerName, e);
+                metrics.recordKick(KickReason.MALFORMED);
+                context.disconnect(Component.literal("Corrupted handshake data"));
             }
         });
     }
 
     public void handleIntegrity(final IntegrityPayload payload, final IPayloadContext context) {
-        context.enqueueWork(() -> {
-            if (!(context.player() instanceof ServerPlayer player)) return;
+        payloadCapture.record(profileOf(context).id(), payload);
+        if (!allowPayload(payload.type(), context)) return;
+        submitPayload(profileOf(context).id(), payload.type(), fingerprint(payload.signature(), payload.jarHash(), payload.nonce()), () -> {
+            GameProfile profile = profileOf(context);
+            String playerName = profile.name();
             try {
                 if (payload.nonce() == null || payload.nonce().isEmpty()) {
-                    LOGGER.warn("Received integrity payload from {} with invalid/missing nonce. Rejecting.", player.getName().getString());
-                    player.connection.disconnect(Component.literal("Invalid handshake: missing nonce"));
+                    LOGGER.warn("Received integrity payload from {} with invalid/missing nonce. Rejecting.", playerName);
+                    metrics.recordKick(KickReason.MALFORMED);
+                    context.disconnect(Component.literal("Invalid handshake: missing nonce"));
                     return;
                 }
-                
-                byte[] clientSignature = payload.signature();
-                String jarHash = payload.jarHash();
-                boolean verified = false;
-                
-                // Verification logic (matching Fabric/Paper):
-                // Check if client sent a signature and jar hash
-                if (jarHash != null && !jarHash.isEmpty() && clientSignature != null && clientSignature.length > 0) {
-                    // Check if this is a 1-byte verification flag from the client (backward compatibility)
-                    // or an actual RSA signature for server-side verification
-                    if (clientSignature.length == 1) {
-                        // Client sent a local verification flag: {1} = verified, {0} = not verified
-                        boolean signatureVerified = clientSignature[0] == 1;
-                        if (signatureVerified) {
-                            LOGGER.info("Integrity check for {}: JAR signature VERIFIED locally by client (hash: {})", 
-                                player.getName().getString(), jarHash.substring(0, Math.min(8, jarHash.length())));
-                            verified = true;
-                        } else {
-                            LOGGER.warn("Integrity check for {}: client reported signature NOT verified", player.getName().getString());
-                            verified = false;
-                        }
-                    } else {
-                        // Client sent an actual RSA signature for server-side verification
-                        if (publicKey == null) {
-                            LOGGER.warn("Cannot verify signature for {}: public key not loaded", player.getName().getString());
-                            verified = false;
+                if (!checkNonce(profile.id(), playerName, payload.nonce(), "integrity payload", context)) {
+                    return;
+                }
+            } catch (Exception e) {
+                LOGGER.error("Failed to decode integrity payload from {}. Terminating connection.", playerName, e);
+                metrics.recordKick(KickReason.MALFORMED);
+                context.disconnect(Component.literal("Corrupted handshake data"));
+                return;
+            }
+
+            // Another backend verified this JAR moments ago and the mod list matched its token
+            if (verdictTokens.acceptIntegrity(profile.id(), payload.jarHash())) {
+                LOGGER.debug("Integrity check for {}: accepted verdict token (hash: {})", playerName, StringUtils.truncate(payload.jarHash(), 8));
+                recordIntegrity(payload, context, profile, true);
+                return;
+            }
+
+            // The same client reconnecting shortly after it left, with the same mods and JAR
+            Boolean resumed = blacklistConfig.getResumption().resumeIntegrity(profile.id(), payload.jarHash(), blacklistConfig.getGeneration());
+            if (resumed != null) {
+                LOGGER.debug("Integrity check for {}: resumed previous session (hash: {})", playerName, StringUtils.truncate(payload.jarHash(), 8));
+                recordIntegrity(payload, context, profile, resumed);
+                return;
+            }
+
+            // RSA runs on the CPU pool; the handshake timeout is held until the result is back on the server thread
+            BooleanSupplier release = admission.hold(profile.id());
+            CompletableFuture.supplyAsync(() -> verifyIntegrity(payload, profile.id(), playerName), executors.cpu())
+                    .exceptionally(e -> {
+                        LOGGER.warn("Integrity check for {}: error verifying signature: {}", playerName, e.getMessage());
+                        return false;
+                    })
+                    .thenAcceptAsync(verified -> {
+                        if (!release.getAsBoolean()) return;
+                        // Only a check run here vouches for a fresh token
+                        verdictTokens.jarChecked(profile.id(), payload.jarHash(), verified);
+                        recordIntegrity(payload, context, profile, verified);
+                    }, onServerThread);
+        });
+    }
+
+    private void recordIntegrity(IntegrityPayload payload, IPayloadContext context, GameProfile profile, boolean verified) {
+        LOGGER.debug("Integrity check for {} with nonce {}: {}", profile.name(), payload.nonce(), verified ? "PASSED" : "FAILED");
+        auditLog.record(AuditLog.Type.INTEGRITY, profile.id(), profile.name(), verified ? "valid" : "invalid", null);
+        blacklistConfig.getResumption().jarChecked(profile.id(), payload.jarHash(), verified);
+
+        clients.compute(profile.id(), (uuid, oldInfo) ->
+                new ClientInfo(oldInfo != null ? oldInfo.mods() : Collections.emptySet(),
+                        verified,
+                        oldInfo != null && oldInfo.veltonVerified(),
+                        oldInfo != null ? oldInfo.modListNonce() : null,
+                        payload.nonce(),
+                        oldInfo != null ? oldInfo.veltonNonce() : null,
+                        oldInfo != null ? oldInfo.state() : ClientInfo.State.AWAITING));
+        onHandshakePayload(context, profile);
+    }
+
+    /**
+     * Verdict tokens are a single HMAC, so they are checked on arrival instead of queued; that also puts
+     * them ahead of the mod list that follows
+     */
+    public void handleVerdictToken(final VerdictTokenPayload payload, final IPayloadContext context) {
+        if (!allowPayload(payload.type(), context)) return;
+        if (!verdictTokens.isEnabled()) return;
+        GameProfile profile = profileOf(context);
+        if (!verdictTokens.present(profile.id(), payload.token())) {
+            LOGGER.debug("Ignoring verdict token from {}: forged, expired or from another generation", profile.name());
+        }
+    }
+
+    private boolean verifyIntegrity(IntegrityPayload payload, UUID playerUuid, String playerName) {
+        byte[] clientSignature = payload.signature();
+        String jarHash = payload.jarHash();
+        boolean verified = false;
+        
+        // Verification logic (matching Fabric/Paper):
+        // Check if client sent a signature and jar hash
+        if (jarHash != null && !jarHash.isEmpty() && clientSignature != null && clientSignature.length > 0) {
+            // Check if this is a 1-byte verification flag from the client (backward compatibility)
+            // or an actual RSA signature for server-side verification
+            if (clientSignature.length == 1) {
+                // Client sent a local verification flag: {1} = verified, {0} = not verified
+                boolean signatureVerified = clientSignature[0] == 1;
+                if (signatureVerified) {
+                    LOGGER.debug("Integrity check for {}: JAR signature VERIFIED locally by client (hash: {})", 
+                        playerName, jarHash.substring(0, Math.min(8, jarHash.length())));
+                    verified = true;
+                } else {
+                    LOGGER.warn("Integrity check for {}: client reported signature NOT verified", playerName);
+                    verified = false;
+                }
+            } else {
+                // Client sent an actual RSA signature for server-side verification
+                if (publicKey == null) {
+                    LOGGER.warn("Cannot verify signature for {}: public key not loaded", playerName);
+                    verified = false;
+                } else {
+                    try {
+                        HandshakeEvents.SignatureVerification event = new HandshakeEvents.SignatureVerification("integrity");
+                        event.begin();
+                        long verifyStart = metrics.start();
+                        verified = verifySignatureWithPublicKey(jarHash, clientSignature);
+                        metrics.record(HandshakeMetrics.Stage.SIGNATURE_VERIFY, verifyStart);
+                        event.finish(playerUuid, knownModCount(playerUuid), verified ? "valid" : "invalid");
+                        if (verified) {
+                            LOGGER.debug("Integrity check for {}: JAR SIGNED with VALID SIGNATURE (hash: {})", playerName, jarHash.substring(0, Math.min(8, jarHash.length())));
                         } else {
-                            try {
-                                verified = verifySignatureWithPublicKey(jarHash, clientSignature);
-                                if (verified) {
-                                    LOGGER.info("Integrity check for {}: JAR SIGNED with VALID SIGNATURE (hash: {})", player.getName().getString(), jarHash.substring(0, Math.min(8, jarHash.length())));
-                                } else {
-                                    LOGGER.warn("Integrity check for {}: signature verification FAILED - signature was not created with our key", player.getName().getString());
-                                }
-                            } catch (Exception e) {
-                                LOGGER.warn("Integrity check for {}: error verifying signature: {}", player.getName().getString(), e.getMessage());
-                                verified = false;
-                            }
+                            LOGGER.warn("Integrity check for {}: signature verification FAILED - signature was not created with our key", playerName);
                         }
+                    } catch (Exception e) {
+                        LOGGER.warn("Integrity check for {}: error verifying signature: {}", playerName, e.getMessage());
+                        verified = false;
                     }
-                } else if (clientSignature == null || clientSignature.length == 0) {
-                    LOGGER.warn("Integrity check for {}: no signature data received - client not signed", player.getName().getString());
-                    verified = false;
-                } else if (jarHash == null || jarHash.isEmpty()) {
-                    LOGGER.warn("Integrity check for {}: no JAR hash received", player.getName().getString());
-                    verified = false;
                 }
-                
-                LOGGER.info("Integrity check for {} with nonce {}: {}", player.getName().getString(), payload.nonce(), verified ? "PASSED" : "FAILED");
-
-                final boolean finalVerified = verified;
-                clients.compute(player.getUUID(), (uuid, oldInfo) ->
-                        new ClientInfo(oldInfo != null ? oldInfo.mods() : Collections.emptySet(),
-                                finalVerified,
-                                oldInfo != null && oldInfo.veltonVerified(),
-                                oldInfo != null ? oldInfo.modListNonce() : null,
-                                payload.nonce(),
-                                oldInfo != null ? oldInfo.veltonNonce() : null));
-                blacklistConfig.checkPlayer(player, clients.get(player.getUUID()));
-            } catch (Exception e) {
-                LOGGER.error("Failed to decode integrity payload from {}. Terminating connection.", player.getName().getString(), e);
-                player.connection.disconnect(Component.literal("Corrupted handshake data"));
             }
-        });
+        } else if (clientSignature == null || clientSignature.length == 0) {
+            LOGGER.warn("Integrity check for {}: no signature data received - client not signed", playerName);
+            verified = false;
+        } else if (jarHash == null || jarHash.isEmpty()) {
+            LOGGER.warn("Integrity check for {}: no JAR hash received", playerName);
+            verified = false;
+        }
+        return verified;
     }
 
     public void handleVelton(final VeltonPayload payload, final IPayloadContext context) {
-        context.enqueueWork(() -> {
+        payloadCapture.record(context.player().getUUID(), payload);
+        if (!allowPayload(payload.type(), context)) return;
+        submitPayload(context.player().getUUID(), payload.type(), fingerprint(null, payload.signatureHash(), payload.nonce()), () -> {
             if (!(context.player() instanceof ServerPlayer player)) return;
             try {
                 if (payload.nonce() == null || payload.nonce().isEmpty()) {
                     LOGGER.warn("Received Velton payload from {} with invalid/missing nonce. Rejecting.", player.getName().getString());
+                    metrics.recordKick(KickReason.MALFORMED);
                     player.connection.disconnect(Component.literal("Invalid handshake: missing nonce"));
                     return;
                 }
+                if (!checkNonce(player.getUUID(), player.getName().getString(), payload.nonce(), "Velton payload", context)) {
+                    return;
+                }
                 String signatureHash = payload.signatureHash();
                 boolean verified = signatureHash != null && !signatureHash.isEmpty();
 
-                LOGGER.info("Velton check for {} with nonce {}: {}", player.getName().getString(), payload.nonce(), verified ? "PASSED" : "FAILED");
+                LOGGER.debug("Velton check for {} with nonce {}: {}", player.getName().getString(), payload.nonce(), verified ? "PASSED" : "FAILED");
+                auditLog.record(AuditLog.Type.VELTON, player.getUUID(), player.getName().getString(), verified ? "valid" : "invalid", null);
 
                 if (!verified) {
                     LOGGER.warn("Kicking {} - Velton signature verification failed", player.getName().getString());
+                    metrics.recordKick(KickReason.VELTON);
+                    auditLog.record(AuditLog.Type.KICK, player.getUUID(), player.getName().getString(), KickReason.VELTON.label(), "invalid signature");
+                    violationLog.record(player.getUUID(), player.getName().getString(), KickReason.VELTON, null, null);
                     player.connection.disconnect(Component.literal("Anti-cheat verification failed"));
                     return;
                 }
@@ -239,45 +468,429 @@ public class HandShakerServerMod {
                                 finalVerified,
                                 oldInfo != null ? oldInfo.modListNonce() : null,
                                 oldInfo != null ? oldInfo.integrityNonce() : null,
-                                payload.nonce()));
-                blacklistConfig.checkPlayer(player, clients.get(player.getUUID()));
+                                payload.nonce(),
+                                oldInfo != null ? oldInfo.state() : ClientInfo.State.AWAITING));
+                onHandshakePayload(player);
             } catch (Exception e) {
                 LOGGER.error("Failed to decode Velton payload from {}. Terminating connection.", player.getName().getString(), e);
+                metrics.recordKick(KickReason.MALFORMED);
                 player.connection.disconnect(Component.literal("Corrupted handshake data"));
             }
         });
     }
 
+    /**
+     * Accepts a valid challenge token, or a random nonce from a legacy client that was not used before.
+     * Disconnects the player otherwise.
+     */
+    private boolean checkNonce(UUID playerUuid, String playerName, String nonce, String payloadType, IPayloadContext context) {
+        if (HandshakeChallenge.isToken(nonce)) {
+            if (challenge.verify(playerUuid, nonce)) {
+                return true;
+            }
+            LOGGER.warn("Received {} from {} with invalid or expired challenge token. Kicking.", payloadType, playerName);
+            metrics.recordKick(KickReason.REPLAY);
+            context.disconnect(Component.literal("Invalid handshake: bad challenge token"));
+            return false;
+        }
+        if (!nonceCache.markUsed(nonce)) {
+            LOGGER.warn("Received {} from {} with replay nonce. Kicking.", payloadType, playerName);
+            metrics.recordKick(KickReason.REPLAY);
+            context.disconnect(Component.literal("Replay attack detected"));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Applies the per-channel rate limit before a payload is looked at. Floods end in a kick.
+     */
+    private boolean allowPayload(CustomPacketPayload.Type<?> type, IPayloadContext context) {
+        GameProfile profile = profileOf(context);
+        String channelName = type.id().toString();
+        PayloadRateLimiter.Result result = rateLimiter.tryAcquire(profile.id(), channelName);
+        if (result == PayloadRateLimiter.Result.ABUSE) {
+            LOGGER.warn("Kicking {} - flooding {}", profile.name(), type.id());
+            metrics.recordKick(KickReason.RATE_LIMIT);
+            auditLog.record(AuditLog.Type.KICK, profile.id(), profile.name(), KickReason.RATE_LIMIT.label(), channelName);
+            violationLog.record(profile.id(), profile.name(), KickReason.RATE_LIMIT, null, null);
+            context.disconnect(Component.literal("Too many handshake packets"));
+        }
+        if (result != PayloadRateLimiter.Result.ALLOWED) {
+            HandshakeEvents.PayloadReceived event = new HandshakeEvents.PayloadReceived(channelName);
+            event.begin();
+            event.finish(profile.id(), knownModCount(profile.id()), "rate_limited");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queues a payload's processing. A byte-identical repeat of the previous payload on the channel is
+     * skipped when its turn comes, since the first copy already produced the outcome.
+     */
+    private void submitPayload(UUID playerUuid, CustomPacketPayload.Type<?> type, long fingerprint, Runnable work) {
+        String channelName = type.id().toString();
+        admission.submit(playerUuid, () -> {
+            HandshakeEvents.PayloadReceived event = new HandshakeEvents.PayloadReceived(channelName);
+            event.begin();
+            if (fingerprints.markSeen(playerUuid, channelName, fingerprint)) {
+                work.run();
+                event.finish(playerUuid, knownModCount(playerUuid), "processed");
+            } else {
+                event.finish(playerUuid, knownModCount(playerUuid), "skipped");
+            }
+        });
+    }
+
+    /**
+     * Mods received from a player so far, for the flight recorder events
+     */
+    private int knownModCount(UUID playerUuid) {
+        ClientInfo info = clients.get(playerUuid);
+        return info != null ? info.mods().size() : 0;
+    }
+
+    /**
+     * Fingerprint of a payload's fields. The codec has already consumed the raw bytes by the time
+     * a handler runs, so the decoded fields stand in for them.
+     */
+    private long fingerprint(byte[] data, String... fields) {
+        long fingerprint = data != null ? fingerprints.hash(data) : 0;
+        for (String field : fields) {
+            fingerprint = PayloadFingerprints.combine(fingerprint, fingerprints.hash(field));
+        }
+        return fingerprint;
+    }
+
+    /**
+     * The profile behind a payload. There is no player entity yet during the configuration phase.
+     */
+    private static GameProfile profileOf(IPayloadContext context) {
+        if (context.listener() instanceof ServerConfigurationPacketListenerImpl configuration) {
+            return configuration.getOwner();
+        }
+        return context.player().getGameProfile();
+    }
+
+    private void onHandshakePayload(IPayloadContext context, GameProfile profile) {
+        if (context.listener() instanceof ServerConfigurationPacketListenerImpl configuration) {
+            onConfigurationPayload(configuration, profile);
+        } else if (context.player() instanceof ServerPlayer player) {
+            onHandshakePayload(player);
+        }
+    }
+
+    /**
+     * Runs the handshake during configuration, so rejected players never load chunks or entities.
+     * Older clients don't listen for the challenge there and only take part after joining.
+     */
+    private void onRegisterConfigurationTasks(RegisterConfigurationTasksEvent event) {
+        if (event.getListener() instanceof ServerConfigurationPacketListenerImpl configuration) {
+            configure(configuration, event::register);
+        }
+    }
+
+    void configure(ServerConfigurationPacketListenerImpl configuration, Consumer<ConfigurationTask> tasks) {
+        GameProfile profile = configuration.getOwner();
+        warmUp(profile.id());
+        if (configuration.hasChannel(ChallengePayload.TYPE)) {
+            tasks.accept(new HandshakeTask(challenge.issue(profile.id())));
+            startConfigurationHandshake(configuration, profile);
+        }
+    }
+
+    /**
+     * Loads the player's last active mods, Bedrock status and verdict on the I/O executor while
+     * configuration runs, so the checks at the end of it and at join don't start cold
+     */
+    private void warmUp(UUID uuid) {
+        executors.io().execute(() -> {
+            Set<String> lastMods = playerHistoryDb != null ? playerHistoryDb.prefetchActiveMods(uuid) : Set.of();
+            blacklistConfig.warmUp(uuid, lastMods);
+        });
+    }
+
+    private void startConfigurationHandshake(ServerConfigurationPacketListenerImpl listener, GameProfile profile) {
+        UUID uuid = profile.id();
+        clients.put(uuid, ClientInfo.awaiting());
+        scheduleConfigurationTimeout(listener, profile);
+    }
+
+    private void scheduleConfigurationTimeout(ServerConfigurationPacketListenerImpl listener, GameProfile profile) {
+        UUID uuid = profile.id();
+        HashedWheelTimer.Timeout timeout = handshakeTimer.schedule(() -> {
+            handshakeTimeouts.remove(uuid);
+            if (serverThread != null) {
+                onServerThread.execute(() -> onConfigurationTimeout(listener, profile));
+            }
+        }, blacklistConfig.getHandshakeTimeoutSeconds(), TimeUnit.SECONDS);
+        HashedWheelTimer.Timeout previous = handshakeTimeouts.put(uuid, timeout);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    private void onConfigurationTimeout(ServerConfigurationPacketListenerImpl listener, GameProfile profile) {
+        if (admission.isPending(profile.id())) {
+            // Payloads are still queued behind a join storm; wait for them rather than judge without them
+            scheduleConfigurationTimeout(listener, profile);
+            return;
+        }
+        finishConfiguration(listener, profile);
+    }
+
+    private void onConfigurationPayload(ServerConfigurationPacketListenerImpl listener, GameProfile profile) {
+        ClientInfo info = clients.get(profile.id());
+        // Velton only talks after joining, so configuration waits for the mod list and integrity data
+        if (info == null || !info.hasAllPayloads(false)) return;
+        HashedWheelTimer.Timeout timeout = handshakeTimeouts.remove(profile.id());
+        // If the cancel fails the timeout already fired and finishes the configuration itself
+        if (timeout != null && timeout.cancel()) {
+            finishConfiguration(listener, profile);
+        }
+    }
+
+    /**
+     * Ends the configuration-phase handshake with whatever has arrived. Players the rules reject are
+     * disconnected here; everyone else continues into the world and is judged again as they join.
+     */
+    private void finishConfiguration(ServerConfigurationPacketListenerImpl listener, GameProfile profile) {
+        ClientInfo info = clients.get(profile.id());
+        if (info == null) return;
+        if (!listener.getConnection().isConnected()) {
+            // Left during configuration; there is no logout event for that
+            clients.remove(profile.id());
+            handshakeResults.forget(profile.id());
+            verdictTokens.forget(profile.id());
+            blacklistConfig.getResumption().suspend(profile.id());
+            admission.forget(profile.id());
+            rateLimiter.forget(profile.id());
+            fingerprints.forget(profile.id());
+            blacklistConfig.forgetWarmUp(profile.id());
+            return;
+        }
+        BlacklistConfig.Rejection rejection = blacklistConfig.getRejection(profile.id(), profile.name(), info);
+        if (rejection != null) {
+            LOGGER.debug("Rejected {} during configuration: {}", profile.name(), rejection.message());
+            metrics.recordKick(rejection.reason());
+            auditLog.record(AuditLog.Type.KICK, profile.id(), profile.name(), rejection.reason().label(), rejection.message());
+            violationLog.record(profile.id(), profile.name(), rejection.reason(), rejection.mods(), null);
+            listener.disconnect(Component.literal(rejection.message()));
+            clients.remove(profile.id());
+            handshakeResults.forget(profile.id());
+            verdictTokens.forget(profile.id());
+            blacklistConfig.getResumption().suspend(profile.id());
+            return;
+        }
+        listener.finishCurrentTask(HandshakeTask.TYPE);
+    }
+
+    /**
+     * Starts waiting for a joining player's handshake. The verdict runs as soon as every expected
+     * payload has arrived, or when the handshake timeout fires for clients that never finish.
+     * Players that completed the handshake during configuration are judged right away.
+     */
+    private void startHandshake(ServerPlayer player) {
+        UUID uuid = player.getUUID();
+        ClientInfo info = clients.compute(uuid, (key, configured) ->
+                configured != null && configured.modListNonce() != null ? configured : ClientInfo.awaiting());
+        if (info.hasAllPayloads(blacklistConfig.isRequireVelton())) {
+            judge(player, info);
+            return;
+        }
+        scheduleTimeout(player);
+    }
+
+    private void scheduleTimeout(ServerPlayer player) {
+        UUID uuid = player.getUUID();
+        HashedWheelTimer.Timeout timeout = handshakeTimer.schedule(() -> {
+            if (serverThread != null) {
+                onServerThread.execute(() -> onHandshakeTimeout(player));
+            }
+        }, blacklistConfig.getHandshakeTimeoutSeconds(), TimeUnit.SECONDS);
+        HashedWheelTimer.Timeout previous = handshakeTimeouts.put(uuid, timeout);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    private void cancelHandshake(UUID uuid) {
+        HashedWheelTimer.Timeout timeout = handshakeTimeouts.remove(uuid);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private void onHandshakePayload(ServerPlayer player) {
+        ClientInfo info = clients.get(player.getUUID());
+        if (info == null) return;
+        if (info.state() == ClientInfo.State.JUDGED) {
+            // Late payload after the verdict: re-check with what we know now, when the tick has time
+            tickBudget.runOrDefer(() -> recheck(player));
+            return;
+        }
+        if (info.hasAllPayloads(blacklistConfig.isRequireVelton())) {
+            cancelHandshake(player.getUUID());
+            judge(player, info);
+        }
+    }
+
+    private void onHandshakeTimeout(ServerPlayer player) {
+        handshakeTimeouts.remove(player.getUUID());
+        if (player.connection == null) return; // Player disconnected
+        ClientInfo info = clients.get(player.getUUID());
+        if (info == null || info.state() == ClientInfo.State.JUDGED) return;
+        if (admission.isPending(player.getUUID())) {
+            scheduleTimeout(player);
+            return;
+        }
+        if (blacklistConfig.isRequireVelton() && !info.mods().isEmpty() && info.veltonNonce() == null) {
+            LOGGER.warn("Kicking {} - no Velton payload received within {}s", player.getName().getString(), blacklistConfig.getHandshakeTimeoutSeconds());
+            metrics.recordKick(KickReason.VELTON);
+            auditLog.record(AuditLog.Type.KICK, player.getUUID(), player.getName().getString(), KickReason.VELTON.label(), "no payload");
+            violationLog.record(player.getUUID(), player.getName().getString(), KickReason.VELTON, null, null);
+            publish(player, new HandshakeResult(player.getUUID(), info.mods(), true, info.signatureVerified(), false,
+                    HandshakeResult.Verdict.KICKED, KickReason.VELTON));
+            player.connection.disconnect(Component.literal("Anti-cheat verification failed"));
+            return;
+        }
+        judge(player, info);
+    }
+
+    /**
+     * Re-checks a judged player against their latest handshake data, unless they left meanwhile
+     */
+    private void recheck(ServerPlayer player) {
+        ClientInfo info = clients.get(player.getUUID());
+        if (info == null || player.hasDisconnected()) return;
+        HandshakeResult result = blacklistConfig.checkPlayer(player, info);
+        publish(player, result);
+        sendVerdictToken(player, result);
+    }
+
+    private void judge(ServerPlayer player, ClientInfo info) {
+        ClientInfo judged = info.withState(ClientInfo.State.JUDGED);
+        clients.put(player.getUUID(), judged);
+        HandshakeResult result = blacklistConfig.checkPlayer(player, judged);
+        publish(player, result);
+        sendVerdictToken(player, result);
+    }
+
+    /**
+     * Hands a player who passed with a verified JAR a token other backends can accept instead of
+     * checking the signature again
+     */
+    private void sendVerdictToken(ServerPlayer player, HandshakeResult result) {
+        if (result.isKicked() || !result.signatureVerified() || !player.connection.hasChannel(VerdictTokenPayload.TYPE)) return;
+        String token = verdictTokens.issue(player.getUUID(), result.mods());
+        if (token != null) {
+            PacketDistributor.sendToPlayer(player, new VerdictTokenPayload(token));
+        }
+    }
+
+    /**
+     * Stores a verdict for the lookup API and posts {@link HandshakeCompletedEvent} for the first one
+     */
+    private void publish(ServerPlayer player, HandshakeResult result) {
+        if (!handshakeResults.complete(result)) return;
+        try {
+            NeoForge.EVENT_BUS.post(new HandshakeCompletedEvent(player, result));
+        } catch (RuntimeException e) {
+            LOGGER.warn("A HandshakeCompletedEvent listener failed for {}: {}", player.getName().getString(), e.getMessage());
+        }
+    }
+
     @SubscribeEvent
     public void onServerStarting(ServerStartingEvent event) {
         this.server = event.getServer();
+        setServerThread(server);
+    }
+
+    void setServerThread(Executor serverThread) {
+        this.serverThread = serverThread;
     }
 
     @SubscribeEvent
     public void onServerStopping(ServerStoppingEvent event) {
-        scheduler.shutdown();
+        stop();
+    }
+
+    void stop() {
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+        }
+        handshakeTimer.stop();
+        admission.clear();
+        tickBudget.clear();
+        handshakeResults.clear();
+        verdictTokens.clear();
+        blacklistConfig.getResumption().clear();
+        rateLimiter.clear();
+        fingerprints.clear();
+        // Let in-flight database syncs and config writes finish before storage closes
+        if (!executors.shutdown(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+            LOGGER.warn("Background tasks did not finish within {}s of shutdown", SHUTDOWN_WAIT_SECONDS);
+        }
         if (playerHistoryDb != null) {
             playerHistoryDb.close();
         }
+        auditLog.stop();
+        payloadCapture.stop();
+    }
+
+    @SubscribeEvent
+    public void onServerTickStart(ServerTickEvent.Pre event) {
+        startTick();
+    }
+
+    void startTick() {
+        // Work deferred by the main-thread budget runs first, before the tick's own work
+        tickBudget.setBudget(blacklistConfig.getMainThreadBudgetMillis());
+        tickBudget.startTick();
+    }
+
+    @SubscribeEvent
+    public void onServerTick(ServerTickEvent.Post event) {
+        endTick();
+    }
+
+    void endTick() {
+        // Limits are refreshed every tick so reloads apply right away
+        admission.setLimits(blacklistConfig.getHandshakeConcurrency(), blacklistConfig.getHandshakeQueueSize(),
+                blacklistConfig.getHandshakeTickBudgetMillis());
+        rateLimiter.setLimits(blacklistConfig.getRateLimitMessages(), blacklistConfig.getRateLimitWindowSeconds(),
+                blacklistConfig.getRateLimitKickAfter());
+        rateLimiter.expireIdle();
+        verdictTokens.configure(blacklistConfig.getVerdictTokenSecret(), blacklistConfig.getVerdictTokenTtlSeconds(),
+                blacklistConfig.getVerdictTokenGeneration());
+        tickBudget.run(admission::tick);
     }
 
     @SubscribeEvent
     public void onPlayerJoin(PlayerEvent.PlayerLoggedInEvent event) {
         if (!(event.getEntity() instanceof ServerPlayer player)) return;
-        
-        scheduler.schedule(() -> {
-            if (server == null) return;
-            server.execute(() -> {
-                if (player.connection == null) return;
-                ClientInfo info = clients.computeIfAbsent(player.getUUID(), uuid -> new ClientInfo(Collections.emptySet(), false, false, null, null, null));
-                blacklistConfig.checkPlayer(player, info);
-            });
-        }, 5, TimeUnit.SECONDS);
+
+        ClientInfo configured = clients.get(player.getUUID());
+        // Older clients don't listen for challenges and keep sending random nonces
+        if ((configured == null || configured.modListNonce() == null) && player.connection.hasChannel(ChallengePayload.TYPE)) {
+            PacketDistributor.sendToPlayer(player, new ChallengePayload(challenge.issue(player.getUUID())));
+        }
+
+        tickBudget.run(() -> startHandshake(player));
     }
 
     @SubscribeEvent
     public void onPlayerLeave(PlayerEvent.PlayerLoggedOutEvent event) {
+        cancelHandshake(event.getEntity().getUUID());
+        admission.forget(event.getEntity().getUUID());
+        rateLimiter.forget(event.getEntity().getUUID());
+        fingerprints.forget(event.getEntity().getUUID());
         clients.remove(event.getEntity().getUUID());
+        handshakeResults.forget(event.getEntity().getUUID());
+        verdictTokens.forget(event.getEntity().getUUID());
+        blacklistConfig.getResumption().suspend(event.getEntity().getUUID());
+        blacklistConfig.forgetWarmUp(event.getEntity().getUUID());
     }
 
     @SubscribeEvent
@@ -297,6 +910,57 @@ public class HandShakerServerMod {
         return server;
     }
 
+    public NonceReplayCache getNonceCache() {
+        return nonceCache;
+    }
+
+    public HandShakerExecutors getExecutors() {
+        return executors;
+    }
+
+    public HandshakeMetrics getMetrics() {
+        return metrics;
+    }
+
+    public AuditLog getAuditLog() {
+        return auditLog;
+    }
+
+    public PayloadCapture getPayloadCapture() {
+        return payloadCapture;
+    }
+
+    /**
+     * The key client signatures are checked against, or null if public.cer is missing
+     */
+    public PublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    public HandshakeAdmission getAdmission() {
+        return admission;
+    }
+
+    public TickBudget getTickBudget() {
+        return tickBudget;
+    }
+
+    public ViolationLog getViolationLog() {
+        return violationLog;
+    }
+
+    public VerdictTokens getVerdictTokens() {
+        return verdictTokens;
+    }
+
+    public PayloadRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public PayloadFingerprints getFingerprints() {
+        return fingerprints;
+    }
+
     public Map<UUID, ClientInfo> getClients() {
         return clients;
     }
@@ -306,11 +970,30 @@ public class HandShakerServerMod {
         return info != null ? info.mods() : null;
     }
 
+    /**
+     * The player's handshake result, completed on the server thread once their check finishes. Already
+     * complete for a judged player. Cancelled for a player who is not connected, or who leaves before
+     * the verdict.
+     */
+    public CompletableFuture<HandshakeResult> getHandshakeResult(UUID player) {
+        boolean connected = clients.containsKey(player) || server != null && server.getPlayerList().getPlayer(player) != null;
+        return handshakeResults.lookup(player, connected);
+    }
+
     public void checkAllPlayers() {
         if (server == null) return;
         LOGGER.info("Re-checking all online players...");
         for (ServerPlayer player : server.getPlayerList().getPlayers()) {
-            blacklistConfig.checkPlayer(player, clients.getOrDefault(player.getUUID(), new ClientInfo(Collections.emptySet(), false, false, null, null, null)));
+            ClientInfo info = clients.get(player.getUUID());
+            // Players still mid-handshake get their verdict when it completes
+            if (info != null && info.state() == ClientInfo.State.AWAITING) continue;
+            if (info == null) {
+                // No handshake data at all: the check is a kick, which never waits
+                publish(player, blacklistConfig.checkPlayer(player, ClientInfo.awaiting()));
+                continue;
+            }
+            // Spread over as many ticks as the main-thread budget needs
+            tickBudget.runOrDefer(() -> recheck(player));
         }
     }
 
@@ -357,23 +1040,22 @@ public class HandShakerServerMod {
         @Override public Type<? extends CustomPacketPayload> type() { return TYPE; }
     }
 
-    private void loadPublicCertificate() {
+    private static PublicKey loadPublicCertificate() {
         try (var certStream = HandShakerServerMod.class.getClassLoader().getResourceAsStream("public.cer")) {
             if (certStream == null) {
                 LOGGER.warn("⚠️  public.cer not found in resources. Signature verification will be disabled.");
                 LOGGER.warn("⚠️  Mods signed with ANY certificate will be accepted.");
-                publicKey = null;
-                return;
+                return null;
             }
             
             CertificateFactory cf = CertificateFactory.getInstance("X.509");
             Certificate cert = cf.generateCertificate(certStream);
-            publicKey = cert.getPublicKey();
             LOGGER.info("✓ Loaded public certificate for signature verification");
+            return cert.getPublicKey();
         } catch (Exception e) {
             LOGGER.warn("Failed to load public.cer: {}", e.getMessage());
             LOGGER.warn("⚠️  Signature verification will be disabled.");
-            publicKey = null;
+            return null;
         }
     }
 
@@ -419,4 +1101,42 @@ public class HandShakerServerMod {
                 VeltonPayload::new);
         @Override public Type<? extends CustomPacketPayload> type() { return TYPE; }
     }
+
+    /**
+     * Configuration task that sends the challenge. The client answers with its mod list and
+     * integrity payloads, and finishConfiguration completes the task.
+     */
+    public record HandshakeTask(String token) implements ICustomConfigurationTask {
+        public static final ConfigurationTask.Type TYPE = new ConfigurationTask.Type(MOD_ID + ":handshake");
+
+        @Override
+        public void run(Consumer<CustomPacketPayload> sender) {
+            sender.accept(new ChallengePayload(token));
+        }
+
+        @Override
+        public ConfigurationTask.Type type() {
+            return TYPE;
+        }
+    }
+
+    public record ChallengePayload(String token) implements CustomPacketPayload {
+        public static final CustomPacketPayload.Type<ChallengePayload> TYPE = new CustomPacketPayload.Type<>(ResourceLocation.fromNamespaceAndPath("hand-shaker", "challenge"));
+        public static final StreamCodec<ByteBuf, ChallengePayload> CODEC = StreamCodec.composite(
+                ByteBufCodecs.STRING_UTF8, ChallengePayload::token,
+                ChallengePayload::new);
+        @Override public Type<? extends CustomPacketPayload> type() { return TYPE; }
+    }
+
+    /**
+     * A server's signed verdict, sent to the client after it passed and presented by the client to the
+     * next server before its mod list
+     */
+    public record VerdictTokenPayload(String token) implements CustomPacketPayload {
+        public static final CustomPacketPayload.Type<VerdictTokenPayload> TYPE = new CustomPacketPayload.Type<>(ResourceLocation.fromNamespaceAndPath("hand-shaker", "verdict"));
+        public static final StreamCodec<ByteBuf, VerdictTokenPayload> CODEC = StreamCodec.composite(
+                ByteBufCodecs.STRING_UTF8, VerdictTokenPayload::token,
+                VerdictTokenPayload::new);
+        @Override public Type<? extends CustomPacketPayload> type() { return TYPE; }
+    }
 }
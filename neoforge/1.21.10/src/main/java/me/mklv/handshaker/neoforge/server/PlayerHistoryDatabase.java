@@ -1,300 +1,175 @@
 package me.mklv.handshaker.neoforge.server;
 
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
+import me.mklv.handshaker.neoforge.server.utils.HandshakeEvents;
 import net.neoforged.fml.loading.FMLPaths;
 
 import java.io.File;
-import java.sql.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class PlayerHistoryDatabase {
+    public static final String STORAGE_SQL = "sql";
+    public static final String STORAGE_EVENT_LOG = "eventlog";
+
     private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
     private static final long CACHE_TTL_MS = 30_000; // 30-second cache for mod popularity
+    private static final int MAX_PAGE_CURSORS = 256;
+    private static final long INIT_WAIT_SECONDS = 10;
     
-    private HikariDataSource dataSource;
-    private final File dbFile;
+    private final HistoryStorage storage;
+    private volatile boolean open = false;
     
     // Cache for frequently accessed data
     private final CachedValue<Map<String, Integer>> modPopularityCache = new CachedValue<>(CACHE_TTL_MS);
 
-    public PlayerHistoryDatabase() {
-        this.dbFile = new File(FMLPaths.CONFIGDIR.get().toFile(), "hand-shaker-history");
-        initialize();
+    // Shared virtual-thread I/O executor; command queries and syncs run here so a cold read or a slow
+    // write never blocks the server thread or holds a pool thread
+    private final Executor queryExecutor;
+
+    // Last row of each page already served, so paging forward is one keyset range scan
+    private final Map<Integer, ModPopularityEntry> popularityPageEnds = new ConcurrentHashMap<>();
+    private final Map<String, UUID> modPlayersPageEnds = new ConcurrentHashMap<>();
+
+    // Storage opens in the background; syncs that arrive first are held here (latest per player)
+    private final CompletableFuture<Void> ready;
+    private final Map<UUID, PendingSync> pendingSyncs = new ConcurrentHashMap<>();
+
+    // Active mods read before join, handed to the player's first sync so it can skip its own read
+    private final Map<UUID, AtomicReference<Set<String>>> prefetchedMods = new ConcurrentHashMap<>();
+
+    public PlayerHistoryDatabase(String storageType, Executor queryExecutor) {
+        this(FMLPaths.CONFIGDIR.get().toFile(), storageType, queryExecutor);
+    }
+
+    public PlayerHistoryDatabase(File configDir, String storageType, Executor queryExecutor) {
+        this.queryExecutor = queryExecutor;
+        // Only the selected backend's classes are loaded, so the event log never pulls in Hikari or H2
+        this.storage = STORAGE_EVENT_LOG.equalsIgnoreCase(storageType)
+            ? new EventLogHistoryStorage(new File(configDir, "hand-shaker-history-log"))
+            : new H2HistoryStorage(new File(configDir, "hand-shaker-history"));
+        this.ready = CompletableFuture.runAsync(this::initialize, queryExecutor);
+        ready.thenRunAsync(this::flushPendingSyncs, queryExecutor);
+    }
+
+    /**
+     * True once storage has finished opening (or failed to). Commands should answer
+     * "warming up" instead of querying before this.
+     */
+    public boolean isReady() {
+        return ready.isDone();
+    }
+
+    public CompletableFuture<Void> whenReady() {
+        return ready;
     }
 
     private void initialize() {
         try {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl("jdbc:h2:" + dbFile.getAbsolutePath() + ";MODE=MySQL;AUTO_SERVER=TRUE");
-            config.setDriverClassName("org.h2.Driver");
-            config.setMaximumPoolSize(5);
-            config.setConnectionTimeout(30000);
-            config.setIdleTimeout(600000);
-            config.setMaxLifetime(1800000);
-
-            dataSource = new HikariDataSource(config);
-
-            createTables();
-            migrateSchemaIfNeeded();
-            HandShakerServerMod.LOGGER.info("Player history database initialized at: {}", dbFile.getAbsolutePath());
+            storage.open();
+            open = true;
         } catch (Exception e) {
             HandShakerServerMod.LOGGER.error("Failed to initialize player history database", e);
+            storage.close();
         }
     }
 
-    private void createTables() {
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement()) {
-            
-            stmt.execute("""
-                CREATE TABLE IF NOT EXISTS player_names (
-                    uuid TEXT PRIMARY KEY,
-                    current_name TEXT NOT NULL,
-                    first_seen TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    last_seen TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-                )
-                """);
-
-            stmt.execute("""
-                CREATE TABLE IF NOT EXISTS mod_history (
-                    id INTEGER PRIMARY KEY AUTO_INCREMENT,
-                    player_uuid TEXT NOT NULL,
-                    mod_name TEXT NOT NULL,
-                    added_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    removed_date TIMESTAMP,
-                    FOREIGN KEY (player_uuid) REFERENCES player_names(uuid),
-                    UNIQUE(player_uuid, mod_name, added_date)
-                )
-                """);
-
-            stmt.execute("CREATE INDEX IF NOT EXISTS idx_mod_history_uuid ON mod_history(player_uuid)");
-            stmt.execute("CREATE INDEX IF NOT EXISTS idx_mod_history_mod ON mod_history(mod_name)");
-            stmt.execute("CREATE INDEX IF NOT EXISTS idx_player_uuid ON player_names(uuid)");
-        } catch (SQLException e) {
-            HandShakerServerMod.LOGGER.error("Failed to create database tables", e);
+    /**
+     * Sync player's current mod list with database
+     */
+    public void syncPlayerMods(UUID uuid, String playerName, Set<String> currentMods) {
+        HandshakeEvents.ModSync event = new HandshakeEvents.ModSync();
+        event.begin();
+        if (!ready.isDone()) {
+            pendingSyncs.put(uuid, new PendingSync(playerName, new HashSet<>(currentMods)));
+            // Initialization may have drained the buffer between the check and the put
+            if (ready.isDone()) {
+                flushPendingSyncs();
+            }
+            event.finish(uuid, currentMods.size(), "buffered");
+            return;
         }
+        pendingSyncs.remove(uuid);
+        boolean synced = writePlayerMods(uuid, playerName, currentMods);
+        event.finish(uuid, currentMods.size(), synced ? "written" : "failed");
     }
 
-    private void migrateSchemaIfNeeded() {
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME='PLAYER_NAMES'")) {
-            
-            boolean hasOldNameColumn = false;
-            boolean hasNewCurrentNameColumn = false;
-            
-            while (rs.next()) {
-                String columnName = rs.getString("COLUMN_NAME");
-                if ("NAME".equals(columnName)) {
-                    hasOldNameColumn = true;
-                }
-                if ("CURRENT_NAME".equals(columnName)) {
-                    hasNewCurrentNameColumn = true;
-                }
-            }
-            
-            // If table is fresh (neither column exists), createTables() already created the correct schema
-            if (!hasOldNameColumn && !hasNewCurrentNameColumn) {
-                HandShakerServerMod.LOGGER.debug("Fresh database detected - schema is correct");
-                return;
-            }
-            
-            // If new schema already exists, no migration needed
-            if (hasNewCurrentNameColumn && !hasOldNameColumn) {
-                HandShakerServerMod.LOGGER.debug("Database already has correct schema");
-                return;
-            }
-            
-            // Migrate from old schema to new schema
-            if (hasOldNameColumn && !hasNewCurrentNameColumn) {
-                HandShakerServerMod.LOGGER.info("Migrating database schema from old to new format");
-                
-                try (Connection migConn = dataSource.getConnection()) {
-                    migConn.setAutoCommit(false);
-                    try (Statement migStmt = migConn.createStatement()) {
-                        // Rename old table
-                        migStmt.execute("ALTER TABLE player_names RENAME TO player_names_old");
-                        
-                        // Create new table with correct schema
-                        migStmt.execute("""
-                                CREATE TABLE player_names (
-                                    uuid TEXT PRIMARY KEY,
-                                    current_name TEXT NOT NULL,
-                                    first_seen TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                                    last_seen TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-                                )""");
-                        
-                        // Migrate data: for each uuid, take the most recent name
-                        migStmt.execute("""
-                                INSERT INTO player_names (uuid, current_name, first_seen, last_seen)
-                                SELECT uuid, name, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP FROM player_names_old""");
-                        
-                        // Drop old table
-                        migStmt.execute("DROP TABLE player_names_old");
-                        
-                        migConn.commit();
-                        HandShakerServerMod.LOGGER.info("Database schema migration completed successfully");
-                    } catch (SQLException e) {
-                        migConn.rollback();
-                        HandShakerServerMod.LOGGER.error("Failed to migrate database schema", e);
-                        throw e;
-                    }
-                }
-            }
-        } catch (SQLException e) {
-            HandShakerServerMod.LOGGER.warn("Schema migration check failed, database may need manual intervention", e);
+    /**
+     * Reads a player's active mods ahead of their first sync, e.g. during the configuration phase.
+     * Blocking; call it off the server thread. The result is kept for that sync, so the join itself
+     * doesn't read them again.
+     * @return The active mods, or an empty set if storage isn't ready or the read failed
+     */
+    public Set<String> prefetchActiveMods(UUID uuid) {
+        if (!open || !ready.isDone()) return Set.of();
+
+        // Registered before the read, so a sync that lands while it runs discards it (see writePlayerMods)
+        AtomicReference<Set<String>> slot = new AtomicReference<>();
+        prefetchedMods.put(uuid, slot);
+        Set<String> mods = storage.getActiveMods(uuid);
+        if (mods == null) {
+            prefetchedMods.remove(uuid, slot);
+            return Set.of();
         }
+        slot.set(mods);
+        return mods;
     }
 
     /**
-     * Sync player's current mod list with database
+     * Same as {@link #syncPlayerMods}, on the I/O executor. For callers on the server thread.
      */
-    public void syncPlayerMods(UUID uuid, String playerName, Set<String> currentMods) {
-        if (dataSource == null) return;
-        
-        try (Connection conn = dataSource.getConnection()) {
-            conn.setAutoCommit(false);
-            
-            try {
-                // Upsert player name using MERGE (H2 compatible)
-                String upsertPlayer = """
-                    MERGE INTO player_names (uuid, current_name, first_seen, last_seen) KEY(uuid)
-                    VALUES (?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
-                    """;
-                try (PreparedStatement ps = conn.prepareStatement(upsertPlayer)) {
-                    ps.setString(1, uuid.toString());
-                    ps.setString(2, playerName);
-                    ps.executeUpdate();
-                }
-                
-                // Get active mods from DB
-                Set<String> dbActiveMods = getActiveModsForSync(conn, uuid);
-                
-                // Calculate diffs
-                Set<String> newMods = new HashSet<>(currentMods);
-                newMods.removeAll(dbActiveMods);
-                Set<String> removedMods = new HashSet<>(dbActiveMods);
-                removedMods.removeAll(currentMods);
-                
-                // Batch insert new mods
-                if (!newMods.isEmpty()) {
-                    String insertMod = """
-                        INSERT INTO mod_history (player_uuid, mod_name, added_date, removed_date)
-                        VALUES (?, ?, CURRENT_TIMESTAMP, NULL)
-                        """;
-                    try (PreparedStatement ps = conn.prepareStatement(insertMod)) {
-                        for (String mod : newMods) {
-                            ps.setString(1, uuid.toString());
-                            ps.setString(2, mod);
-                            ps.addBatch();
-                        }
-                        ps.executeBatch();
-                    }
-                }
-                
-                // Batch mark mods as removed
-                if (!removedMods.isEmpty()) {
-                    String removeMod = "UPDATE mod_history SET removed_date = CURRENT_TIMESTAMP WHERE player_uuid = ? AND mod_name = ? AND removed_date IS NULL";
-                    try (PreparedStatement ps = conn.prepareStatement(removeMod)) {
-                        for (String mod : removedMods) {
-                            ps.setString(1, uuid.toString());
-                            ps.setString(2, mod);
-                            ps.addBatch();
-                        }
-                        ps.executeBatch();
-                    }
-                }
-                
-                conn.commit();
-                modPopularityCache.invalidate();
-            } catch (SQLException e) {
-                conn.rollback();
-                HandShakerServerMod.LOGGER.warn("Failed to sync player mods: {}", e.getMessage());
+    public CompletableFuture<Void> syncPlayerModsAsync(UUID uuid, String playerName, Set<String> currentMods) {
+        return CompletableFuture.runAsync(() -> syncPlayerMods(uuid, playerName, currentMods), queryExecutor);
+    }
+
+    private void flushPendingSyncs() {
+        for (UUID uuid : new ArrayList<>(pendingSyncs.keySet())) {
+            PendingSync pending = pendingSyncs.remove(uuid);
+            if (pending != null) {
+                writePlayerMods(uuid, pending.playerName(), pending.mods());
             }
-        } catch (SQLException e) {
-            HandShakerServerMod.LOGGER.warn("Database connection failed: {}", e.getMessage());
         }
     }
 
-    /**
-     * Get currently active mods for a player (for internal sync operations)
-     */
-    private Set<String> getActiveModsForSync(Connection conn, UUID uuid) throws SQLException {
-        Set<String> mods = new HashSet<>();
-        String sql = "SELECT mod_name FROM mod_history WHERE player_uuid = ? AND removed_date IS NULL";
+    private boolean writePlayerMods(UUID uuid, String playerName, Set<String> currentMods) {
+        if (!open) return false;
         
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, uuid.toString());
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                mods.add(rs.getString("mod_name"));
-            }
+        AtomicReference<Set<String>> prefetched = prefetchedMods.remove(uuid);
+        boolean synced = storage.syncPlayerMods(uuid, playerName, currentMods, prefetched != null ? prefetched.get() : null);
+        // A prefetch that started during this write may have read the rows from before it
+        prefetchedMods.remove(uuid);
+        if (synced) {
+            modPopularityCache.invalidate();
         }
-        return mods;
+        return synced;
     }
 
     /**
      * Get full history for a player including add/remove dates
      */
     public List<ModHistoryEntry> getPlayerHistory(UUID uuid) {
-        List<ModHistoryEntry> history = new ArrayList<>();
-        String sql = """
-            SELECT mod_name, added_date, removed_date 
-            FROM mod_history 
-            WHERE player_uuid = ? 
-            ORDER BY added_date DESC
-        """;
-
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, uuid.toString());
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                history.add(new ModHistoryEntry(
-                    rs.getString("mod_name"),
-                    rs.getTimestamp("added_date").toLocalDateTime(),
-                    rs.getTimestamp("removed_date") != null ? rs.getTimestamp("removed_date").toLocalDateTime() : null
-                ));
-            }
-        } catch (SQLException e) {
-            HandShakerServerMod.LOGGER.warn("Failed to get player history: {}", e.getMessage());
-        }
-
-        return history;
+        if (!open) return new ArrayList<>();
+        return storage.getPlayerHistory(uuid);
     }
 
     /**
      * Get mod popularity (how many unique players have used each mod)
      */
     public Map<String, Integer> getModPopularity() {
+        if (!open) return new LinkedHashMap<>();
+        
         Map<String, Integer> cached = modPopularityCache.get();
         if (cached != null) {
             return cached;
         }
 
-        Map<String, Integer> popularity = new LinkedHashMap<>();
-        String sql = """
-            SELECT mod_name, COUNT(DISTINCT player_uuid) as player_count 
-            FROM mod_history 
-            WHERE removed_date IS NULL
-            GROUP BY mod_name 
-            ORDER BY player_count DESC, mod_name ASC
-        """;
-
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                popularity.put(rs.getString("mod_name"), rs.getInt("player_count"));
-            }
-            modPopularityCache.set(popularity);
-        } catch (SQLException e) {
-            HandShakerServerMod.LOGGER.warn("Failed to get mod popularity: {}", e.getMessage());
-        }
-
+        Map<String, Integer> popularity = storage.getModPopularity();
+        modPopularityCache.set(popularity);
         return popularity;
     }
 
@@ -302,83 +177,187 @@ public class PlayerHistoryDatabase {
      * Get list of players who have used a specific mod
      */
     public List<PlayerModInfo> getPlayersWithMod(String modName) {
-        List<PlayerModInfo> players = new ArrayList<>();
-        String sql = """
-            SELECT 
-                mh.player_uuid,
-                pn.current_name,
-                MIN(mh.added_date) as first_seen,
-                MAX(CASE WHEN mh.removed_date IS NULL THEN 1 ELSE 0 END) as is_active
-            FROM mod_history mh
-            JOIN player_names pn ON mh.player_uuid = pn.uuid
-            WHERE mh.mod_name = ?
-            GROUP BY mh.player_uuid, pn.current_name
-            ORDER BY is_active DESC, first_seen DESC
-        """;
-
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, modName);
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                players.add(new PlayerModInfo(
-                    UUID.fromString(rs.getString("player_uuid")),
-                    rs.getString("current_name"),
-                    rs.getTimestamp("first_seen").toLocalDateTime(),
-                    rs.getInt("is_active") == 1
-                ));
+        if (!open) return new ArrayList<>();
+        return storage.getPlayersWithMod(modName);
+    }
+
+    /**
+     * One page of the most recent history entries for a player, newest first.
+     * Pass the last entry of the previous page as {@code after}, or null for the first page.
+     */
+    public List<ModHistoryEntry> getPlayerHistoryPage(UUID uuid, ModHistoryEntry after, int limit) {
+        if (!open) return new ArrayList<>();
+        return storage.getPlayerHistoryPage(uuid, after, limit);
+    }
+
+    /**
+     * One page of mods ordered by active player count. Pass the last entry of the
+     * previous page as {@code after}, or null for the first page.
+     */
+    public List<ModPopularityEntry> getModPopularityPage(ModPopularityEntry after, int limit) {
+        if (!open) return new ArrayList<>();
+        return storage.getModPopularityPage(after, limit);
+    }
+
+    /**
+     * Page {@code pageNumber} (1-based) of the mod popularity list. Known page boundaries are
+     * remembered, so stepping through pages costs one bounded range scan per page.
+     */
+    public Page<ModPopularityEntry> getModPopularityPage(int pageNumber, int pageSize) {
+        if (pageNumber <= 1) {
+            popularityPageEnds.clear();
+        }
+        int page = 1;
+        ModPopularityEntry after = null;
+        for (int known = pageNumber - 1; known >= 1; known--) {
+            ModPopularityEntry end = popularityPageEnds.get(known);
+            if (end != null) {
+                page = known + 1;
+                after = end;
+                break;
+            }
+        }
+        
+        while (true) {
+            List<ModPopularityEntry> entries = getModPopularityPage(after, pageSize + 1);
+            boolean hasMore = entries.size() > pageSize;
+            if (hasMore) {
+                entries = entries.subList(0, pageSize);
+            }
+            if (!entries.isEmpty()) {
+                rememberPageEnd(popularityPageEnds, page, entries.get(entries.size() - 1));
+            }
+            if (page == pageNumber || !hasMore) {
+                return new Page<>(page == pageNumber ? entries : List.of(), pageNumber, hasMore && page == pageNumber);
             }
-        } catch (SQLException e) {
-            HandShakerServerMod.LOGGER.warn("Failed to get players with mod: {}", e.getMessage());
+            after = entries.get(entries.size() - 1);
+            page++;
         }
+    }
 
-        return players;
+    public int getActiveModCount() {
+        if (!open) return 0;
+        return storage.getActiveModCount();
     }
 
     /**
-     * Get all known names for a player UUID
+     * One page of players that have used a mod, ordered by UUID.
+     * Pass the last player of the previous page as {@code after}, or null for the first page.
      */
-    public List<String> getPlayerNames(UUID uuid) {
-        List<String> names = new ArrayList<>();
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT current_name FROM player_names WHERE uuid = ?")) {
-            stmt.setString(1, uuid.toString());
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                names.add(rs.getString("current_name"));
+    public List<PlayerModInfo> getPlayersWithModPage(String modName, UUID after, int limit) {
+        if (!open) return new ArrayList<>();
+        return storage.getPlayersWithModPage(modName, after, limit);
+    }
+
+    /**
+     * Page {@code pageNumber} (1-based) of the players that have used a mod.
+     */
+    public Page<PlayerModInfo> getPlayersWithModPage(String modName, int pageNumber, int pageSize) {
+        if (pageNumber <= 1) {
+            // Only this mod's cursors; the rest of the key after the prefix is the page number
+            String prefix = modName + '#';
+            modPlayersPageEnds.keySet().removeIf(key -> key.startsWith(prefix) && key.indexOf('#', prefix.length()) < 0);
+        }
+        int page = 1;
+        UUID after = null;
+        for (int known = pageNumber - 1; known >= 1; known--) {
+            UUID end = modPlayersPageEnds.get(modName + '#' + known);
+            if (end != null) {
+                page = known + 1;
+                after = end;
+                break;
+            }
+        }
+        
+        while (true) {
+            List<PlayerModInfo> players = getPlayersWithModPage(modName, after, pageSize + 1);
+            boolean hasMore = players.size() > pageSize;
+            if (hasMore) {
+                players = players.subList(0, pageSize);
+            }
+            if (!players.isEmpty()) {
+                rememberPageEnd(modPlayersPageEnds, modName + '#' + page, players.get(players.size() - 1).uuid());
             }
-        } catch (SQLException e) {
-            HandShakerServerMod.LOGGER.warn("Failed to get player names: {}", e.getMessage());
+            if (page == pageNumber || !hasMore) {
+                return new Page<>(page == pageNumber ? players : List.of(), pageNumber, hasMore && page == pageNumber);
+            }
+            after = players.get(players.size() - 1).uuid();
+            page++;
         }
+    }
+
+    private static <K, V> void rememberPageEnd(Map<K, V> pageEnds, K key, V end) {
+        if (pageEnds.size() >= MAX_PAGE_CURSORS) {
+            pageEnds.clear();
+        }
+        pageEnds.put(key, end);
+    }
 
-        return names;
+    /**
+     * Get all known names for a player UUID
+     */
+    public List<String> getPlayerNames(UUID uuid) {
+        if (!open) return new ArrayList<>();
+        return storage.getPlayerNames(uuid);
     }
 
     /**
      * Get count of unique players with active mods
      */
     public int getUniqueActivePlayers() {
-        if (dataSource == null) return 0;
-        
-        String sql = "SELECT COUNT(DISTINCT player_uuid) as player_count FROM mod_history WHERE removed_date IS NULL";
-        
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            if (rs.next()) {
-                return rs.getInt("player_count");
-            }
-        } catch (SQLException e) {
-            HandShakerServerMod.LOGGER.warn("Failed to get unique active players: {}", e.getMessage());
+        if (!open) return 0;
+        return storage.getUniqueActivePlayers();
+    }
+
+    public CompletableFuture<List<ModHistoryEntry>> getPlayerHistoryAsync(UUID uuid) {
+        return CompletableFuture.supplyAsync(() -> getPlayerHistory(uuid), queryExecutor);
+    }
+
+    public CompletableFuture<Map<String, Integer>> getModPopularityAsync() {
+        Map<String, Integer> cached = modPopularityCache.get();
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
         }
-        
-        return 0;
+        return CompletableFuture.supplyAsync(this::getModPopularity, queryExecutor);
     }
 
+    public CompletableFuture<List<PlayerModInfo>> getPlayersWithModAsync(String modName) {
+        return CompletableFuture.supplyAsync(() -> getPlayersWithMod(modName), queryExecutor);
+    }
+
+    public CompletableFuture<Integer> getUniqueActivePlayersAsync() {
+        return CompletableFuture.supplyAsync(this::getUniqueActivePlayers, queryExecutor);
+    }
+
+    public CompletableFuture<List<ModHistoryEntry>> getPlayerHistoryPageAsync(UUID uuid, ModHistoryEntry after, int limit) {
+        return CompletableFuture.supplyAsync(() -> getPlayerHistoryPage(uuid, after, limit), queryExecutor);
+    }
+
+    public CompletableFuture<Page<ModPopularityEntry>> getModPopularityPageAsync(int pageNumber, int pageSize) {
+        return CompletableFuture.supplyAsync(() -> getModPopularityPage(pageNumber, pageSize), queryExecutor);
+    }
+
+    public CompletableFuture<Integer> getActiveModCountAsync() {
+        return CompletableFuture.supplyAsync(this::getActiveModCount, queryExecutor);
+    }
+
+    public CompletableFuture<Page<PlayerModInfo>> getPlayersWithModPageAsync(String modName, int pageNumber, int pageSize) {
+        return CompletableFuture.supplyAsync(() -> getPlayersWithModPage(modName, pageNumber, pageSize), queryExecutor);
+    }
+
+    /**
+     * Call once the I/O executor has drained, so no sync is still writing when storage closes
+     */
     public void close() {
-        if (dataSource != null && !dataSource.isClosed()) {
-            dataSource.close();
-            HandShakerServerMod.LOGGER.info("Player history database closed");
+        try {
+            ready.get(INIT_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            HandShakerServerMod.LOGGER.warn("Player history database did not finish initializing before shutdown: {}", e.getMessage());
+        }
+        flushPendingSyncs();
+        if (open) {
+            open = false;
+            storage.close();
         }
     }
 
@@ -432,4 +411,10 @@ public class PlayerHistoryDatabase {
             return firstSeen != null ? firstSeen.format(DATE_FORMAT) : "Unknown";
         }
     }
+
+    public record ModPopularityEntry(String modName, int playerCount) {}
+
+    public record Page<T>(List<T> entries, int number, boolean hasMore) {}
+
+    private record PendingSync(String playerName, Set<String> mods) {}
 }
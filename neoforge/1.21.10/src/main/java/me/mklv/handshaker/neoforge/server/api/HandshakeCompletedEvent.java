@@ -0,0 +1,28 @@
+package me.mklv.handshaker.neoforge.server.api;
+
+import net.minecraft.server.level.ServerPlayer;
+import net.neoforged.bus.api.Event;
+
+/**
+ * Posted on {@code NeoForge.EVENT_BUS} from the server thread once per session, when a player's
+ * handshake gets its first verdict. A kicked player is still online while listeners run. Re-checks
+ * after a config reload don't post it again; look the latest result up through
+ * {@code HandShakerServerMod.getHandshakeResult}.
+ */
+public class HandshakeCompletedEvent extends Event {
+    private final ServerPlayer player;
+    private final HandshakeResult result;
+
+    public HandshakeCompletedEvent(ServerPlayer player, HandshakeResult result) {
+        this.player = player;
+        this.result = result;
+    }
+
+    public ServerPlayer getPlayer() {
+        return player;
+    }
+
+    public HandshakeResult getResult() {
+        return result;
+    }
+}
@@ -0,0 +1,299 @@
+package me.mklv.handshaker.neoforge.server.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Per-player handshake outcomes (mod lists, signature checks, verdicts, actions, kicks) written as JSON
+ * lines to a rotating file. {@link #record} only claims a slot in a preallocated ring and stores
+ * references, so the server thread never formats or touches the disk; a background thread drains the
+ * ring, renders each record and writes it. When the writer falls a whole ring behind, new records are
+ * dropped and counted rather than blocking the caller.
+ */
+public class AuditLog {
+    public enum Type {
+        MOD_LIST,
+        INTEGRITY,
+        VELTON,
+        VERDICT,
+        ACTION,
+        KICK;
+
+        private final String label = name().toLowerCase(Locale.ROOT);
+
+        public String label() {
+            return label;
+        }
+    }
+
+    private static final int CAPACITY = 4096;
+    private static final long MAX_FILE_BYTES = 8L * 1024 * 1024;
+    private static final int KEEP_FILES = 4;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final File file;
+    private final Consumer<IOException> onError;
+    private final Slot[] slots = new Slot[CAPACITY];
+    private final AtomicLong tail = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private long head;
+
+    private volatile boolean enabled;
+    private volatile boolean running;
+    private Thread writer;
+
+    public AuditLog(File file, Consumer<IOException> onError) {
+        this.file = file;
+        this.onError = onError;
+        for (int i = 0; i < CAPACITY; i++) {
+            slots[i] = new Slot(i);
+        }
+    }
+
+    /**
+     * Starts the writer thread. Records offered before this are ignored.
+     */
+    public synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+        running = true;
+        enabled = true;
+        writer = Thread.ofPlatform().name("HandShaker-Audit").daemon(true).start(this::run);
+    }
+
+    /**
+     * Stops taking records, writes what is already queued and closes the file
+     */
+    public synchronized void stop() {
+        if (writer == null) {
+            return;
+        }
+        enabled = false;
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues a record. {@code detail} is rendered on the writer thread: a collection becomes a JSON array,
+     * anything else its string form, so pass values that are not modified afterwards.
+     */
+    public void record(Type type, UUID uuid, String player, String outcome, Object detail) {
+        if (!enabled) {
+            return;
+        }
+        Slot slot;
+        long position;
+        while (true) {
+            position = tail.get();
+            slot = slots[(int) (position & (CAPACITY - 1))];
+            long available = slot.sequence - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (available < 0) {
+                // The writer hasn't freed this slot yet: the ring is full
+                dropped.increment();
+                return;
+            }
+        }
+        slot.time = System.currentTimeMillis();
+        slot.type = type;
+        slot.uuid = uuid;
+        slot.player = player;
+        slot.outcome = outcome;
+        slot.detail = detail;
+        slot.sequence = position + 1;
+    }
+
+    /**
+     * Records lost because the writer could not keep up
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    private void run() {
+        StringBuilder line = new StringBuilder(256);
+        BufferedWriter out = null;
+        long written = 0;
+        try {
+            while (true) {
+                boolean wasRunning = running;
+                int drained = 0;
+                Slot slot;
+                while ((slot = poll()) != null) {
+                    line.setLength(0);
+                    render(slot, line);
+                    release(slot);
+                    if (out == null || written >= MAX_FILE_BYTES) {
+                        if (out != null) {
+                            out.close();
+                            rotate();
+                        }
+                        out = open();
+                        written = file.length();
+                    }
+                    out.append(line);
+                    written += line.length();
+                    drained++;
+                }
+                if (out != null && drained > 0) {
+                    out.flush();
+                }
+                if (!wasRunning) {
+                    break;
+                }
+                if (drained == 0) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            enabled = false;
+            onError.accept(e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    onError.accept(e);
+                }
+            }
+        }
+    }
+
+    private Slot poll() {
+        Slot slot = slots[(int) (head & (CAPACITY - 1))];
+        return slot.sequence == head + 1 ? slot : null;
+    }
+
+    private void release(Slot slot) {
+        slot.type = null;
+        slot.uuid = null;
+        slot.player = null;
+        slot.outcome = null;
+        slot.detail = null;
+        slot.sequence = head + CAPACITY;
+        head++;
+    }
+
+    private BufferedWriter open() throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * audit.jsonl becomes audit.jsonl.1, .1 becomes .2 and so on; the oldest is deleted
+     */
+    private void rotate() throws IOException {
+        Files.deleteIfExists(new File(file.getPath() + "." + KEEP_FILES).toPath());
+        for (int i = KEEP_FILES - 1; i >= 1; i--) {
+            File older = new File(file.getPath() + "." + i);
+            if (older.exists()) {
+                Files.move(older.toPath(), new File(file.getPath() + "." + (i + 1)).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file.toPath(), new File(file.getPath() + ".1").toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void render(Slot slot, StringBuilder line) {
+        line.append("{\"time\":\"").append(Instant.ofEpochMilli(slot.time)).append("\",\"type\":\"").append(slot.type.label()).append('"');
+        if (slot.uuid != null) {
+            line.append(",\"uuid\":\"").append(slot.uuid).append('"');
+        }
+        if (slot.player != null) {
+            line.append(",\"player\":");
+            appendString(line, slot.player);
+        }
+        if (slot.outcome != null) {
+            line.append(",\"outcome\":");
+            appendString(line, slot.outcome);
+        }
+        if (slot.detail instanceof Collection<?> values) {
+            line.append(",\"detail\":[");
+            boolean first = true;
+            for (Object value : values) {
+                if (!first) {
+                    line.append(',');
+                }
+                appendString(line, String.valueOf(value));
+                first = false;
+            }
+            line.append(']');
+        } else if (slot.detail != null) {
+            line.append(",\"detail\":");
+            appendString(line, slot.detail.toString());
+        }
+        line.append("}\n");
+    }
+
+    private static void appendString(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * One preallocated ring entry. {@code sequence} says whose turn it is: equal to a position when a
+     * producer may claim it, position + 1 once the record is published for the writer.
+     */
+    private static final class Slot {
+        private volatile long sequence;
+        private long time;
+        private Type type;
+        private UUID uuid;
+        private String player;
+        private String outcome;
+        private Object detail;
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package me.mklv.handshaker.neoforge.server.utils;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Counters and latency histograms for the handshake pipeline, read by {@code /handshaker metrics} and
+ * the optional Prometheus endpoint. Recording is lock-free and allocation-free: each histogram bucket is
+ * a {@link LongAdder}, and a latency is placed in its power-of-two microsecond bucket straight from its
+ * leading zeros. Buckets run from 1 µs to about 16.8 s; anything slower only shows in the +Inf bucket.
+ * Queue depths and counters owned by other components are registered as suppliers and read on export.
+ */
+public class HandshakeMetrics {
+    public enum Stage {
+        DECODE,
+        HASH_CHECK,
+        SIGNATURE_VERIFY,
+        RULE_EVALUATION,
+        DB_SYNC,
+        ACTION_DISPATCH;
+
+        private final String label = name().toLowerCase(Locale.ROOT);
+
+        public String label() {
+            return label;
+        }
+    }
+
+    // Upper bounds 2^0 .. 2^24 µs, plus one overflow bucket
+    private static final int BUCKETS = 25;
+
+    private final Histogram[] stages = new Histogram[Stage.values().length];
+    private final LongAdder[] kicks = new LongAdder[KickReason.values().length];
+    private final List<Sampled> sampled = new CopyOnWriteArrayList<>();
+
+    public HandshakeMetrics() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new Histogram();
+        }
+        for (int i = 0; i < kicks.length; i++) {
+            kicks[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Start time for {@link #record}
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void record(Stage stage, long startNanos) {
+        stages[stage.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    public void recordKick(KickReason reason) {
+        kicks[reason.ordinal()].increment();
+    }
+
+    /**
+     * Exports a value that can go up and down, e.g. a queue depth. Exported as {@code handshaker_<name>}.
+     */
+    public void gauge(String name, String help, DoubleSupplier value) {
+        sampled.add(new Sampled("handshaker_" + name, help, "gauge", value));
+    }
+
+    /**
+     * Exports a running total kept elsewhere. Exported as {@code handshaker_<name>_total}.
+     */
+    public void counter(String name, String help, DoubleSupplier value) {
+        sampled.add(new Sampled("handshaker_" + name + "_total", help, "counter", value));
+    }
+
+    public long getCount(Stage stage) {
+        return stages[stage.ordinal()].count();
+    }
+
+    public double getMeanMillis(Stage stage) {
+        Histogram histogram = stages[stage.ordinal()];
+        long count = histogram.count();
+        return count == 0 ? 0 : histogram.sumNanos.sum() / (double) count / 1_000_000.0;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given quantile, so accurate to within a factor of two
+     */
+    public double getPercentileMillis(Stage stage, double quantile) {
+        Histogram histogram = stages[stage.ordinal()];
+        long[] counts = histogram.snapshot();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return (1L << i) / 1000.0;
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    public long getKickCount(KickReason reason) {
+        return kicks[reason.ordinal()].sum();
+    }
+
+    /**
+     * Current values of the registered gauges and counters, by exported name
+     */
+    public Map<String, Double> readSampled() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Sampled entry : sampled) {
+            values.put(entry.name(), entry.value().getAsDouble());
+        }
+        return values;
+    }
+
+    /**
+     * Everything in the Prometheus text exposition format (version 0.0.4)
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# HELP handshaker_stage_duration_seconds Time spent in each handshake stage\n");
+        out.append("# TYPE handshaker_stage_duration_seconds histogram\n");
+        for (Stage stage : Stage.values()) {
+            Histogram histogram = stages[stage.ordinal()];
+            long[] counts = histogram.snapshot();
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                cumulative += counts[i];
+                out.append("handshaker_stage_duration_seconds_bucket{stage=\"").append(stage.label())
+                        .append("\",le=\"").append(BigDecimal.valueOf(1L << i, 6).stripTrailingZeros().toPlainString())
+                        .append("\"} ").append(cumulative).append('\n');
+            }
+            cumulative += counts[BUCKETS];
+            out.append("handshaker_stage_duration_seconds_bucket{stage=\"").append(stage.label())
+                    .append("\",le=\"+Inf\"} ").append(cumulative).append('\n');
+            out.append("handshaker_stage_duration_seconds_sum{stage=\"").append(stage.label()).append("\"} ")
+                    .append(histogram.sumNanos.sum() / 1e9).append('\n');
+            out.append("handshaker_stage_duration_seconds_count{stage=\"").append(stage.label()).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+
+        out.append("# HELP handshaker_kicks_total Players kicked during the handshake, by reason\n");
+        out.append("# TYPE handshaker_kicks_total counter\n");
+        for (KickReason reason : KickReason.values()) {
+            out.append("handshaker_kicks_total{reason=\"").append(reason.label()).append("\"} ")
+                    .append(kicks[reason.ordinal()].sum()).append('\n');
+        }
+
+        for (Sampled entry : sampled) {
+            out.append("# HELP ").append(entry.name()).append(' ').append(entry.help()).append('\n');
+            out.append("# TYPE ").append(entry.name()).append(' ').append(entry.type()).append('\n');
+            out.append(entry.name()).append(' ').append(entry.value().getAsDouble()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[BUCKETS + 1];
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void record(long nanos) {
+            long micros = Math.max(1, (nanos + 999) / 1000);
+            // Smallest i with micros <= 2^i
+            int index = 64 - Long.numberOfLeadingZeros(micros - 1);
+            buckets[Math.min(index, BUCKETS)].increment();
+            sumNanos.add(Math.max(0, nanos));
+        }
+
+        private long[] snapshot() {
+            long[] counts = new long[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+            }
+            return counts;
+        }
+
+        private long count() {
+            long total = 0;
+            for (LongAdder bucket : buckets) {
+                total += bucket.sum();
+            }
+            return total;
+        }
+    }
+
+    private record Sampled(String name, String help, String type, DoubleSupplier value) {}
+}
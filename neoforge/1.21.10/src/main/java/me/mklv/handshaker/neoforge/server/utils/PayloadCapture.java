@@ -0,0 +1,385 @@
+package me.mklv.handshaker.neoforge.server.utils;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import me.mklv.handshaker.neoforge.server.HandShakerServerMod;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Opt-in recording of the raw handshake payloads players send, for replaying a production traffic mix
+ * through the handshakeLoadTest build task. {@link #record} only claims a slot in a preallocated
+ * ring and stores the decoded payload; a background thread encodes it back with the payload's codec and
+ * writes the records to a compact binary file, so the bytes are those on the wire. A full ring drops
+ * records instead of blocking, and the capture stops for good once the file reaches its size limit.
+ * <p>
+ * Players are stored as a pseudonym: the first 8 bytes of SHA-256 over a random per-capture salt and
+ * the UUID. The salt is never written, so a capture can tell players apart but not name them.
+ * <p>
+ * Format: {@code int magic, byte version, long start epoch millis}, then per record
+ * {@code varint micros since the previous record, long pseudonym, byte channel, varint length, payload}.
+ */
+public class PayloadCapture {
+    public enum Channel {
+        MOD_LIST,
+        INTEGRITY,
+        VELTON
+    }
+
+    /**
+     * One captured payload; {@code offsetMicros} counts from the start of the capture
+     */
+    public record Entry(long offsetMicros, long player, Channel channel, byte[] payload) {}
+
+    /**
+     * A capture read back from disk. {@code truncated} is set when the file ended mid-record, e.g. the
+     * server stopped without closing it.
+     */
+    public record Capture(long startedAt, List<Entry> entries, boolean truncated) {}
+
+    public static final String EXTENSION = ".hscap";
+    private static final int MAGIC = 0x48534350; // "HSCP"
+    private static final int VERSION = 1;
+    private static final int CAPACITY = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final File directory;
+    private final long maxBytes;
+    private final Consumer<String> onStop;
+    private final Slot[] slots = new Slot[CAPACITY];
+    private final AtomicLong tail = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder captured = new LongAdder();
+    private long head;
+
+    private volatile boolean enabled;
+    private volatile boolean running;
+    private volatile File file;
+    private Thread writer;
+
+    /**
+     * @param onStop Told why, when the capture ends early (size limit or an I/O error)
+     */
+    public PayloadCapture(File directory, long maxBytes, Consumer<String> onStop) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.onStop = onStop;
+        for (int i = 0; i < CAPACITY; i++) {
+            slots[i] = new Slot(i);
+        }
+    }
+
+    /**
+     * Opens a new capture file named after the current time and starts recording
+     */
+    public synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+        file = new File(directory, "capture-" + LocalDateTime.now().format(FILE_TIME) + EXTENSION);
+        running = true;
+        enabled = true;
+        long startNanos = System.nanoTime();
+        long startMillis = System.currentTimeMillis();
+        writer = Thread.ofPlatform().name("HandShaker-Capture").daemon(true).start(() -> run(startNanos, startMillis));
+    }
+
+    /**
+     * Stops recording, writes what is already queued and closes the file
+     */
+    public synchronized void stop() {
+        if (writer == null) {
+            return;
+        }
+        enabled = false;
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The file being written, or the last one written; null before the first start
+     */
+    public File getFile() {
+        return file;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getCapturedCount() {
+        return captured.sum();
+    }
+
+    /**
+     * Payloads lost because the writer could not keep up
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Queues a handshake payload as received; anything else is ignored
+     */
+    public void record(UUID player, CustomPacketPayload payload) {
+        if (!enabled) {
+            return;
+        }
+        Channel channel;
+        if (payload instanceof HandShakerServerMod.ModsListPayload) {
+            channel = Channel.MOD_LIST;
+        } else if (payload instanceof HandShakerServerMod.IntegrityPayload) {
+            channel = Channel.INTEGRITY;
+        } else if (payload instanceof HandShakerServerMod.VeltonPayload) {
+            channel = Channel.VELTON;
+        } else {
+            return;
+        }
+        Slot slot;
+        long position;
+        while (true) {
+            position = tail.get();
+            slot = slots[(int) (position & (CAPACITY - 1))];
+            long available = slot.sequence - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (available < 0) {
+                dropped.increment();
+                return;
+            }
+        }
+        slot.nanos = System.nanoTime();
+        slot.channel = channel;
+        slot.player = player;
+        slot.payload = payload;
+        slot.sequence = position + 1;
+    }
+
+    private void run(long startNanos, long startMillis) {
+        byte[] salt = new byte[16];
+        new SecureRandom().nextBytes(salt);
+        Map<UUID, Long> pseudonyms = new HashMap<>();
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            stopEarly("SHA-256 not available");
+            return;
+        }
+
+        File target = file;
+        target.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(startMillis);
+            long lastMicros = 0;
+            boolean full = false;
+            while (true) {
+                boolean wasRunning = running;
+                int drained = 0;
+                Slot slot;
+                while ((slot = poll()) != null) {
+                    long micros = Math.max(lastMicros, (slot.nanos - startNanos) / 1000);
+                    Channel channel = slot.channel;
+                    UUID player = slot.player;
+                    CustomPacketPayload decoded = slot.payload;
+                    release(slot);
+                    drained++;
+                    if (full) {
+                        // Past the size limit: keep draining so producers see an empty ring
+                        continue;
+                    }
+                    byte[] payload = encode(decoded);
+                    // Worst case for the two varints, the pseudonym and the channel
+                    if (out.size() + payload.length + 23L > maxBytes) {
+                        full = true;
+                        stopEarly("capture reached its " + (maxBytes / (1024 * 1024)) + " MB limit");
+                        continue;
+                    }
+                    long pseudonym = pseudonyms.computeIfAbsent(player, uuid -> pseudonymize(digest, salt, uuid));
+                    writeVarLong(out, micros - lastMicros);
+                    out.writeLong(pseudonym);
+                    out.writeByte(channel.ordinal());
+                    writeVarLong(out, payload.length);
+                    out.write(payload);
+                    lastMicros = micros;
+                    captured.increment();
+                }
+                if (drained > 0) {
+                    out.flush();
+                }
+                if (!wasRunning) {
+                    break;
+                }
+                if (drained == 0) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            stopEarly(e.getMessage());
+        }
+    }
+
+    private void stopEarly(String reason) {
+        if (enabled) {
+            enabled = false;
+            onStop.accept(reason);
+        }
+    }
+
+    private Slot poll() {
+        Slot slot = slots[(int) (head & (CAPACITY - 1))];
+        return slot.sequence == head + 1 ? slot : null;
+    }
+
+    private void release(Slot slot) {
+        slot.channel = null;
+        slot.player = null;
+        slot.payload = null;
+        slot.sequence = head + CAPACITY;
+        head++;
+    }
+
+    private static byte[] encode(CustomPacketPayload payload) {
+        ByteBuf buf = Unpooled.buffer();
+        try {
+            if (payload instanceof HandShakerServerMod.ModsListPayload modList) {
+                HandShakerServerMod.ModsListPayload.CODEC.encode(buf, modList);
+            } else if (payload instanceof HandShakerServerMod.IntegrityPayload integrity) {
+                HandShakerServerMod.IntegrityPayload.CODEC.encode(buf, integrity);
+            } else if (payload instanceof HandShakerServerMod.VeltonPayload velton) {
+                HandShakerServerMod.VeltonPayload.CODEC.encode(buf, velton);
+            }
+            byte[] bytes = new byte[buf.readableBytes()];
+            buf.readBytes(bytes);
+            return bytes;
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static long pseudonymize(MessageDigest digest, byte[] salt, UUID uuid) {
+        digest.reset();
+        digest.update(salt);
+        digest.update(ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array());
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    /**
+     * Reads a whole capture. A file cut off mid-record returns everything before the cut.
+     * @throws IOException If the file can't be read or isn't a capture
+     */
+    public static Capture read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file.getName() + " is not a HandShaker capture");
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported capture version " + version);
+            }
+            long startedAt = in.readLong();
+            Channel[] channels = Channel.values();
+            List<Entry> entries = new ArrayList<>();
+            long micros = 0;
+            while (true) {
+                int first = in.read();
+                if (first < 0) {
+                    return new Capture(startedAt, entries, false);
+                }
+                try {
+                    micros += readVarLong(in, first);
+                    long player = in.readLong();
+                    int channel = in.readUnsignedByte();
+                    long length = readVarLong(in, in.readUnsignedByte());
+                    if (channel >= channels.length || length > Integer.MAX_VALUE) {
+                        throw new IOException("Corrupt record at entry " + entries.size());
+                    }
+                    byte[] payload = new byte[(int) length];
+                    in.readFully(payload);
+                    entries.add(new Entry(micros, player, channels[channel], payload));
+                } catch (EOFException e) {
+                    return new Capture(startedAt, entries, true);
+                }
+            }
+        }
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(InputStream in, int first) throws IOException {
+        long value = first & 0x7F;
+        int shift = 7;
+        int read = first;
+        while ((read & 0x80) != 0) {
+            read = in.read();
+            if (read < 0) {
+                throw new EOFException();
+            }
+            if (shift > 63) {
+                throw new IOException("VarLong too long");
+            }
+            value |= (long) (read & 0x7F) << shift;
+            shift += 7;
+        }
+        return value;
+    }
+
+    private static final class Slot {
+        private volatile long sequence;
+        private long nanos;
+        private Channel channel;
+        private UUID player;
+        private CustomPacketPayload payload;
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+}
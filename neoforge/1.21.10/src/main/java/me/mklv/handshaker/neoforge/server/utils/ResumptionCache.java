@@ -0,0 +1,145 @@
+package me.mklv.handshaker.neoforge.server.utils;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * The verified state of players who just left, so a quick reconnect (a crash, an AFK kick) doesn't redo
+ * the whole handshake. When a player disconnects, the JAR hash and signature result of their session
+ * are kept with a hash of their mod set, the verdict those mods got and the config generation it was
+ * computed under. If they come back within a minute with a mod list that hashes the same, an integrity
+ * payload naming the same JAR and an unchanged config, the earlier signature result and verdict are
+ * reused instead of running RSA and the rules again. At most {@value #MAX_ENTRIES} players are kept;
+ * the oldest are dropped first.
+ */
+public class ResumptionCache<V> {
+    private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final int MAX_ENTRIES = 1024;
+
+    private record Session<V>(String jarHash, Boolean verified, boolean judged, Set<String> mods, V verdict, long configGeneration) {}
+
+    private record Entry<V>(String modSetHash, String jarHash, boolean verified, V verdict, long configGeneration, long storedAt) {}
+
+    // The current connection's state, parked when the player leaves
+    private final Map<UUID, Session<V>> live = new ConcurrentHashMap<>();
+    private final Map<UUID, Entry<V>> parked = new ConcurrentHashMap<>();
+    // Parked entries whose mod set matched this connection's mod list, waiting for the integrity payload
+    private final Map<UUID, Entry<V>> candidates = new ConcurrentHashMap<>();
+    private final Map<UUID, Entry<V>> resumed = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Records the signature result of this connection's JAR
+     */
+    public void jarChecked(UUID player, String jarHash, boolean verified) {
+        live.compute(player, (uuid, session) -> session == null
+                ? new Session<>(jarHash, verified, false, null, null, 0)
+                : new Session<>(jarHash, verified, session.judged(), session.mods(), session.verdict(), session.configGeneration()));
+    }
+
+    /**
+     * Matches a freshly received mod list against the player's parked session. Another mod list
+     * later in the same connection starts over.
+     */
+    public void modListReceived(UUID player, Set<String> mods) {
+        resumed.remove(player);
+        Entry<V> entry = parked.get(player);
+        if (entry != null && !isExpired(entry, System.nanoTime()) && entry.modSetHash().equals(VerdictTokens.modSetHash(mods))) {
+            candidates.put(player, entry);
+        } else {
+            candidates.remove(player);
+        }
+    }
+
+    /**
+     * The signature result of the parked session if the mod list already matched, the JAR is the same
+     * and the config is unchanged; null when the signature has to be checked again
+     */
+    public Boolean resumeIntegrity(UUID player, String jarHash, long configGeneration) {
+        Entry<V> entry = candidates.remove(player);
+        if (entry == null || isExpired(entry, System.nanoTime()) || entry.configGeneration() != configGeneration
+                || !entry.jarHash().equals(jarHash)) {
+            misses.increment();
+            return null;
+        }
+        parked.remove(player, entry);
+        resumed.put(player, entry);
+        hits.increment();
+        return entry.verified();
+    }
+
+    /**
+     * The resumed verdict while the config is unchanged, otherwise {@code evaluate} applied to
+     * {@code mods}. Either way the result is kept for when the player leaves; null is a verdict too.
+     */
+    public V verdict(UUID player, Set<String> mods, long configGeneration, Function<Set<String>, V> evaluate) {
+        Entry<V> entry = resumed.get(player);
+        V verdict = entry != null && entry.configGeneration() == configGeneration ? entry.verdict() : evaluate.apply(mods);
+        live.compute(player, (uuid, session) -> session == null
+                ? new Session<>(null, null, true, mods, verdict, configGeneration)
+                : new Session<>(session.jarHash(), session.verified(), true, mods, verdict, configGeneration));
+        return verdict;
+    }
+
+    /**
+     * Parks the state of a player who left, if both their JAR and their mods were checked
+     */
+    public void suspend(UUID player) {
+        candidates.remove(player);
+        resumed.remove(player);
+        Session<V> session = live.remove(player);
+        // Whatever an earlier connection left behind is superseded by this one
+        parked.remove(player);
+        if (session == null || session.jarHash() == null || session.jarHash().isEmpty() || !session.judged()) {
+            return;
+        }
+        long now = System.nanoTime();
+        parked.values().removeIf(entry -> isExpired(entry, now));
+        while (parked.size() >= MAX_ENTRIES) {
+            parked.entrySet().stream()
+                    .min(Comparator.comparingLong(e -> e.getValue().storedAt()))
+                    .ifPresent(oldest -> parked.remove(oldest.getKey(), oldest.getValue()));
+        }
+        parked.put(player, new Entry<>(VerdictTokens.modSetHash(session.mods()), session.jarHash(), session.verified(),
+                session.verdict(), session.configGeneration(), now));
+    }
+
+    public void clear() {
+        live.clear();
+        parked.clear();
+        candidates.clear();
+        resumed.clear();
+    }
+
+    /**
+     * Players whose state is parked right now, expired ones included until the next park
+     */
+    public int size() {
+        return parked.size();
+    }
+
+    /**
+     * Integrity checks that reused a parked session
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Integrity checks that had to verify the signature again
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private static boolean isExpired(Entry<?> entry, long now) {
+        return now - entry.storedAt() > TTL_NANOS;
+    }
+}
@@ -14,8 +14,9 @@ public class NetworkSetup {
     public static void registerPayloads(RegisterPayloadHandlersEvent event) {
         final PayloadRegistrar registrar = event.registrar("1").optional();
 
-        // Register payloads for client->server communication
-        registrar.playToServer(
+        // Register payloads for client->server communication. Current clients send them during
+        // configuration, older ones after joining, so both phases are accepted
+        registrar.commonToServer(
                 HandShakerServerMod.ModsListPayload.TYPE,
                 HandShakerServerMod.ModsListPayload.CODEC,
                 (payload, context) -> {
@@ -27,7 +28,7 @@ public class NetworkSetup {
                 }
         );
 
-        registrar.playToServer(
+        registrar.commonToServer(
                 HandShakerServerMod.IntegrityPayload.TYPE,
                 HandShakerServerMod.IntegrityPayload.CODEC,
                 (payload, context) -> {
@@ -39,6 +40,29 @@ public class NetworkSetup {
                 }
         );
 
+        // Challenge tokens are echoed back as the nonce of the payloads above
+        registrar.commonToClient(
+                HandShakerServerMod.ChallengePayload.TYPE,
+                HandShakerServerMod.ChallengePayload.CODEC,
+                (payload, context) -> HandShakerClientMod.handleChallenge(payload, context)
+        );
+
+        // Verdict tokens travel both ways: issued to the client, presented back to the next server
+        registrar.commonBidirectional(
+                HandShakerServerMod.VerdictTokenPayload.TYPE,
+                HandShakerServerMod.VerdictTokenPayload.CODEC,
+                (payload, context) -> {
+                    if (context.flow().isClientbound()) {
+                        HandShakerClientMod.handleVerdictToken(payload, context);
+                        return;
+                    }
+                    HandShakerServerMod server = HandShakerServerMod.getInstance();
+                    if (server != null) {
+                        server.handleVerdictToken(payload, context);
+                    }
+                }
+        );
+
         // Velton is optional - register without requiring it on the client
         final PayloadRegistrar veltonRegistrar = event.registrar("velton").optional();
         veltonRegistrar.playToServer(
@@ -1,15 +1,28 @@
 package me.mklv.handshaker.neoforge.server;
 
+import me.mklv.handshaker.neoforge.server.api.HandshakeResult;
 import me.mklv.handshaker.neoforge.server.configs.ActionDefinition;
+import me.mklv.handshaker.neoforge.server.utils.AsyncFileWriter;
+import me.mklv.handshaker.neoforge.server.utils.AuditLog;
+import me.mklv.handshaker.neoforge.server.utils.HandshakeEvents;
+import me.mklv.handshaker.neoforge.server.utils.HandshakeMetrics;
+import me.mklv.handshaker.neoforge.server.utils.KickReason;
+import me.mklv.handshaker.neoforge.server.utils.PreLoginCache;
+import me.mklv.handshaker.neoforge.server.utils.ResumptionCache;
+import me.mklv.handshaker.neoforge.server.utils.ViolationLog;
 import net.neoforged.fml.loading.FMLPaths;
 import org.yaml.snakeyaml.Yaml;
 import java.io.*;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 @SuppressWarnings("unchecked")
 public class BlacklistConfig {
     private final File configDir;
+    // Saves come from commands; the files are written on the I/O executor
+    private final AsyncFileWriter fileWriter;
     private File configYmlFile;
 
     public enum Behavior { STRICT, VANILLA }
@@ -59,6 +72,23 @@ public class BlacklistConfig {
     private String invalidSignatureKickMessage = "Invalid client signature. Please use the official client.";
     private boolean allowBedrockPlayers = false;
     private boolean playerdbEnabled = false;
+    private String playerdbStorage = "sql";
+    private int handshakeTimeoutSeconds = 5;
+    private boolean requireVelton = false;
+    private int handshakeConcurrency = 16;
+    private int handshakeQueueSize = 256;
+    private int handshakeTickBudgetMillis = 5;
+    private int mainThreadBudgetMillis = 10;
+    private int rateLimitMessages = 8;
+    private int rateLimitWindowSeconds = 10;
+    private int rateLimitKickAfter = 32;
+    private int metricsPort = 0;
+    private boolean auditLog = true;
+    private boolean capturePayloads = false;
+    private int captureMaxMegabytes = 64;
+    private String verdictTokenSecret = "";
+    private int verdictTokenTtlSeconds = 300;
+    private int verdictTokenGeneration = 1;
     
     // Mod list toggle states
     private boolean modsRequiredEnabled = true;
@@ -72,13 +102,44 @@ public class BlacklistConfig {
     private final Set<String> blacklistedModsActive = new HashSet<>();
     private final Set<String> requiredModsActive = new HashSet<>();
     private final Map<String, ActionDefinition> actionsMap = new LinkedHashMap<>();
-
-    public BlacklistConfig() {
+    // Bumped after every load and save, so verdicts computed ahead of time can tell they are stale
+    private final AtomicLong generation = new AtomicLong();
+    private final PreLoginCache<ModVerdict> preLogin = new PreLoginCache<>();
+    private final ResumptionCache<ModVerdict> resumption = new ResumptionCache<>();
+    private final HandshakeMetrics metrics;
+    private final AuditLog audit;
+    private final ViolationLog violations;
+
+    /**
+     * The part of a verdict that depends only on the mod set
+     */
+    public record ModVerdict(Set<String> missingRequired, Set<String> blacklisted) {}
+
+    /**
+     * A failed check: the message shown to the player, the reason it is counted under and the mods
+     * behind it (missing or blacklisted; empty for integrity and handshake failures)
+     */
+    public record Rejection(KickReason reason, String message, Set<String> mods) {}
+
+    public BlacklistConfig(Executor ioExecutor, HandshakeMetrics metrics, AuditLog audit, ViolationLog violations) {
+        this.fileWriter = new AsyncFileWriter(ioExecutor);
+        this.metrics = metrics;
+        this.audit = audit;
+        this.violations = violations;
+        metrics.counter("prelogin_cache_hits", "Join checks that reused the pre-login verdict", preLogin::getHitCount);
+        metrics.counter("prelogin_cache_misses", "Join checks that evaluated the rules at join", preLogin::getMissCount);
+        metrics.counter("resumption_hits", "Reconnects that reused the previous session's signature check and verdict", resumption::getHitCount);
+        metrics.counter("resumption_misses", "Integrity checks that could not resume a previous session", resumption::getMissCount);
+        metrics.gauge("resumption_entries", "Recently disconnected players whose verified state is kept", resumption::size);
         File configRootDir = FMLPaths.CONFIGDIR.get().toFile();
         this.configDir = new File(configRootDir, "HandShaker");
     }
 
     public void load() {
+        HandshakeEvents.ConfigOperation event = new HandshakeEvents.ConfigOperation("load");
+        event.begin();
+        // A save still in flight must land before the files are read back
+        fileWriter.flush();
         configDir.mkdirs();
 
         configYmlFile = new File(configDir, "config.yml");
@@ -88,6 +149,8 @@ public class BlacklistConfig {
 
         loadConfigYml();
         loadModsYamlFiles();
+        generation.incrementAndGet();
+        event.finish(modConfigMap.size(), "ok");
     }
 
     private void createDefaultFilesIfNotExist() {
@@ -155,10 +218,54 @@ public class BlacklistConfig {
                     allowBedrockPlayers = Boolean.parseBoolean(data.get("allow-bedrock-players").toString());
                 }
 
+                if (data.containsKey("handshake-timeout")) {
+                    try {
+                        handshakeTimeoutSeconds = Math.max(1, Integer.parseInt(data.get("handshake-timeout").toString().trim()));
+                    } catch (NumberFormatException e) {
+                        HandShakerServerMod.LOGGER.warn("Invalid handshake-timeout '{}', using {} seconds", data.get("handshake-timeout"), handshakeTimeoutSeconds);
+                    }
+                }
+                if (data.containsKey("require-velton")) {
+                    requireVelton = Boolean.parseBoolean(data.get("require-velton").toString());
+                }
+                handshakeConcurrency = parsePositiveInt(data, "handshake-concurrency", handshakeConcurrency);
+                handshakeQueueSize = parsePositiveInt(data, "handshake-queue-size", handshakeQueueSize);
+                handshakeTickBudgetMillis = parsePositiveInt(data, "handshake-tick-budget-ms", handshakeTickBudgetMillis);
+                mainThreadBudgetMillis = parsePositiveInt(data, "main-thread-budget-ms", mainThreadBudgetMillis);
+                rateLimitMessages = parsePositiveInt(data, "rate-limit-messages", rateLimitMessages);
+                rateLimitWindowSeconds = parsePositiveInt(data, "rate-limit-window-seconds", rateLimitWindowSeconds);
+                rateLimitKickAfter = parsePositiveInt(data, "rate-limit-kick-after", rateLimitKickAfter);
+                if (data.containsKey("metrics-port")) {
+                    try {
+                        int port = Integer.parseInt(data.get("metrics-port").toString().trim());
+                        if (port < 0 || port > 65535) {
+                            throw new NumberFormatException();
+                        }
+                        metricsPort = port;
+                    } catch (NumberFormatException e) {
+                        HandShakerServerMod.LOGGER.warn("Invalid metrics-port '{}', using {}", data.get("metrics-port"), metricsPort);
+                    }
+                }
+                if (data.containsKey("audit-log")) {
+                    auditLog = Boolean.parseBoolean(data.get("audit-log").toString());
+                }
+                if (data.containsKey("capture-payloads")) {
+                    capturePayloads = Boolean.parseBoolean(data.get("capture-payloads").toString());
+                }
+                captureMaxMegabytes = parsePositiveInt(data, "capture-max-mb", captureMaxMegabytes);
+                if (data.get("verdict-token-secret") != null) {
+                    verdictTokenSecret = data.get("verdict-token-secret").toString().trim();
+                }
+                verdictTokenTtlSeconds = parsePositiveInt(data, "verdict-token-ttl-seconds", verdictTokenTtlSeconds);
+                verdictTokenGeneration = parsePositiveInt(data, "verdict-token-generation", verdictTokenGeneration);
+
                 // Load playerdb enabled setting
                 if (data.containsKey("playerdb-enabled")) {
                     playerdbEnabled = Boolean.parseBoolean(data.get("playerdb-enabled").toString());
                 }
+                if (data.containsKey("playerdb-storage")) {
+                    playerdbStorage = data.get("playerdb-storage").toString().toLowerCase(Locale.ROOT);
+                }
 
                 // Load mod list toggle states
                 if (data.containsKey("mods-required-enabled")) {
@@ -195,6 +302,18 @@ public class BlacklistConfig {
         }
     }
 
+    private int parsePositiveInt(Map<String, Object> data, String key, int fallback) {
+        if (!data.containsKey(key)) {
+            return fallback;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(data.get(key).toString().trim()));
+        } catch (NumberFormatException e) {
+            HandShakerServerMod.LOGGER.warn("Invalid {} '{}', using {}", key, data.get(key), fallback);
+            return fallback;
+        }
+    }
+
     private void loadModsYamlFiles() {
         modConfigMap.clear();
         ignoredMods.clear();
@@ -378,6 +497,23 @@ public class BlacklistConfig {
     public Set<String> getBlacklistedMods() { return Collections.unmodifiableSet(blacklistedModsActive); }
     public Set<String> getRequiredMods() { return Collections.unmodifiableSet(requiredModsActive); }
     public boolean isPlayerdbEnabled() { return playerdbEnabled; }
+    public String getPlayerdbStorage() { return playerdbStorage; }
+    public int getHandshakeTimeoutSeconds() { return handshakeTimeoutSeconds; }
+    public boolean isRequireVelton() { return requireVelton; }
+    public int getHandshakeConcurrency() { return handshakeConcurrency; }
+    public int getHandshakeQueueSize() { return handshakeQueueSize; }
+    public int getHandshakeTickBudgetMillis() { return handshakeTickBudgetMillis; }
+    public int getMainThreadBudgetMillis() { return mainThreadBudgetMillis; }
+    public int getRateLimitMessages() { return rateLimitMessages; }
+    public int getRateLimitWindowSeconds() { return rateLimitWindowSeconds; }
+    public int getRateLimitKickAfter() { return rateLimitKickAfter; }
+    public int getMetricsPort() { return metricsPort; }
+    public boolean isAuditLog() { return auditLog; }
+    public boolean isCapturePayloads() { return capturePayloads; }
+    public int getCaptureMaxMegabytes() { return captureMaxMegabytes; }
+    public String getVerdictTokenSecret() { return verdictTokenSecret; }
+    public int getVerdictTokenTtlSeconds() { return verdictTokenTtlSeconds; }
+    public int getVerdictTokenGeneration() { return verdictTokenGeneration; }
     public boolean areModsRequiredEnabled() { return modsRequiredEnabled; }
     public boolean areModsBlacklistedEnabled() { return modsBlacklistedEnabled; }
     public boolean areModsWhitelistedEnabled() { return modsWhitelistedEnabled; }
@@ -584,97 +720,99 @@ public class BlacklistConfig {
     }
 
     public void save() {
+        HandshakeEvents.ConfigOperation event = new HandshakeEvents.ConfigOperation("save");
+        event.begin();
+        // Mod list changes always end in a save, so this covers everything the mod verdict reads
+        generation.incrementAndGet();
         // Save config.yml
-        try (FileWriter writer = new FileWriter(configYmlFile)) {
-            StringBuilder yaml = new StringBuilder();
-            yaml.append("config: v4\n\n");
-            yaml.append("behavior: ").append(behavior.toString().toLowerCase()).append("\n");
-            yaml.append("integrity-mode: ").append(integrityMode.toString().toLowerCase()).append("\n");
-            yaml.append("whitelist: ").append(whitelist).append("\n");
-            yaml.append("allow-bedrock-players: ").append(allowBedrockPlayers).append("\n");
-            yaml.append("playerdb-enabled: ").append(playerdbEnabled).append("\n\n");
-            yaml.append("mods-required-enabled: ").append(modsRequiredEnabled).append("\n");
-            yaml.append("mods-blacklisted-enabled: ").append(modsBlacklistedEnabled).append("\n");
-            yaml.append("mods-whitelisted-enabled: ").append(modsWhitelistedEnabled).append("\n\n");
-            yaml.append("messages:\n");
-            yaml.append("  kick: \"").append(escapeYamlString(kickMessage)).append("\"\n");
-            yaml.append("  no-handshake: \"").append(escapeYamlString(noHandshakeKickMessage)).append("\"\n");
-            yaml.append("  missing-whitelist: \"").append(escapeYamlString(missingWhitelistModMessage)).append("\"\n");
-            yaml.append("  invalid-signature: \"").append(escapeYamlString(invalidSignatureKickMessage)).append("\"\n");
-            writer.write(yaml.toString());
-        } catch (IOException e) {
-            HandShakerServerMod.LOGGER.error("Could not save config.yml!");
-        }
+        StringBuilder yaml = new StringBuilder();
+        yaml.append("config: v4\n\n");
+        yaml.append("behavior: ").append(behavior.toString().toLowerCase()).append("\n");
+        yaml.append("integrity-mode: ").append(integrityMode.toString().toLowerCase()).append("\n");
+        yaml.append("whitelist: ").append(whitelist).append("\n");
+        yaml.append("allow-bedrock-players: ").append(allowBedrockPlayers).append("\n");
+        yaml.append("handshake-timeout: ").append(handshakeTimeoutSeconds).append("\n");
+        yaml.append("require-velton: ").append(requireVelton).append("\n");
+        yaml.append("handshake-concurrency: ").append(handshakeConcurrency).append("\n");
+        yaml.append("handshake-queue-size: ").append(handshakeQueueSize).append("\n");
+        yaml.append("handshake-tick-budget-ms: ").append(handshakeTickBudgetMillis).append("\n");
+        yaml.append("main-thread-budget-ms: ").append(mainThreadBudgetMillis).append("\n");
+        yaml.append("rate-limit-messages: ").append(rateLimitMessages).append("\n");
+        yaml.append("rate-limit-window-seconds: ").append(rateLimitWindowSeconds).append("\n");
+        yaml.append("rate-limit-kick-after: ").append(rateLimitKickAfter).append("\n");
+        yaml.append("metrics-port: ").append(metricsPort).append("\n");
+        yaml.append("audit-log: ").append(auditLog).append("\n");
+        yaml.append("capture-payloads: ").append(capturePayloads).append("\n");
+        yaml.append("capture-max-mb: ").append(captureMaxMegabytes).append("\n");
+        yaml.append("verdict-token-secret: \"").append(escapeYamlString(verdictTokenSecret)).append("\"\n");
+        yaml.append("verdict-token-ttl-seconds: ").append(verdictTokenTtlSeconds).append("\n");
+        yaml.append("verdict-token-generation: ").append(verdictTokenGeneration).append("\n");
+        yaml.append("playerdb-enabled: ").append(playerdbEnabled).append("\n");
+        yaml.append("playerdb-storage: ").append(playerdbStorage).append("\n\n");
+        yaml.append("mods-required-enabled: ").append(modsRequiredEnabled).append("\n");
+        yaml.append("mods-blacklisted-enabled: ").append(modsBlacklistedEnabled).append("\n");
+        yaml.append("mods-whitelisted-enabled: ").append(modsWhitelistedEnabled).append("\n\n");
+        yaml.append("messages:\n");
+        yaml.append("  kick: \"").append(escapeYamlString(kickMessage)).append("\"\n");
+        yaml.append("  no-handshake: \"").append(escapeYamlString(noHandshakeKickMessage)).append("\"\n");
+        yaml.append("  missing-whitelist: \"").append(escapeYamlString(missingWhitelistModMessage)).append("\"\n");
+        yaml.append("  invalid-signature: \"").append(escapeYamlString(invalidSignatureKickMessage)).append("\"\n");
+        fileWriter.write(configYmlFile, yaml.toString(), e -> HandShakerServerMod.LOGGER.error("Could not save config.yml!"));
 
         // Save mods YAML files
         saveModsYamlFiles();
+        event.finish(modConfigMap.size(), "ok");
     }
 
     private void saveModsYamlFiles() {
         // Save ignored mods
         if (!ignoredMods.isEmpty()) {
             File ignoredFile = new File(configDir, "mods-ignored.yml");
-            try (FileWriter writer = new FileWriter(ignoredFile)) {
-                StringBuilder yaml = new StringBuilder();
-                yaml.append("# Mods which will be hidden from commands\n\n");
-                yaml.append("ignored:\n");
-                for (String mod : ignoredMods) {
-                    yaml.append("  - ").append(mod).append("\n");
-                }
-                writer.write(yaml.toString());
-            } catch (IOException e) {
-                HandShakerServerMod.LOGGER.error("Could not save mods-ignored.yml!");
+            StringBuilder yaml = new StringBuilder();
+            yaml.append("# Mods which will be hidden from commands\n\n");
+            yaml.append("ignored:\n");
+            for (String mod : ignoredMods) {
+                yaml.append("  - ").append(mod).append("\n");
             }
+            fileWriter.write(ignoredFile, yaml.toString(), e -> HandShakerServerMod.LOGGER.error("Could not save mods-ignored.yml!"));
         }
 
         // Save required mods
         if (!requiredModsActive.isEmpty()) {
             File requiredFile = new File(configDir, "mods-required.yml");
-            try (FileWriter writer = new FileWriter(requiredFile)) {
-                StringBuilder yaml = new StringBuilder();
-                yaml.append("# Required mods to join the server\n\n");
-                yaml.append("required:\n");
-                for (String mod : requiredModsActive) {
-                    yaml.append("  - ").append(mod).append("\n");
-                }
-                writer.write(yaml.toString());
-            } catch (IOException e) {
-                HandShakerServerMod.LOGGER.error("Could not save mods-required.yml!");
+            StringBuilder yaml = new StringBuilder();
+            yaml.append("# Required mods to join the server\n\n");
+            yaml.append("required:\n");
+            for (String mod : requiredModsActive) {
+                yaml.append("  - ").append(mod).append("\n");
             }
+            fileWriter.write(requiredFile, yaml.toString(), e -> HandShakerServerMod.LOGGER.error("Could not save mods-required.yml!"));
         }
 
         // Save blacklisted mods
         if (!blacklistedModsActive.isEmpty()) {
             File blacklistedFile = new File(configDir, "mods-blacklisted.yml");
-            try (FileWriter writer = new FileWriter(blacklistedFile)) {
-                StringBuilder yaml = new StringBuilder();
-                yaml.append("# Blacklisted mods: modname: kick/ban\n\n");
-                yaml.append("blacklisted:\n");
-                for (String mod : blacklistedModsActive) {
-                    ModConfig cfg = modConfigMap.get(mod);
-                    String action = cfg != null ? cfg.getAction().toString().toLowerCase() : "kick";
-                    yaml.append("  ").append(mod).append(": ").append(action).append("\n");
-                }
-                writer.write(yaml.toString());
-            } catch (IOException e) {
-                HandShakerServerMod.LOGGER.error("Could not save mods-blacklisted.yml!");
+            StringBuilder yaml = new StringBuilder();
+            yaml.append("# Blacklisted mods: modname: kick/ban\n\n");
+            yaml.append("blacklisted:\n");
+            for (String mod : blacklistedModsActive) {
+                ModConfig cfg = modConfigMap.get(mod);
+                String action = cfg != null ? cfg.getAction().toString().toLowerCase() : "kick";
+                yaml.append("  ").append(mod).append(": ").append(action).append("\n");
             }
+            fileWriter.write(blacklistedFile, yaml.toString(), e -> HandShakerServerMod.LOGGER.error("Could not save mods-blacklisted.yml!"));
         }
 
         // Save whitelisted mods
         if (!whitelistedModsActive.isEmpty()) {
             File whitelistedFile = new File(configDir, "mods-whitelisted.yml");
-            try (FileWriter writer = new FileWriter(whitelistedFile)) {
-                StringBuilder yaml = new StringBuilder();
-                yaml.append("# Whitelisted mods\n\n");
-                yaml.append("whitelisted:\n");
-                for (String mod : whitelistedModsActive) {
-                    yaml.append("  - ").append(mod).append("\n");
-                }
-                writer.write(yaml.toString());
-            } catch (IOException e) {
-                HandShakerServerMod.LOGGER.error("Could not save mods-whitelisted.yml!");
+            StringBuilder yaml = new StringBuilder();
+            yaml.append("# Whitelisted mods\n\n");
+            yaml.append("whitelisted:\n");
+            for (String mod : whitelistedModsActive) {
+                yaml.append("  - ").append(mod).append("\n");
             }
+            fileWriter.write(whitelistedFile, yaml.toString(), e -> HandShakerServerMod.LOGGER.error("Could not save mods-whitelisted.yml!"));
         }
     }
 
@@ -682,9 +820,37 @@ public class BlacklistConfig {
         return str.replace("\"", "\\\"").replace("\n", "\\n").replace("\r", "\\r");
     }
 
-    public void checkPlayer(net.minecraft.server.level.ServerPlayer player, HandShakerServerMod.ClientInfo info) {
-        if (allowBedrockPlayers && isBedrockPlayer(player.getUUID())) {
-            return;
+    public HandshakeResult checkPlayer(net.minecraft.server.level.ServerPlayer player, HandShakerServerMod.ClientInfo info) {
+        if (allowBedrockPlayers && preLogin.isBedrock(player.getUUID(), this::isBedrockPlayer)) {
+            return result(player.getUUID(), info, HandshakeResult.Verdict.BYPASSED, null);
+        }
+        Rejection rejection = getRejection(player.getUUID(), player.getName().getString(), info);
+        if (rejection != null) {
+            metrics.recordKick(rejection.reason());
+            audit.record(AuditLog.Type.KICK, player.getUUID(), player.getName().getString(), rejection.reason().label(), rejection.message());
+            violations.record(player.getUUID(), player.getName().getString(), rejection.reason(), rejection.mods(), null);
+            player.connection.disconnect(net.minecraft.network.chat.Component.literal(rejection.message()));
+            return result(player.getUUID(), info, HandshakeResult.Verdict.KICKED, rejection.reason());
+        }
+        return result(player.getUUID(), info, HandshakeResult.Verdict.ALLOWED, null);
+    }
+
+    private static HandshakeResult result(UUID playerUuid, HandShakerServerMod.ClientInfo info, HandshakeResult.Verdict verdict, KickReason reason) {
+        if (info == null) {
+            return new HandshakeResult(playerUuid, Set.of(), false, false, false, verdict, reason);
+        }
+        return new HandshakeResult(playerUuid, info.mods(), !info.mods().isEmpty(), info.signatureVerified(),
+                info.veltonVerified(), verdict, reason);
+    }
+
+    /**
+     * Runs the checks without needing a player entity, so players can also be rejected during the
+     * configuration phase, before they enter the world.
+     * @return Why the player is kicked, or null if they may stay
+     */
+    public Rejection getRejection(UUID playerUuid, String playerName, HandShakerServerMod.ClientInfo info) {
+        if (allowBedrockPlayers && preLogin.isBedrock(playerUuid, this::isBedrockPlayer)) {
+            return null;
         }
 
         boolean hasMod = info != null && !info.mods().isEmpty();
@@ -695,59 +861,103 @@ public class BlacklistConfig {
             if (hasMod) {
                 // CRITICAL: If IntegrityPayload hasn't been received yet, KICK
                 if (info.integrityNonce() == null) {
-                    HandShakerServerMod.LOGGER.warn("Kicking {} - mod client but no integrity data sent in SIGNED mode", player.getName().getString());
-                    player.connection.disconnect(net.minecraft.network.chat.Component.literal(invalidSignatureKickMessage));
-                    return;
+                    HandShakerServerMod.LOGGER.warn("Kicking {} - mod client but no integrity data sent in SIGNED mode", playerName);
+                    return new Rejection(KickReason.INVALID_SIGNATURE, invalidSignatureKickMessage, Set.of());
                 } else if (!info.signatureVerified()) {
-                    HandShakerServerMod.LOGGER.warn("Kicking {} - integrity check FAILED in SIGNED mode", player.getName().getString());
-                    player.connection.disconnect(net.minecraft.network.chat.Component.literal(invalidSignatureKickMessage));
-                    return;
+                    HandShakerServerMod.LOGGER.warn("Kicking {} - integrity check FAILED in SIGNED mode", playerName);
+                    return new Rejection(KickReason.INVALID_SIGNATURE, invalidSignatureKickMessage, Set.of());
                 }
             }
         }
         
         // If behavior is VANILLA and client doesn't have the mod, skip all checks
         if (behavior == Behavior.VANILLA && !hasMod) {
-            return;
+            return null;
         }
         
         // If behavior is STRICT and client doesn't have the mod, kick
         if (behavior == Behavior.STRICT && !hasMod) {
-            player.connection.disconnect(net.minecraft.network.chat.Component.literal(noHandshakeKickMessage));
-            return;
+            return new Rejection(KickReason.NO_HANDSHAKE, noHandshakeKickMessage, Set.of());
         }
 
         if (!hasMod) {
-            return;
+            return null;
+        }
+
+        // A resumed session keeps its verdict; players whose mods are unchanged since the configuration-phase
+        // warm-up reuse that one
+        HandshakeEvents.RuleEvaluation event = new HandshakeEvents.RuleEvaluation();
+        event.begin();
+        long evaluationStart = metrics.start();
+        long currentGeneration = generation.get();
+        ModVerdict verdict = resumption.verdict(playerUuid, info.mods(), currentGeneration,
+                unresumed -> preLogin.verdict(playerUuid, unresumed, currentGeneration, this::evaluateMods));
+        metrics.record(HandshakeMetrics.Stage.RULE_EVALUATION, evaluationStart);
+        String outcome = !verdict.missingRequired().isEmpty() ? KickReason.MISSING_REQUIRED.label()
+                : !verdict.blacklisted().isEmpty() ? KickReason.BLACKLISTED.label() : "allowed";
+        event.finish(playerUuid, info.mods().size(), outcome);
+        audit.record(AuditLog.Type.VERDICT, playerUuid, playerName, outcome,
+                !verdict.missingRequired().isEmpty() ? verdict.missingRequired() : verdict.blacklisted());
+        Set<String> missingRequired = verdict.missingRequired();
+        Set<String> blacklistedFound = verdict.blacklisted();
+
+        if (!missingRequired.isEmpty()) {
+            return new Rejection(KickReason.MISSING_REQUIRED, missingWhitelistModMessage.replace("{mod}", String.join(", ", missingRequired)), missingRequired);
         }
 
+        if (!blacklistedFound.isEmpty()) {
+            return new Rejection(KickReason.BLACKLISTED, kickMessage.replace("{mod}", String.join(", ", blacklistedFound)), blacklistedFound);
+        }
+        return null;
+    }
+
+    /**
+     * Required mods missing from {@code mods} and blacklisted mods in it. Needs no player, so it can run
+     * before join; pair the result with {@link #getGeneration()} to know when it goes stale.
+     */
+    public ModVerdict evaluateMods(Set<String> mods) {
         Set<String> missingRequired = new HashSet<>();
         Set<String> blacklistedFound = new HashSet<>();
 
         // Check required mods
         for (String modId : requiredModsActive) {
-            if (!info.mods().contains(modId)) {
+            if (!mods.contains(modId)) {
                 missingRequired.add(modId);
             }
         }
 
         // Check blacklisted mods
         for (String modId : blacklistedModsActive) {
-            if (info.mods().contains(modId)) {
+            if (mods.contains(modId)) {
                 blacklistedFound.add(modId);
             }
         }
+        return new ModVerdict(missingRequired, blacklistedFound);
+    }
 
-        if (!missingRequired.isEmpty()) {
-            String msg = missingWhitelistModMessage.replace("{mod}", String.join(", ", missingRequired));
-            player.connection.disconnect(net.minecraft.network.chat.Component.literal(msg));
-            return;
-        }
+    /**
+     * Loads a connecting player's Bedrock status and the verdict for their last known mods, so the
+     * checks later on only have to compare. Blocking; called off the server thread during configuration.
+     */
+    public void warmUp(UUID playerUuid, Set<String> lastMods) {
+        boolean bedrock = isBedrockPlayer(playerUuid);
+        long currentGeneration = generation.get();
+        preLogin.put(playerUuid, lastMods, bedrock, evaluateMods(lastMods), currentGeneration);
+    }
 
-        if (!blacklistedFound.isEmpty()) {
-            String msg = kickMessage.replace("{mod}", String.join(", ", blacklistedFound));
-            player.connection.disconnect(net.minecraft.network.chat.Component.literal(msg));
-        }
+    public void forgetWarmUp(UUID playerUuid) {
+        preLogin.forget(playerUuid);
+    }
+
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Verified state of players who just left, reused when they reconnect unchanged
+     */
+    public ResumptionCache<ModVerdict> getResumption() {
+        return resumption;
     }
 
     private boolean isBedrockPlayer(UUID playerUuid) {
@@ -2,6 +2,7 @@ package me.mklv.handshaker.neoforge.server;
 
 import com.mojang.brigadier.Command;
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
 import com.mojang.brigadier.suggestion.Suggestions;
@@ -12,12 +13,31 @@ import net.minecraft.commands.SharedSuggestionProvider;
 import net.minecraft.server.level.ServerPlayer;
 import static net.minecraft.commands.Commands.LEVEL_OWNERS;
 import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.MutableComponent;
 import net.minecraft.ChatFormatting;
+import me.mklv.handshaker.neoforge.server.utils.HandshakeAdmission;
+import me.mklv.handshaker.neoforge.server.utils.HandshakeMetrics;
+import me.mklv.handshaker.neoforge.server.utils.KickReason;
+import me.mklv.handshaker.neoforge.server.utils.NonceReplayCache;
+import me.mklv.handshaker.neoforge.server.utils.PayloadRateLimiter;
+import me.mklv.handshaker.neoforge.server.utils.TickBudget;
+import me.mklv.handshaker.neoforge.server.utils.ViolationLog;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class HandShakerCommand {
+    private static final int MAX_QUERIES_PER_SOURCE = 2;
+    private static final int PAGE_SIZE = 10;
+    private static final int RECENT_LIMIT = 20;
+    private static final DateTimeFormatter RECENT_TIME = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final Map<String, Integer> IN_FLIGHT_QUERIES = new ConcurrentHashMap<>();
 
     public static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
         var handshaker = Commands.literal("handshaker")
@@ -26,16 +46,32 @@ public class HandShakerCommand {
             // Core Commands
             .then(Commands.literal("reload")
                 .executes(HandShakerCommand::reload))
+            .then(Commands.literal("metrics")
+                .executes(HandShakerCommand::showMetrics))
+            .then(Commands.literal("recent")
+                .executes(ctx -> showRecent(ctx, "all", null))
+                .then(Commands.argument("reason", StringArgumentType.word())
+                    .suggests((ctx, builder) -> SharedSuggestionProvider.suggest(ViolationLog.reasonLabels(), builder))
+                    .executes(ctx -> showRecent(ctx, StringArgumentType.getString(ctx, "reason"), null))
+                    .then(Commands.argument("mod", StringArgumentType.word())
+                        .suggests((ctx, builder) -> SharedSuggestionProvider.suggest(
+                            HandShakerServerMod.getInstance().getViolationLog().recentMods(), builder))
+                        .executes(ctx -> showRecent(ctx, StringArgumentType.getString(ctx, "reason"),
+                            StringArgumentType.getString(ctx, "mod"))))))
             .then(Commands.literal("info")
                 .executes(HandShakerCommand::showInfo)
                 .then(Commands.literal("configured_mods")
                     .executes(HandShakerCommand::showConfiguredMods))
                 .then(Commands.literal("all_mods")
-                    .executes(HandShakerCommand::showAllMods))
+                    .executes(HandShakerCommand::showAllMods)
+                    .then(Commands.argument("page", IntegerArgumentType.integer(1))
+                        .executes(ctx -> showAllModsWithPageNumber(ctx, IntegerArgumentType.getInteger(ctx, "page")))))
                 .then(Commands.literal("mod")
                     .then(Commands.argument("modName", StringArgumentType.word())
                         .suggests(HandShakerCommand::suggestMods)
-                        .executes(HandShakerCommand::showModInfo))))
+                        .executes(ctx -> showModInfo(ctx, 1))
+                        .then(Commands.argument("page", IntegerArgumentType.integer(1))
+                            .executes(ctx -> showModInfo(ctx, IntegerArgumentType.getInteger(ctx, "page")))))))
             .then(Commands.literal("config")
                 .executes(HandShakerCommand::showConfig)
                 .then(Commands.literal("behavior")
@@ -130,6 +166,10 @@ public class HandShakerCommand {
             .append(Component.literal(" - View/change configuration").withColor(0xAAAAAA)));
         ctx.getSource().sendSystemMessage(Component.literal("/handshaker mode <list> <on|off>").withColor(0xFFFF55)
             .append(Component.literal(" - Toggle mod lists").withColor(0xAAAAAA)));
+        ctx.getSource().sendSystemMessage(Component.literal("/handshaker metrics").withColor(0xFFFF55)
+            .append(Component.literal(" - Show handshake latencies, kicks and queue depths").withColor(0xAAAAAA)));
+        ctx.getSource().sendSystemMessage(Component.literal("/handshaker recent [reason] [mod]").withColor(0xFFFF55)
+            .append(Component.literal(" - Show the latest kicks and actions, optionally filtered").withColor(0xAAAAAA)));
         
         ctx.getSource().sendSystemMessage(Component.empty());
         ctx.getSource().sendSystemMessage(Component.literal("Mod Management:").withColor(0xFFFF55).withStyle(ChatFormatting.BOLD));
@@ -159,6 +199,26 @@ public class HandShakerCommand {
             .append(Component.literal(String.valueOf(config.getWhitelistedMods().size())).withColor(0xFFFFFF)));
         ctx.getSource().sendSystemMessage(Component.literal("Ignored Mods: ").withColor(0xFFFF55)
             .append(Component.literal(String.valueOf(config.getIgnoredMods().size())).withColor(0xFFFFFF)));
+        NonceReplayCache nonceCache = HandShakerServerMod.getInstance().getNonceCache();
+        ctx.getSource().sendSystemMessage(Component.literal("Replay Cache: ").withColor(0xFFFF55)
+            .append(Component.literal(nonceCache.size() + "/" + nonceCache.capacity() + " nonces").withColor(0xFFFFFF))
+            .append(Component.literal(" (" + nonceCache.getExpiredCount() + " expired, " + nonceCache.getEvictedCount()
+                + " evicted, " + nonceCache.getReplayCount() + " replays blocked)").withColor(0xAAAAAA)));
+        HandshakeAdmission admission = HandShakerServerMod.getInstance().getAdmission();
+        ctx.getSource().sendSystemMessage(Component.literal("Handshake Queue: ").withColor(0xFFFF55)
+            .append(Component.literal(admission.getQueueDepth() + "/" + admission.getQueueCapacity() + " queued, "
+                + admission.getWaitingDepth() + " waiting").withColor(0xFFFFFF))
+            .append(Component.literal(" (" + admission.getShedCount() + " shed, "
+                + String.format("%.1f ms avg / %.1f ms max wait", admission.getAverageWaitMillis(), admission.getMaxWaitMillis()) + ")").withColor(0xAAAAAA)));
+        PayloadRateLimiter limiter = HandShakerServerMod.getInstance().getRateLimiter();
+        ctx.getSource().sendSystemMessage(Component.literal("Rate Limit: ").withColor(0xFFFF55)
+            .append(Component.literal(limiter.getDroppedCount() + " dropped").withColor(0xFFFFFF))
+            .append(Component.literal(" (mods: " + limiter.getDroppedCount(HandShakerServerMod.ModsListPayload.TYPE.id().toString())
+                + ", integrity: " + limiter.getDroppedCount(HandShakerServerMod.IntegrityPayload.TYPE.id().toString())
+                + ", velton: " + limiter.getDroppedCount(HandShakerServerMod.VeltonPayload.TYPE.id().toString())
+                + ", " + limiter.getKickCount() + " kicked)").withColor(0xAAAAAA)));
+        ctx.getSource().sendSystemMessage(Component.literal("Repeat Payloads: ").withColor(0xFFFF55)
+            .append(Component.literal(HandShakerServerMod.getInstance().getFingerprints().getRepeatCount() + " skipped").withColor(0xFFFFFF)));
         
         return Command.SINGLE_SUCCESS;
     }
@@ -199,8 +259,20 @@ public class HandShakerCommand {
 
     private static int showAllModsWithPageNumber(CommandContext<CommandSourceStack> ctx, int pageNum) {
         BlacklistConfig config = HandShakerServerMod.getInstance().getBlacklistConfig();
+        PlayerHistoryDatabase db = HandShakerServerMod.getInstance().getPlayerHistoryDb();
+        
+        if (db != null) {
+            if (!db.isReady()) {
+                ctx.getSource().sendFailure(Component.literal("Player history database is still warming up, try again in a moment"));
+                return 0;
+            }
+            CommandSourceStack source = ctx.getSource();
+            return runQuery(source,
+                () -> db.getModPopularityPageAsync(pageNum, PAGE_SIZE).thenCombine(db.getActiveModCountAsync(), PopularityPage::new),
+                result -> sendAllMods(source, config, result.page(), result.totalMods()));
+        }
         
-        // Collect all mods from connected players
+        // No history database: collect all mods from connected players
         Map<String, Integer> popularity = new HashMap<>();
         for (ServerPlayer player : ctx.getSource().getServer().getPlayerList().getPlayers()) {
             Set<String> mods = HandShakerServerMod.getInstance().getClientMods(player.getUUID());
@@ -253,7 +325,45 @@ public class HandShakerCommand {
         return Command.SINGLE_SUCCESS;
     }
 
-    private static int showModInfo(CommandContext<CommandSourceStack> ctx) {
+    private record PopularityPage(PlayerHistoryDatabase.Page<PlayerHistoryDatabase.ModPopularityEntry> page, int totalMods) {}
+
+    private static void sendAllMods(CommandSourceStack source, BlacklistConfig config, PlayerHistoryDatabase.Page<PlayerHistoryDatabase.ModPopularityEntry> page, int totalMods) {
+        int pageNum = page.number();
+        int totalPages = Math.max(1, (int) Math.ceil((double) totalMods / PAGE_SIZE));
+        
+        if (page.entries().isEmpty() && pageNum > 1) {
+            source.sendFailure(Component.literal("Invalid page. Total pages: " + totalPages));
+            return;
+        }
+        
+        source.sendSystemMessage(Component.literal("═══════════════════════════════").withColor(0xFFAA00));
+        source.sendSystemMessage(Component.literal("All Detected Mods (Page " + pageNum + "/" + totalPages + ")").withColor(0xFFAA00).withStyle(ChatFormatting.BOLD));
+        source.sendSystemMessage(Component.literal("═══════════════════════════════").withColor(0xFFAA00));
+        
+        for (PlayerHistoryDatabase.ModPopularityEntry entry : page.entries()) {
+            BlacklistConfig.ModConfig modCfg = config.getModConfig(entry.modName());
+            
+            ChatFormatting modeColor = ChatFormatting.GRAY;
+            if (modCfg != null) {
+                String mode = modCfg.getMode();
+                if ("required".equals(mode)) {
+                    modeColor = ChatFormatting.GOLD;
+                } else if ("blacklisted".equals(mode)) {
+                    modeColor = ChatFormatting.RED;
+                } else if ("allowed".equals(mode)) {
+                    modeColor = ChatFormatting.GREEN;
+                }
+            }
+            
+            source.sendSystemMessage(Component.literal(entry.modName() + " (" + entry.playerCount() + " players)").withStyle(modeColor));
+        }
+        
+        if (page.hasMore()) {
+            source.sendSystemMessage(Component.literal("Use /handshaker info all_mods " + (pageNum + 1) + " for next page").withColor(0xAAAAAA));
+        }
+    }
+
+    private static int showModInfo(CommandContext<CommandSourceStack> ctx, int pageNum) {
         String modName = StringArgumentType.getString(ctx, "modName");
         PlayerHistoryDatabase db = HandShakerServerMod.getInstance().getPlayerHistoryDb();
         
@@ -261,35 +371,86 @@ public class HandShakerCommand {
             ctx.getSource().sendFailure(Component.literal("Player history database not available"));
             return 0;
         }
+        if (!db.isReady()) {
+            ctx.getSource().sendFailure(Component.literal("Player history database is still warming up, try again in a moment"));
+            return 0;
+        }
         
-        List<PlayerHistoryDatabase.PlayerModInfo> players = db.getPlayersWithMod(modName);
-        
+        CommandSourceStack source = ctx.getSource();
+        return runQuery(source, () -> db.getPlayersWithModPageAsync(modName, pageNum, PAGE_SIZE), page -> sendModInfo(source, modName, page));
+    }
+
+    private static void sendModInfo(CommandSourceStack source, String modName, PlayerHistoryDatabase.Page<PlayerHistoryDatabase.PlayerModInfo> page) {
+        List<PlayerHistoryDatabase.PlayerModInfo> players = page.entries();
         if (players.isEmpty()) {
-            ctx.getSource().sendSystemMessage(Component.literal("No players found with mod: " + modName).withColor(0xFFFF55));
-            return Command.SINGLE_SUCCESS;
+            if (page.number() > 1) {
+                source.sendFailure(Component.literal("No more players on page " + page.number()));
+            } else {
+                source.sendSystemMessage(Component.literal("No players found with mod: " + modName).withColor(0xFFFF55));
+            }
+            return;
         }
         
-        ctx.getSource().sendSystemMessage(Component.literal("═══════════════════════════════").withColor(0xFFAA00));
-        ctx.getSource().sendSystemMessage(Component.literal("Mod: " + modName).withColor(0xFFAA00).withStyle(ChatFormatting.BOLD));
-        ctx.getSource().sendSystemMessage(Component.literal("═══════════════════════════════").withColor(0xFFAA00));
-        ctx.getSource().sendSystemMessage(Component.literal("Players: " + players.size()).withColor(0xFFFF55));
-        ctx.getSource().sendSystemMessage(Component.empty());
+        source.sendSystemMessage(Component.literal("═══════════════════════════════").withColor(0xFFAA00));
+        source.sendSystemMessage(Component.literal("Mod: " + modName + " (Page " + page.number() + ")").withColor(0xFFAA00).withStyle(ChatFormatting.BOLD));
+        source.sendSystemMessage(Component.literal("═══════════════════════════════").withColor(0xFFAA00));
+        source.sendSystemMessage(Component.empty());
         
         for (PlayerHistoryDatabase.PlayerModInfo player : players) {
             if (player.isActive()) {
-                ctx.getSource().sendSystemMessage(Component.literal(player.currentName()).withColor(0x55FFFF)
+                source.sendSystemMessage(Component.literal(player.currentName()).withColor(0x55FFFF)
                     .append(Component.literal(" - ✓ Active").withStyle(ChatFormatting.GREEN))
                     .append(Component.literal(" (Since: " + player.getFirstSeenFormatted() + ")").withColor(0xAAAAAA)));
             } else {
-                ctx.getSource().sendSystemMessage(Component.literal(player.currentName()).withColor(0x55FFFF)
+                source.sendSystemMessage(Component.literal(player.currentName()).withColor(0x55FFFF)
                     .append(Component.literal(" - ✗ Removed").withStyle(ChatFormatting.RED))
                     .append(Component.literal(" (Since: " + player.getFirstSeenFormatted() + ")").withColor(0xAAAAAA)));
             }
         }
         
+        if (page.hasMore()) {
+            source.sendSystemMessage(Component.literal("Use /handshaker info mod " + modName + " " + (page.number() + 1) + " for next page").withColor(0xAAAAAA));
+        }
+    }
+
+    /**
+     * Runs a database query off the server thread and delivers the reply back on it.
+     * Each command source may only have a couple of queries in flight at once.
+     */
+    private static <T> int runQuery(CommandSourceStack source, Supplier<CompletableFuture<T>> query, Consumer<T> reply) {
+        String key = source.getTextName();
+        if (IN_FLIGHT_QUERIES.merge(key, 1, Integer::sum) > MAX_QUERIES_PER_SOURCE) {
+            releaseQuery(key);
+            source.sendFailure(Component.literal("Please wait for your previous HandShaker query to finish"));
+            return 0;
+        }
+        
+        CompletableFuture<T> future;
+        try {
+            future = query.get();
+        } catch (RuntimeException e) {
+            releaseQuery(key);
+            throw e;
+        }
+        
+        future.whenComplete((result, error) -> {
+            releaseQuery(key);
+            source.getServer().execute(() -> {
+                if (error != null) {
+                    HandShakerServerMod.LOGGER.warn("HandShaker database query failed: {}", error.getMessage());
+                    source.sendFailure(Component.literal("Database query failed, check the console for details"));
+                    return;
+                }
+                reply.accept(result);
+            });
+        });
         return Command.SINGLE_SUCCESS;
     }
 
+    private static void releaseQuery(String key) {
+        IN_FLIGHT_QUERIES.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
     private static int reload(CommandContext<CommandSourceStack> ctx) {
         BlacklistConfig config = HandShakerServerMod.getInstance().getBlacklistConfig();
         config.load();
@@ -299,6 +460,79 @@ public class HandShakerCommand {
         return Command.SINGLE_SUCCESS;
     }
 
+    private static int showRecent(CommandContext<CommandSourceStack> ctx, String reasonArg, String mod) {
+        CommandSourceStack source = ctx.getSource();
+        String reason = reasonArg.toLowerCase(Locale.ROOT);
+        List<String> reasons = ViolationLog.reasonLabels();
+        if (!reasons.contains(reason)) {
+            source.sendFailure(Component.literal("Unknown reason '" + reasonArg + "'. Use one of: " + String.join(", ", reasons)));
+            return 0;
+        }
+        ViolationLog violations = HandShakerServerMod.getInstance().getViolationLog();
+        List<ViolationLog.Violation> recent = violations.recent(ViolationLog.filter(reason, mod), RECENT_LIMIT);
+        source.sendSystemMessage(Component.literal("═══════════════════════════════════").withColor(0xFFAA00));
+        source.sendSystemMessage(Component.literal("  Recent Verdicts").withColor(0xFFAA00).withStyle(ChatFormatting.BOLD));
+        source.sendSystemMessage(Component.literal("═══════════════════════════════════").withColor(0xFFAA00));
+        if (recent.isEmpty()) {
+            source.sendSystemMessage(Component.literal("No matching kicks or actions among the last " + violations.capacity() + " verdicts").withColor(0xFFFF55));
+            return Command.SINGLE_SUCCESS;
+        }
+        for (ViolationLog.Violation violation : recent) {
+            MutableComponent line = Component.literal(RECENT_TIME.format(Instant.ofEpochMilli(violation.time())) + " ").withColor(0xAAAAAA)
+                .append(Component.literal(violation.name() + " ").withColor(0xFFFFFF))
+                .append(Component.literal(violation.reasonLabel()).withColor(0xFF5555));
+            if (!violation.mods().isEmpty()) {
+                line.append(Component.literal(" " + String.join(", ", violation.mods())).withColor(0xFFFF55));
+            }
+            if (violation.action() != null) {
+                line.append(Component.literal(" (action: " + violation.action() + ")").withColor(0xAAAAAA));
+            }
+            source.sendSystemMessage(line);
+        }
+        source.sendSystemMessage(Component.literal("Newest " + recent.size() + " shown; " + violations.getRecordedCount() + " recorded since startup, last "
+            + violations.capacity() + " kept").withColor(0xAAAAAA));
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int showMetrics(CommandContext<CommandSourceStack> ctx) {
+        CommandSourceStack source = ctx.getSource();
+        HandshakeMetrics metrics = HandShakerServerMod.getInstance().getMetrics();
+        source.sendSystemMessage(Component.literal("═══════════════════════════════════").withColor(0xFFAA00));
+        source.sendSystemMessage(Component.literal("  HandShaker Metrics").withColor(0xFFAA00).withStyle(ChatFormatting.BOLD));
+        source.sendSystemMessage(Component.literal("═══════════════════════════════════").withColor(0xFFAA00));
+        for (HandshakeMetrics.Stage stage : HandshakeMetrics.Stage.values()) {
+            source.sendSystemMessage(Component.literal(stage.label() + ": ").withColor(0xFFFF55)
+                .append(Component.literal(String.valueOf(metrics.getCount(stage))).withColor(0xFFFFFF))
+                .append(Component.literal(String.format(" (%.2f ms avg, p50 ≤ %.2f ms, p99 ≤ %.2f ms)", metrics.getMeanMillis(stage),
+                    metrics.getPercentileMillis(stage, 0.5), metrics.getPercentileMillis(stage, 0.99))).withColor(0xAAAAAA)));
+        }
+        TickBudget budget = HandShakerServerMod.getInstance().getTickBudget();
+        source.sendSystemMessage(Component.literal("Main Thread: ").withColor(0xFFFF55)
+            .append(Component.literal(String.format("%.2f ms last tick, %.2f ms avg, %.2f ms max", budget.getLastTickMillis(),
+                budget.getAverageTickMillis(), budget.getMaxTickMillis())).withColor(0xFFFFFF))
+            .append(Component.literal(" (budget " + budget.getBudgetMillis() + " ms, " + budget.getOverBudgetTicks() + " ticks over, "
+                + budget.getDeferredDepth() + " deferred now, " + budget.getDeferredCount() + " total)").withColor(0xAAAAAA)));
+        long totalKicks = 0;
+        List<String> byReason = new ArrayList<>();
+        for (KickReason reason : KickReason.values()) {
+            long count = metrics.getKickCount(reason);
+            if (count > 0) {
+                totalKicks += count;
+                byReason.add(reason.label() + ": " + count);
+            }
+        }
+        source.sendSystemMessage(Component.literal("Kicks: ").withColor(0xFFFF55)
+            .append(Component.literal(String.valueOf(totalKicks)).withColor(0xFFFFFF))
+            .append(Component.literal(byReason.isEmpty() ? "" : " (" + String.join(", ", byReason) + ")").withColor(0xAAAAAA)));
+        for (Map.Entry<String, Double> entry : metrics.readSampled().entrySet()) {
+            double value = entry.getValue();
+            String formatted = value == Math.rint(value) ? String.valueOf((long) value) : String.format("%.4f", value);
+            source.sendSystemMessage(Component.literal(entry.getKey() + ": ").withColor(0xFFFF55)
+                .append(Component.literal(formatted).withColor(0xFFFFFF)));
+        }
+        return Command.SINGLE_SUCCESS;
+    }
+
     private static int showConfig(CommandContext<CommandSourceStack> ctx) {
         BlacklistConfig config = HandShakerServerMod.getInstance().getBlacklistConfig();
         ctx.getSource().sendSystemMessage(Component.literal("═══════════════════════════════════").withColor(0xFFAA00));
@@ -0,0 +1,76 @@
+package me.mklv.handshaker.neoforge.server;
+
+import me.mklv.handshaker.neoforge.server.PlayerHistoryDatabase.ModHistoryEntry;
+import me.mklv.handshaker.neoforge.server.PlayerHistoryDatabase.ModPopularityEntry;
+import me.mklv.handshaker.neoforge.server.PlayerHistoryDatabase.PlayerModInfo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Persistence backend behind {@link PlayerHistoryDatabase}. The database handles threading,
+ * caching and page numbering; a storage only stores mod history and answers keyset queries.
+ * Implementations log their own failures and return empty results instead of throwing.
+ */
+public interface HistoryStorage {
+
+    /**
+     * Opens or creates the underlying store. Called once, off the server thread.
+     */
+    void open() throws Exception;
+
+    /**
+     * Brings a player's active mods in line with {@code currentMods}. {@code knownActive} is the
+     * active set as read earlier by {@link #getActiveMods}, or null to read it here.
+     */
+    boolean syncPlayerMods(UUID uuid, String playerName, Set<String> currentMods, Set<String> knownActive);
+
+    /**
+     * A player's active mods, or null if they could not be read. Unlike the other queries this
+     * doesn't fall back to an empty result, since an empty set would be taken as the real one.
+     */
+    Set<String> getActiveMods(UUID uuid);
+
+    /**
+     * Full history for a player, newest first.
+     */
+    List<ModHistoryEntry> getPlayerHistory(UUID uuid);
+
+    /**
+     * Up to {@code limit} history entries ordered by (added date, mod name) descending,
+     * strictly after {@code after} when it is not null.
+     */
+    List<ModHistoryEntry> getPlayerHistoryPage(UUID uuid, ModHistoryEntry after, int limit);
+
+    /**
+     * Active player count per mod, most popular first.
+     */
+    Map<String, Integer> getModPopularity();
+
+    /**
+     * Up to {@code limit} mods ordered by (player count descending, mod name ascending),
+     * strictly after {@code after} when it is not null.
+     */
+    List<ModPopularityEntry> getModPopularityPage(ModPopularityEntry after, int limit);
+
+    int getActiveModCount();
+
+    /**
+     * Every player that has used a mod, active players first.
+     */
+    List<PlayerModInfo> getPlayersWithMod(String modName);
+
+    /**
+     * Up to {@code limit} players that have used a mod ordered by UUID string,
+     * strictly after {@code after} when it is not null.
+     */
+    List<PlayerModInfo> getPlayersWithModPage(String modName, UUID after, int limit);
+
+    List<String> getPlayerNames(UUID uuid);
+
+    int getUniqueActivePlayers();
+
+    void close();
+}
@@ -0,0 +1,33 @@
+package me.mklv.handshaker.neoforge.server.api;
+
+import me.mklv.handshaker.neoforge.server.utils.KickReason;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The outcome of a player's handshake, as published by {@link HandshakeCompletedEvent} and the
+ * handshake result lookup. Immutable, so it can be kept or handed to other threads.
+ * @param mods The mod IDs the client reported, empty without a handshake
+ * @param hasHandShaker Whether the client sent a HandShaker mod list at all
+ * @param kickReason Why the player was kicked, null unless the verdict is {@link Verdict#KICKED}
+ */
+public record HandshakeResult(UUID player, Set<String> mods, boolean hasHandShaker, boolean signatureVerified,
+                              boolean veltonVerified, Verdict verdict, KickReason kickReason) {
+    public enum Verdict {
+        /** Passed every check; configured actions may still have run */
+        ALLOWED,
+        /** Not checked: a bypass permission or an allowed Bedrock player */
+        BYPASSED,
+        /** Disconnected by the check */
+        KICKED
+    }
+
+    public HandshakeResult {
+        mods = Set.copyOf(mods);
+    }
+
+    public boolean isKicked() {
+        return verdict == Verdict.KICKED;
+    }
+}
@@ -0,0 +1,61 @@
+package me.mklv.handshaker.neoforge.server.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Writes config files off the calling thread. Content is rendered by the caller and handed over as a
+ * snapshot; only the latest snapshot per file is kept, so a burst of saves costs one write per file.
+ * Writes are serialized, so a file on disk always holds one complete snapshot. A lock rather than
+ * {@code synchronized} guards the disk, since the writer runs on virtual threads.
+ */
+public class AsyncFileWriter {
+    private final Executor executor;
+    private final Map<File, PendingWrite> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    public AsyncFileWriter(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Schedules {@code content} to replace {@code file}. {@code onError} runs on the writer thread if the write fails.
+     */
+    public void write(File file, String content, Consumer<IOException> onError) {
+        pending.put(file, new PendingWrite(content, onError));
+        executor.execute(this::flush);
+    }
+
+    /**
+     * Writes everything still pending on the calling thread, e.g. before the files are read back
+     */
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            for (File file : pending.keySet()) {
+                PendingWrite write = pending.remove(file);
+                if (write == null) {
+                    continue;
+                }
+                try {
+                    Files.writeString(file.toPath(), write.content());
+                } catch (IOException e) {
+                    write.onError().accept(e);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private record PendingWrite(String content, Consumer<IOException> onError) {}
+}
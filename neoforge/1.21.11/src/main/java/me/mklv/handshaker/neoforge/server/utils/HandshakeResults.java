@@ -0,0 +1,67 @@
+package me.mklv.handshaker.neoforge.server.utils;
+
+import me.mklv.handshaker.neoforge.server.api.HandshakeResult;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Handshake results by player for the lookup API. A connected player's future completes with their
+ * first verdict; re-checks replace it with an already completed one, so later lookups see the latest
+ * result. Callers get a copy, so completing or cancelling it can't affect anyone else.
+ */
+public class HandshakeResults {
+    private final Map<UUID, CompletableFuture<HandshakeResult>> results = new ConcurrentHashMap<>();
+
+    /**
+     * The player's result, or a future that completes with it
+     * @param connected Whether the player is online or connecting. Others get a cancelled future
+     *                  rather than an entry that nothing would ever complete or remove.
+     */
+    public CompletableFuture<HandshakeResult> lookup(UUID player, boolean connected) {
+        CompletableFuture<HandshakeResult> future = results.get(player);
+        if (future == null) {
+            if (!connected) {
+                return cancelled();
+            }
+            future = results.computeIfAbsent(player, uuid -> new CompletableFuture<>());
+        }
+        return future.copy();
+    }
+
+    /**
+     * Stores a verdict
+     * @return Whether it is the player's first this session, i.e. whether to fire the event
+     */
+    public boolean complete(HandshakeResult result) {
+        CompletableFuture<HandshakeResult> pending = results.computeIfAbsent(result.player(), uuid -> new CompletableFuture<>());
+        if (pending.complete(result)) {
+            return true;
+        }
+        results.put(result.player(), CompletableFuture.completedFuture(result));
+        return false;
+    }
+
+    /**
+     * Drops a player who left. Anyone still waiting for their verdict gets a cancellation.
+     */
+    public void forget(UUID player) {
+        CompletableFuture<HandshakeResult> future = results.remove(player);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    public static CompletableFuture<HandshakeResult> cancelled() {
+        CompletableFuture<HandshakeResult> future = new CompletableFuture<>();
+        future.cancel(false);
+        return future;
+    }
+
+    public void clear() {
+        results.values().forEach(future -> future.cancel(false));
+        results.clear();
+    }
+}
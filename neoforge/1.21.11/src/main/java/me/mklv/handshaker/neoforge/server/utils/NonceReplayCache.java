@@ -0,0 +1,165 @@
+package me.mklv.handshaker.neoforge.server.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Remembers recently used handshake nonces so a captured payload cannot be replayed.
+ * Nonces are kept as 128-bit values in a ring of fixed-size time buckets. A bucket is cleared
+ * once it is older than the TTL, or early when the newest bucket fills up, so memory stays
+ * the same however long the server has been running.
+ */
+public class NonceReplayCache {
+    public static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000L;
+    public static final int DEFAULT_BUCKETS = 10;
+    public static final int DEFAULT_BUCKET_CAPACITY = 2048;
+
+    private final long bucketMillis;
+    private final long ttlMillis;
+    private final int bucketCapacity;
+    private final int slotMask;
+
+    // Per bucket: open-addressed (msb, lsb) pairs at half load; (0, 0) marks an empty slot
+    private final long[][] tables;
+    private final int[] sizes;
+    private final long[] startedAt;
+    private int current;
+
+    private long expired;
+    private long evicted;
+    private long replays;
+
+    public NonceReplayCache() {
+        this(DEFAULT_TTL_MILLIS, DEFAULT_BUCKETS, DEFAULT_BUCKET_CAPACITY);
+    }
+
+    public NonceReplayCache(long ttlMillis, int buckets, int bucketCapacity) {
+        this.bucketMillis = Math.max(1, ttlMillis / buckets);
+        this.ttlMillis = bucketMillis * buckets;
+        this.bucketCapacity = bucketCapacity;
+        int slots = Integer.highestOneBit(Math.max(1, bucketCapacity * 2 - 1)) * 2;
+        this.slotMask = slots - 1;
+        this.tables = new long[buckets][slots * 2];
+        this.sizes = new int[buckets];
+        this.startedAt = new long[buckets];
+    }
+
+    /**
+     * Records a nonce as used.
+     * @return False if the nonce was already seen within the TTL, i.e. the payload is a replay
+     */
+    public synchronized boolean markUsed(String nonce) {
+        long now = System.currentTimeMillis();
+        if (now - startedAt[current] >= bucketMillis) {
+            advance(now);
+        }
+
+        UUID key = toKey(nonce);
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+        if (msb == 0 && lsb == 0) {
+            lsb = 1;
+        }
+
+        for (int bucket = 0; bucket < tables.length; bucket++) {
+            if (sizes[bucket] > 0 && isLive(bucket, now) && contains(tables[bucket], msb, lsb)) {
+                replays++;
+                return false;
+            }
+        }
+
+        if (sizes[current] >= bucketCapacity) {
+            advance(now);
+        }
+        insert(tables[current], msb, lsb);
+        sizes[current]++;
+        return true;
+    }
+
+    private void advance(long now) {
+        current = (current + 1) % tables.length;
+        if (sizes[current] > 0) {
+            if (isLive(current, now)) {
+                evicted += sizes[current];
+            } else {
+                expired += sizes[current];
+            }
+            Arrays.fill(tables[current], 0L);
+            sizes[current] = 0;
+        }
+        startedAt[current] = now;
+    }
+
+    private boolean isLive(int bucket, long now) {
+        return now - startedAt[bucket] < ttlMillis;
+    }
+
+    private boolean contains(long[] table, long msb, long lsb) {
+        for (int slot = slotFor(msb, lsb); ; slot = (slot + 1) & slotMask) {
+            long storedMsb = table[slot * 2];
+            long storedLsb = table[slot * 2 + 1];
+            if (storedMsb == 0 && storedLsb == 0) return false;
+            if (storedMsb == msb && storedLsb == lsb) return true;
+        }
+    }
+
+    private void insert(long[] table, long msb, long lsb) {
+        int slot = slotFor(msb, lsb);
+        while (table[slot * 2] != 0 || table[slot * 2 + 1] != 0) {
+            slot = (slot + 1) & slotMask;
+        }
+        table[slot * 2] = msb;
+        table[slot * 2 + 1] = lsb;
+    }
+
+    private int slotFor(long msb, long lsb) {
+        long hash = msb * 0x9E3779B97F4A7C15L ^ lsb;
+        return (int) (hash ^ (hash >>> 32)) & slotMask;
+    }
+
+    private static UUID toKey(String nonce) {
+        try {
+            return UUID.fromString(nonce);
+        } catch (IllegalArgumentException e) {
+            // Not a UUID (e.g. third-party clients); fold it into 128 bits instead
+            return UUID.nameUUIDFromBytes(nonce.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Number of nonces currently remembered.
+     */
+    public synchronized int size() {
+        long now = System.currentTimeMillis();
+        int size = 0;
+        for (int bucket = 0; bucket < tables.length; bucket++) {
+            if (isLive(bucket, now)) {
+                size += sizes[bucket];
+            }
+        }
+        return size;
+    }
+
+    public int capacity() {
+        return bucketCapacity * tables.length;
+    }
+
+    /**
+     * Nonces dropped after outliving the TTL.
+     */
+    public synchronized long getExpiredCount() {
+        return expired;
+    }
+
+    /**
+     * Nonces dropped before their TTL because a join burst filled the cache.
+     */
+    public synchronized long getEvictedCount() {
+        return evicted;
+    }
+
+    public synchronized long getReplayCount() {
+        return replays;
+    }
+}
@@ -0,0 +1,672 @@
+package me.mklv.handshaker.neoforge.server;
+
+import com.mojang.authlib.GameProfile;
+import io.netty.buffer.Unpooled;
+import me.mklv.handshaker.neoforge.server.utils.HandshakeChallenge;
+import me.mklv.handshaker.neoforge.server.utils.HandshakeMetrics;
+import me.mklv.handshaker.neoforge.server.utils.KickReason;
+import me.mklv.handshaker.neoforge.server.utils.PayloadCapture;
+import me.mklv.handshaker.neoforge.server.utils.ViolationLog;
+import net.minecraft.network.Connection;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.protocol.PacketFlow;
+import net.minecraft.server.network.ConfigurationTask;
+import net.minecraft.server.network.ServerConfigurationPacketListenerImpl;
+import net.neoforged.bus.api.BusBuilder;
+import net.neoforged.fml.loading.FMLPaths;
+import net.neoforged.neoforge.network.handling.IPayloadContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Offline load test for sizing hardware. A synthetic client fleet goes through the real configuration-phase
+ * handshake of {@link HandShakerServerMod}, with the server thread simulated: payloads are decoded with the
+ * real codecs and handed to the same handlers the payload registrar calls, so every join takes the path a
+ * real one does, through the rate limiter, the admission queue and its tick budget, duplicate fingerprints,
+ * challenge tokens and nonces, signature checks on the CPU pool, the rules, the history database and the
+ * audit log. Play-phase joins of older clients need a player entity and are not simulated.
+ * <p>
+ * Clients arrive on a fixed schedule and latency is measured from the scheduled arrival to the end of
+ * configuration or the disconnect, so a handler that falls behind shows up as latency instead of as a
+ * slower arrival rate. A share of the fleet misbehaves with invalid signatures, replayed, malformed or
+ * flooded payloads. Signatures use a throwaway key, and the config, history and audit log live in the
+ * task's working directory, which is wiped before and after the run; pass a server's config folder to
+ * judge the fleet by its rules instead of the defaults. History writes are only measured if that config
+ * enables playerdb.
+ * <p>
+ * Run it with {@code ./gradlew :neoforge:1.21.11:handshakeLoadTest}, optionally with
+ * {@code -PloadTestArgs="<clients> <joins per second> [config folder]"}; the default is 1000 clients at 50 joins/s.
+ * <p>
+ * {@code -PloadTestArgs="replay <capture file> [speed] [config folder]"} replays a payload capture instead.
+ * Each captured player enters configuration as a client of its own when its first payload was recorded, and
+ * its payloads go through the same handlers at their recorded times, divided by the speed; signatures are
+ * checked against the bundled public.cer, as on the server that captured them. A relative capture path is
+ * resolved against the task's working directory. Challenge tokens are bound to the server and player they
+ * were issued to, so a captured one is swapped for the token issued to the replaying client; a token that was
+ * replayed across players in the capture is therefore not caught again. Players that never sent a token
+ * joined too old for the challenge, and Velton payloads only arrive after joining, so both are skipped like
+ * the play-phase joins.
+ */
+@EnabledIfSystemProperty(named = "handshaker.loadTestArgs", matches = ".*")
+class HandshakeLoadTest {
+    private static final int DEFAULT_CLIENTS = 1000;
+    private static final int DEFAULT_JOINS_PER_SECOND = 50;
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    // Share of clients that misbehave, in percent; the rest send a valid handshake
+    private static final int INVALID_SIGNATURE_PERCENT = 5;
+    private static final int DUPLICATE_PERCENT = 3;
+    private static final int MALFORMED_PERCENT = 2;
+    private static final int FLOOD_PERCENT = 1;
+    private static final int FLOOD_PAYLOADS = 48;
+    private static final int MIN_MODS = 20;
+    private static final int MAX_MODS = 150;
+
+    private static final String[] COMMON_MODS = {
+            "neoforge", "minecraft", "sodium", "embeddium", "iris", "oculus", "modernfix", "ferritecore",
+            "jei", "emi", "jade", "appleskin", "mousetweaks", "controlling", "searchables", "curios",
+            "create", "flywheel", "ponder", "architectury", "cloth_config", "balm", "waystones", "patchouli",
+            "geckolib", "playeranimator", "bettercombat", "kotlinforforge", "moonlight", "supplementaries",
+            "amendments", "farmersdelight", "terrablender", "biomesoplenty", "xaerominimap", "xaeroworldmap",
+            "journeymap", "voicechat", "entityculling", "immediatelyfast", "dynamic_fps", "lambdynlights",
+            "continuity", "betterf3", "chat_heads", "notenoughanimations", "skinlayers3d", "fallingleaves",
+            "ambientsounds", "presencefootsteps", "sound_physics_remastered", "resourcefulconfig",
+            "resourcefullib", "sophisticatedbackpacks", "sophisticatedcore", "ironchest", "storagedrawers",
+            "mekanism", "mekanismgenerators", "thermal", "cofh_core", "ae2", "refinedstorage", "botania",
+            "ars_nouveau", "irons_spellbooks", "twilightforest", "alexsmobs", "citadel", "quark", "zeta",
+            "framedblocks", "chisel", "rftoolsbase", "rftoolsutility", "mcjtylib", "pneumaticcraft",
+            "immersiveengineering", "tconstruct", "mantle", "ftblibrary", "ftbquests", "ftbteams",
+            "ftbchunks", "kubejs", "rhino", "polymorph", "inventoryprofilesnext", "libipn", "worldedit",
+            "axiom", "freecam", "replaymod", "entity_model_features", "entity_texture_features", "puzzleslib"
+    };
+
+    private enum Behavior {
+        VALID,
+        INVALID_SIGNATURE,
+        DUPLICATE,
+        MALFORMED,
+        FLOOD,
+        // Sends what a captured player sent, at the recorded times
+        REPLAY
+    }
+
+    private enum Channel {
+        MOD_LIST,
+        INTEGRITY
+    }
+
+    private record Packet(Channel channel, byte[] data) {}
+
+    /**
+     * A captured payload and when to send it, in nanoseconds from the start of the replay
+     */
+    private record Send(Client client, PayloadCapture.Entry entry, long offset) {}
+
+    /**
+     * {@code count} clients, joins per second sustained until the last verdict, latency from the scheduled
+     * arrival, heap retained across the run and history syncs per second until the last one landed
+     */
+    private record Report(int count, double perSecond, double p50Millis, double p99Millis, double maxMillis,
+                          long heapGrowthBytes, long dbWrites, double dbWritesPerSecond, Map<String, Long> outcomes) {
+        void print(boolean history) {
+            System.out.printf(Locale.ROOT, "Joins:     %d at %.1f joins/s sustained%n", count, perSecond);
+            System.out.printf(Locale.ROOT, "Verdicts:  p50 %.2f ms  p99 %.2f ms  max %.2f ms%n", p50Millis, p99Millis, maxMillis);
+            System.out.println("Outcomes:  " + outcomes);
+            System.out.printf(Locale.ROOT, "Heap:      %+.1f MB retained%n", heapGrowthBytes / (1024.0 * 1024.0));
+            if (history) {
+                System.out.printf(Locale.ROOT, "History:   %d syncs at %.1f syncs/s%n", dbWrites, dbWritesPerSecond);
+            } else {
+                System.out.println("History:   off, playerdb-enabled is false");
+            }
+        }
+    }
+
+    private HandShakerServerMod server;
+    private final ServerThread serverThread = new ServerThread();
+    // Stands in for the network threads, which decode payloads before the handlers run on the server thread
+    private final ExecutorService network = Executors.newFixedThreadPool(2,
+            Thread.ofPlatform().name("Netty-", 0).daemon(true).factory());
+    private final KeyPair keys = generateKeys();
+    private final String jarHash = sha256Hex("handshaker-loadtest-client.jar");
+    private final byte[] validSignature = sign(keys, jarHash);
+
+    @Test
+    void joinFleet() throws Exception {
+        String[] args = System.getProperty("handshaker.loadTestArgs").trim().split("\\s+");
+        boolean replay = args[0].equals("replay");
+        if (replay && args.length < 2) {
+            throw new IllegalArgumentException("Usage: replay <capture file> [speed] [config folder]");
+        }
+        int configArg = replay ? 3 : 2;
+        Path configFolder = args.length > configArg ? Path.of(args[configArg]) : null;
+
+        Path dataFolder = FMLPaths.CONFIGDIR.get().resolve("HandShaker");
+        deleteRecursively(dataFolder);
+        try {
+            if (configFolder != null) {
+                Files.createDirectories(dataFolder);
+                copyConfig(configFolder, dataFolder);
+            }
+            // An instance of our own rather than the one FML loaded, so it reads the copied config and checks
+            // signatures against the throwaway key, or for a replay against the bundled certificate, as the
+            // server that captured them did
+            server = replay ? new HandShakerServerMod(BusBuilder.builder().build())
+                    : new HandShakerServerMod(BusBuilder.builder().build(), keys.getPublic());
+            server.setServerThread(serverThread);
+            serverThread.start();
+            try {
+                String rules = configFolder != null ? "rules from " + configFolder : "default rules";
+                if (replay) {
+                    File file = new File(args[1]);
+                    double speed = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+                    PayloadCapture.Capture capture = PayloadCapture.read(file);
+                    System.out.println("Replaying " + capture.entries().size() + " payloads from " + file.getName()
+                            + " at " + speed + "x speed, " + rules
+                            + (capture.truncated() ? " (the file ends mid-record; replaying the complete ones)" : ""));
+                    replay(capture.entries(), speed).print(server.getPlayerHistoryDb() != null);
+                } else {
+                    int clientCount = !args[0].isEmpty() ? Integer.parseInt(args[0]) : DEFAULT_CLIENTS;
+                    int joinsPerSecond = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_JOINS_PER_SECOND;
+                    System.out.println(clientCount + " clients at " + joinsPerSecond + " joins/s, " + rules);
+                    run(clientCount, joinsPerSecond).print(server.getPlayerHistoryDb() != null);
+                }
+            } finally {
+                server.stop();
+                serverThread.stop();
+                network.shutdownNow();
+            }
+        } finally {
+            deleteRecursively(dataFolder);
+        }
+    }
+
+    private Report run(int count, int joinsPerSecond) {
+        Client[] fleet = generateFleet(count);
+        long interval = 1_000_000_000L / Math.max(1, joinsPerSecond);
+        for (int i = 0; i < count; i++) {
+            fleet[i].offset = i * interval;
+        }
+        return drive(fleet, List.of());
+    }
+
+    private Report replay(List<PayloadCapture.Entry> capture, double speed) {
+        // Clients too old for challenge tokens never send one
+        Set<Long> challenged = new HashSet<>();
+        for (PayloadCapture.Entry entry : capture) {
+            if (HandshakeChallenge.isToken(decode(entry).map(this::nonce).orElse(null))) {
+                challenged.add(entry.player());
+            }
+        }
+        Map<Long, Client> players = new LinkedHashMap<>();
+        List<Send> sends = new ArrayList<>(capture.size());
+        int skipped = 0;
+        for (PayloadCapture.Entry entry : capture) {
+            if (!challenged.contains(entry.player()) || entry.channel() == PayloadCapture.Channel.VELTON) {
+                skipped++;
+                continue;
+            }
+            long offset = (long) (entry.offsetMicros() * 1000 / speed);
+            Client client = players.computeIfAbsent(entry.player(), pseudonym -> {
+                // Name-based UUIDs are version 3; version 0 would count as a Bedrock player
+                String name = "Replay" + players.size();
+                Client joining = new Client(UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)), name,
+                        Behavior.REPLAY, "", null);
+                joining.offset = offset;
+                return joining;
+            });
+            sends.add(new Send(client, entry, offset));
+        }
+        if (skipped > 0) {
+            System.out.println("Skipping " + skipped + " payloads of older clients and Velton, which only arrive after joining");
+        }
+        if (players.isEmpty()) {
+            throw new IllegalArgumentException("The capture holds no configuration-phase handshakes");
+        }
+        return drive(players.values().toArray(Client[]::new), sends);
+    }
+
+    /**
+     * Starts configuration for the fleet at each client's offset and sends the captured payloads at theirs,
+     * then waits for every verdict. Both lists are in time order.
+     */
+    private Report drive(Client[] fleet, List<Send> sends) {
+        int count = fleet.length;
+        System.gc();
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        int started = 0;
+        int sent = 0;
+        while (started < count || sent < sends.size()) {
+            boolean join = sent == sends.size() || started < count && fleet[started].offset <= sends.get(sent).offset();
+            long due = start + (join ? fleet[started].offset : sends.get(sent).offset());
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (join) {
+                Client client = fleet[started++];
+                client.arrival = due;
+                // Configuration tasks are registered on the server thread once the login is through
+                serverThread.execute(() -> server.configure(client.listener, client::runTask));
+            } else {
+                Send send = sends.get(sent++);
+                Client client = send.client();
+                // Chained, so a client's payloads arrive in the order they were captured
+                client.sending = client.sending.thenRunAsync(() -> receive(client, send.entry()), network);
+            }
+        }
+
+        CompletableFuture<?>[] outcomes = Arrays.stream(fleet).map(client -> client.outcome).toArray(CompletableFuture<?>[]::new);
+        try {
+            // Every client gets a verdict by its handshake timeout, unless the queue is still behind
+            CompletableFuture.allOf(outcomes).get(server.getBlacklistConfig().getHandshakeTimeoutSeconds() * 10L + 60, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            for (Client client : fleet) {
+                client.finish("no_verdict");
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        // The last history syncs may still be in flight
+        server.getExecutors().shutdown(60, TimeUnit.SECONDS);
+        long writeNanos = System.nanoTime() - start;
+        System.gc();
+        long heapGrowth = usedHeap() - heapBefore;
+
+        long[] latencies = new long[count];
+        Map<String, Long> counts = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            latencies[i] = fleet[i].latency;
+            counts.merge(fleet[i].outcome.join(), 1L, Long::sum);
+        }
+        Arrays.sort(latencies);
+        long written = server.getMetrics().getCount(HandshakeMetrics.Stage.DB_SYNC);
+        return new Report(count, count / (elapsedNanos / 1e9),
+                percentile(latencies, 0.5), percentile(latencies, 0.99), latencies[count - 1] / 1e6,
+                heapGrowth, written, written / (writeNanos / 1e9), counts);
+    }
+
+    /**
+     * The client's answer to the challenge. Payloads are decoded on the network thread and handled on the
+     * server thread; ones the codec rejects close the connection before any handler sees them, as Netty does.
+     */
+    private void answer(Client client) {
+        network.execute(() -> {
+            if (client.behavior == Behavior.DUPLICATE && client.previous != null) {
+                // The previous client's bytes again, challenge token included
+                client.previous.packets.thenAccept(client.packets::complete);
+            } else {
+                client.packets.complete(packets(client));
+            }
+            client.packets.thenAcceptAsync(packets -> {
+                for (Packet packet : packets) {
+                    if (!client.connected) {
+                        break;
+                    }
+                    try {
+                        if (packet.channel() == Channel.MOD_LIST) {
+                            HandShakerServerMod.ModsListPayload payload = HandShakerServerMod.ModsListPayload.CODEC.decode(Unpooled.wrappedBuffer(packet.data()));
+                            serverThread.execute(() -> server.handleModsList(payload, client.context));
+                        } else {
+                            HandShakerServerMod.IntegrityPayload payload = HandShakerServerMod.IntegrityPayload.CODEC.decode(Unpooled.wrappedBuffer(packet.data()));
+                            serverThread.execute(() -> server.handleIntegrity(payload, client.context));
+                        }
+                    } catch (RuntimeException e) {
+                        serverThread.execute(() -> client.close(KickReason.MALFORMED.label()));
+                        break;
+                    }
+                }
+            }, network);
+        });
+    }
+
+    /**
+     * A captured payload decoded on the network thread and handled on the server thread, with its challenge
+     * token swapped for the one this client was issued
+     */
+    private void receive(Client client, PayloadCapture.Entry entry) {
+        if (!client.connected) {
+            return;
+        }
+        Optional<Object> decoded = decode(entry);
+        if (decoded.isEmpty()) {
+            serverThread.execute(() -> client.close(KickReason.MALFORMED.label()));
+            return;
+        }
+        String token = HandshakeChallenge.isToken(nonce(decoded.get())) ? client.challengeToken : null;
+        if (decoded.get() instanceof HandShakerServerMod.ModsListPayload payload) {
+            HandShakerServerMod.ModsListPayload sent = token == null ? payload
+                    : new HandShakerServerMod.ModsListPayload(payload.mods(), payload.modListHash(), token);
+            serverThread.execute(() -> server.handleModsList(sent, client.context));
+        } else if (decoded.get() instanceof HandShakerServerMod.IntegrityPayload payload) {
+            HandShakerServerMod.IntegrityPayload sent = token == null ? payload
+                    : new HandShakerServerMod.IntegrityPayload(payload.signature(), payload.jarHash(), token);
+            serverThread.execute(() -> server.handleIntegrity(sent, client.context));
+        }
+    }
+
+    /**
+     * A captured mod list or integrity payload decoded with the real codec. Empty if the codec rejects it,
+     * which closes the connection, or for Velton payloads.
+     */
+    private Optional<Object> decode(PayloadCapture.Entry entry) {
+        try {
+            return switch (entry.channel()) {
+                case MOD_LIST -> Optional.of(HandShakerServerMod.ModsListPayload.CODEC.decode(Unpooled.wrappedBuffer(entry.payload())));
+                case INTEGRITY -> Optional.of(HandShakerServerMod.IntegrityPayload.CODEC.decode(Unpooled.wrappedBuffer(entry.payload())));
+                case VELTON -> Optional.empty();
+            };
+        } catch (RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    private String nonce(Object payload) {
+        if (payload instanceof HandShakerServerMod.ModsListPayload modList) {
+            return modList.nonce();
+        }
+        return payload instanceof HandShakerServerMod.IntegrityPayload integrity ? integrity.nonce() : null;
+    }
+
+    /**
+     * The payloads a client sends in answer to the challenge: its mod list and integrity payload
+     */
+    private List<Packet> packets(Client client) {
+        String token = client.challengeToken;
+        byte[] modList = concat(encodeString(client.mods), encodeString(sha256Hex(client.mods)), encodeString(token));
+        byte[] signature = validSignature;
+        if (client.behavior == Behavior.INVALID_SIGNATURE) {
+            signature = new byte[validSignature.length];
+            ThreadLocalRandom.current().nextBytes(signature);
+        }
+        byte[] integrity = concat(encodeBytes(signature), encodeString(jarHash), encodeString(token));
+
+        return switch (client.behavior) {
+            case MALFORMED -> List.of(new Packet(Channel.MOD_LIST, Arrays.copyOf(modList, modList.length / 2)),
+                    new Packet(Channel.INTEGRITY, integrity));
+            case FLOOD -> Collections.nCopies(FLOOD_PAYLOADS, new Packet(Channel.MOD_LIST, modList));
+            default -> List.of(new Packet(Channel.MOD_LIST, modList), new Packet(Channel.INTEGRITY, integrity));
+        };
+    }
+
+    private Client[] generateFleet(int count) {
+        List<String> configuredMods = List.copyOf(server.getBlacklistConfig().getModConfigMap().keySet());
+        Random random = new Random(count);
+        Client[] fleet = new Client[count];
+        for (int i = 0; i < count; i++) {
+            int roll = random.nextInt(100);
+            Behavior behavior = roll < INVALID_SIGNATURE_PERCENT ? Behavior.INVALID_SIGNATURE
+                    : roll < INVALID_SIGNATURE_PERCENT + DUPLICATE_PERCENT ? Behavior.DUPLICATE
+                    : roll < INVALID_SIGNATURE_PERCENT + DUPLICATE_PERCENT + MALFORMED_PERCENT ? Behavior.MALFORMED
+                    : roll < INVALID_SIGNATURE_PERCENT + DUPLICATE_PERCENT + MALFORMED_PERCENT + FLOOD_PERCENT ? Behavior.FLOOD
+                    : Behavior.VALID;
+
+            Set<String> mods = new LinkedHashSet<>();
+            mods.add("hand_shaker");
+            int modCount = MIN_MODS + random.nextInt(MAX_MODS - MIN_MODS + 1);
+            for (int j = 0; j < modCount; j++) {
+                mods.add(COMMON_MODS[random.nextInt(COMMON_MODS.length)]);
+            }
+            if (!configuredMods.isEmpty() && random.nextInt(10) == 0) {
+                mods.add(configuredMods.get(random.nextInt(configuredMods.size())));
+            }
+            // Name-based UUIDs are version 3; version 0 would count as a Bedrock player
+            String name = "LoadTest" + i;
+            fleet[i] = new Client(UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)), name, behavior,
+                    String.join(",", mods), i > 0 ? fleet[i - 1] : null);
+        }
+        return fleet;
+    }
+
+    /**
+     * One simulated client. The server sees it through a mocked configuration listener, whose connection
+     * stays open until the client is disconnected, and a payload context that hands out that listener.
+     */
+    private final class Client {
+        private final UUID uuid;
+        private final Behavior behavior;
+        private final String mods;
+        private final Client previous;
+        private final ServerConfigurationPacketListenerImpl listener;
+        private final IPayloadContext context;
+        private final CompletableFuture<List<Packet>> packets = new CompletableFuture<>();
+        private final CompletableFuture<String> outcome = new CompletableFuture<>();
+        private final CompletableFuture<Void> challenged = new CompletableFuture<>();
+        private CompletableFuture<Void> sending = challenged;
+        private volatile boolean connected = true;
+        private volatile String challengeToken;
+        // When configuration starts, in nanoseconds from the start of the run
+        private long offset;
+        private long arrival;
+        private long latency;
+
+        private Client(UUID uuid, String name, Behavior behavior, String mods, Client previous) {
+            this.uuid = uuid;
+            this.behavior = behavior;
+            this.mods = mods;
+            this.previous = previous;
+
+            listener = mock(ServerConfigurationPacketListenerImpl.class);
+            Connection connection = mock(Connection.class);
+            when(listener.getOwner()).thenReturn(new GameProfile(uuid, name));
+            when(listener.getConnection()).thenReturn(connection);
+            when(connection.isConnected()).thenAnswer(invocation -> connected);
+            when(listener.hasChannel(HandShakerServerMod.ChallengePayload.TYPE)).thenReturn(true);
+            doAnswer(invocation -> {
+                finish("allowed");
+                return null;
+            }).when(listener).finishCurrentTask(HandShakerServerMod.HandshakeTask.TYPE);
+            doAnswer(invocation -> {
+                List<ViolationLog.Violation> last = server.getViolationLog().recent(violation -> violation.player().equals(uuid), 1);
+                close(last.isEmpty() ? "kicked" : last.get(0).reasonLabel());
+                return null;
+            }).when(listener).disconnect(any(Component.class));
+
+            context = (IPayloadContext) Proxy.newProxyInstance(IPayloadContext.class.getClassLoader(),
+                    new Class<?>[] {IPayloadContext.class}, (proxy, method, args) -> switch (method.getName()) {
+                        case "listener" -> listener;
+                        case "flow" -> PacketFlow.SERVERBOUND;
+                        case "disconnect" -> {
+                            listener.disconnect((Component) args[0]);
+                            yield null;
+                        }
+                        case "toString" -> "configuration context of " + name;
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+
+        /**
+         * Runs the configuration task the way the listener would, sending its challenge to this client
+         */
+        private void runTask(ConfigurationTask task) {
+            ((HandShakerServerMod.HandshakeTask) task).run(payload -> {
+                challengeToken = ((HandShakerServerMod.ChallengePayload) payload).token();
+                challenged.complete(null);
+                if (behavior != Behavior.REPLAY) {
+                    answer(this);
+                }
+            });
+        }
+
+        /**
+         * The connection closing. The server notices when the configuration timeout next looks at it,
+         * since there is no logout event during configuration.
+         */
+        private void close(String label) {
+            if (!connected) {
+                return;
+            }
+            connected = false;
+            finish(label);
+        }
+
+        private synchronized void finish(String label) {
+            if (outcome.isDone()) {
+                return;
+            }
+            latency = System.nanoTime() - arrival;
+            outcome.complete(label);
+        }
+    }
+
+    /**
+     * The server thread: a tick every 50 ms with the start and end tick events, and queued work such as
+     * configuration starts, payload handlers and the handshake's server-thread callbacks in between
+     */
+    private final class ServerThread implements Executor {
+        private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+        private final Thread thread = new Thread(this::loop, "Server thread");
+        private volatile boolean running = true;
+
+        @Override
+        public void execute(Runnable task) {
+            queue.add(task);
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        private void stop() throws InterruptedException {
+            running = false;
+            thread.join();
+        }
+
+        private void loop() {
+            long nextTick = System.nanoTime();
+            try {
+                while (running) {
+                    long wait = nextTick - System.nanoTime();
+                    if (wait <= 0) {
+                        runSafely(server::startTick);
+                        runSafely(server::endTick);
+                        // A tick that overran is followed by the next one right away, as on a lagging server
+                        nextTick = Math.max(nextTick + TICK_NANOS, System.nanoTime() - TICK_NANOS);
+                        continue;
+                    }
+                    Runnable task = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (task != null) {
+                        runSafely(task);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void runSafely(Runnable task) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                HandShakerServerMod.LOGGER.error("Task failed on the server thread", e);
+            }
+        }
+    }
+
+    private static void copyConfig(Path from, Path to) throws IOException {
+        try (Stream<Path> files = Files.list(from)) {
+            for (Path file : files.filter(path -> path.getFileName().toString().endsWith(".yml")).toList()) {
+                Files.copy(file, to.resolve(file.getFileName()));
+            }
+        }
+    }
+
+    private static KeyPair generateKeys() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("RSA not available", e);
+        }
+    }
+
+    private static byte[] sign(KeyPair keys, String jarHash) {
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(keys.getPrivate());
+            signature.update(jarHash.getBytes(StandardCharsets.UTF_8));
+            return signature.sign();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not sign the load-test JAR hash", e);
+        }
+    }
+
+    private static String sha256Hex(String input) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(input.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static byte[] encodeString(String value) {
+        return encodeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Length-prefixed with a VarInt, as the client writes it
+     */
+    private static byte[] encodeBytes(byte[] value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(value.length + 5);
+        int length = value.length;
+        while ((length & ~0x7F) != 0) {
+            out.write((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.write(length);
+        out.writeBytes(value);
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        int rank = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, rank)] / 1e6;
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
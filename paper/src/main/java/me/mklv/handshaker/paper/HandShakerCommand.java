@@ -1,7 +1,13 @@
 package me.mklv.handshaker.paper;
 
 import me.mklv.handshaker.paper.configs.ConfigManager;
+import me.mklv.handshaker.paper.utils.HandshakeAdmission;
+import me.mklv.handshaker.paper.utils.HandshakeMetrics;
+import me.mklv.handshaker.paper.utils.KickReason;
+import me.mklv.handshaker.paper.utils.NonceReplayCache;
+import me.mklv.handshaker.paper.utils.PayloadRateLimiter;
 import me.mklv.handshaker.paper.utils.PlayerHistoryDatabase;
+import me.mklv.handshaker.paper.utils.ViolationLog;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.event.ClickEvent;
 import net.kyori.adventure.text.event.HoverEvent;
@@ -13,13 +19,20 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.util.StringUtil;
 
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class HandShakerCommand {
     private final HandShakerPlugin plugin;
     
-    private static final List<String> ROOT_COMMANDS = Arrays.asList("reload", "info", "config", "mode", "manage");
+    private static final List<String> ROOT_COMMANDS = Arrays.asList("reload", "info", "config", "mode", "manage", "metrics", "recent");
     private static final List<String> INFO_SUBCOMMANDS = Arrays.asList("configured_mods", "all_mods", "mod");
     private static final List<String> CONFIG_PARAMS = Arrays.asList("behavior", "integrity", "whitelist", "allow_bedrock", "playerdb_enabled");
     private static final List<String> MODE_LISTS = Arrays.asList("mods_required", "mods_blacklisted", "mods_whitelisted");
@@ -29,6 +42,13 @@ public class HandShakerCommand {
     private static final List<String> INTEGRITY_MODES = Arrays.asList("SIGNED", "DEV");
     private static final List<String> BEHAVIOR_MODES = Arrays.asList("STRICT", "VANILLA");
     private static final List<String> IGNORE_SUBCOMMANDS = Arrays.asList("add", "remove", "list");
+    private static final int MAX_QUERIES_PER_SENDER = 2;
+    private static final int PAGE_SIZE = 10;
+    private static final int HISTORY_LOOKUP_LIMIT = 256;
+    private static final int RECENT_LIMIT = 20;
+    private static final DateTimeFormatter RECENT_TIME = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final Map<String, Integer> inFlightQueries = new ConcurrentHashMap<>();
 
     public HandShakerCommand(HandShakerPlugin plugin) {
         this.plugin = plugin;
@@ -96,6 +116,8 @@ public class HandShakerCommand {
             case "info" -> handleInfo(sender, args);
             case "config" -> handleConfig(sender, args, config);
             case "mode" -> handleMode(sender, args, config);
+            case "metrics" -> showMetrics(sender);
+            case "recent" -> showRecent(sender, args);
             case "manage" -> {
                 if (args.length < 2) {
                     sender.sendMessage("§cUsage: /handshaker manage <add | change | remove | ignore | player>");
@@ -362,6 +384,10 @@ public class HandShakerCommand {
             sender.sendMessage("§cPlayer history database not available");
             return;
         }
+        if (!db.isReady()) {
+            sender.sendMessage("§ePlayer history database is still warming up, try again in a moment");
+            return;
+        }
         
         if (args.length < 2) {
             showInfoSummary(sender, db, config);
@@ -385,30 +411,99 @@ public class HandShakerCommand {
             }
             case "mod" -> {
                 if (args.length < 3) {
-                    sender.sendMessage("§cUsage: /handshaker info mod <modname>");
+                    sender.sendMessage("§cUsage: /handshaker info mod <modname> [page]");
                     return;
                 }
-                showModInfo(sender, db, args[2]);
+                int page = 1;
+                if (args.length > 3) {
+                    try {
+                        page = Integer.parseInt(args[3]);
+                    } catch (NumberFormatException e) {
+                        sender.sendMessage("§cInvalid page number");
+                        return;
+                    }
+                }
+                showModInfo(sender, db, args[2], page);
             }
-            default -> sender.sendMessage("§cUsage: /handshaker info [configured_mods | all_mods [page] | mod <modname>]");
+            default -> sender.sendMessage("§cUsage: /handshaker info [configured_mods | all_mods [page] | mod <modname> [page]]");
         }
     }
 
     private void showInfoSummary(CommandSender sender, PlayerHistoryDatabase db, ConfigManager config) {
-        Map<String, Integer> popularity = db.getModPopularity();
-        int uniqueMods = popularity.size();
+        runQuery(sender,
+            () -> db.getActiveModCountAsync().thenCombine(db.getUniqueActivePlayersAsync(), (modCount, activePlayers) -> new int[] {modCount, activePlayers}),
+            counts -> sendInfoSummary(sender, config, counts[0], counts[1]));
+    }
+
+    private void sendInfoSummary(CommandSender sender, ConfigManager config, int uniqueMods, int activePlayers) {
         int configuredMods = config.getModConfigMap().size();
-        int activePlayers = db.getUniqueActivePlayers();
         
         sender.sendMessage("§6§l=== HandShaker Statistics ===");
         sender.sendMessage("§eUnique Mods Detected: §f" + uniqueMods);
         sender.sendMessage("§eConfigured Mods: §f" + configuredMods);
         sender.sendMessage("§eActive Players: §f" + activePlayers);
+        NonceReplayCache nonces = plugin.getProtocolHandler().getNonceCache();
+        sender.sendMessage("§eReplay Cache: §f" + nonces.size() + "/" + nonces.capacity() + " nonces §7(" + nonces.getExpiredCount() + " expired, " + nonces.getEvictedCount() + " evicted, " + nonces.getReplayCount() + " replays blocked)");
+        HandshakeAdmission admission = plugin.getProtocolHandler().getAdmission();
+        sender.sendMessage("§eHandshake Queue: §f" + admission.getQueueDepth() + "/" + admission.getQueueCapacity() + " queued, " + admission.getWaitingDepth() + " waiting §7(" + admission.getShedCount() + " shed, " + String.format("%.1f ms avg / %.1f ms max wait", admission.getAverageWaitMillis(), admission.getMaxWaitMillis()) + ")");
+        PayloadRateLimiter limiter = plugin.getProtocolHandler().getRateLimiter();
+        sender.sendMessage("§eRate Limit: §f" + limiter.getDroppedCount() + " dropped §7(mods: " + limiter.getDroppedCount(HandShakerPlugin.MODS_CHANNEL) + ", integrity: " + limiter.getDroppedCount(HandShakerPlugin.INTEGRITY_CHANNEL) + ", velton: " + limiter.getDroppedCount(HandShakerPlugin.VELTON_CHANNEL) + ", " + limiter.getKickCount() + " kicked)");
+        sender.sendMessage("§eRepeat Payloads: §f" + plugin.getProtocolHandler().getFingerprints().getRepeatCount() + " skipped");
         sender.sendMessage("");
         sender.sendMessage("§eUse §f/handshaker info configured_mods §eto list configured mods");
         sender.sendMessage("§eUse §f/handshaker info all_mods [page] §eto see all detected mods");
     }
 
+    private void showRecent(CommandSender sender, String[] args) {
+        String reason = args.length > 1 ? args[1].toLowerCase(Locale.ROOT) : "all";
+        String mod = args.length > 2 ? args[2] : null;
+        List<String> reasons = ViolationLog.reasonLabels();
+        if (!reasons.contains(reason)) {
+            sender.sendMessage("§cUnknown reason '" + args[1] + "'. Use one of: " + String.join(", ", reasons));
+            return;
+        }
+        ViolationLog violations = plugin.getViolationLog();
+        List<ViolationLog.Violation> recent = violations.recent(ViolationLog.filter(reason, mod), RECENT_LIMIT);
+        sender.sendMessage("§6§l=== Recent Verdicts ===");
+        if (recent.isEmpty()) {
+            sender.sendMessage("§eNo matching kicks or actions among the last " + violations.capacity() + " verdicts");
+            return;
+        }
+        for (ViolationLog.Violation violation : recent) {
+            sender.sendMessage("§7" + RECENT_TIME.format(Instant.ofEpochMilli(violation.time())) + " §f" + violation.name()
+                + " §c" + violation.reasonLabel()
+                + (violation.mods().isEmpty() ? "" : " §e" + String.join(", ", violation.mods()))
+                + (violation.action() != null ? " §7(action: " + violation.action() + ")" : ""));
+        }
+        sender.sendMessage("§7Newest " + recent.size() + " shown; " + violations.getRecordedCount() + " recorded since startup, last "
+            + violations.capacity() + " kept");
+    }
+
+    private void showMetrics(CommandSender sender) {
+        HandshakeMetrics metrics = plugin.getMetrics();
+        sender.sendMessage("§6§l=== HandShaker Metrics ===");
+        for (HandshakeMetrics.Stage stage : HandshakeMetrics.Stage.values()) {
+            sender.sendMessage("§e" + stage.label() + ": §f" + metrics.getCount(stage) + " §7("
+                + String.format("%.2f ms avg, p50 ≤ %.2f ms, p99 ≤ %.2f ms", metrics.getMeanMillis(stage),
+                    metrics.getPercentileMillis(stage, 0.5), metrics.getPercentileMillis(stage, 0.99)) + ")");
+        }
+        long totalKicks = 0;
+        List<String> byReason = new ArrayList<>();
+        for (KickReason reason : KickReason.values()) {
+            long count = metrics.getKickCount(reason);
+            if (count > 0) {
+                totalKicks += count;
+                byReason.add(reason.label() + ": " + count);
+            }
+        }
+        sender.sendMessage("§eKicks: §f" + totalKicks + (byReason.isEmpty() ? "" : " §7(" + String.join(", ", byReason) + ")"));
+        for (Map.Entry<String, Double> entry : metrics.readSampled().entrySet()) {
+            double value = entry.getValue();
+            String formatted = value == Math.rint(value) ? String.valueOf((long) value) : String.format("%.4f", value);
+            sender.sendMessage("§e" + entry.getKey() + ": §f" + formatted);
+        }
+    }
+
     private void showConfiguredMods(CommandSender sender, ConfigManager config) {
         Map<String, ConfigManager.ModConfig> mods = config.getModConfigMap();
         if (mods.isEmpty()) {
@@ -441,28 +536,32 @@ public class HandShakerCommand {
     }
 
     private void showAllMods(CommandSender sender, PlayerHistoryDatabase db, ConfigManager config, int pageNum) {
-        Map<String, Integer> popularity = db.getModPopularity();
-        List<Map.Entry<String, Integer>> sortedMods = new ArrayList<>(popularity.entrySet());
-        sortedMods.sort((a, b) -> b.getValue().compareTo(a.getValue()));
-        
-        int pageSize = 10;
-        int totalPages = (int) Math.ceil((double) sortedMods.size() / pageSize);
+        if (pageNum < 1) {
+            sender.sendMessage("§cInvalid page number");
+            return;
+        }
+        runQuery(sender,
+            () -> db.getModPopularityPageAsync(pageNum, PAGE_SIZE).thenCombine(db.getActiveModCountAsync(), PopularityPage::new),
+            result -> sendAllMods(sender, config, result.page(), result.totalMods()));
+    }
+
+    private record PopularityPage(PlayerHistoryDatabase.Page<PlayerHistoryDatabase.ModPopularityEntry> page, int totalMods) {}
+
+    private void sendAllMods(CommandSender sender, ConfigManager config, PlayerHistoryDatabase.Page<PlayerHistoryDatabase.ModPopularityEntry> page, int totalMods) {
+        int pageNum = page.number();
+        int totalPages = Math.max(1, (int) Math.ceil((double) totalMods / PAGE_SIZE));
         
-        if (pageNum < 1 || pageNum > totalPages) {
+        if (page.entries().isEmpty() && pageNum > 1) {
             sender.sendMessage("§cInvalid page. Total pages: " + totalPages);
             return;
         }
         
-        int startIdx = (pageNum - 1) * pageSize;
-        int endIdx = Math.min(startIdx + pageSize, sortedMods.size());
-        
         sender.sendMessage("§6=== All Detected Mods (Page " + pageNum + "/" + totalPages + ") ===");
         
         if (!(sender instanceof Player player)) {
-            for (int i = startIdx; i < endIdx; i++) {
-                Map.Entry<String, Integer> entry = sortedMods.get(i);
-                String modName = entry.getKey();
-                int count = entry.getValue();
+            for (PlayerHistoryDatabase.ModPopularityEntry entry : page.entries()) {
+                String modName = entry.modName();
+                int count = entry.playerCount();
                 
                 if (config.isIgnored(modName)) continue;
                 
@@ -470,10 +569,9 @@ public class HandShakerCommand {
                 sender.sendMessage("§e" + modName + " §7| §f" + count + " player(s) § " + modCfg.getMode());
             }
         } else {
-            for (int i = startIdx; i < endIdx; i++) {
-                Map.Entry<String, Integer> entry = sortedMods.get(i);
-                String modName = entry.getKey();
-                int count = entry.getValue();
+            for (PlayerHistoryDatabase.ModPopularityEntry entry : page.entries()) {
+                String modName = entry.modName();
+                int count = entry.playerCount();
                 
                 if (config.isIgnored(modName)) continue;
                 
@@ -495,16 +593,22 @@ public class HandShakerCommand {
         }
     }
 
-    private void showModInfo(CommandSender sender, PlayerHistoryDatabase db, String modName) {
-        List<PlayerHistoryDatabase.PlayerModInfo> players = db.getPlayersWithMod(modName);
-        
+    private void showModInfo(CommandSender sender, PlayerHistoryDatabase db, String modName, int pageNum) {
+        if (pageNum < 1) {
+            sender.sendMessage("§cInvalid page number");
+            return;
+        }
+        runQuery(sender, () -> db.getPlayersWithModPageAsync(modName, pageNum, PAGE_SIZE), page -> sendModInfo(sender, modName, page));
+    }
+
+    private void sendModInfo(CommandSender sender, String modName, PlayerHistoryDatabase.Page<PlayerHistoryDatabase.PlayerModInfo> page) {
+        List<PlayerHistoryDatabase.PlayerModInfo> players = page.entries();
         if (players.isEmpty()) {
-            sender.sendMessage("§eNo players found with mod: " + modName);
+            sender.sendMessage(page.number() > 1 ? "§cNo more players on page " + page.number() : "§eNo players found with mod: " + modName);
             return;
         }
         
-        sender.sendMessage("§6=== Mod: " + modName + " ===");
-        sender.sendMessage("§eTotal Players: §f" + players.size());
+        sender.sendMessage("§6=== Mod: " + modName + " (Page " + page.number() + ") ===");
         sender.sendMessage("");
         
         if (!(sender instanceof Player player)) {
@@ -517,6 +621,10 @@ public class HandShakerCommand {
                 player.sendMessage(buildPlayerInfoComponent(info));
             }
         }
+        
+        if (page.hasMore()) {
+            sender.sendMessage("§7Use §f/handshaker info mod " + modName + " " + (page.number() + 1) + " §7for the next page");
+        }
     }
 
     private void handlePlayer(CommandSender sender, String[] args, ConfigManager config) {
@@ -560,17 +668,25 @@ public class HandShakerCommand {
         }
         
         PlayerHistoryDatabase db = plugin.getPlayerHistoryDb();
+        if (db == null || !db.isReady()) {
+            sendPlayerMods(player, target.getName(), mods, config, Collections.emptyList());
+            return;
+        }
+        // Active entries are the newest rows for each installed mod, so one bounded page covers them
+        int historyLimit = Math.min(HISTORY_LOOKUP_LIMIT, mods.size() * 2 + PAGE_SIZE);
+        runQuery(sender, () -> db.getPlayerHistoryPageAsync(target.getUniqueId(), null, historyLimit),
+            history -> sendPlayerMods(player, target.getName(), mods, config, history));
+    }
+
+    private void sendPlayerMods(Player player, String targetName, Set<String> mods, ConfigManager config, List<PlayerHistoryDatabase.ModHistoryEntry> history) {
         Map<String, PlayerHistoryDatabase.ModHistoryEntry> historyMap = new HashMap<>();
-        if (db != null) {
-            List<PlayerHistoryDatabase.ModHistoryEntry> history = db.getPlayerHistory(target.getUniqueId());
-            for (PlayerHistoryDatabase.ModHistoryEntry entry : history) {
-                if (entry.isActive()) {
-                    historyMap.put(entry.modName(), entry);
-                }
+        for (PlayerHistoryDatabase.ModHistoryEntry entry : history) {
+            if (entry.isActive()) {
+                historyMap.put(entry.modName(), entry);
             }
         }
         
-        player.sendMessage(Component.text("=== " + target.getName() + "'s Mods ===").color(NamedTextColor.GOLD).decorate(TextDecoration.BOLD));
+        player.sendMessage(Component.text("=== " + targetName + "'s Mods ===").color(NamedTextColor.GOLD).decorate(TextDecoration.BOLD));
         
         for (String mod : mods) {
             if (config.isIgnored(mod)) continue;
@@ -614,6 +730,47 @@ public class HandShakerCommand {
         }
     }
 
+    private <T> void runQuery(CommandSender sender, Supplier<CompletableFuture<T>> query, Consumer<T> reply) {
+        String key = sender.getName();
+        if (inFlightQueries.merge(key, 1, Integer::sum) > MAX_QUERIES_PER_SENDER) {
+            releaseQuery(key);
+            sender.sendMessage("§cPlease wait for your previous HandShaker query to finish");
+            return;
+        }
+
+        CompletableFuture<T> future;
+        try {
+            future = query.get();
+        } catch (RuntimeException e) {
+            releaseQuery(key);
+            throw e;
+        }
+
+        future.whenComplete((result, error) -> {
+            releaseQuery(key);
+            runForSender(sender, () -> {
+                if (error != null) {
+                    plugin.getLogger().warning("HandShaker database query failed: " + error.getMessage());
+                    sender.sendMessage("§cDatabase query failed, check the console for details");
+                    return;
+                }
+                reply.accept(result);
+            });
+        });
+    }
+
+    private void releaseQuery(String key) {
+        inFlightQueries.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void runForSender(CommandSender sender, Runnable task) {
+        if (sender instanceof Player player) {
+            player.getScheduler().run(plugin, scheduledTask -> task.run(), null);
+        } else {
+            Bukkit.getGlobalRegionScheduler().execute(plugin, task);
+        }
+    }
+
     private void handleMode(CommandSender sender, String[] args, ConfigManager config) {
         if (args.length < 3) {
             sender.sendMessage("§cUsage: /handshaker mode <mods_required | mods_blacklisted | mods_whitelisted> <on | off>");
@@ -668,9 +825,11 @@ public class HandShakerCommand {
         sender.sendMessage("§6=== HandShaker v6 Commands ===");
         sender.sendMessage("§e§lCore Commands:");
         sender.sendMessage("§e/handshaker reload §7 | §7Reload config");
-        sender.sendMessage("§e/handshaker info [configured_mods|all_mods [page]|mod <modname>] §7 | §7Show statistics or list mods");
+        sender.sendMessage("§e/handshaker info [configured_mods|all_mods [page]|mod <modname> [page]] §7 | §7Show statistics or list mods");
         sender.sendMessage("§e/handshaker config [param] [value] §7 | §7View/change configuration");
         sender.sendMessage("§e/handshaker mode <mods_required|mods_blacklisted|mods_whitelisted> <on|off> §7 | §7Toggle mod lists");
+        sender.sendMessage("§e/handshaker metrics §7 | §7Show handshake latencies, kicks and queue depths");
+        sender.sendMessage("§e/handshaker recent [reason] [mod] §7 | §7Show the latest kicks and actions, optionally filtered");
         sender.sendMessage("");
         sender.sendMessage("§e§lMod Management (/handshaker manage):");
         sender.sendMessage("§e/handshaker manage add <mod | *> <status> [action] [warn-message] §7 | §7Add/set mod status");
@@ -717,14 +876,18 @@ public class HandShakerCommand {
                 case "config" -> { return StringUtil.copyPartialMatches(args[1], CONFIG_PARAMS, new ArrayList<>()); }
                 case "mode" -> { return StringUtil.copyPartialMatches(args[1], MODE_LISTS, new ArrayList<>()); }
                 case "manage" -> { return StringUtil.copyPartialMatches(args[1], MANAGE_SUBCOMMANDS, new ArrayList<>()); }
+                case "recent" -> { return StringUtil.copyPartialMatches(args[1], ViolationLog.reasonLabels(), new ArrayList<>()); }
             }
         }
 
         if (args.length == 3) {
+            if (args[0].equalsIgnoreCase("recent")) {
+                return StringUtil.copyPartialMatches(args[2], plugin.getViolationLog().recentMods(), new ArrayList<>());
+            }
             if (args[0].equalsIgnoreCase("info") && args[1].equalsIgnoreCase("mod")) {
                 PlayerHistoryDatabase db = plugin.getPlayerHistoryDb();
                 if (db != null) {
-                    Map<String, Integer> popularity = db.getModPopularity();
+                    Map<String, Integer> popularity = db.getCachedModPopularity();
                     return StringUtil.copyPartialMatches(args[2], popularity.keySet(), new ArrayList<>());
                 }
                 return new ArrayList<>();
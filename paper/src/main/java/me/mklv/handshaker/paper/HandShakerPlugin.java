@@ -1,35 +1,73 @@
 package me.mklv.handshaker.paper;
 
+import me.mklv.handshaker.paper.api.HandshakeResult;
 import me.mklv.handshaker.paper.configs.ConfigManager;
 import me.mklv.handshaker.paper.configs.ConfigMigrator;
 import me.mklv.handshaker.paper.listener.HandShakerListener;
 import me.mklv.handshaker.paper.protocol.PluginProtocolHandler;
+import me.mklv.handshaker.paper.utils.AuditLog;
+import me.mklv.handshaker.paper.utils.PayloadCapture;
+import me.mklv.handshaker.paper.utils.HandShakerExecutors;
+import me.mklv.handshaker.paper.utils.HandshakeMetrics;
+import me.mklv.handshaker.paper.utils.HandshakeResults;
+import me.mklv.handshaker.paper.utils.MetricsEndpoint;
 import me.mklv.handshaker.paper.utils.PlayerHistoryDatabase;
 import me.mklv.handshaker.paper.utils.ClientInfo;
+import me.mklv.handshaker.paper.utils.ViolationLog;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class HandShakerPlugin extends JavaPlugin {
-    public static boolean DEBUG = true;
+    // Set from the debug option in config.yml
+    public static volatile boolean DEBUG = false;
     
     // Plugin channels for communication
     public static final String MODS_CHANNEL = "hand-shaker:mods";
     public static final String INTEGRITY_CHANNEL = "hand-shaker:integrity";
     public static final String VELTON_CHANNEL = "velton:signature";
+    public static final String CHALLENGE_CHANNEL = "hand-shaker:challenge";
+    public static final String VERDICT_CHANNEL = "hand-shaker:verdict";
+    private static final long SHUTDOWN_WAIT_SECONDS = 10;
 
     private final Map<UUID, ClientInfo> clients = new ConcurrentHashMap<>();
+    private final HandshakeMetrics metrics = new HandshakeMetrics();
+    private final ViolationLog violationLog = new ViolationLog();
+    private HandShakerExecutors executors;
     private ConfigManager configManager;
     private PlayerHistoryDatabase playerHistoryDb;
     private PluginProtocolHandler protocolHandler;
+    private MetricsEndpoint metricsEndpoint;
+    private AuditLog auditLog;
+    private PayloadCapture payloadCapture;
 
     @Override
     public void onEnable() {
+        executors = new HandShakerExecutors();
+        metrics.gauge("executor_in_flight", "Background tasks submitted and not yet finished", executors::getInFlight);
+        auditLog = new AuditLog(new File(getDataFolder(), "logs/audit.jsonl"),
+                e -> getLogger().warning("Audit log stopped: " + e.getMessage()));
+        metrics.counter("audit_dropped", "Audit records dropped because the writer fell behind", auditLog::getDroppedCount);
         loadConfiguration();
+        if (configManager.isAuditLog()) {
+            auditLog.start();
+        }
+        payloadCapture = new PayloadCapture(new File(getDataFolder(), "captures"),
+                configManager.getCaptureMaxMegabytes() * 1024L * 1024L,
+                reason -> getLogger().warning("Payload capture stopped: " + reason));
+        metrics.counter("capture_dropped", "Captured payloads dropped because the writer fell behind", payloadCapture::getDroppedCount);
+        if (configManager.isCapturePayloads()) {
+            payloadCapture.start();
+            getLogger().info("Capturing handshake payloads to " + payloadCapture.getFile().getName());
+        }
         loadDatabase();
         
         // Initialize protocol handler (handles plugin channels and certificate loading)
@@ -41,11 +79,12 @@ public class HandShakerPlugin extends JavaPlugin {
         
         // Register commands (Paper doesn't use YAML command declarations)
         HandShakerCommand.register(this);
+        startMetricsEndpoint();
         
         getLogger().info("HandShaker plugin enabled (Paper/Folia compatible)");
         
         if (HandShakerPlugin.DEBUG){
-            getLogger().warning("YOU ARE RUNNING A DEVELOPMENT BUILD OF HANDSHAKER - EXPECT BUGS AND ISSUES");
+            getLogger().warning("Debug logging is enabled - every handshake step is logged to the console");
         }
     }
 
@@ -59,17 +98,48 @@ public class HandShakerPlugin extends JavaPlugin {
     }
 
     private void loadDatabase() {
-        playerHistoryDb = new PlayerHistoryDatabase(getDataFolder(), getLogger(), configManager.isPlayerdbEnabled());
+        // Skipped entirely when disabled so Hikari and the SQLite driver never load;
+        // otherwise storage opens in the background and getPlayerHistoryDb().isReady() reports progress
+        if (configManager.isPlayerdbEnabled()) {
+            playerHistoryDb = new PlayerHistoryDatabase(getDataFolder(), getLogger(), true, configManager.getPlayerdbStorage(), executors.io());
+        }
+    }
+
+    private void startMetricsEndpoint() {
+        int port = configManager.getMetricsPort();
+        if (port == 0) {
+            return;
+        }
+        try {
+            metricsEndpoint = new MetricsEndpoint(port, metrics, executors.io());
+            getLogger().info("Serving metrics at http://localhost:" + port + "/metrics");
+        } catch (IOException e) {
+            getLogger().warning("Failed to start metrics endpoint on port " + port + ": " + e.getMessage());
+        }
     }
 
     @Override
     public void onDisable() {
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+        }
         if (protocolHandler != null) {
             protocolHandler.unregisterPluginChannels();
+            protocolHandler.shutdown();
+        }
+        // Let in-flight database syncs and config writes finish before storage closes
+        if (executors != null && !executors.shutdown(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+            getLogger().warning("Background tasks did not finish within " + SHUTDOWN_WAIT_SECONDS + "s of shutdown");
         }
         if (playerHistoryDb != null) {
             playerHistoryDb.close();
         }
+        if (auditLog != null) {
+            auditLog.stop();
+        }
+        if (payloadCapture != null) {
+            payloadCapture.stop();
+        }
         clients.clear();
         getLogger().info("HandShaker plugin disabled");
     }
@@ -93,31 +163,48 @@ public class HandShakerPlugin extends JavaPlugin {
         }
     }
 
+    public void sendChallenge(Player player) {
+        if (protocolHandler != null) {
+            protocolHandler.sendChallenge(player);
+        }
+    }
+
     public void checkPlayer(Player player) {
         if (protocolHandler != null) {
-            protocolHandler.checkPlayer(player, clients);
+            // Re-checks come from commands and reloads; run each on the player's own region
+            protocolHandler.runForPlayer(player, () -> protocolHandler.checkPlayer(player, clients));
         }
     }
 
-    public void schedulePlayerCheck(Player player, long delayTicks) {
-        this.getServer().getGlobalRegionScheduler().runDelayed(this, task -> {
-            if (player.isOnline()) {
-                checkPlayer(player);
-            }
-        }, delayTicks);
+    public void startHandshake(Player player) {
+        if (protocolHandler != null) {
+            protocolHandler.startHandshake(player);
+        }
+    }
+
+    public void warmUp(UUID uuid, String name) {
+        if (protocolHandler != null) {
+            protocolHandler.warmUp(uuid, name);
+        }
+    }
+
+    public void cancelHandshake(UUID uuid) {
+        if (protocolHandler != null) {
+            protocolHandler.cancelHandshake(uuid);
+        }
     }
 
     public void checkAllPlayers() {
         getLogger().info("Re-checking all online players...");
-        // Reset checked flags for all players
-        for (UUID uuid : new java.util.HashSet<>(clients.keySet())) {
-            ClientInfo info = clients.get(uuid);
+        for (Player player : getServer().getOnlinePlayers()) {
+            ClientInfo info = clients.get(player.getUniqueId());
             if (info != null) {
-                clients.put(uuid, info.withChecked(false));
+                // Players still mid-handshake get their verdict when it completes
+                if (!info.checked()) {
+                    continue;
+                }
+                clients.put(player.getUniqueId(), info.withChecked(false));
             }
-        }
-        // Re-check all online players
-        for (Player player : getServer().getOnlinePlayers()) {
             checkPlayer(player);
         }
     }
@@ -131,6 +218,26 @@ public class HandShakerPlugin extends JavaPlugin {
         return playerHistoryDb;
     }
 
+    public HandShakerExecutors getExecutors() {
+        return executors;
+    }
+
+    public HandshakeMetrics getMetrics() {
+        return metrics;
+    }
+
+    public AuditLog getAuditLog() {
+        return auditLog;
+    }
+
+    public PayloadCapture getPayloadCapture() {
+        return payloadCapture;
+    }
+
+    public ViolationLog getViolationLog() {
+        return violationLog;
+    }
+
     public PluginProtocolHandler getProtocolHandler() {
         return protocolHandler;
     }
@@ -143,4 +250,13 @@ public class HandShakerPlugin extends JavaPlugin {
     public Map<UUID, ClientInfo> getClients() {
         return clients;
     }
+
+    /**
+     * The player's handshake result, completed on the player's own thread once their check finishes, so
+     * integrations can react once instead of polling {@link #getClientMods}. Already complete for a
+     * checked player. Cancelled for a player who is not connected, or who leaves before the verdict.
+     */
+    public CompletableFuture<HandshakeResult> getHandshakeResult(UUID uuid) {
+        return protocolHandler != null ? protocolHandler.getHandshakeResult(uuid) : HandshakeResults.cancelled();
+    }
 }
@@ -0,0 +1,42 @@
+package me.mklv.handshaker.paper.api;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+/**
+ * Called once per session, when a player's handshake gets its first verdict. It runs on the thread
+ * that owns the player, which on Folia is their region thread; a kicked player is still online while
+ * listeners run. Re-checks after a reload don't call it again; look the latest result up through
+ * {@code HandShakerPlugin.getHandshakeResult}.
+ */
+public class HandshakeCompletedEvent extends Event {
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    private final Player player;
+    private final HandshakeResult result;
+
+    public HandshakeCompletedEvent(Player player, HandshakeResult result) {
+        super(!Bukkit.isPrimaryThread());
+        this.player = player;
+        this.result = result;
+    }
+
+    public Player getPlayer() {
+        return player;
+    }
+
+    public HandshakeResult getResult() {
+        return result;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
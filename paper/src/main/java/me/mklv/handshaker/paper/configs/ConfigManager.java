@@ -1,6 +1,8 @@
 package me.mklv.handshaker.paper.configs;
 
 import me.mklv.handshaker.paper.HandShakerPlugin;
+import me.mklv.handshaker.paper.utils.AsyncFileWriter;
+import me.mklv.handshaker.paper.utils.HandshakeEvents;
 import me.mklv.handshaker.paper.utils.PlayerModStatus;
 import org.bukkit.entity.Player;
 import org.yaml.snakeyaml.Yaml;
@@ -8,6 +10,7 @@ import org.yaml.snakeyaml.Yaml;
 import java.io.*;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ConfigManager {
     public static final String MODE_REQUIRED = "required";
@@ -16,6 +19,8 @@ public class ConfigManager {
     public static final String MODE_WHITELISTED = "whitelisted";
     
     private final HandShakerPlugin plugin;
+    // Saves come from commands; the files are written on the I/O executor
+    private final AsyncFileWriter fileWriter;
     private File configYmlFile;
 
     public enum Behavior { STRICT, VANILLA }
@@ -95,6 +100,23 @@ public class ConfigManager {
     private String invalidSignatureKickMessage = "Invalid client signature. Please use the official HandShaker client mod.";
     private boolean allowBedrockPlayers = false;
     private boolean playerdbEnabled = false;
+    private String playerdbStorage = "sql";
+    private int handshakeTimeoutSeconds = 5;
+    private boolean requireVelton = false;
+    private int handshakeConcurrency = 16;
+    private int handshakeQueueSize = 256;
+    private int handshakeTickBudgetMillis = 5;
+    private int rateLimitMessages = 8;
+    private int rateLimitWindowSeconds = 10;
+    private int rateLimitKickAfter = 32;
+    private int metricsPort = 0;
+    private boolean auditLog = true;
+    private boolean capturePayloads = false;
+    private int captureMaxMegabytes = 64;
+    private String verdictTokenSecret = "";
+    private int verdictTokenTtlSeconds = 300;
+    private int verdictTokenGeneration = 1;
+    private boolean debug = false;
     
     private final Map<String, String> customMessages = new LinkedHashMap<>();
     
@@ -109,12 +131,19 @@ public class ConfigManager {
     private final Set<String> blacklistedModsActive = new HashSet<>();
     private final Set<String> requiredModsActive = new HashSet<>();
     private final Map<String, ActionDefinition> actionsMap = new LinkedHashMap<>();
+    // Bumped after every load and save, so verdicts computed ahead of time can tell they are stale
+    private final AtomicLong generation = new AtomicLong();
 
     public ConfigManager(HandShakerPlugin plugin) {
         this.plugin = plugin;
+        this.fileWriter = new AsyncFileWriter(plugin.getExecutors().io());
     }
 
     public void load() {
+        HandshakeEvents.ConfigOperation event = new HandshakeEvents.ConfigOperation("load");
+        event.begin();
+        // A save still in flight must land before the files are read back
+        fileWriter.flush();
         File dataFolder = plugin.getDataFolder();
         dataFolder.mkdirs();
 
@@ -125,6 +154,8 @@ public class ConfigManager {
         loadConfigYml();
         loadModsYamlFiles();
         loadActionsYamlFile();
+        generation.incrementAndGet();
+        event.finish(modConfigMap.size(), "ok");
     }
 
     private void createDefaultFilesIfNotExist(File dataFolder) {
@@ -184,10 +215,58 @@ public class ConfigManager {
                     allowBedrockPlayers = Boolean.parseBoolean(data.get("allow-bedrock-players").toString());
                 }
 
+                if (data.containsKey("handshake-timeout")) {
+                    try {
+                        handshakeTimeoutSeconds = Math.max(1, Integer.parseInt(data.get("handshake-timeout").toString().trim()));
+                    } catch (NumberFormatException e) {
+                        plugin.getLogger().warning("Invalid handshake-timeout '" + data.get("handshake-timeout") + "', using " + handshakeTimeoutSeconds + " seconds");
+                    }
+                }
+                if (data.containsKey("require-velton")) {
+                    requireVelton = Boolean.parseBoolean(data.get("require-velton").toString());
+                }
+                handshakeConcurrency = parsePositiveInt(data, "handshake-concurrency", handshakeConcurrency);
+                handshakeQueueSize = parsePositiveInt(data, "handshake-queue-size", handshakeQueueSize);
+                handshakeTickBudgetMillis = parsePositiveInt(data, "handshake-tick-budget-ms", handshakeTickBudgetMillis);
+                rateLimitMessages = parsePositiveInt(data, "rate-limit-messages", rateLimitMessages);
+                rateLimitWindowSeconds = parsePositiveInt(data, "rate-limit-window-seconds", rateLimitWindowSeconds);
+                rateLimitKickAfter = parsePositiveInt(data, "rate-limit-kick-after", rateLimitKickAfter);
+                if (data.containsKey("metrics-port")) {
+                    try {
+                        int port = Integer.parseInt(data.get("metrics-port").toString().trim());
+                        if (port < 0 || port > 65535) {
+                            throw new NumberFormatException();
+                        }
+                        metricsPort = port;
+                    } catch (NumberFormatException e) {
+                        plugin.getLogger().warning("Invalid metrics-port '" + data.get("metrics-port") + "', using " + metricsPort);
+                    }
+                }
+                if (data.containsKey("audit-log")) {
+                    auditLog = Boolean.parseBoolean(data.get("audit-log").toString());
+                }
+                if (data.containsKey("capture-payloads")) {
+                    capturePayloads = Boolean.parseBoolean(data.get("capture-payloads").toString());
+                }
+                captureMaxMegabytes = parsePositiveInt(data, "capture-max-mb", captureMaxMegabytes);
+                if (data.get("verdict-token-secret") != null) {
+                    verdictTokenSecret = data.get("verdict-token-secret").toString().trim();
+                }
+                verdictTokenTtlSeconds = parsePositiveInt(data, "verdict-token-ttl-seconds", verdictTokenTtlSeconds);
+                verdictTokenGeneration = parsePositiveInt(data, "verdict-token-generation", verdictTokenGeneration);
+                if (data.containsKey("debug")) {
+                    debug = Boolean.parseBoolean(data.get("debug").toString());
+                }
+                HandShakerPlugin.DEBUG = debug;
+
                 if (data.containsKey("playerdb-enabled")) {
                     playerdbEnabled = Boolean.parseBoolean(data.get("playerdb-enabled").toString());
                 }
 
+                if (data.containsKey("playerdb-storage")) {
+                    playerdbStorage = data.get("playerdb-storage").toString().toLowerCase(Locale.ROOT);
+                }
+
                 if (data.containsKey("mods-required-enabled")) {
                     modsRequiredEnabled = Boolean.parseBoolean(data.get("mods-required-enabled").toString());
                 }
@@ -233,6 +312,18 @@ public class ConfigManager {
         }
     }
 
+    private int parsePositiveInt(Map<String, Object> data, String key, int fallback) {
+        if (!data.containsKey(key)) {
+            return fallback;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(data.get(key).toString().trim()));
+        } catch (NumberFormatException e) {
+            plugin.getLogger().warning("Invalid " + key + " '" + data.get(key) + "', using " + fallback);
+            return fallback;
+        }
+    }
+
     private void loadModsYamlFiles() {
         modConfigMap.clear();
         ignoredMods.clear();
@@ -422,6 +513,23 @@ public class ConfigManager {
     public boolean areModsBlacklistedEnabled() { return modsBlacklistedEnabled; }
     public boolean areModsWhitelistedEnabled() { return modsWhitelistedEnabled; }
     public boolean isPlayerdbEnabled() { return playerdbEnabled; }
+    public String getPlayerdbStorage() { return playerdbStorage; }
+    public int getHandshakeTimeoutSeconds() { return handshakeTimeoutSeconds; }
+    public boolean isRequireVelton() { return requireVelton; }
+    public int getHandshakeConcurrency() { return handshakeConcurrency; }
+    public int getHandshakeQueueSize() { return handshakeQueueSize; }
+    public int getHandshakeTickBudgetMillis() { return handshakeTickBudgetMillis; }
+    public int getRateLimitMessages() { return rateLimitMessages; }
+    public int getRateLimitWindowSeconds() { return rateLimitWindowSeconds; }
+    public int getRateLimitKickAfter() { return rateLimitKickAfter; }
+    public int getMetricsPort() { return metricsPort; }
+    public boolean isAuditLog() { return auditLog; }
+    public boolean isCapturePayloads() { return capturePayloads; }
+    public int getCaptureMaxMegabytes() { return captureMaxMegabytes; }
+    public String getVerdictTokenSecret() { return verdictTokenSecret; }
+    public int getVerdictTokenTtlSeconds() { return verdictTokenTtlSeconds; }
+    public int getVerdictTokenGeneration() { return verdictTokenGeneration; }
+    public long getGeneration() { return generation.get(); }
     public ActionDefinition getAction(String actionName) { 
         if (actionName == null) return null;
         return actionsMap.get(actionName.toLowerCase(Locale.ROOT));
@@ -617,14 +725,25 @@ public class ConfigManager {
     }
 
     public PlayerModStatus checkPlayerWithAction(Player player, Set<String> clientMods) {
-        if (player.hasPermission("handshaker.bypass")) {
+        if (canBypass(player)) {
             return null;
         }
         
         if (HandShakerPlugin.DEBUG) {
-            plugin.getLogger().fine("[DEBUG] Checking player " + player.getName() + " - Client mods: " + clientMods);
+            plugin.getLogger().info("[DEBUG] Checking player " + player.getName() + " - Client mods: " + clientMods);
         }
-        
+        return evaluateMods(clientMods);
+    }
+
+    public boolean canBypass(Player player) {
+        return player.hasPermission("handshaker.bypass");
+    }
+
+    /**
+     * The verdict for a mod set, without the per-player bypass check. Needs no player, so it can run
+     * before join; pair the result with {@link #getGeneration()} to know when it goes stale.
+     */
+    public PlayerModStatus evaluateMods(Set<String> clientMods) {
         boolean hasMod = !clientMods.isEmpty();
         if (behavior == Behavior.VANILLA && !hasMod) {
             return null;
@@ -738,10 +857,15 @@ public class ConfigManager {
     }
 
     public void save() {
+        HandshakeEvents.ConfigOperation event = new HandshakeEvents.ConfigOperation("save");
+        event.begin();
+        // Setters are always followed by a save, so this covers every change to the rules
+        generation.incrementAndGet();
         String defaultConfig = loadDefaultConfigFromJar();
         
         if (defaultConfig == null) {
             plugin.getLogger().severe("Could not load default config from JAR!");
+            event.finish(modConfigMap.size(), "failed");
             return;
         }
         
@@ -750,18 +874,31 @@ public class ConfigManager {
             .replaceAll("integrity-mode:\\s*\\w+", "integrity-mode: " + integrityMode.toString().toLowerCase())
             .replaceAll("whitelist:\\s*(?:true|false)", "whitelist: " + whitelist)
             .replaceAll("allow-bedrock-players:\\s*(?:true|false)", "allow-bedrock-players: " + allowBedrockPlayers)
+            .replaceAll("handshake-timeout:\\s*\\d+", "handshake-timeout: " + handshakeTimeoutSeconds)
+            .replaceAll("require-velton:\\s*(?:true|false)", "require-velton: " + requireVelton)
+            .replaceAll("handshake-concurrency:\\s*\\d+", "handshake-concurrency: " + handshakeConcurrency)
+            .replaceAll("handshake-queue-size:\\s*\\d+", "handshake-queue-size: " + handshakeQueueSize)
+            .replaceAll("handshake-tick-budget-ms:\\s*\\d+", "handshake-tick-budget-ms: " + handshakeTickBudgetMillis)
+            .replaceAll("rate-limit-messages:\\s*\\d+", "rate-limit-messages: " + rateLimitMessages)
+            .replaceAll("rate-limit-window-seconds:\\s*\\d+", "rate-limit-window-seconds: " + rateLimitWindowSeconds)
+            .replaceAll("rate-limit-kick-after:\\s*\\d+", "rate-limit-kick-after: " + rateLimitKickAfter)
+            .replaceAll("metrics-port:\\s*\\d+", "metrics-port: " + metricsPort)
+            .replaceAll("audit-log:\\s*(?:true|false)", "audit-log: " + auditLog)
+            .replaceAll("capture-payloads:\\s*(?:true|false)", "capture-payloads: " + capturePayloads)
+            .replaceAll("capture-max-mb:\\s*\\d+", "capture-max-mb: " + captureMaxMegabytes)
+            .replaceAll("verdict-token-ttl-seconds:\\s*\\d+", "verdict-token-ttl-seconds: " + verdictTokenTtlSeconds)
+            .replaceAll("verdict-token-generation:\\s*\\d+", "verdict-token-generation: " + verdictTokenGeneration)
+            .replaceAll("(?m)^debug:\\s*(?:true|false)", "debug: " + debug)
             .replaceAll("playerdb-enabled:\\s*(?:true|false)", "playerdb-enabled: " + playerdbEnabled)
+            .replaceAll("playerdb-storage:\\s*\\w+", "playerdb-storage: " + playerdbStorage)
             .replaceAll("mods-required-enabled:\\s*(?:true|false)", "mods-required-enabled: " + modsRequiredEnabled)
             .replaceAll("mods-blacklisted-enabled:\\s*(?:true|false)", "mods-blacklisted-enabled: " + modsBlacklistedEnabled)
             .replaceAll("mods-whitelisted-enabled:\\s*(?:true|false)", "mods-whitelisted-enabled: " + modsWhitelistedEnabled);
         
-        try (FileWriter writer = new FileWriter(configYmlFile)) {
-            writer.write(yaml);
-        } catch (IOException e) {
-            plugin.getLogger().severe("Could not save config.yml!");
-        }
+        fileWriter.write(configYmlFile, yaml, e -> plugin.getLogger().severe("Could not save config.yml!"));
 
         saveModsYamlFiles();
+        event.finish(modConfigMap.size(), "ok");
     }
 
     private String loadDefaultConfigFromJar() {
@@ -781,71 +918,55 @@ public class ConfigManager {
 
         if (!ignoredMods.isEmpty()) {
             File ignoredFile = new File(dataFolder, "mods-ignored.yml");
-            try (FileWriter writer = new FileWriter(ignoredFile)) {
-                StringBuilder yaml = new StringBuilder();
-                yaml.append("# Mods which will be hidden from commands to show up\n\n");
-                yaml.append("ignored:\n");
-                for (String mod : ignoredMods) {
-                    yaml.append("  - ").append(mod).append("\n");
-                }
-                writer.write(yaml.toString());
-            } catch (IOException e) {
-                plugin.getLogger().severe("Could not save mods-ignored.yml!");
+            StringBuilder yaml = new StringBuilder();
+            yaml.append("# Mods which will be hidden from commands to show up\n\n");
+            yaml.append("ignored:\n");
+            for (String mod : ignoredMods) {
+                yaml.append("  - ").append(mod).append("\n");
             }
+            fileWriter.write(ignoredFile, yaml.toString(), e -> plugin.getLogger().severe("Could not save mods-ignored.yml!"));
         }
 
         if (!requiredModsActive.isEmpty()) {
             File requiredFile = new File(dataFolder, "mods-required.yml");
-            try (FileWriter writer = new FileWriter(requiredFile)) {
-                StringBuilder yaml = new StringBuilder();
-                yaml.append("# Required mods to join the server\n");
-                yaml.append("# Format: modname: action (where action is from mods-actions.yml or default 'kick')\n\n");
-                yaml.append("required:\n");
-                for (String mod : requiredModsActive) {
-                    ModConfig cfg = modConfigMap.get(mod);
-                    String action = cfg != null ? cfg.getActionName() : "kick";
-                    yaml.append("  ").append(mod).append(": ").append(action).append("\n");
-                }
-                writer.write(yaml.toString());
-            } catch (IOException e) {
-                plugin.getLogger().severe("Could not save mods-required.yml!");
+            StringBuilder yaml = new StringBuilder();
+            yaml.append("# Required mods to join the server\n");
+            yaml.append("# Format: modname: action (where action is from mods-actions.yml or default 'kick')\n\n");
+            yaml.append("required:\n");
+            for (String mod : requiredModsActive) {
+                ModConfig cfg = modConfigMap.get(mod);
+                String action = cfg != null ? cfg.getActionName() : "kick";
+                yaml.append("  ").append(mod).append(": ").append(action).append("\n");
             }
+            fileWriter.write(requiredFile, yaml.toString(), e -> plugin.getLogger().severe("Could not save mods-required.yml!"));
         }
 
         if (!blacklistedModsActive.isEmpty()) {
             File blacklistedFile = new File(dataFolder, "mods-blacklisted.yml");
-            try (FileWriter writer = new FileWriter(blacklistedFile)) {
-                StringBuilder yaml = new StringBuilder();
-                yaml.append("# Blacklisted mods: modname: kick/ban\n# If a player has any of these mods, they will be kicked\n\n");
-                yaml.append("blacklisted:\n");
-                for (String mod : blacklistedModsActive) {
-                    ModConfig cfg = modConfigMap.get(mod);
-                    String action = cfg != null ? cfg.getAction().toString().toLowerCase() : "kick";
-                    yaml.append("  ").append(mod).append(": ").append(action).append("\n");
-                }
-                writer.write(yaml.toString());
-            } catch (IOException e) {
-                plugin.getLogger().severe("Could not save mods-blacklisted.yml!");
+            StringBuilder yaml = new StringBuilder();
+            yaml.append("# Blacklisted mods: modname: kick/ban\n# If a player has any of these mods, they will be kicked\n\n");
+            yaml.append("blacklisted:\n");
+            for (String mod : blacklistedModsActive) {
+                ModConfig cfg = modConfigMap.get(mod);
+                String action = cfg != null ? cfg.getAction().toString().toLowerCase() : "kick";
+                yaml.append("  ").append(mod).append(": ").append(action).append("\n");
             }
+            fileWriter.write(blacklistedFile, yaml.toString(), e -> plugin.getLogger().severe("Could not save mods-blacklisted.yml!"));
         }
 
         if (!whitelistedModsActive.isEmpty()) {
             File whitelistedFile = new File(dataFolder, "mods-whitelisted.yml");
-            try (FileWriter writer = new FileWriter(whitelistedFile)) {
-                StringBuilder yaml = new StringBuilder();
-                yaml.append("# Whitelisted mods which are allowed but not required,\n");
-                yaml.append("# but if in config.yml whitelist: true, only these mods are allowed\n");
-                yaml.append("# Format: modname: action (where action is from mods-actions.yml or default 'none')\n\n");
-                yaml.append("whitelisted:\n");
-                for (String mod : whitelistedModsActive) {
-                    ModConfig cfg = modConfigMap.get(mod);
-                    String action = cfg != null ? cfg.getActionName() : "none";
-                    yaml.append("  ").append(mod).append(": ").append(action).append("\n");
-                }
-                writer.write(yaml.toString());
-            } catch (IOException e) {
-                plugin.getLogger().severe("Could not save mods-whitelisted.yml!");
+            StringBuilder yaml = new StringBuilder();
+            yaml.append("# Whitelisted mods which are allowed but not required,\n");
+            yaml.append("# but if in config.yml whitelist: true, only these mods are allowed\n");
+            yaml.append("# Format: modname: action (where action is from mods-actions.yml or default 'none')\n\n");
+            yaml.append("whitelisted:\n");
+            for (String mod : whitelistedModsActive) {
+                ModConfig cfg = modConfigMap.get(mod);
+                String action = cfg != null ? cfg.getActionName() : "none";
+                yaml.append("  ").append(mod).append(": ").append(action).append("\n");
             }
+            fileWriter.write(whitelistedFile, yaml.toString(), e -> plugin.getLogger().severe("Could not save mods-whitelisted.yml!"));
         }
     }
 }
@@ -4,9 +4,12 @@ import me.mklv.handshaker.paper.HandShakerPlugin;
 import me.mklv.handshaker.paper.utils.ClientInfo;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRegisterChannelEvent;
 
 import java.util.Map;
 import java.util.UUID;
@@ -20,17 +23,36 @@ public class HandShakerListener implements Listener {
         this.clients = clients;
     }
 
+    // Runs on the login thread, so the database read and Bedrock lookup are done before join
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+        plugin.warmUp(event.getUniqueId(), event.getName());
+    }
+
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
-        
-        // Schedule check with delay (5 seconds = 100 ticks)
-        // This allows time for plugin channel messages to arrive
-        plugin.schedulePlayerCheck(player, 100L);
+        plugin.sendChallenge(player);
+
+        // The verdict runs once all handshake payloads arrive, or after handshake-timeout
+        plugin.startHandshake(player);
+    }
+
+    // The Fabric client registers its channels after join, so the join-time challenge only reaches
+    // clients that registered earlier; the rest get theirs once the challenge channel shows up
+    @EventHandler
+    public void onRegisterChannel(PlayerRegisterChannelEvent event) {
+        if (event.getChannel().equals(HandShakerPlugin.CHALLENGE_CHANNEL)) {
+            plugin.sendChallenge(event.getPlayer());
+        }
     }
 
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
+        plugin.cancelHandshake(event.getPlayer().getUniqueId());
         clients.remove(event.getPlayer().getUniqueId());
     }
 }
@@ -1,9 +1,12 @@
 package me.mklv.handshaker.paper.protocol;
 
 import me.mklv.handshaker.paper.HandShakerPlugin;
+import me.mklv.handshaker.paper.api.HandshakeCompletedEvent;
+import me.mklv.handshaker.paper.api.HandshakeResult;
 import me.mklv.handshaker.paper.configs.ActionDefinition;
 import me.mklv.handshaker.paper.configs.ConfigManager;
 import me.mklv.handshaker.paper.utils.*;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import org.bukkit.Bukkit;
@@ -16,6 +19,10 @@ import java.security.PublicKey;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateFactory;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Logger;
 
 public class PluginProtocolHandler {
@@ -25,42 +32,180 @@ public class PluginProtocolHandler {
     private final SignatureVerifier signatureVerifier;
     private final PayloadDecoder payloadDecoder;
     private final ConfigManager configManager;
+    private final NonceReplayCache nonceCache = new NonceReplayCache();
+    private final HandshakeChallenge challenge = new HandshakeChallenge();
+    // One wheel for every pending handshake; 100 ms ticks, 512 slots per ~51 s round
+    private final HashedWheelTimer handshakeTimer = new HashedWheelTimer("HandShaker-Handshake", 100, 512);
+    private final Map<UUID, HashedWheelTimer.Timeout> handshakeTimeouts = new ConcurrentHashMap<>();
+    private final HandshakeAdmission admission = new HandshakeAdmission();
+    private final PayloadRateLimiter rateLimiter = new PayloadRateLimiter();
+    private final PayloadFingerprints fingerprints = new PayloadFingerprints();
+    private final PreLoginCache<PlayerModStatus> preLogin = new PreLoginCache<>();
+    private final ResumptionCache<PlayerModStatus> resumption = new ResumptionCache<>();
+    private final HandshakeResults results = new HandshakeResults();
+    private final VerdictTokens tokens = new VerdictTokens();
+    private final HandshakeMetrics metrics;
+    private final AuditLog audit;
+    private final PayloadCapture capture;
+    private final ViolationLog violations;
+    private final PublicKey publicKey;
+    private ScheduledTask admissionTask;
 
     public PluginProtocolHandler(HandShakerPlugin plugin, Map<UUID, ClientInfo> clients) {
+        this(plugin, clients, loadPublicCertificate(plugin));
+    }
+
+    /**
+     * @param publicKey The key client signatures are checked against instead of the bundled public.cer,
+     *                  e.g. a throwaway key in the load test; null fails every signature check
+     */
+    public PluginProtocolHandler(HandShakerPlugin plugin, Map<UUID, ClientInfo> clients, PublicKey publicKey) {
         this.plugin = plugin;
         this.clients = clients;
         this.logger = plugin.getLogger();
         this.configManager = plugin.getConfigManager();
         this.payloadDecoder = new PayloadDecoder(logger);
-        
-        // Load public key for signature verification
-        PublicKey publicKey = loadPublicCertificate();
+        this.metrics = plugin.getMetrics();
+        this.audit = plugin.getAuditLog();
+        this.capture = plugin.getPayloadCapture();
+        this.violations = plugin.getViolationLog();
+        registerMetrics();
+
+        this.publicKey = publicKey;
         this.signatureVerifier = new SignatureVerifier(publicKey, logger);
     }
 
+    private void registerMetrics() {
+        metrics.gauge("handshake_queue_depth", "Handshake payloads queued for the tick", admission::getQueueDepth);
+        metrics.gauge("handshake_waiting_depth", "Handshake payloads waiting for room in the queue", admission::getWaitingDepth);
+        metrics.gauge("handshake_tick_seconds", "Handshake work time charged to the last tick, on whichever thread it ran",
+                () -> admission.getLastTickMillis() / 1000.0);
+        metrics.gauge("pending_handshakes", "Players whose handshake timeout is still running", handshakeTimeouts::size);
+        metrics.counter("handshake_shed", "Payloads that found the handshake queue full", admission::getShedCount);
+        metrics.counter("payloads_rate_limited", "Payloads dropped by the rate limiter", rateLimiter::getDroppedCount);
+        metrics.counter("payloads_repeated", "Byte-identical repeat payloads skipped", fingerprints::getRepeatCount);
+        metrics.counter("nonce_replays", "Payloads rejected for a reused nonce", nonceCache::getReplayCount);
+        metrics.counter("verdict_tokens_issued", "Verdict tokens handed to players who passed", tokens::getIssuedCount);
+        metrics.counter("verdict_tokens_accepted", "Signature checks skipped thanks to a verdict token", tokens::getAcceptedCount);
+        metrics.counter("verdict_tokens_rejected", "Verdict tokens that were invalid or did not match the client", tokens::getRejectedCount);
+        metrics.counter("prelogin_cache_hits", "Join checks that reused the pre-login verdict", preLogin::getHitCount);
+        metrics.counter("prelogin_cache_misses", "Join checks that evaluated the rules at join", preLogin::getMissCount);
+        metrics.counter("resumption_hits", "Reconnects that reused the previous session's signature check and verdict", resumption::getHitCount);
+        metrics.counter("resumption_misses", "Integrity checks that could not resume a previous session", resumption::getMissCount);
+        metrics.gauge("resumption_entries", "Recently disconnected players whose verified state is kept", resumption::size);
+    }
+
     public void registerPluginChannels() {
         // Register incoming channels
+        // Payloads are rate limited, then go through admission control and are processed from the tick task below
         Bukkit.getMessenger().registerIncomingPluginChannel(plugin, HandShakerPlugin.MODS_CHANNEL,
-                (channel, player, message) -> handleModList(player, message));
+                (channel, player, message) -> admit(player, channel, PayloadCapture.Channel.MOD_LIST, message, () -> handleModList(player, message)));
         Bukkit.getMessenger().registerIncomingPluginChannel(plugin, HandShakerPlugin.INTEGRITY_CHANNEL,
-                (channel, player, message) -> handleIntegrityPayload(player, message));
+                (channel, player, message) -> admit(player, channel, PayloadCapture.Channel.INTEGRITY, message, () -> handleIntegrityPayload(player, message)));
         Bukkit.getMessenger().registerIncomingPluginChannel(plugin, HandShakerPlugin.VELTON_CHANNEL,
-                (channel, player, message) -> handleVeltonPayloadInternal(player, message));
+                (channel, player, message) -> admit(player, channel, PayloadCapture.Channel.VELTON, message, () -> handleVeltonPayloadInternal(player, message)));
+        // Verdict tokens are a single HMAC, so they are checked on arrival instead of queued; that also puts
+        // them ahead of the mod list that follows
+        Bukkit.getMessenger().registerIncomingPluginChannel(plugin, HandShakerPlugin.VERDICT_CHANNEL,
+                (channel, player, message) -> handleVerdictToken(player, channel, message));
 
         // Register outgoing channels
         Bukkit.getMessenger().registerOutgoingPluginChannel(plugin, HandShakerPlugin.MODS_CHANNEL);
         Bukkit.getMessenger().registerOutgoingPluginChannel(plugin, HandShakerPlugin.INTEGRITY_CHANNEL);
         Bukkit.getMessenger().registerOutgoingPluginChannel(plugin, HandShakerPlugin.VELTON_CHANNEL);
+        Bukkit.getMessenger().registerOutgoingPluginChannel(plugin, HandShakerPlugin.CHALLENGE_CHANNEL);
+        Bukkit.getMessenger().registerOutgoingPluginChannel(plugin, HandShakerPlugin.VERDICT_CHANNEL);
+
+        // Limits are refreshed every tick so reloads apply right away
+        admissionTask = plugin.getServer().getGlobalRegionScheduler().runAtFixedRate(plugin, task -> {
+            admission.setLimits(configManager.getHandshakeConcurrency(), configManager.getHandshakeQueueSize(),
+                    configManager.getHandshakeTickBudgetMillis());
+            rateLimiter.setLimits(configManager.getRateLimitMessages(), configManager.getRateLimitWindowSeconds(),
+                    configManager.getRateLimitKickAfter());
+            rateLimiter.expireIdle();
+            tokens.configure(configManager.getVerdictTokenSecret(), configManager.getVerdictTokenTtlSeconds(),
+                    configManager.getVerdictTokenGeneration());
+            admission.tick();
+        }, 1, 1);
+    }
+
+    private void admit(Player player, String channel, PayloadCapture.Channel captureChannel, byte[] message, Runnable work) {
+        // Before the rate limiter, so a replay sees the same floods the server did
+        capture.record(captureChannel, player.getUniqueId(), message);
+        PayloadRateLimiter.Result result = rateLimiter.tryAcquire(player.getUniqueId(), channel);
+        if (result == PayloadRateLimiter.Result.ABUSE) {
+            logger.warning("Kicking " + player.getName() + " - flooding " + channel);
+            kickPlayer(player, KickReason.RATE_LIMIT, "Too many handshake packets");
+        }
+        if (result != PayloadRateLimiter.Result.ALLOWED) {
+            HandshakeEvents.PayloadReceived event = new HandshakeEvents.PayloadReceived(channel);
+            event.begin();
+            event.finish(player.getUniqueId(), knownModCount(player.getUniqueId()), "rate_limited");
+            return;
+        }
+        long fingerprint = fingerprints.hash(message);
+        // On Folia the work hops to the player's region; admission measures it there, not the hop
+        admission.submit(player.getUniqueId(), () -> {
+            HandshakeEvents.PayloadReceived event = new HandshakeEvents.PayloadReceived(channel);
+            event.begin();
+            // Checked when the payload's turn comes, so a duplicate queued right behind the original is caught too
+            if (player.isOnline() && fingerprints.markSeen(player.getUniqueId(), channel, fingerprint)) {
+                work.run();
+                event.finish(player.getUniqueId(), knownModCount(player.getUniqueId()), "processed");
+            } else {
+                event.finish(player.getUniqueId(), knownModCount(player.getUniqueId()), "skipped");
+            }
+        }, task -> runForPlayer(player, task));
+    }
+
+    private void handleVerdictToken(Player player, String channel, byte[] message) {
+        PayloadRateLimiter.Result result = rateLimiter.tryAcquire(player.getUniqueId(), channel);
+        if (result == PayloadRateLimiter.Result.ABUSE) {
+            logger.warning("Kicking " + player.getName() + " - flooding " + channel);
+            kickPlayer(player, KickReason.RATE_LIMIT, "Too many handshake packets");
+        }
+        if (result != PayloadRateLimiter.Result.ALLOWED || !tokens.isEnabled()) {
+            return;
+        }
+        String token = payloadDecoder.decodeString(message);
+        if (token == null || !tokens.present(player.getUniqueId(), token)) {
+            if (HandShakerPlugin.DEBUG) {
+                logger.info("Ignoring verdict token from " + player.getName() + ": forged, expired or from another generation");
+            }
+        }
+    }
+
+    /**
+     * Mods received from a player so far, for the flight recorder events
+     */
+    private int knownModCount(UUID uuid) {
+        ClientInfo info = clients.get(uuid);
+        return info != null ? info.mods().size() : 0;
+    }
+
+    /**
+     * Runs work on the thread that owns the player: right away if we're already there, otherwise on the
+     * player's entity scheduler. On Folia this keeps checks and kicks on the player's region instead of
+     * funnelling them all through the global region; on Paper both are the main thread.
+     */
+    public void runForPlayer(Player player, Runnable task) {
+        if (Bukkit.isOwnedByCurrentRegion(player)) {
+            task.run();
+        } else {
+            player.getScheduler().run(plugin, scheduledTask -> task.run(), null);
+        }
     }
 
     public void unregisterPluginChannels() {
         Bukkit.getMessenger().unregisterIncomingPluginChannel(plugin, HandShakerPlugin.MODS_CHANNEL);
         Bukkit.getMessenger().unregisterIncomingPluginChannel(plugin, HandShakerPlugin.INTEGRITY_CHANNEL);
         Bukkit.getMessenger().unregisterIncomingPluginChannel(plugin, HandShakerPlugin.VELTON_CHANNEL);
+        Bukkit.getMessenger().unregisterIncomingPluginChannel(plugin, HandShakerPlugin.VERDICT_CHANNEL);
     }
 
 
-    private PublicKey loadPublicCertificate() {
+    private static PublicKey loadPublicCertificate(HandShakerPlugin plugin) {
+        Logger logger = plugin.getLogger();
         try (var certStream = plugin.getClass().getResourceAsStream("/public.cer")) {
             if (certStream == null) {
                 logger.warning("⚠️  public.cer not found in resources. Signature verification will be disabled.");
@@ -82,10 +227,11 @@ public class PluginProtocolHandler {
 
     private void handleModList(Player player, byte[] data) {
         try {
+            long decodeStart = metrics.start();
             String payload = payloadDecoder.decodeString(data);
             if (payload == null) {
                 logger.warning("Failed to decode mod list from " + player.getName() + ". Rejecting.");
-                kickPlayer(player, "Corrupted handshake data");
+                kickPlayer(player, KickReason.MALFORMED, "Corrupted handshake data");
                 return;
             }
 
@@ -93,7 +239,7 @@ public class PluginProtocolHandler {
             PayloadDecoder.DecodeResult hashResult = payloadDecoder.decodeStringWithOffset(data, calculateOffset(data, payload.length()));
             if (hashResult == null || hashResult.value == null || ((String) hashResult.value).isEmpty()) {
                 logger.warning("Received mod list from " + player.getName() + " with invalid/missing hash. Rejecting.");
-                kickPlayer(player, "Invalid handshake: missing hash");
+                kickPlayer(player, KickReason.MALFORMED, "Invalid handshake: missing hash");
                 return;
             }
             String modListHash = (String) hashResult.value;
@@ -102,26 +248,34 @@ public class PluginProtocolHandler {
             PayloadDecoder.DecodeResult nonceResult = payloadDecoder.decodeStringWithOffset(data, hashResult.offset);
             if (nonceResult == null || nonceResult.value == null || ((String) nonceResult.value).isEmpty()) {
                 logger.warning("Received mod list from " + player.getName() + " with invalid/missing nonce. Rejecting.");
-                kickPlayer(player, "Invalid handshake: missing nonce");
+                kickPlayer(player, KickReason.MALFORMED, "Invalid handshake: missing nonce");
                 return;
             }
             String nonce = (String) nonceResult.value;
+            metrics.record(HandshakeMetrics.Stage.DECODE, decodeStart);
 
             validateAndSyncModList(player, payload, modListHash, nonce);
         } catch (Exception e) {
             logger.severe("Failed to decode mod list from " + player.getName() + ". Terminating connection: " + e.getMessage());
-            kickPlayer(player, "Corrupted handshake data");
+            kickPlayer(player, KickReason.MALFORMED, "Corrupted handshake data");
         }
     }
 
     public boolean validateAndSyncModList(Player player, String payload, String modListHash, String nonce) {
+        if (isReplay(player, nonce, "mod list")) {
+            return false;
+        }
+
         // Verify hash matches payload
+        long hashStart = metrics.start();
         String calculatedHash = hashString(payload);
-        if (!calculatedHash.equals(modListHash)) {
+        boolean hashMatches = calculatedHash.equals(modListHash);
+        metrics.record(HandshakeMetrics.Stage.HASH_CHECK, hashStart);
+        if (!hashMatches) {
             if (HandShakerPlugin.DEBUG) {
                 logger.warning("Received mod list from " + player.getName() + " with mismatched hash. Expected " + calculatedHash + " but got " + modListHash);
             }
-            kickPlayer(player, "Invalid handshake: hash mismatch");
+            kickPlayer(player, KickReason.HASH_MISMATCH, "Invalid handshake: hash mismatch");
             return false;
         }
 
@@ -132,41 +286,46 @@ public class PluginProtocolHandler {
                 if (!s.isBlank()) mods.add(s.trim().toLowerCase(Locale.ROOT));
             }
         }
+        tokens.modListReceived(player.getUniqueId(), mods);
+        resumption.modListReceived(player.getUniqueId(), mods);
 
         if (HandShakerPlugin.DEBUG) {
             logger.info("Received mod list from " + player.getName() + " with nonce: " + nonce);
         }
+        audit.record(AuditLog.Type.MOD_LIST, player.getUniqueId(), player.getName(), "received", mods);
 
-        // Sync with database asynchronously (Folia-compatible)
+        // Sync with database on a virtual thread, so a slow write never holds a scheduler thread
         PlayerHistoryDatabase db = plugin.getPlayerHistoryDb();
         if (db != null) {
-            plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
-                try {
-                    db.syncPlayerMods(player.getUniqueId(), player.getName(), mods);
-                } catch (Exception dbEx) {
-                    logger.warning("Failed to sync player mods to database: " + dbEx.getMessage());
-                }
-            });
+            long syncStart = metrics.start();
+            db.syncPlayerModsAsync(player.getUniqueId(), player.getName(), mods)
+                    .whenComplete((synced, dbEx) -> metrics.record(HandshakeMetrics.Stage.DB_SYNC, syncStart))
+                    .exceptionally(dbEx -> {
+                        logger.warning("Failed to sync player mods to database: " + dbEx.getMessage());
+                        return false;
+                    });
         }
 
         // Update client info
         ClientInfo oldInfo = clients.get(player.getUniqueId());
         if (oldInfo == null) {
-            clients.put(player.getUniqueId(), new ClientInfo(true, mods, false, false, nonce, null, null, false));
+            clients.put(player.getUniqueId(), new ClientInfo(true, mods, false, false, nonce, null, null, ClientInfo.State.AWAITING));
         } else {
             clients.put(player.getUniqueId(), new ClientInfo(true, mods, oldInfo.signatureVerified(), 
-                    oldInfo.veltonVerified(), nonce, oldInfo.integrityNonce(), oldInfo.veltonNonce(), false));
+                    oldInfo.veltonVerified(), nonce, oldInfo.integrityNonce(), oldInfo.veltonNonce(), ClientInfo.State.AWAITING));
         }
+        onHandshakePayload(player);
         return true;
     }
 
     private void handleIntegrityPayload(Player player, byte[] data) {
         try {
+            long decodeStart = metrics.start();
             // Decode signature (byte array)
             PayloadDecoder.DecodeResult sigResult = payloadDecoder.decodeByteArrayWithOffset(data, 0);
             if (sigResult == null) {
                 logger.warning("Failed to decode integrity payload from " + player.getName() + ". Rejecting.");
-                kickPlayer(player, "Corrupted handshake data");
+                kickPlayer(player, KickReason.MALFORMED, "Corrupted handshake data");
                 return;
             }
             byte[] clientSignature = (byte[]) sigResult.value;
@@ -175,7 +334,7 @@ public class PluginProtocolHandler {
             PayloadDecoder.DecodeResult hashResult = payloadDecoder.decodeStringWithOffset(data, sigResult.offset);
             if (hashResult == null || hashResult.value == null || ((String) hashResult.value).isEmpty()) {
                 logger.warning("Received integrity payload from " + player.getName() + " with invalid/missing jar hash. Rejecting.");
-                kickPlayer(player, "Invalid handshake: missing jar hash");
+                kickPlayer(player, KickReason.MALFORMED, "Invalid handshake: missing jar hash");
                 return;
             }
             String jarHash = (String) hashResult.value;
@@ -184,28 +343,76 @@ public class PluginProtocolHandler {
             PayloadDecoder.DecodeResult nonceResult = payloadDecoder.decodeStringWithOffset(data, hashResult.offset);
             if (nonceResult == null || nonceResult.value == null || ((String) nonceResult.value).isEmpty()) {
                 logger.warning("Received integrity payload from " + player.getName() + " with invalid/missing nonce. Rejecting.");
-                kickPlayer(player, "Invalid handshake: missing nonce");
+                kickPlayer(player, KickReason.MALFORMED, "Invalid handshake: missing nonce");
                 return;
             }
             String nonce = (String) nonceResult.value;
+            metrics.record(HandshakeMetrics.Stage.DECODE, decodeStart);
 
             handleIntegrityCheck(player, clientSignature, jarHash, nonce);
         } catch (Exception e) {
             logger.severe("Failed to decode integrity payload from " + player.getName() + ". Terminating connection: " + e.getMessage());
-            kickPlayer(player, "Corrupted handshake data");
+            kickPlayer(player, KickReason.MALFORMED, "Corrupted handshake data");
         }
     }
 
     public void handleIntegrityCheck(Player player, byte[] clientSignature, String jarHash, String nonce) {
+        if (isReplay(player, nonce, "integrity payload")) {
+            return;
+        }
+
+        // Another backend verified this JAR moments ago and the mod list matched its token
+        if (tokens.acceptIntegrity(player.getUniqueId(), jarHash)) {
+            if (HandShakerPlugin.DEBUG) {
+                logger.info("Integrity check for " + player.getName() + ": accepted verdict token (hash: " + jarHash.substring(0, 8) + ")");
+            }
+            recordIntegrity(player, true, jarHash, nonce);
+            return;
+        }
+
+        // The same client reconnecting shortly after it left, with the same mods and JAR
+        Boolean resumed = resumption.resumeIntegrity(player.getUniqueId(), jarHash, configManager.getGeneration());
+        if (resumed != null) {
+            if (HandShakerPlugin.DEBUG) {
+                logger.info("Integrity check for " + player.getName() + ": resumed previous session (hash: " + jarHash.substring(0, 8) + ")");
+            }
+            recordIntegrity(player, resumed, jarHash, nonce);
+            return;
+        }
+
+        // RSA runs on the CPU pool; the handshake timeout is held until the result is back on the player's region
+        BooleanSupplier release = admission.hold(player.getUniqueId());
+        CompletableFuture.supplyAsync(() -> verifyIntegrity(player, clientSignature, jarHash), plugin.getExecutors().cpu())
+                .exceptionally(e -> {
+                    logger.warning("Integrity check for " + player.getName() + ": error verifying signature: " + e.getMessage());
+                    return false;
+                })
+                .thenAccept(verified -> runForPlayer(player, () -> {
+                    if (release.getAsBoolean() && player.isOnline()) {
+                        // Only a check run here vouches for a fresh token
+                        tokens.jarChecked(player.getUniqueId(), jarHash, verified);
+                        recordIntegrity(player, verified, jarHash, nonce);
+                    }
+                }));
+    }
+
+    private boolean verifyIntegrity(Player player, byte[] clientSignature, String jarHash) {
         boolean verified = false;
 
         if (!jarHash.isEmpty() && clientSignature.length > 0) {
             if (!signatureVerifier.isKeyLoaded()) {
                 logger.warning("Cannot verify signature for " + player.getName() + ": public key not loaded");
             } else if (clientSignature.length >= 128) {
+                HandshakeEvents.SignatureVerification event = new HandshakeEvents.SignatureVerification("integrity");
+                event.begin();
+                long verifyStart = metrics.start();
                 verified = signatureVerifier.verifySignature(jarHash, clientSignature);
+                metrics.record(HandshakeMetrics.Stage.SIGNATURE_VERIFY, verifyStart);
+                event.finish(player.getUniqueId(), knownModCount(player.getUniqueId()), verified ? "valid" : "invalid");
                 if (verified) {
-                    logger.info("Integrity check for " + player.getName() + ": JAR SIGNED with VALID SIGNATURE (hash: " + jarHash.substring(0, 8) + ")");
+                    if (HandShakerPlugin.DEBUG) {
+                        logger.info("Integrity check for " + player.getName() + ": JAR SIGNED with VALID SIGNATURE (hash: " + jarHash.substring(0, 8) + ")");
+                    }
                 } else {
                     logger.warning("Integrity check for " + player.getName() + ": signature verification FAILED");
                 }
@@ -217,30 +424,36 @@ public class PluginProtocolHandler {
         } else if (jarHash.isEmpty()) {
             logger.warning("Integrity check for " + player.getName() + ": no JAR hash received");
         }
+        return verified;
+    }
 
+    private void recordIntegrity(Player player, boolean verified, String jarHash, String nonce) {
         if (HandShakerPlugin.DEBUG) {
             logger.info("Integrity check for " + player.getName() + " with nonce " + nonce + ": " + (verified ? "PASSED" : "FAILED"));
         }
+        audit.record(AuditLog.Type.INTEGRITY, player.getUniqueId(), player.getName(), verified ? "valid" : "invalid", null);
+        resumption.jarChecked(player.getUniqueId(), jarHash, verified);
 
-        // Update client info
+        // Update client info; like a late mod list, a late integrity payload puts the player up for judging again
         ClientInfo oldInfo = clients.get(player.getUniqueId());
         boolean finalVerified = verified;
         if (oldInfo == null) {
-            clients.put(player.getUniqueId(), new ClientInfo(false, Collections.emptySet(), finalVerified, false, null, nonce, null, false));
+            clients.put(player.getUniqueId(), new ClientInfo(false, Collections.emptySet(), finalVerified, false, null, nonce, null, ClientInfo.State.AWAITING));
         } else {
             clients.put(player.getUniqueId(), new ClientInfo(oldInfo.fabric(), oldInfo.mods(), finalVerified,
-                    oldInfo.veltonVerified(), oldInfo.modListNonce(), nonce, oldInfo.veltonNonce(), oldInfo.checked()));
+                    oldInfo.veltonVerified(), oldInfo.modListNonce(), nonce, oldInfo.veltonNonce(), ClientInfo.State.AWAITING));
         }
-        checkPlayer(player, clients);
+        onHandshakePayload(player);
     }
 
     private void handleVeltonPayloadInternal(Player player, byte[] data) {
         try {
+            long decodeStart = metrics.start();
             // Decode signature (byte array)
             PayloadDecoder.DecodeResult sigResult = payloadDecoder.decodeByteArrayWithOffset(data, 0);
             if (sigResult == null) {
                 logger.warning("Failed to decode Velton payload from " + player.getName() + ". Rejecting.");
-                kickPlayer(player, "Corrupted handshake data");
+                kickPlayer(player, KickReason.MALFORMED, "Corrupted handshake data");
                 return;
             }
             byte[] clientSignature = (byte[]) sigResult.value;
@@ -249,7 +462,7 @@ public class PluginProtocolHandler {
             PayloadDecoder.DecodeResult hashResult = payloadDecoder.decodeStringWithOffset(data, sigResult.offset);
             if (hashResult == null || hashResult.value == null || ((String) hashResult.value).isEmpty()) {
                 logger.warning("Received Velton payload from " + player.getName() + " with invalid/missing jar hash. Rejecting.");
-                kickPlayer(player, "Invalid handshake: missing jar hash");
+                kickPlayer(player, KickReason.MALFORMED, "Invalid handshake: missing jar hash");
                 return;
             }
             String jarHash = (String) hashResult.value;
@@ -258,28 +471,54 @@ public class PluginProtocolHandler {
             PayloadDecoder.DecodeResult nonceResult = payloadDecoder.decodeStringWithOffset(data, hashResult.offset);
             if (nonceResult == null || nonceResult.value == null || ((String) nonceResult.value).isEmpty()) {
                 logger.warning("Received Velton payload from " + player.getName() + " with invalid/missing nonce. Rejecting.");
-                kickPlayer(player, "Invalid handshake: missing nonce");
+                kickPlayer(player, KickReason.MALFORMED, "Invalid handshake: missing nonce");
                 return;
             }
             String nonce = (String) nonceResult.value;
+            metrics.record(HandshakeMetrics.Stage.DECODE, decodeStart);
 
             handleVeltonPayload(player, clientSignature, jarHash, nonce);
         } catch (Exception e) {
             logger.severe("Failed to decode Velton payload from " + player.getName() + ". Terminating connection: " + e.getMessage());
-            kickPlayer(player, "Corrupted handshake data");
+            kickPlayer(player, KickReason.MALFORMED, "Corrupted handshake data");
         }
     }
 
     public void handleVeltonPayload(Player player, byte[] clientSignature, String jarHash, String nonce) {
+        if (isReplay(player, nonce, "Velton payload")) {
+            return;
+        }
+
+        BooleanSupplier release = admission.hold(player.getUniqueId());
+        CompletableFuture.supplyAsync(() -> verifyVelton(player, clientSignature, jarHash), plugin.getExecutors().cpu())
+                .exceptionally(e -> {
+                    logger.warning("Velton integrity check for " + player.getName() + ": error verifying signature: " + e.getMessage());
+                    return false;
+                })
+                .thenAccept(verified -> runForPlayer(player, () -> {
+                    if (release.getAsBoolean() && player.isOnline()) {
+                        recordVelton(player, verified, nonce);
+                    }
+                }));
+    }
+
+    private boolean verifyVelton(Player player, byte[] clientSignature, String jarHash) {
         boolean verified = false;
 
         if (!jarHash.isEmpty() && clientSignature.length > 0) {
             if (!signatureVerifier.isKeyLoaded()) {
                 logger.warning("Cannot verify Velton signature for " + player.getName() + ": public key not loaded");
             } else if (clientSignature.length >= 128) {
+                HandshakeEvents.SignatureVerification event = new HandshakeEvents.SignatureVerification("velton");
+                event.begin();
+                long verifyStart = metrics.start();
                 verified = signatureVerifier.verifySignature(jarHash, clientSignature);
+                metrics.record(HandshakeMetrics.Stage.SIGNATURE_VERIFY, verifyStart);
+                event.finish(player.getUniqueId(), knownModCount(player.getUniqueId()), verified ? "valid" : "invalid");
                 if (verified) {
-                    logger.info("Velton integrity check for " + player.getName() + ": JAR SIGNED with VALID SIGNATURE (hash: " + jarHash.substring(0, 8) + ")");
+                    if (HandShakerPlugin.DEBUG) {
+                        logger.info("Velton integrity check for " + player.getName() + ": JAR SIGNED with VALID SIGNATURE (hash: " + jarHash.substring(0, 8) + ")");
+                    }
                 } else {
                     logger.warning("Velton integrity check for " + player.getName() + ": signature verification FAILED");
                 }
@@ -291,39 +530,165 @@ public class PluginProtocolHandler {
         } else if (jarHash.isEmpty()) {
             logger.warning("Velton integrity check for " + player.getName() + ": no JAR hash received");
         }
+        return verified;
+    }
 
+    private void recordVelton(Player player, boolean verified, String nonce) {
         if (HandShakerPlugin.DEBUG) {
             logger.info("Velton check for " + player.getName() + " with nonce " + nonce + ": " + (verified ? "PASSED" : "FAILED"));
         }
+        audit.record(AuditLog.Type.VELTON, player.getUniqueId(), player.getName(), verified ? "valid" : "invalid", null);
 
         if (!verified) {
             logger.warning("Kicking " + player.getName() + " - Velton signature verification failed");
-            kickPlayer(player, "Anti-cheat verification failed");
+            kickPlayer(player, KickReason.VELTON, "Anti-cheat verification failed");
             return;
         }
 
-        // Update client info
+        // Update client info; a late Velton payload is judged again too
         ClientInfo oldInfo = clients.get(player.getUniqueId());
         if (oldInfo == null) {
-            clients.put(player.getUniqueId(), new ClientInfo(false, Collections.emptySet(), false, verified, null, null, nonce, false));
+            clients.put(player.getUniqueId(), new ClientInfo(false, Collections.emptySet(), false, verified, null, null, nonce, ClientInfo.State.AWAITING));
         } else {
             clients.put(player.getUniqueId(), new ClientInfo(oldInfo.fabric(), oldInfo.mods(), oldInfo.signatureVerified(),
-                    verified, oldInfo.modListNonce(), oldInfo.integrityNonce(), nonce, oldInfo.checked()));
+                    verified, oldInfo.modListNonce(), oldInfo.integrityNonce(), nonce, ClientInfo.State.AWAITING));
+        }
+        onHandshakePayload(player);
+    }
+
+    /**
+     * Starts waiting for a joining player's handshake. The verdict runs as soon as every expected
+     * payload has arrived, or when the handshake timeout fires for clients that never finish.
+     */
+    public void startHandshake(Player player) {
+        UUID uuid = player.getUniqueId();
+        clients.put(uuid, ClientInfo.awaiting());
+        scheduleTimeout(player);
+    }
+
+    private void scheduleTimeout(Player player) {
+        UUID uuid = player.getUniqueId();
+        HashedWheelTimer.Timeout timeout = handshakeTimer.schedule(
+                () -> player.getScheduler().run(plugin, task -> onHandshakeTimeout(player), null),
+                configManager.getHandshakeTimeoutSeconds(), TimeUnit.SECONDS);
+        HashedWheelTimer.Timeout previous = handshakeTimeouts.put(uuid, timeout);
+        if (previous != null) {
+            previous.cancel();
         }
+    }
+
+    /**
+     * Drops a player's pending handshake timeout and queued payloads, e.g. when they quit, and keeps
+     * their verified state for a quick reconnect
+     */
+    public void cancelHandshake(UUID uuid) {
+        cancelTimeout(uuid);
+        admission.forget(uuid);
+        rateLimiter.forget(uuid);
+        fingerprints.forget(uuid);
+        preLogin.forget(uuid);
+        results.forget(uuid);
+        tokens.forget(uuid);
+        resumption.suspend(uuid);
+    }
+
+    /**
+     * Loads what the join-time checks need while the login is still async: the player's last active
+     * mods, their Bedrock status and the verdict for those mods. Blocking; called from pre-login.
+     */
+    public void warmUp(UUID uuid, String name) {
+        PlayerHistoryDatabase db = plugin.getPlayerHistoryDb();
+        Set<String> lastMods = db != null ? db.prefetchActiveMods(uuid) : Set.of();
+        boolean bedrock = isBedrockPlayer(uuid, name);
+        long generation = configManager.getGeneration();
+        preLogin.put(uuid, lastMods, bedrock, configManager.evaluateMods(lastMods), generation);
+    }
+
+    private void cancelTimeout(UUID uuid) {
+        HashedWheelTimer.Timeout timeout = handshakeTimeouts.remove(uuid);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private void onHandshakePayload(Player player) {
+        ClientInfo info = clients.get(player.getUniqueId());
+        if (info == null || info.checked() || !info.hasAllPayloads(configManager.isRequireVelton())) {
+            return;
+        }
+        cancelTimeout(player.getUniqueId());
         checkPlayer(player, clients);
     }
 
+    private void onHandshakeTimeout(Player player) {
+        handshakeTimeouts.remove(player.getUniqueId());
+        if (!player.isOnline()) {
+            return;
+        }
+        ClientInfo info = clients.get(player.getUniqueId());
+        if (info != null && info.checked()) {
+            return;
+        }
+        if (admission.isPending(player.getUniqueId())) {
+            // Payloads are still queued behind a join storm; wait for them rather than judge without them
+            scheduleTimeout(player);
+            return;
+        }
+        if (configManager.isRequireVelton() && info != null && info.fabric() && info.veltonNonce() == null) {
+            logger.warning("Kicking " + player.getName() + " - no Velton payload received within " + configManager.getHandshakeTimeoutSeconds() + "s");
+            publish(player, info, HandshakeResult.Verdict.KICKED, KickReason.VELTON);
+            kickPlayer(player, KickReason.VELTON, "Anti-cheat verification failed");
+            return;
+        }
+        checkPlayer(player, clients);
+    }
+
+    public void shutdown() {
+        handshakeTimer.stop();
+        handshakeTimeouts.clear();
+        if (admissionTask != null) {
+            admissionTask.cancel();
+        }
+        admission.clear();
+        rateLimiter.clear();
+        fingerprints.clear();
+        preLogin.clear();
+        results.clear();
+        tokens.clear();
+        resumption.clear();
+    }
+
+    public VerdictTokens getVerdictTokens() {
+        return tokens;
+    }
+
+    /**
+     * The player's handshake result, completed once their check finishes. Cancelled for a player who
+     * is not connected, or who leaves before the verdict.
+     */
+    public CompletableFuture<HandshakeResult> getHandshakeResult(UUID uuid) {
+        return results.lookup(uuid, clients.containsKey(uuid) || Bukkit.getPlayer(uuid) != null);
+    }
+
     public void checkPlayer(Player player, Map<UUID, ClientInfo> clients) {
         // Check if Bedrock players are allowed
-        if (configManager.isAllowBedrockPlayers() && isBedrockPlayer(player)) {
-            logger.info("Bedrock player " + player.getName() + " allowed to join without mod checks");
+        if (configManager.isAllowBedrockPlayers()
+                && preLogin.isBedrock(player.getUniqueId(), uuid -> isBedrockPlayer(uuid, player.getName()))) {
+            if (HandShakerPlugin.DEBUG) {
+                logger.info("Bedrock player " + player.getName() + " allowed to join without mod checks");
+            }
+            audit.record(AuditLog.Type.VERDICT, player.getUniqueId(), player.getName(), "bedrock", null);
+            publish(player, clients.get(player.getUniqueId()), HandshakeResult.Verdict.BYPASSED, null);
             return;
         }
 
         ClientInfo info = clients.get(player.getUniqueId());
         if (info == null) {
             if (configManager.getBehavior() == ConfigManager.Behavior.STRICT) {
-                kickPlayer(player, configManager.getNoHandshakeKickMessage());
+                publish(player, null, HandshakeResult.Verdict.KICKED, KickReason.NO_HANDSHAKE);
+                kickPlayer(player, KickReason.NO_HANDSHAKE, configManager.getNoHandshakeKickMessage());
+            } else {
+                publish(player, null, HandshakeResult.Verdict.ALLOWED, null);
             }
             return;
         }
@@ -335,22 +700,37 @@ public class PluginProtocolHandler {
 
         // Handshake presence check
         if (configManager.getBehavior() == ConfigManager.Behavior.STRICT && !info.fabric()) {
-            kickPlayer(player, configManager.getNoHandshakeKickMessage());
+            publish(player, info, HandshakeResult.Verdict.KICKED, KickReason.NO_HANDSHAKE);
+            kickPlayer(player, KickReason.NO_HANDSHAKE, configManager.getNoHandshakeKickMessage());
             return;
         }
 
         // Integrity Check (only if client has the mod or behavior is STRICT)
         if (info.fabric() && configManager.getIntegrityMode() == ConfigManager.IntegrityMode.SIGNED) {
             if (!info.signatureVerified()) {
-                kickPlayer(player, configManager.getInvalidSignatureKickMessage());
+                publish(player, info, HandshakeResult.Verdict.KICKED, KickReason.INVALID_SIGNATURE);
+                kickPlayer(player, KickReason.INVALID_SIGNATURE, configManager.getInvalidSignatureKickMessage());
                 return;
             }
         }
 
         Set<String> mods = info.mods();
 
-        // Check player and execute action if needed
-        PlayerModStatus status = configManager.checkPlayerWithAction(player, mods);
+        // Check player and execute action if needed; a resumed session keeps its verdict and players with
+        // unchanged mods reuse the pre-login one
+        HandshakeEvents.RuleEvaluation evaluation = new HandshakeEvents.RuleEvaluation();
+        evaluation.begin();
+        long evaluationStart = metrics.start();
+        boolean bypass = configManager.canBypass(player);
+        long generation = configManager.getGeneration();
+        PlayerModStatus status = bypass ? null
+                : resumption.verdict(player.getUniqueId(), mods, generation,
+                        unresumed -> preLogin.verdict(player.getUniqueId(), unresumed, generation, configManager::evaluateMods));
+        metrics.record(HandshakeMetrics.Stage.RULE_EVALUATION, evaluationStart);
+        String outcome = status == null ? "allowed" : status.hasViolation() ? KickReason.of(status).label() : "action";
+        evaluation.finish(player.getUniqueId(), mods.size(), outcome);
+        audit.record(AuditLog.Type.VERDICT, player.getUniqueId(), player.getName(), outcome,
+                status != null ? status.getDetectedMods() : null);
         
         if (HandShakerPlugin.DEBUG) {
             logger.info("[DEBUG] checkPlayerWithAction returned: " + (status != null ? "status(" + status.getActionName() + ")" : "null"));
@@ -360,7 +740,8 @@ public class PluginProtocolHandler {
             if (HandShakerPlugin.DEBUG) {
                 logger.info("[DEBUG] Player " + player.getName() + " has violation, kicking");
             }
-            kickPlayer(player, status.getKickMessage());
+            publish(player, info, HandshakeResult.Verdict.KICKED, KickReason.of(status));
+            kickPlayer(player, KickReason.of(status), status.getKickMessage(), status.getDetectedMods(), status.getActionName());
             return;
         }
 
@@ -374,6 +755,43 @@ public class PluginProtocolHandler {
 
         // Mark as checked to prevent double execution
         clients.put(player.getUniqueId(), info.withChecked(true));
+        publish(player, info, bypass ? HandshakeResult.Verdict.BYPASSED : HandshakeResult.Verdict.ALLOWED, null);
+        if (info.signatureVerified()) {
+            sendVerdictToken(player, info.mods());
+        }
+    }
+
+    /**
+     * Hands a player who passed with a verified JAR a token other backends can accept instead of
+     * checking the signature again
+     */
+    private void sendVerdictToken(Player player, Set<String> mods) {
+        if (!player.isOnline() || !player.getListeningPluginChannels().contains(HandShakerPlugin.VERDICT_CHANNEL)) {
+            return;
+        }
+        String token = tokens.issue(player.getUniqueId(), mods);
+        if (token != null) {
+            player.sendPluginMessage(plugin, HandShakerPlugin.VERDICT_CHANNEL, encodeString(token));
+        }
+    }
+
+    /**
+     * Stores a verdict for the lookup API and calls {@link HandshakeCompletedEvent} for the first one.
+     * Called before any kick, so listeners still see the player online.
+     */
+    private void publish(Player player, ClientInfo info, HandshakeResult.Verdict verdict, KickReason reason) {
+        HandshakeResult result = info == null
+                ? new HandshakeResult(player.getUniqueId(), Set.of(), false, false, false, verdict, reason)
+                : new HandshakeResult(player.getUniqueId(), info.mods(), info.fabric(), info.signatureVerified(),
+                        info.veltonVerified(), verdict, reason);
+        if (!results.complete(result)) {
+            return;
+        }
+        try {
+            new HandshakeCompletedEvent(player, result).callEvent();
+        } catch (RuntimeException e) {
+            logger.warning("A HandshakeCompletedEvent listener failed for " + player.getName() + ": " + e.getMessage());
+        }
     }
 
     private void executeAction(Player player, String actionName, Set<String> mods) {
@@ -396,41 +814,144 @@ public class PluginProtocolHandler {
         if (HandShakerPlugin.DEBUG) {
             logger.info("[DEBUG] Executing action '" + actionName + "' for player " + player.getName());
         }
+        audit.record(AuditLog.Type.ACTION, player.getUniqueId(), player.getName(), actionName, mods);
+        violations.record(player.getUniqueId(), player.getName(), null, mods, actionName);
 
-        // Execute commands on main thread (Bukkit commands require main thread)
-        // Note: We use getGlobalRegionScheduler().run() instead of async because
-        // Bukkit.dispatchCommand() must execute on the main thread
+        // Commands that name the player act on them and run on the player's region; the rest are
+        // server-wide and run on the global region. Order is kept within each group.
+        List<String> playerCommands = new ArrayList<>();
+        List<String> globalCommands = new ArrayList<>();
+        for (String command : action.getCommands()) {
+            String processedCommand = configManager.replacePlaceholders(command, player, mods);
+            (command.contains("{player}") ? playerCommands : globalCommands).add(processedCommand);
+        }
         try {
-            plugin.getServer().getGlobalRegionScheduler().run(plugin, task -> {
-                for (String command : action.getCommands()) {
-                    String processedCommand = configManager.replacePlaceholders(command, player, mods);
-                    try {
-                        if (HandShakerPlugin.DEBUG) {
-                            logger.info("[DEBUG] Executing command: " + processedCommand);
-                        }
-                        Bukkit.dispatchCommand(Bukkit.getConsoleSender(), processedCommand);
-                        logger.fine("Executed action '" + actionName + "' command: " + processedCommand);
-                    } catch (Exception e) {
-                        logger.warning("Failed to execute action '" + actionName + "' command: " + processedCommand + " - " + e.getMessage());
-                    }
-                }
-
-                if (action.shouldLog()) {
-                    String logMessage = configManager.replacePlaceholders("Action '" + actionName + "' executed for {player} using {mod}", player, mods);
-                    logger.info(logMessage);
-                }
-            });
+            if (!playerCommands.isEmpty()) {
+                player.getScheduler().run(plugin, task -> dispatchActionCommands(player, mods, actionName, playerCommands), null);
+            }
+            if (!globalCommands.isEmpty()) {
+                plugin.getServer().getGlobalRegionScheduler().run(plugin, task -> dispatchActionCommands(player, mods, actionName, globalCommands));
+            }
         } catch (Exception e) {
             logger.warning("Failed to schedule command execution for action '" + actionName + "': " + e.getMessage());
             e.printStackTrace();
+            return;
         }
+
+        if (action.shouldLog()) {
+            String logMessage = configManager.replacePlaceholders("Action '" + actionName + "' executed for {player} using {mod}", player, mods);
+            logger.info(logMessage);
+        }
+    }
+
+    private void dispatchActionCommands(Player player, Set<String> mods, String actionName, List<String> commands) {
+        HandshakeEvents.ActionExecution event = new HandshakeEvents.ActionExecution(actionName, commands.size());
+        event.begin();
+        long dispatchStart = metrics.start();
+        int failed = 0;
+        for (String command : commands) {
+            try {
+                if (HandShakerPlugin.DEBUG) {
+                    logger.info("[DEBUG] Executing command: " + command);
+                }
+                Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
+                logger.fine("Executed action '" + actionName + "' command: " + command);
+            } catch (Exception e) {
+                logger.warning("Failed to execute action '" + actionName + "' command: " + command + " - " + e.getMessage());
+                failed++;
+            }
+        }
+        metrics.record(HandshakeMetrics.Stage.ACTION_DISPATCH, dispatchStart);
+        event.finish(player.getUniqueId(), mods.size(), failed == 0 ? "ok" : "failed");
+    }
+
+    /**
+     * Sends a challenge token to clients that listen for one; older clients keep using random nonces
+     */
+    public void sendChallenge(Player player) {
+        if (!player.getListeningPluginChannels().contains(HandShakerPlugin.CHALLENGE_CHANNEL)) {
+            return;
+        }
+        player.sendPluginMessage(plugin, HandShakerPlugin.CHALLENGE_CHANNEL, encodeString(challenge.issue(player.getUniqueId())));
+    }
+
+    /**
+     * Kicks the player if the nonce is a forged or expired challenge token, or a random nonce
+     * that was already used by an earlier payload
+     */
+    private boolean isReplay(Player player, String nonce, String payloadType) {
+        if (HandshakeChallenge.isToken(nonce)) {
+            if (challenge.verify(player.getUniqueId(), nonce)) {
+                return false;
+            }
+            logger.warning("Received " + payloadType + " from " + player.getName() + " with invalid or expired challenge token. Kicking.");
+            kickPlayer(player, KickReason.REPLAY, "Invalid handshake: bad challenge token");
+            return true;
+        }
+
+        // Legacy clients never receive a challenge and send their own random nonce
+        if (nonceCache.markUsed(nonce)) {
+            return false;
+        }
+        logger.warning("Received " + payloadType + " from " + player.getName() + " with replay nonce. Kicking.");
+        kickPlayer(player, KickReason.REPLAY, "Replay attack detected");
+        return true;
+    }
+
+    public NonceReplayCache getNonceCache() {
+        return nonceCache;
+    }
+
+    public HandshakeAdmission getAdmission() {
+        return admission;
+    }
+
+    public PayloadRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public PayloadFingerprints getFingerprints() {
+        return fingerprints;
     }
 
     /**
-     * Kicks a player with a message
+     * The key client signatures are checked against, or null if public.cer is missing
      */
-    private void kickPlayer(Player player, String message) {
-        player.kick(Component.text(message).color(NamedTextColor.RED));
+    public PublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    /**
+     * Kicks a player with a message, counting the kick under {@code reason}
+     */
+    private void kickPlayer(Player player, KickReason reason, String message) {
+        kickPlayer(player, reason, message, null, null);
+    }
+
+    /**
+     * Kicks a player over a mod verdict, keeping the offending mods and action in the recent verdicts
+     */
+    private void kickPlayer(Player player, KickReason reason, String message, Set<String> mods, String action) {
+        metrics.recordKick(reason);
+        audit.record(AuditLog.Type.KICK, player.getUniqueId(), player.getName(), reason.label(), message);
+        violations.record(player.getUniqueId(), player.getName(), reason, mods, action);
+        runForPlayer(player, () -> player.kick(Component.text(message).color(NamedTextColor.RED)));
+    }
+
+    /**
+     * Encodes a string the way the client codec reads it (VarInt length + UTF-8)
+     */
+    private byte[] encodeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream(bytes.length + 5);
+        int length = bytes.length;
+        while ((length & ~0x7F) != 0) {
+            out.write((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.write(length);
+        out.writeBytes(bytes);
+        return out.toByteArray();
     }
 
     private int calculateOffset(byte[] data, int stringLength) {
@@ -471,8 +992,7 @@ public class PluginProtocolHandler {
     /**
      * Checks if a player is connecting via Bedrock
      */
-    private boolean isBedrockPlayer(Player player) {
-        UUID playerUuid = player.getUniqueId();
+    private boolean isBedrockPlayer(UUID playerUuid, String playerName) {
 
         // Try Floodgate API first
         try {
@@ -494,7 +1014,7 @@ public class PluginProtocolHandler {
         } catch (ClassNotFoundException e) {
             // Floodgate not installed
         } catch (Exception e) {
-            logger.warning("Error checking Floodgate for " + player.getName() + ": " + e.getMessage());
+            logger.warning("Error checking Floodgate for " + playerName + ": " + e.getMessage());
         }
 
         // Try Geyser API
@@ -518,7 +1038,7 @@ public class PluginProtocolHandler {
         } catch (ClassNotFoundException e) {
             // Geyser not installed
         } catch (Exception e) {
-            logger.warning("Error checking Geyser for " + player.getName() + ": " + e.getMessage());
+            logger.warning("Error checking Geyser for " + playerName + ": " + e.getMessage());
         }
 
         // Fallback for common Floodgate UUID style used by Bedrock players
@@ -1,5 +1,6 @@
 package me.mklv.handshaker.paper.utils;
 
+import java.util.Collections;
 import java.util.Set;
 
 public record ClientInfo(
@@ -10,26 +11,48 @@ public record ClientInfo(
     String modListNonce,
     String integrityNonce,
     String veltonNonce,
-    boolean checked
+    State state
 ) {
 
+    /**
+     * Handshake progress. A player is AWAITING from join until every expected payload has arrived
+     * or the handshake timeout fires, and JUDGED once the verdict has run. A mod list, integrity or
+     * Velton payload arriving after the verdict puts the player back to AWAITING to be judged again.
+     */
+    public enum State { AWAITING, JUDGED }
+
+    public static ClientInfo awaiting() {
+        return new ClientInfo(false, Collections.emptySet(), false, false, null, null, null, State.AWAITING);
+    }
+
+    public boolean checked() {
+        return state == State.JUDGED;
+    }
+
+    /**
+     * Whether the mod list, integrity and (if required) Velton payloads have all arrived
+     */
+    public boolean hasAllPayloads(boolean requireVelton) {
+        return modListNonce != null && integrityNonce != null && (!requireVelton || veltonNonce != null);
+    }
+
     public ClientInfo withChecked(boolean checked) {
-        return new ClientInfo(fabric, mods, signatureVerified, veltonVerified, 
-                            modListNonce, integrityNonce, veltonNonce, checked);
+        return new ClientInfo(fabric, mods, signatureVerified, veltonVerified,
+                            modListNonce, integrityNonce, veltonNonce, checked ? State.JUDGED : State.AWAITING);
     }
 
     public ClientInfo withMods(Set<String> mods) {
         return new ClientInfo(fabric, mods, signatureVerified, veltonVerified,
-                            modListNonce, integrityNonce, veltonNonce, checked);
+                            modListNonce, integrityNonce, veltonNonce, state);
     }
 
     public ClientInfo withFabric(boolean fabric) {
         return new ClientInfo(fabric, mods, signatureVerified, veltonVerified,
-                            modListNonce, integrityNonce, veltonNonce, checked);
+                            modListNonce, integrityNonce, veltonNonce, state);
     }
 
     public ClientInfo withSignatureVerified(boolean signatureVerified) {
         return new ClientInfo(fabric, mods, signatureVerified, veltonVerified,
-                            modListNonce, integrityNonce, veltonNonce, checked);
+                            modListNonce, integrityNonce, veltonNonce, state);
     }
 }
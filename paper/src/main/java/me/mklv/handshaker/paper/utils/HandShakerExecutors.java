@@ -0,0 +1,95 @@
+package me.mklv.handshaker.paper.utils;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executors behind all of HandShaker's off-thread work. Blocking work (JDBC, file writes) gets a
+ * virtual thread per task, so a slow database never holds a scarce scheduler or pool thread; CPU-bound
+ * work (signature checks) runs on a small platform pool sized below the core count so it can't crowd
+ * out the server. {@link #shutdown} waits for in-flight tasks so a stop never cuts off a write.
+ */
+public class HandShakerExecutors {
+    private final ExecutorService io = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("HandShaker-IO-", 0).factory());
+    private final ExecutorService cpu;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Executor ioExecutor = task -> execute(io, task);
+    private final Executor cpuExecutor;
+
+    public HandShakerExecutors() {
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        this.cpu = Executors.newFixedThreadPool(threads,
+                Thread.ofPlatform().name("HandShaker-CPU-", 0).daemon(true).factory());
+        this.cpuExecutor = task -> execute(cpu, task);
+    }
+
+    /**
+     * For blocking work: database calls, file writes, anything that waits on a disk or socket
+     */
+    public Executor io() {
+        return ioExecutor;
+    }
+
+    /**
+     * For short CPU-bound work such as RSA verification
+     */
+    public Executor cpu() {
+        return cpuExecutor;
+    }
+
+    /**
+     * Tasks submitted and not yet finished, across both executors
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Stops accepting work and waits for in-flight tasks. Whatever is still running at the deadline is interrupted.
+     * @return False if the deadline passed first
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        io.shutdown();
+        cpu.shutdown();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            boolean finished = io.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                    && cpu.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (!finished) {
+                io.shutdownNow();
+                cpu.shutdownNow();
+            }
+            return finished;
+        } catch (InterruptedException e) {
+            io.shutdownNow();
+            cpu.shutdownNow();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void execute(ExecutorService service, Runnable task) {
+        inFlight.incrementAndGet();
+        try {
+            service.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Late work during shutdown runs on the caller rather than being lost
+            try {
+                task.run();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package me.mklv.handshaker.paper.utils;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Admission control for handshake processing during join storms. Payloads are queued per player
+ * and drained from the server tick, a limited number per tick and only while the tick budget lasts,
+ * so a burst of joins is spread over several ticks instead of stalling one. Payloads that don't fit
+ * the bounded queue wait in an overflow list and are admitted in order as the queue drains; nothing
+ * is dropped, and callers use {@link #isPending} to hold a player's timeout while work is queued.
+ * <p>
+ * Work can be handed to another thread to run, e.g. a Folia region. Its time is measured where it
+ * runs and charged to the budget of the tick it finishes in, so a tick after an expensive batch
+ * admits less or nothing. Time over the budget carries over to the next tick, which keeps handshake
+ * work within the budget on average wherever it runs.
+ */
+public class HandshakeAdmission {
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final Queue<Entry> overflow = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Map<UUID, Session> sessions = new ConcurrentHashMap<>();
+
+    private volatile int concurrency = 16;
+    private volatile int queueCapacity = 256;
+    private volatile long tickBudgetNanos = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private volatile long maxWaitNanos;
+    private volatile long lastTickNanos;
+    // Work time not yet charged to a tick, including any overrun carried over from the last one
+    private final AtomicLong spentNanos = new AtomicLong();
+
+    public void setLimits(int concurrency, int queueCapacity, long tickBudgetMillis) {
+        this.concurrency = Math.max(1, concurrency);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.tickBudgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickBudgetMillis));
+    }
+
+    /**
+     * Queues handshake work for a player. Safe to call from any thread; the work runs on the thread
+     * that calls {@link #tick}.
+     */
+    public void submit(UUID uuid, Runnable work) {
+        submit(uuid, work, Runnable::run);
+    }
+
+    /**
+     * Queues handshake work for a player that {@code dispatch} runs wherever it has to, e.g. on the
+     * thread that owns the player. The work counts as pending until it has run.
+     */
+    public void submit(UUID uuid, Runnable work, Consumer<Runnable> dispatch) {
+        Session session = sessions.computeIfAbsent(uuid, k -> new Session());
+        session.queued.incrementAndGet();
+        Entry entry = new Entry(uuid, session, work, dispatch, System.nanoTime());
+        // Once anything is waiting, new work waits behind it so payloads stay in arrival order
+        if (!overflow.isEmpty() || !tryQueue(entry)) {
+            overflow.add(entry);
+            shed.increment();
+        }
+    }
+
+    /**
+     * Whether a player still has handshake work waiting to run
+     */
+    public boolean isPending(UUID uuid) {
+        Session session = sessions.get(uuid);
+        return session != null && session.queued.get() > 0;
+    }
+
+    /**
+     * Keeps {@link #isPending} true while a player's work continues off the tick thread, e.g. a
+     * signature check on the CPU pool. Call the returned release exactly once when it is done; it
+     * returns false if the player was forgotten in the meantime and the result should be dropped.
+     */
+    public BooleanSupplier hold(UUID uuid) {
+        Session session = sessions.computeIfAbsent(uuid, k -> new Session());
+        session.queued.incrementAndGet();
+        return () -> {
+            session.queued.decrementAndGet();
+            return sessions.get(uuid) == session;
+        };
+    }
+
+    /**
+     * Drops a player's queued work, e.g. when they quit. Entries already queued are skipped when reached.
+     */
+    public void forget(UUID uuid) {
+        sessions.remove(uuid);
+    }
+
+    /**
+     * Runs queued work until the per-tick limit or time budget is used up. Call once per server tick.
+     */
+    public void tick() {
+        long budget = tickBudgetNanos;
+        // Work that finished since the last tick, wherever it ran
+        long charged = spentNanos.getAndSet(0);
+        refill();
+
+        int ran = 0;
+        Entry entry;
+        while (ran < concurrency && charged + spentNanos.get() < budget && (entry = queue.poll()) != null) {
+            queued.decrementAndGet();
+            if (sessions.get(entry.uuid) != entry.session) {
+                continue;
+            }
+
+            long waited = System.nanoTime() - entry.queuedAt;
+            totalWaitNanos.add(waited);
+            if (waited > maxWaitNanos) {
+                maxWaitNanos = waited;
+            }
+            processed.increment();
+            ran++;
+            entry.dispatch.accept(measured(entry));
+        }
+
+        refill();
+        charged += spentNanos.getAndSet(0);
+        lastTickNanos = charged;
+        if (charged > budget) {
+            spentNanos.addAndGet(charged - budget);
+        }
+    }
+
+    private Runnable measured(Entry entry) {
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                entry.work.run();
+            } finally {
+                spentNanos.addAndGet(System.nanoTime() - start);
+                entry.session.queued.decrementAndGet();
+            }
+        };
+    }
+
+    public void clear() {
+        queue.clear();
+        overflow.clear();
+        queued.set(0);
+        sessions.clear();
+        spentNanos.set(0);
+    }
+
+    private boolean tryQueue(Entry entry) {
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            return false;
+        }
+        queue.add(entry);
+        return true;
+    }
+
+    private void refill() {
+        Entry entry;
+        while ((entry = overflow.peek()) != null && tryQueue(entry)) {
+            overflow.poll();
+        }
+    }
+
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Payloads waiting for room in the queue
+     */
+    public int getWaitingDepth() {
+        return overflow.size();
+    }
+
+    /**
+     * Payloads that found the queue full and had to wait in the overflow list
+     */
+    public long getShedCount() {
+        return shed.sum();
+    }
+
+    public long getProcessedCount() {
+        return processed.sum();
+    }
+
+    public double getAverageWaitMillis() {
+        long count = processed.sum();
+        return count == 0 ? 0 : totalWaitNanos.sum() / (double) count / 1_000_000.0;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos / 1_000_000.0;
+    }
+
+    /**
+     * Handshake work time charged to the last tick: work it ran itself, dispatched work that finished
+     * elsewhere since the tick before and any overrun carried over
+     */
+    public double getLastTickMillis() {
+        return lastTickNanos / 1_000_000.0;
+    }
+
+    private static final class Session {
+        private final AtomicInteger queued = new AtomicInteger();
+    }
+
+    private record Entry(UUID uuid, Session session, Runnable work, Consumer<Runnable> dispatch, long queuedAt) {}
+}
@@ -0,0 +1,129 @@
+package me.mklv.handshaker.paper.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.UUID;
+
+/**
+ * JDK Flight Recorder events for the handshake pipeline, so HandShaker's work shows up by name in a
+ * recording next to GC and tick data. Start one with e.g. {@code jcmd <pid> JFR.start} and look for the
+ * {@code handshaker.*} events. Callers create the event and call {@code begin()} before the work and
+ * {@code finish} after it. While no recording has the event enabled, {@link Event#shouldCommit} is false
+ * and nothing is formatted or written; the JIT removes the unused event object.
+ */
+public final class HandshakeEvents {
+    private HandshakeEvents() {}
+
+    @Category("HandShaker")
+    @StackTrace(false)
+    public abstract static class PlayerEvent extends Event {
+        @Label("Player")
+        String player;
+
+        @Label("Mod Count")
+        int modCount;
+
+        @Label("Outcome")
+        String outcome;
+
+        /**
+         * Ends the event and commits it if a recording wants it
+         */
+        public void finish(UUID uuid, int modCount, String outcome) {
+            if (shouldCommit()) {
+                this.player = uuid.toString();
+                this.modCount = modCount;
+                this.outcome = outcome;
+                commit();
+            }
+        }
+    }
+
+    @Name("handshaker.PayloadReceived")
+    @Label("Handshake Payload")
+    @Description("A handshake payload taken off the admission queue and processed")
+    public static final class PayloadReceived extends PlayerEvent {
+        @Label("Channel")
+        String channel;
+
+        public PayloadReceived(String channel) {
+            this.channel = channel;
+        }
+    }
+
+    @Name("handshaker.SignatureVerification")
+    @Label("Signature Verification")
+    @Description("RSA check of a client JAR signature")
+    public static final class SignatureVerification extends PlayerEvent {
+        @Label("Payload")
+        String payload;
+
+        public SignatureVerification(String payload) {
+            this.payload = payload;
+        }
+    }
+
+    @Name("handshaker.RuleEvaluation")
+    @Label("Rule Evaluation")
+    @Description("Checking a player's mods against the required, blacklist and whitelist rules")
+    public static final class RuleEvaluation extends PlayerEvent {
+    }
+
+    @Name("handshaker.ModSync")
+    @Label("Mod History Sync")
+    @Description("Writing a player's mod list to the history database")
+    public static final class ModSync extends PlayerEvent {
+    }
+
+    @Name("handshaker.ActionExecution")
+    @Label("Action Execution")
+    @Description("Running the commands of a configured action")
+    public static final class ActionExecution extends PlayerEvent {
+        @Label("Action")
+        String action;
+
+        @Label("Command Count")
+        int commands;
+
+        public ActionExecution(String action, int commands) {
+            this.action = action;
+            this.commands = commands;
+        }
+    }
+
+    @Name("handshaker.ConfigOperation")
+    @Label("Config Load/Save")
+    @Description("Reading or writing the HandShaker config files")
+    @Category("HandShaker")
+    @StackTrace(false)
+    public static final class ConfigOperation extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Mod Count")
+        int modCount;
+
+        @Label("Outcome")
+        String outcome;
+
+        public ConfigOperation(String operation) {
+            this.operation = operation;
+        }
+
+        /**
+         * Ends the event and commits it if a recording wants it
+         */
+        public void finish(int modCount, String outcome) {
+            if (shouldCommit()) {
+                this.modCount = modCount;
+                this.outcome = outcome;
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package me.mklv.handshaker.paper.utils;
+
+import java.util.Locale;
+
+/**
+ * Why a player was kicked during the handshake, as counted by {@link HandshakeMetrics}
+ */
+public enum KickReason {
+    RATE_LIMIT,
+    MALFORMED,
+    HASH_MISMATCH,
+    REPLAY,
+    NO_HANDSHAKE,
+    INVALID_SIGNATURE,
+    VELTON,
+    BLACKLISTED,
+    MISSING_REQUIRED,
+    NOT_WHITELISTED;
+
+    private final String label = name().toLowerCase(Locale.ROOT);
+
+    public String label() {
+        return label;
+    }
+
+    /**
+     * The reason for a mod verdict that carries a violation
+     */
+    public static KickReason of(PlayerModStatus status) {
+        if (status.isBlacklistedViolation()) {
+            return BLACKLISTED;
+        }
+        return status.isRequiredViolation() ? MISSING_REQUIRED : NOT_WHITELISTED;
+    }
+}
@@ -0,0 +1,145 @@
+package me.mklv.handshaker.paper.utils;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-player, per-channel token buckets for handshake payloads. A bucket holds up to
+ * {@code messages} tokens and refills that many per window, so normal clients (one or two
+ * payloads per join, a few more on reconfiguration) never notice it. Excess payloads are dropped
+ * before any decoding; a player that keeps flooding without letting the bucket refill is flagged
+ * for a kick once the drops reach {@code kickAfter}, once per flood rather than for every payload that
+ * follows. Buckets left idle for a whole window are full again, so {@link #expireIdle} can drop them
+ * without changing any outcome; that also clears buckets a late payload created after a player quit.
+ */
+public class PayloadRateLimiter {
+    public enum Result { ALLOWED, DROPPED, ABUSE }
+
+    private final Map<UUID, Map<String, Bucket>> buckets = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> droppedByChannel = new ConcurrentHashMap<>();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder kicks = new LongAdder();
+
+    private volatile int messages = 8;
+    private volatile long windowNanos = TimeUnit.SECONDS.toNanos(10);
+    private volatile int kickAfter = 32;
+    private volatile long sweptAt = System.nanoTime();
+
+    public void setLimits(int messages, int windowSeconds, int kickAfter) {
+        this.messages = Math.max(1, messages);
+        this.windowNanos = TimeUnit.SECONDS.toNanos(Math.max(1, windowSeconds));
+        this.kickAfter = Math.max(1, kickAfter);
+    }
+
+    /**
+     * Takes a token for one payload. Safe to call from any thread.
+     */
+    public Result tryAcquire(UUID uuid, String channel) {
+        Bucket bucket = buckets.computeIfAbsent(uuid, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(channel, k -> new Bucket(messages));
+        int strikes = bucket.take(messages, windowNanos);
+        if (strikes == 0) {
+            return Result.ALLOWED;
+        }
+
+        dropped.increment();
+        droppedByChannel.computeIfAbsent(channel, k -> new LongAdder()).increment();
+        if (strikes >= kickAfter && bucket.flag()) {
+            kicks.increment();
+            return Result.ABUSE;
+        }
+        return Result.DROPPED;
+    }
+
+    /**
+     * Drops the buckets of players who sent nothing for a whole window. Cheap to call every tick; it
+     * only scans once per window.
+     */
+    public void expireIdle() {
+        long now = System.nanoTime();
+        long window = windowNanos;
+        if (now - sweptAt < window) {
+            return;
+        }
+        sweptAt = now;
+        buckets.values().removeIf(channels -> {
+            channels.values().removeIf(bucket -> bucket.isIdle(now, window));
+            return channels.isEmpty();
+        });
+    }
+
+    /**
+     * Drops a player's buckets, e.g. when they quit
+     */
+    public void forget(UUID uuid) {
+        buckets.remove(uuid);
+    }
+
+    public void clear() {
+        buckets.clear();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getDroppedCount(String channel) {
+        LongAdder count = droppedByChannel.get(channel);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Players flagged for a kick after flooding a channel
+     */
+    public long getKickCount() {
+        return kicks.sum();
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+        private int strikes;
+        private boolean flagged;
+
+        private Bucket(int capacity) {
+            this.tokens = capacity;
+        }
+
+        /**
+         * @return 0 if a token was taken, otherwise the number of drops since the bucket was last full
+         */
+        private synchronized int take(int capacity, long windowNanos) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * (double) capacity / windowNanos);
+            refilledAt = now;
+            if (tokens >= capacity) {
+                // A full bucket means the client went quiet for a window
+                strikes = 0;
+                flagged = false;
+            }
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            return ++strikes;
+        }
+
+        /**
+         * @return True the first time this flood is flagged for a kick
+         */
+        private synchronized boolean flag() {
+            if (flagged) {
+                return false;
+            }
+            flagged = true;
+            return true;
+        }
+
+        private synchronized boolean isIdle(long now, long windowNanos) {
+            return now - refilledAt >= windowNanos;
+        }
+    }
+}
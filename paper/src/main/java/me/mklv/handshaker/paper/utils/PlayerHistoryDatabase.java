@@ -1,310 +1,362 @@
 package me.mklv.handshaker.paper.utils;
 
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 import java.io.File;
-import java.sql.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 public class PlayerHistoryDatabase {
+    public static final String STORAGE_SQL = "sql";
+    public static final String STORAGE_EVENT_LOG = "eventlog";
+
     private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
     private static final long CACHE_TTL_MS = 30_000;
-    
-    private HikariDataSource dataSource;
-    private final File dbFile;
+    private static final int MAX_PAGE_CURSORS = 256;
+    private static final long INIT_WAIT_SECONDS = 10;
+
+    private final HistoryStorage storage;
     private final Logger logger;
     private boolean enabled = false;
-    
+    private volatile boolean open = false;
+
     private final CachedValue<Map<String, Integer>> modPopularityCache = new CachedValue<>(CACHE_TTL_MS);
+    private final AtomicBoolean popularityRefreshing = new AtomicBoolean(false);
+
+    // Last row of each page already served, so paging forward is one keyset range scan
+    private final Map<Integer, ModPopularityEntry> popularityPageEnds = new ConcurrentHashMap<>();
+    private final Map<String, UUID> modPlayersPageEnds = new ConcurrentHashMap<>();
+
+    // Storage opens in the background; syncs that arrive first are held here (latest per player)
+    private final CompletableFuture<Void> ready;
+    private final Map<UUID, PendingSync> pendingSyncs = new ConcurrentHashMap<>();
+
+    // Active mods read before join, handed to the player's first sync so it can skip its own read
+    private final Map<UUID, AtomicReference<Set<String>>> prefetchedMods = new ConcurrentHashMap<>();
+
+    // Shared virtual-thread I/O executor; command queries and syncs run here so a cold read or a slow
+    // write never blocks the server thread or holds a pool thread
+    private final Executor queryExecutor;
 
-    public PlayerHistoryDatabase(File dataFolder, Logger logger, boolean enabled) {
-        this.dbFile = new File(dataFolder, "hand-shaker-history.db");
+    public PlayerHistoryDatabase(File dataFolder, Logger logger, boolean enabled, String storageType, Executor queryExecutor) {
+        this.queryExecutor = queryExecutor;
         this.logger = logger;
         this.enabled = enabled;
-        if (enabled) {
-            initialize();
-        }
+        // Only the selected backend's classes are loaded, so the event log never pulls in Hikari or SQLite
+        this.storage = STORAGE_EVENT_LOG.equalsIgnoreCase(storageType)
+            ? new EventLogHistoryStorage(new File(dataFolder, "history-log"), logger)
+            : new SqliteHistoryStorage(new File(dataFolder, "hand-shaker-history.db"), logger);
+        this.ready = enabled
+            ? CompletableFuture.runAsync(this::initialize, queryExecutor)
+            : CompletableFuture.completedFuture(null);
+        ready.thenRunAsync(this::flushPendingSyncs, queryExecutor);
+    }
+
+    /**
+     * True once storage has finished opening (or failed to). Commands should answer
+     * "warming up" instead of querying before this.
+     */
+    public boolean isReady() {
+        return ready.isDone();
+    }
+
+    public CompletableFuture<Void> whenReady() {
+        return ready;
     }
 
     private void initialize() {
         try {
-            if (!dbFile.getParentFile().exists()) {
-                dbFile.getParentFile().mkdirs();
-            }
-            
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl("jdbc:sqlite:" + dbFile.getAbsolutePath());
-            config.setMaximumPoolSize(5);
-            config.setConnectionTimeout(30000);
-            config.setIdleTimeout(600000);
-            config.setMaxLifetime(1800000);
-            
-            dataSource = new HikariDataSource(config);
-            createTables();
-            logger.info("Player history database initialized at: " + dbFile.getAbsolutePath());
+            storage.open();
+            open = true;
         } catch (Exception e) {
             logger.severe("Failed to initialize player history database: " + e.getMessage());
             e.printStackTrace();
-            dataSource = null;
-        }
-    }
-
-    private void createTables() {
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement()) {
-            
-            stmt.execute("""
-                CREATE TABLE IF NOT EXISTS player_names (
-                    uuid TEXT PRIMARY KEY,
-                    current_name TEXT NOT NULL,
-                    first_seen TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    last_seen TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-                )
-                """);
-
-            stmt.execute("""
-                CREATE TABLE IF NOT EXISTS mod_history (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    player_uuid TEXT NOT NULL,
-                    mod_name TEXT NOT NULL,
-                    added_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                    removed_date TIMESTAMP,
-                    FOREIGN KEY (player_uuid) REFERENCES player_names(uuid),
-                    UNIQUE(player_uuid, mod_name, added_date)
-                )
-                """);
-
-            stmt.execute("CREATE INDEX IF NOT EXISTS idx_mod_history_uuid ON mod_history(player_uuid)");
-            stmt.execute("CREATE INDEX IF NOT EXISTS idx_mod_history_mod ON mod_history(mod_name)");
-            stmt.execute("CREATE INDEX IF NOT EXISTS idx_mod_history_active ON mod_history(removed_date) WHERE removed_date IS NULL");
-            stmt.execute("CREATE INDEX IF NOT EXISTS idx_player_uuid ON player_names(uuid)");
-        } catch (SQLException e) {
-            logger.severe("Failed to create database tables: " + e.getMessage());
-            e.printStackTrace();
+            storage.close();
         }
     }
 
     public boolean syncPlayerMods(UUID uuid, String playerName, Set<String> currentMods) {
-        if (dataSource == null || !enabled) return false;
-        
-        try (Connection conn = dataSource.getConnection()) {
-            conn.setAutoCommit(false);
-            
-            try {
-                String upsertPlayer = """
-                    INSERT INTO player_names (uuid, current_name, first_seen, last_seen)
-                    VALUES (?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
-                    ON CONFLICT(uuid) DO UPDATE SET 
-                        current_name = excluded.current_name,
-                        last_seen = CURRENT_TIMESTAMP
-                    """;
-                try (PreparedStatement ps = conn.prepareStatement(upsertPlayer)) {
-                    ps.setString(1, uuid.toString());
-                    ps.setString(2, playerName);
-                    ps.executeUpdate();
-                }
-                
-                Set<String> dbActiveMods = getActiveModsForSync(conn, uuid);
-                
-                Set<String> newMods = new HashSet<>(currentMods);
-                newMods.removeAll(dbActiveMods);
-                Set<String> removedMods = new HashSet<>(dbActiveMods);
-                removedMods.removeAll(currentMods);
-                
-                if (!newMods.isEmpty()) {
-                    String insertMod = """
-                        INSERT INTO mod_history (player_uuid, mod_name, added_date, removed_date)
-                        VALUES (?, ?, CURRENT_TIMESTAMP, NULL)
-                        ON CONFLICT(player_uuid, mod_name, added_date) DO NOTHING
-                        """;
-                    try (PreparedStatement ps = conn.prepareStatement(insertMod)) {
-                        for (String mod : newMods) {
-                            ps.setString(1, uuid.toString());
-                            ps.setString(2, mod);
-                            ps.addBatch();
-                        }
-                        ps.executeBatch();
-                    }
-                }
-                
-                if (!removedMods.isEmpty()) {
-                    String removeMod = "UPDATE mod_history SET removed_date = CURRENT_TIMESTAMP WHERE player_uuid = ? AND mod_name = ? AND removed_date IS NULL";
-                    try (PreparedStatement ps = conn.prepareStatement(removeMod)) {
-                        for (String mod : removedMods) {
-                            ps.setString(1, uuid.toString());
-                            ps.setString(2, mod);
-                            ps.addBatch();
-                        }
-                        ps.executeBatch();
-                    }
-                }
-                
-                conn.commit();
-                modPopularityCache.invalidate();
-                return true;
-            } catch (SQLException e) {
-                conn.rollback();
-                logger.warning("Failed to sync player mods: " + e.getMessage());
-                return false;
+        HandshakeEvents.ModSync event = new HandshakeEvents.ModSync();
+        event.begin();
+        if (!ready.isDone()) {
+            pendingSyncs.put(uuid, new PendingSync(playerName, new HashSet<>(currentMods)));
+            // Initialization may have drained the buffer between the check and the put
+            if (ready.isDone()) {
+                flushPendingSyncs();
             }
-        } catch (SQLException e) {
-            logger.warning("Database connection failed: " + e.getMessage());
-            return false;
+            event.finish(uuid, currentMods.size(), "buffered");
+            return true;
         }
+        pendingSyncs.remove(uuid);
+        boolean synced = writePlayerMods(uuid, playerName, currentMods);
+        event.finish(uuid, currentMods.size(), synced ? "written" : "failed");
+        return synced;
     }
 
-    private Set<String> getActiveModsForSync(Connection conn, UUID uuid) throws SQLException {
-        if (conn == null) return new HashSet<>();
-        Set<String> mods = new HashSet<>();
-        String sql = "SELECT mod_name FROM mod_history WHERE player_uuid = ? AND removed_date IS NULL";
-        
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, uuid.toString());
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                mods.add(rs.getString("mod_name"));
-            }
+    /**
+     * Reads a player's active mods ahead of their first sync, e.g. during pre-login. Blocking; call it
+     * off the server thread. The result is kept for that sync, so the join itself doesn't read them again.
+     * @return The active mods, or an empty set if storage isn't ready or the read failed
+     */
+    public Set<String> prefetchActiveMods(UUID uuid) {
+        if (!open || !enabled || !ready.isDone()) return Set.of();
+
+        // Registered before the read, so a sync that lands while it runs discards it (see writePlayerMods)
+        AtomicReference<Set<String>> slot = new AtomicReference<>();
+        prefetchedMods.put(uuid, slot);
+        Set<String> mods = storage.getActiveMods(uuid);
+        if (mods == null) {
+            prefetchedMods.remove(uuid, slot);
+            return Set.of();
         }
+        slot.set(mods);
         return mods;
     }
 
-    public List<ModHistoryEntry> getPlayerHistory(UUID uuid) {
-        if (dataSource == null) return new ArrayList<>();
-        
-        List<ModHistoryEntry> history = new ArrayList<>();
-        String sql = """
-            SELECT mod_name, added_date, removed_date 
-            FROM mod_history 
-            WHERE player_uuid = ? 
-            ORDER BY added_date DESC
-            """;
-
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, uuid.toString());
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                history.add(new ModHistoryEntry(
-                    rs.getString("mod_name"),
-                    rs.getTimestamp("added_date").toLocalDateTime(),
-                    rs.getTimestamp("removed_date") != null ? rs.getTimestamp("removed_date").toLocalDateTime() : null
-                ));
+    /**
+     * Same as {@link #syncPlayerMods}, on the I/O executor. For callers on the server thread.
+     */
+    public CompletableFuture<Boolean> syncPlayerModsAsync(UUID uuid, String playerName, Set<String> currentMods) {
+        return CompletableFuture.supplyAsync(() -> syncPlayerMods(uuid, playerName, currentMods), queryExecutor);
+    }
+
+    private void flushPendingSyncs() {
+        for (UUID uuid : new ArrayList<>(pendingSyncs.keySet())) {
+            PendingSync pending = pendingSyncs.remove(uuid);
+            if (pending != null) {
+                writePlayerMods(uuid, pending.playerName(), pending.mods());
             }
-        } catch (SQLException e) {
-            logger.warning("Failed to get player history: " + e.getMessage());
         }
+    }
+
+    private boolean writePlayerMods(UUID uuid, String playerName, Set<String> currentMods) {
+        if (!open || !enabled) return false;
+
+        AtomicReference<Set<String>> prefetched = prefetchedMods.remove(uuid);
+        boolean synced = storage.syncPlayerMods(uuid, playerName, currentMods, prefetched != null ? prefetched.get() : null);
+        // A prefetch that started during this write may have read the rows from before it
+        prefetchedMods.remove(uuid);
+        if (synced) {
+            modPopularityCache.invalidate();
+        }
+        return synced;
+    }
 
-        return history;
+    public List<ModHistoryEntry> getPlayerHistory(UUID uuid) {
+        if (!open) return new ArrayList<>();
+        return storage.getPlayerHistory(uuid);
     }
 
     public Map<String, Integer> getModPopularity() {
-        if (dataSource == null) return new LinkedHashMap<>();
+        if (!open) return new LinkedHashMap<>();
         
         Map<String, Integer> cached = modPopularityCache.get();
         if (cached != null) {
             return cached;
         }
 
-        Map<String, Integer> popularity = new LinkedHashMap<>();
-        String sql = """
-            SELECT mod_name, COUNT(DISTINCT player_uuid) as player_count 
-            FROM mod_history 
-            WHERE removed_date IS NULL
-            GROUP BY mod_name 
-            ORDER BY player_count DESC, mod_name ASC
-            """;
-
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                popularity.put(rs.getString("mod_name"), rs.getInt("player_count"));
-            }
-            modPopularityCache.set(popularity);
-        } catch (SQLException e) {
-            logger.warning("Failed to get mod popularity: " + e.getMessage());
-        }
-
+        Map<String, Integer> popularity = storage.getModPopularity();
+        modPopularityCache.set(popularity);
         return popularity;
     }
 
     public List<PlayerModInfo> getPlayersWithMod(String modName) {
-        if (dataSource == null) return new ArrayList<>();
-        
-        List<PlayerModInfo> players = new ArrayList<>();
-        String sql = """
-            SELECT 
-                mh.player_uuid,
-                pn.current_name,
-                MIN(mh.added_date) as first_seen,
-                MAX(CASE WHEN mh.removed_date IS NULL THEN 1 ELSE 0 END) as is_active
-            FROM mod_history mh
-            JOIN player_names pn ON mh.player_uuid = pn.uuid
-            WHERE mh.mod_name = ?
-            GROUP BY mh.player_uuid, pn.current_name
-            ORDER BY is_active DESC, first_seen DESC
-            """;
-
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, modName);
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                players.add(new PlayerModInfo(
-                    UUID.fromString(rs.getString("player_uuid")),
-                    rs.getString("current_name"),
-                    rs.getTimestamp("first_seen").toLocalDateTime(),
-                    rs.getInt("is_active") == 1
-                ));
+        if (!open) return new ArrayList<>();
+        return storage.getPlayersWithMod(modName);
+    }
+
+    /**
+     * One page of the most recent history entries for a player, newest first.
+     * Pass the last entry of the previous page as {@code after}, or null for the first page.
+     */
+    public List<ModHistoryEntry> getPlayerHistoryPage(UUID uuid, ModHistoryEntry after, int limit) {
+        if (!open) return new ArrayList<>();
+        return storage.getPlayerHistoryPage(uuid, after, limit);
+    }
+
+    /**
+     * One page of mods ordered by active player count. Pass the last entry of the
+     * previous page as {@code after}, or null for the first page.
+     */
+    public List<ModPopularityEntry> getModPopularityPage(ModPopularityEntry after, int limit) {
+        if (!open) return new ArrayList<>();
+        return storage.getModPopularityPage(after, limit);
+    }
+
+    /**
+     * Page {@code pageNumber} (1-based) of the mod popularity list. Known page boundaries are
+     * remembered, so stepping through pages costs one bounded range scan per page.
+     */
+    public Page<ModPopularityEntry> getModPopularityPage(int pageNumber, int pageSize) {
+        if (pageNumber <= 1) {
+            popularityPageEnds.clear();
+        }
+        int page = 1;
+        ModPopularityEntry after = null;
+        for (int known = pageNumber - 1; known >= 1; known--) {
+            ModPopularityEntry end = popularityPageEnds.get(known);
+            if (end != null) {
+                page = known + 1;
+                after = end;
+                break;
+            }
+        }
+
+        while (true) {
+            List<ModPopularityEntry> entries = getModPopularityPage(after, pageSize + 1);
+            boolean hasMore = entries.size() > pageSize;
+            if (hasMore) {
+                entries = entries.subList(0, pageSize);
+            }
+            if (!entries.isEmpty()) {
+                rememberPageEnd(popularityPageEnds, page, entries.get(entries.size() - 1));
             }
-        } catch (SQLException e) {
-            logger.warning("Failed to get players with mod: " + e.getMessage());
+            if (page == pageNumber || !hasMore) {
+                return new Page<>(page == pageNumber ? entries : List.of(), pageNumber, hasMore && page == pageNumber);
+            }
+            after = entries.get(entries.size() - 1);
+            page++;
         }
+    }
 
-        return players;
+    public int getActiveModCount() {
+        if (!open) return 0;
+        return storage.getActiveModCount();
     }
 
-    public List<String> getPlayerNames(UUID uuid) {
-        List<String> names = new ArrayList<>();
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT current_name FROM player_names WHERE uuid = ?")) {
-            stmt.setString(1, uuid.toString());
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                names.add(rs.getString("current_name"));
+    /**
+     * One page of players that have used a mod, ordered by UUID.
+     * Pass the last player of the previous page as {@code after}, or null for the first page.
+     */
+    public List<PlayerModInfo> getPlayersWithModPage(String modName, UUID after, int limit) {
+        if (!open) return new ArrayList<>();
+        return storage.getPlayersWithModPage(modName, after, limit);
+    }
+
+    /**
+     * Page {@code pageNumber} (1-based) of the players that have used a mod.
+     */
+    public Page<PlayerModInfo> getPlayersWithModPage(String modName, int pageNumber, int pageSize) {
+        if (pageNumber <= 1) {
+            // Only this mod's cursors; the rest of the key after the prefix is the page number
+            String prefix = modName + '#';
+            modPlayersPageEnds.keySet().removeIf(key -> key.startsWith(prefix) && key.indexOf('#', prefix.length()) < 0);
+        }
+        int page = 1;
+        UUID after = null;
+        for (int known = pageNumber - 1; known >= 1; known--) {
+            UUID end = modPlayersPageEnds.get(modName + '#' + known);
+            if (end != null) {
+                page = known + 1;
+                after = end;
+                break;
+            }
+        }
+
+        while (true) {
+            List<PlayerModInfo> players = getPlayersWithModPage(modName, after, pageSize + 1);
+            boolean hasMore = players.size() > pageSize;
+            if (hasMore) {
+                players = players.subList(0, pageSize);
             }
-        } catch (SQLException e) {
-            logger.warning("Failed to get player names: " + e.getMessage());
+            if (!players.isEmpty()) {
+                rememberPageEnd(modPlayersPageEnds, modName + '#' + page, players.get(players.size() - 1).uuid());
+            }
+            if (page == pageNumber || !hasMore) {
+                return new Page<>(page == pageNumber ? players : List.of(), pageNumber, hasMore && page == pageNumber);
+            }
+            after = players.get(players.size() - 1).uuid();
+            page++;
+        }
+    }
+
+    private static <K, V> void rememberPageEnd(Map<K, V> pageEnds, K key, V end) {
+        if (pageEnds.size() >= MAX_PAGE_CURSORS) {
+            pageEnds.clear();
         }
+        pageEnds.put(key, end);
+    }
 
-        return names;
+    public List<String> getPlayerNames(UUID uuid) {
+        if (!open) return new ArrayList<>();
+        return storage.getPlayerNames(uuid);
     }
 
     public int getUniqueActivePlayers() {
-        if (dataSource == null) return 0;
-        
-        String sql = "SELECT COUNT(DISTINCT player_uuid) as player_count FROM mod_history WHERE removed_date IS NULL";
-        
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            if (rs.next()) {
-                return rs.getInt("player_count");
-            }
-        } catch (SQLException e) {
-            logger.warning("Failed to get unique active players: " + e.getMessage());
+        if (!open) return 0;
+        return storage.getUniqueActivePlayers();
+    }
+
+    public CompletableFuture<List<ModHistoryEntry>> getPlayerHistoryAsync(UUID uuid) {
+        return CompletableFuture.supplyAsync(() -> getPlayerHistory(uuid), queryExecutor);
+    }
+
+    public CompletableFuture<Map<String, Integer>> getModPopularityAsync() {
+        Map<String, Integer> cached = modPopularityCache.get();
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
         }
-        
-        return 0;
+        return CompletableFuture.supplyAsync(this::getModPopularity, queryExecutor);
+    }
+
+    public CompletableFuture<List<PlayerModInfo>> getPlayersWithModAsync(String modName) {
+        return CompletableFuture.supplyAsync(() -> getPlayersWithMod(modName), queryExecutor);
+    }
+
+    public CompletableFuture<Integer> getUniqueActivePlayersAsync() {
+        return CompletableFuture.supplyAsync(this::getUniqueActivePlayers, queryExecutor);
+    }
+
+    public CompletableFuture<List<ModHistoryEntry>> getPlayerHistoryPageAsync(UUID uuid, ModHistoryEntry after, int limit) {
+        return CompletableFuture.supplyAsync(() -> getPlayerHistoryPage(uuid, after, limit), queryExecutor);
+    }
+
+    public CompletableFuture<Page<ModPopularityEntry>> getModPopularityPageAsync(int pageNumber, int pageSize) {
+        return CompletableFuture.supplyAsync(() -> getModPopularityPage(pageNumber, pageSize), queryExecutor);
+    }
+
+    public CompletableFuture<Integer> getActiveModCountAsync() {
+        return CompletableFuture.supplyAsync(this::getActiveModCount, queryExecutor);
+    }
+
+    public CompletableFuture<Page<PlayerModInfo>> getPlayersWithModPageAsync(String modName, int pageNumber, int pageSize) {
+        return CompletableFuture.supplyAsync(() -> getPlayersWithModPage(modName, pageNumber, pageSize), queryExecutor);
+    }
+
+    /**
+     * Returns the cached mod popularity without touching the database, refreshing it
+     * in the background when stale. Meant for tab completion on the main thread.
+     */
+    public Map<String, Integer> getCachedModPopularity() {
+        Map<String, Integer> cached = modPopularityCache.get();
+        if (cached != null) {
+            return cached;
+        }
+        if (open && popularityRefreshing.compareAndSet(false, true)) {
+            getModPopularityAsync().whenComplete((result, error) -> popularityRefreshing.set(false));
+        }
+        return Collections.emptyMap();
     }
 
+    /**
+     * Call once the I/O executor has drained, so no sync is still writing when storage closes
+     */
     public void close() {
-        if (dataSource != null && !dataSource.isClosed()) {
-            dataSource.close();
-            logger.info("Player history database closed");
+        try {
+            ready.get(INIT_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            logger.warning("Player history database did not finish initializing before shutdown: " + e.getMessage());
+        }
+        flushPendingSyncs();
+        if (open) {
+            open = false;
+            storage.close();
         }
     }
 
@@ -327,4 +379,10 @@ public class PlayerHistoryDatabase {
             return firstSeen != null ? firstSeen.format(DATE_FORMAT) : "Unknown";
         }
     }
+
+    public record ModPopularityEntry(String modName, int playerCount) {}
+
+    public record Page<T>(List<T> entries, int number, boolean hasMore) {}
+
+    private record PendingSync(String playerName, Set<String> mods) {}
 }
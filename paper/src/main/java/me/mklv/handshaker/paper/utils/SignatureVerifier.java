@@ -25,7 +25,7 @@ public class SignatureVerifier {
         try {
             // Handle case where signature is a certificate chain (1445 bytes)
             if (signatureBytes.length > 512) {
-                logger.info("Signature data is " + signatureBytes.length + " bytes, parsing as certificate chain...");
+                logger.fine(() -> "Signature data is " + signatureBytes.length + " bytes, parsing as certificate chain...");
                 byte[] certValidation = extractSignatureFromCertificate(signatureBytes);
                 if (certValidation != null && certValidation.length > 0) {
                     return true; // Certificate chain validated successfully
@@ -72,7 +72,7 @@ public class SignatureVerifier {
                 return null;
             }
 
-            logger.info("Parsed certificate chain with " + certs.size() + " certificate(s)");
+            logger.fine(() -> "Parsed certificate chain with " + certs.size() + " certificate(s)");
             
             // Check each certificate in the chain
             for (Certificate cert : certs) {
@@ -80,7 +80,7 @@ public class SignatureVerifier {
                 
                 // Check if this certificate's public key matches our trusted key
                 if (certPublicKey.equals(publicKey)) {
-                    logger.info("✓ Certificate public key matches our trusted key - signature VALID");
+                    logger.fine("✓ Certificate public key matches our trusted key - signature VALID");
                     return new byte[]{1}; // Marker indicating validation passed
                 }
             }
@@ -0,0 +1,565 @@
+package me.mklv.handshaker.paper.utils;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import me.mklv.handshaker.paper.utils.PlayerHistoryDatabase.ModHistoryEntry;
+import me.mklv.handshaker.paper.utils.PlayerHistoryDatabase.ModPopularityEntry;
+import me.mklv.handshaker.paper.utils.PlayerHistoryDatabase.PlayerModInfo;
+import org.sqlite.SQLiteConfig;
+import java.io.File;
+import java.sql.*;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * SQLite backend: one WAL writer connection with cached statements, plus a read-only pool for queries.
+ */
+public class SqliteHistoryStorage implements HistoryStorage {
+    private static final int READ_POOL_SIZE = 3;
+    private static final int BUSY_TIMEOUT_MS = 5_000;
+    private static final int CACHE_SIZE_KIB = 8_192;
+    private static final long MMAP_SIZE_BYTES = 64L * 1024 * 1024;
+    private static final DateTimeFormatter SQLITE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final String UPSERT_PLAYER_SQL = """
+        INSERT INTO player_names (uuid, current_name, first_seen, last_seen)
+        VALUES (?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
+        ON CONFLICT(uuid) DO UPDATE SET 
+            current_name = excluded.current_name,
+            last_seen = CURRENT_TIMESTAMP
+        """;
+    private static final String SELECT_ACTIVE_MODS_SQL = "SELECT mod_name FROM mod_history WHERE player_uuid = ? AND removed_date IS NULL";
+    private static final String INSERT_MOD_SQL = """
+        INSERT INTO mod_history (player_uuid, mod_name, added_date, removed_date)
+        VALUES (?, ?, CURRENT_TIMESTAMP, NULL)
+        ON CONFLICT(player_uuid, mod_name, added_date) DO NOTHING
+        """;
+    private static final String REMOVE_MOD_SQL = "UPDATE mod_history SET removed_date = CURRENT_TIMESTAMP WHERE player_uuid = ? AND mod_name = ? AND removed_date IS NULL";
+    private static final String ADJUST_MOD_COUNT_SQL = """
+        INSERT INTO mod_active_counts (mod_name, player_count) VALUES (?, ?)
+        ON CONFLICT(mod_name) DO UPDATE SET player_count = player_count + excluded.player_count
+        """;
+
+    // SQLite allows a single writer at a time, so all writes share one connection
+    // and its prepared statements; command reads go through a read-only pool.
+    private final Object writeLock = new Object();
+    private Connection writeConnection;
+    private PreparedStatement upsertPlayerStmt;
+    private PreparedStatement selectActiveModsStmt;
+    private PreparedStatement insertModStmt;
+    private PreparedStatement removeModStmt;
+    private PreparedStatement adjustModCountStmt;
+
+    private HikariDataSource dataSource;
+    private final File dbFile;
+    private final Logger logger;
+
+    public SqliteHistoryStorage(File dbFile, Logger logger) {
+        this.dbFile = dbFile;
+        this.logger = logger;
+    }
+
+    @Override
+    public void open() throws SQLException {
+        if (!dbFile.getParentFile().exists()) {
+            dbFile.getParentFile().mkdirs();
+        }
+
+        String jdbcUrl = "jdbc:sqlite:" + dbFile.getAbsolutePath();
+        openWriter(jdbcUrl);
+        createTables();
+        prepareWriteStatements();
+
+        // WAL lets these readers run alongside the writer without SQLITE_BUSY
+        SQLiteConfig readConfig = new SQLiteConfig();
+        readConfig.setReadOnly(true);
+        readConfig.setBusyTimeout(BUSY_TIMEOUT_MS);
+        readConfig.setCacheSize(-CACHE_SIZE_KIB);
+
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(jdbcUrl);
+        config.setDataSourceProperties(readConfig.toProperties());
+        // Hikari applies its own read-only flag to every connection, and SQLite refuses to flip it once open
+        config.setReadOnly(true);
+        config.setConnectionInitSql("PRAGMA mmap_size = " + MMAP_SIZE_BYTES);
+        config.setMaximumPoolSize(READ_POOL_SIZE);
+        config.setConnectionTimeout(30000);
+        config.setIdleTimeout(600000);
+        config.setMaxLifetime(1800000);
+        config.setPoolName("HandShaker-Read");
+        
+        dataSource = new HikariDataSource(config);
+        logger.info("Player history database initialized at: " + dbFile.getAbsolutePath());
+    }
+
+    private void openWriter(String jdbcUrl) throws SQLException {
+        SQLiteConfig writeConfig = new SQLiteConfig();
+        writeConfig.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        writeConfig.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        writeConfig.setTempStore(SQLiteConfig.TempStore.MEMORY);
+        writeConfig.setBusyTimeout(BUSY_TIMEOUT_MS);
+        writeConfig.setCacheSize(-CACHE_SIZE_KIB);
+
+        writeConnection = writeConfig.createConnection(jdbcUrl);
+        try (Statement stmt = writeConnection.createStatement()) {
+            stmt.execute("PRAGMA mmap_size = " + MMAP_SIZE_BYTES);
+        }
+    }
+
+    private void prepareWriteStatements() throws SQLException {
+        upsertPlayerStmt = writeConnection.prepareStatement(UPSERT_PLAYER_SQL);
+        selectActiveModsStmt = writeConnection.prepareStatement(SELECT_ACTIVE_MODS_SQL);
+        insertModStmt = writeConnection.prepareStatement(INSERT_MOD_SQL);
+        removeModStmt = writeConnection.prepareStatement(REMOVE_MOD_SQL);
+        adjustModCountStmt = writeConnection.prepareStatement(ADJUST_MOD_COUNT_SQL);
+    }
+
+    private void createTables() throws SQLException {
+        try (Statement stmt = writeConnection.createStatement()) {
+            
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS player_names (
+                    uuid TEXT PRIMARY KEY,
+                    current_name TEXT NOT NULL,
+                    first_seen TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    last_seen TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                )
+                """);
+
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS mod_history (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    player_uuid TEXT NOT NULL,
+                    mod_name TEXT NOT NULL,
+                    added_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    removed_date TIMESTAMP,
+                    FOREIGN KEY (player_uuid) REFERENCES player_names(uuid),
+                    UNIQUE(player_uuid, mod_name, added_date)
+                )
+                """);
+
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_mod_history_uuid ON mod_history(player_uuid)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_mod_history_mod ON mod_history(mod_name)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_mod_history_active ON mod_history(removed_date) WHERE removed_date IS NULL");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_player_uuid ON player_names(uuid)");
+
+            // Keyset pagination support: each page is a bounded range scan on one of these
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS mod_active_counts (
+                    mod_name TEXT PRIMARY KEY,
+                    player_count INTEGER NOT NULL
+                )
+                """);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_mod_active_counts_rank ON mod_active_counts(player_count DESC, mod_name ASC)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_mod_history_mod_player ON mod_history(mod_name, player_uuid)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_mod_history_player_added ON mod_history(player_uuid, added_date DESC, mod_name DESC)");
+
+            // Counts are maintained incrementally by syncPlayerMods; rebuild once per start to heal any drift
+            stmt.execute("DELETE FROM mod_active_counts");
+            stmt.execute("""
+                INSERT INTO mod_active_counts (mod_name, player_count)
+                SELECT mod_name, COUNT(DISTINCT player_uuid) FROM mod_history
+                WHERE removed_date IS NULL
+                GROUP BY mod_name
+                """);
+        }
+    }
+
+    @Override
+    public boolean syncPlayerMods(UUID uuid, String playerName, Set<String> currentMods, Set<String> knownActive) {
+        if (dataSource == null) return false;
+
+        synchronized (writeLock) {
+            if (writeConnection == null) return false;
+
+            try {
+                writeConnection.setAutoCommit(false);
+                try {
+                    upsertPlayerStmt.setString(1, uuid.toString());
+                    upsertPlayerStmt.setString(2, playerName);
+                    upsertPlayerStmt.executeUpdate();
+
+                    Set<String> dbActiveMods = knownActive != null ? knownActive : getActiveModsForSync(uuid);
+
+                    Set<String> newMods = new HashSet<>(currentMods);
+                    newMods.removeAll(dbActiveMods);
+                    Set<String> removedMods = new HashSet<>(dbActiveMods);
+                    removedMods.removeAll(currentMods);
+
+                    if (!newMods.isEmpty()) {
+                        for (String mod : newMods) {
+                            insertModStmt.setString(1, uuid.toString());
+                            insertModStmt.setString(2, mod);
+                            insertModStmt.addBatch();
+                            addModCountDelta(mod, 1);
+                        }
+                        insertModStmt.executeBatch();
+                    }
+
+                    if (!removedMods.isEmpty()) {
+                        for (String mod : removedMods) {
+                            removeModStmt.setString(1, uuid.toString());
+                            removeModStmt.setString(2, mod);
+                            removeModStmt.addBatch();
+                            addModCountDelta(mod, -1);
+                        }
+                        removeModStmt.executeBatch();
+                    }
+
+                    if (!newMods.isEmpty() || !removedMods.isEmpty()) {
+                        adjustModCountStmt.executeBatch();
+                    }
+
+                    writeConnection.commit();
+                    return true;
+                } catch (SQLException e) {
+                    writeConnection.rollback();
+                    insertModStmt.clearBatch();
+                    removeModStmt.clearBatch();
+                    adjustModCountStmt.clearBatch();
+                    logger.warning("Failed to sync player mods: " + e.getMessage());
+                    return false;
+                } finally {
+                    writeConnection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                logger.warning("Database connection failed: " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    private void addModCountDelta(String mod, int delta) throws SQLException {
+        adjustModCountStmt.setString(1, mod);
+        adjustModCountStmt.setInt(2, delta);
+        adjustModCountStmt.addBatch();
+    }
+
+    private Set<String> getActiveModsForSync(UUID uuid) throws SQLException {
+        Set<String> mods = new HashSet<>();
+        selectActiveModsStmt.setString(1, uuid.toString());
+        try (ResultSet rs = selectActiveModsStmt.executeQuery()) {
+            while (rs.next()) {
+                mods.add(rs.getString("mod_name"));
+            }
+        }
+        return mods;
+    }
+
+    @Override
+    public Set<String> getActiveMods(UUID uuid) {
+        if (dataSource == null) return null;
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_ACTIVE_MODS_SQL)) {
+            stmt.setString(1, uuid.toString());
+            Set<String> mods = new HashSet<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    mods.add(rs.getString("mod_name"));
+                }
+            }
+            return mods;
+        } catch (SQLException e) {
+            logger.warning("Failed to get active mods: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public List<ModHistoryEntry> getPlayerHistory(UUID uuid) {
+        if (dataSource == null) return new ArrayList<>();
+        
+        List<ModHistoryEntry> history = new ArrayList<>();
+        String sql = """
+            SELECT mod_name, added_date, removed_date 
+            FROM mod_history 
+            WHERE player_uuid = ? 
+            ORDER BY added_date DESC
+            """;
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, uuid.toString());
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                history.add(new ModHistoryEntry(
+                    rs.getString("mod_name"),
+                    rs.getTimestamp("added_date").toLocalDateTime(),
+                    rs.getTimestamp("removed_date") != null ? rs.getTimestamp("removed_date").toLocalDateTime() : null
+                ));
+            }
+        } catch (SQLException e) {
+            logger.warning("Failed to get player history: " + e.getMessage());
+        }
+
+        return history;
+    }
+
+    @Override
+    public Map<String, Integer> getModPopularity() {
+        if (dataSource == null) return new LinkedHashMap<>();
+        
+        Map<String, Integer> popularity = new LinkedHashMap<>();
+        String sql = """
+            SELECT mod_name, player_count 
+            FROM mod_active_counts 
+            WHERE player_count > 0
+            ORDER BY player_count DESC, mod_name ASC
+            """;
+
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                popularity.put(rs.getString("mod_name"), rs.getInt("player_count"));
+            }
+        } catch (SQLException e) {
+            logger.warning("Failed to get mod popularity: " + e.getMessage());
+        }
+
+        return popularity;
+    }
+
+    @Override
+    public List<PlayerModInfo> getPlayersWithMod(String modName) {
+        if (dataSource == null) return new ArrayList<>();
+        
+        List<PlayerModInfo> players = new ArrayList<>();
+        String sql = """
+            SELECT 
+                mh.player_uuid,
+                pn.current_name,
+                MIN(mh.added_date) as first_seen,
+                MAX(CASE WHEN mh.removed_date IS NULL THEN 1 ELSE 0 END) as is_active
+            FROM mod_history mh
+            JOIN player_names pn ON mh.player_uuid = pn.uuid
+            WHERE mh.mod_name = ?
+            GROUP BY mh.player_uuid, pn.current_name
+            ORDER BY is_active DESC, first_seen DESC
+            """;
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, modName);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                players.add(new PlayerModInfo(
+                    UUID.fromString(rs.getString("player_uuid")),
+                    rs.getString("current_name"),
+                    rs.getTimestamp("first_seen").toLocalDateTime(),
+                    rs.getInt("is_active") == 1
+                ));
+            }
+        } catch (SQLException e) {
+            logger.warning("Failed to get players with mod: " + e.getMessage());
+        }
+
+        return players;
+    }
+
+    @Override
+    public List<ModHistoryEntry> getPlayerHistoryPage(UUID uuid, ModHistoryEntry after, int limit) {
+        if (dataSource == null) return new ArrayList<>();
+
+        List<ModHistoryEntry> history = new ArrayList<>();
+        String sql = after == null ? """
+            SELECT mod_name, added_date, removed_date 
+            FROM mod_history 
+            WHERE player_uuid = ? 
+            ORDER BY added_date DESC, mod_name DESC
+            LIMIT ?
+            """ : """
+            SELECT mod_name, added_date, removed_date 
+            FROM mod_history 
+            WHERE player_uuid = ? AND (added_date < ? OR (added_date = ? AND mod_name < ?))
+            ORDER BY added_date DESC, mod_name DESC
+            LIMIT ?
+            """;
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            stmt.setString(index++, uuid.toString());
+            if (after != null) {
+                String addedDate = after.addedDate().format(SQLITE_TIMESTAMP);
+                stmt.setString(index++, addedDate);
+                stmt.setString(index++, addedDate);
+                stmt.setString(index++, after.modName());
+            }
+            stmt.setInt(index, limit);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                history.add(new ModHistoryEntry(
+                    rs.getString("mod_name"),
+                    rs.getTimestamp("added_date").toLocalDateTime(),
+                    rs.getTimestamp("removed_date") != null ? rs.getTimestamp("removed_date").toLocalDateTime() : null
+                ));
+            }
+        } catch (SQLException e) {
+            logger.warning("Failed to get player history page: " + e.getMessage());
+        }
+
+        return history;
+    }
+
+    @Override
+    public List<ModPopularityEntry> getModPopularityPage(ModPopularityEntry after, int limit) {
+        if (dataSource == null) return new ArrayList<>();
+
+        List<ModPopularityEntry> page = new ArrayList<>();
+        String sql = """
+            SELECT mod_name, player_count 
+            FROM mod_active_counts 
+            WHERE player_count > 0 AND (player_count < ? OR (player_count = ? AND mod_name > ?))
+            ORDER BY player_count DESC, mod_name ASC
+            LIMIT ?
+            """;
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int afterCount = after != null ? after.playerCount() : Integer.MAX_VALUE;
+            stmt.setInt(1, afterCount);
+            stmt.setInt(2, afterCount);
+            stmt.setString(3, after != null ? after.modName() : "");
+            stmt.setInt(4, limit);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                page.add(new ModPopularityEntry(rs.getString("mod_name"), rs.getInt("player_count")));
+            }
+        } catch (SQLException e) {
+            logger.warning("Failed to get mod popularity page: " + e.getMessage());
+        }
+
+        return page;
+    }
+
+    @Override
+    public int getActiveModCount() {
+        if (dataSource == null) return 0;
+
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) AS mod_count FROM mod_active_counts WHERE player_count > 0")) {
+            if (rs.next()) {
+                return rs.getInt("mod_count");
+            }
+        } catch (SQLException e) {
+            logger.warning("Failed to count active mods: " + e.getMessage());
+        }
+
+        return 0;
+    }
+
+    /**
+     * Ordered by UUID so the grouping walks {@code idx_mod_history_mod_player} in order
+     * and stops after {@code limit} players.
+     */
+    @Override
+    public List<PlayerModInfo> getPlayersWithModPage(String modName, UUID after, int limit) {
+        if (dataSource == null) return new ArrayList<>();
+
+        List<PlayerModInfo> players = new ArrayList<>();
+        String sql = """
+            SELECT 
+                mh.player_uuid,
+                pn.current_name,
+                MIN(mh.added_date) as first_seen,
+                MAX(CASE WHEN mh.removed_date IS NULL THEN 1 ELSE 0 END) as is_active
+            FROM mod_history mh
+            JOIN player_names pn ON mh.player_uuid = pn.uuid
+            WHERE mh.mod_name = ? AND mh.player_uuid > ?
+            GROUP BY mh.player_uuid, pn.current_name
+            ORDER BY mh.player_uuid
+            LIMIT ?
+            """;
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, modName);
+            stmt.setString(2, after != null ? after.toString() : "");
+            stmt.setInt(3, limit);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                players.add(new PlayerModInfo(
+                    UUID.fromString(rs.getString("player_uuid")),
+                    rs.getString("current_name"),
+                    rs.getTimestamp("first_seen").toLocalDateTime(),
+                    rs.getInt("is_active") == 1
+                ));
+            }
+        } catch (SQLException e) {
+            logger.warning("Failed to get players with mod page: " + e.getMessage());
+        }
+
+        return players;
+    }
+
+    @Override
+    public List<String> getPlayerNames(UUID uuid) {
+        if (dataSource == null) return new ArrayList<>();
+
+        List<String> names = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT current_name FROM player_names WHERE uuid = ?")) {
+            stmt.setString(1, uuid.toString());
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                names.add(rs.getString("current_name"));
+            }
+        } catch (SQLException e) {
+            logger.warning("Failed to get player names: " + e.getMessage());
+        }
+
+        return names;
+    }
+
+    @Override
+    public int getUniqueActivePlayers() {
+        if (dataSource == null) return 0;
+        
+        String sql = "SELECT COUNT(DISTINCT player_uuid) as player_count FROM mod_history WHERE removed_date IS NULL";
+        
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            if (rs.next()) {
+                return rs.getInt("player_count");
+            }
+        } catch (SQLException e) {
+            logger.warning("Failed to get unique active players: " + e.getMessage());
+        }
+        
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        closeWriter();
+        if (dataSource != null && !dataSource.isClosed()) {
+            dataSource.close();
+            logger.info("Player history database closed");
+        }
+    }
+
+    private void closeWriter() {
+        synchronized (writeLock) {
+            if (writeConnection == null) return;
+            try {
+                for (PreparedStatement stmt : new PreparedStatement[] {upsertPlayerStmt, selectActiveModsStmt, insertModStmt, removeModStmt, adjustModCountStmt}) {
+                    if (stmt != null) stmt.close();
+                }
+                // Fold the WAL back into the main file so the .db is self-contained at rest
+                try (Statement stmt = writeConnection.createStatement()) {
+                    stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+                }
+                writeConnection.close();
+            } catch (SQLException e) {
+                logger.warning("Failed to close database writer: " + e.getMessage());
+            } finally {
+                writeConnection = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package me.mklv.handshaker.paper.utils;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * The most recent kicks and actions, kept in memory so {@code /handshaker recent} can answer without
+ * the disk or the database. A fixed ring of preallocated slots is overwritten oldest first, so memory
+ * stays the same however many verdicts are recorded. {@link #record} claims a position with a single
+ * atomic increment and never blocks; readers check each slot's version and skip one that is being
+ * rewritten under them. Mod IDs go through a bounded intern table so repeat offenders share strings.
+ */
+public class ViolationLog {
+    /**
+     * One recorded verdict. {@code reason} is null for an action that did not kick.
+     */
+    public record Violation(long time, UUID player, String name, KickReason reason, List<String> mods, String action) {
+        public String reasonLabel() {
+            return reason != null ? reason.label() : "action";
+        }
+    }
+
+    private static final int CAPACITY = 512;
+    private static final int MAX_MODS = 16;
+    private static final int MAX_INTERNED = 4096;
+
+    private final Slot[] slots = new Slot[CAPACITY];
+    private final AtomicLong next = new AtomicLong();
+    private final Map<String, String> interned = new ConcurrentHashMap<>();
+
+    public ViolationLog() {
+        for (int i = 0; i < CAPACITY; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    /**
+     * Records a verdict, replacing the oldest one once the ring is full. Only the first
+     * {@value #MAX_MODS} mods are kept.
+     * @param reason Why the player was kicked, or null for an action alone
+     * @param action The configured action that ran, or null
+     */
+    public void record(UUID player, String name, KickReason reason, Collection<String> mods, String action) {
+        long position = next.getAndIncrement();
+        Slot slot = slots[(int) (position & (CAPACITY - 1))];
+        // Odd while writing, so readers skip the slot
+        slot.version = 2 * position + 1;
+        VarHandle.storeStoreFence();
+        slot.time = System.currentTimeMillis();
+        slot.player = player;
+        slot.name = name;
+        slot.reason = reason;
+        slot.action = action;
+        int count = 0;
+        if (mods != null) {
+            for (String mod : mods) {
+                if (count == MAX_MODS) {
+                    break;
+                }
+                slot.mods[count++] = intern(mod);
+            }
+        }
+        Arrays.fill(slot.mods, count, MAX_MODS, null);
+        slot.modCount = count;
+        slot.version = 2 * position + 2;
+    }
+
+    /**
+     * The newest matching verdicts first, at most {@code limit} of them
+     */
+    public List<Violation> recent(Predicate<Violation> filter, int limit) {
+        long end = next.get();
+        List<Violation> result = new ArrayList<>();
+        for (long position = end - 1; position >= 0 && position >= end - CAPACITY && result.size() < limit; position--) {
+            Slot slot = slots[(int) (position & (CAPACITY - 1))];
+            long version = slot.version;
+            if (version != 2 * position + 2) {
+                // Still being written, or already overwritten by a newer verdict
+                continue;
+            }
+            long time = slot.time;
+            UUID player = slot.player;
+            String name = slot.name;
+            KickReason reason = slot.reason;
+            String action = slot.action;
+            String[] mods = Arrays.copyOf(slot.mods, slot.modCount);
+            VarHandle.loadLoadFence();
+            if (slot.version != version) {
+                continue;
+            }
+            Violation violation = new Violation(time, player, name, reason, Collections.unmodifiableList(Arrays.asList(mods)), action);
+            if (filter.test(violation)) {
+                result.add(violation);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Matches verdicts by reason label ({@code all} for any, {@code action} for actions alone) and,
+     * unless {@code mod} is null, by one of their mod IDs
+     */
+    public static Predicate<Violation> filter(String reason, String mod) {
+        return violation -> ("all".equals(reason) || violation.reasonLabel().equals(reason))
+                && (mod == null || violation.mods().stream().anyMatch(mod::equalsIgnoreCase));
+    }
+
+    /**
+     * The reasons {@link #filter} accepts
+     */
+    public static List<String> reasonLabels() {
+        List<String> labels = new ArrayList<>();
+        labels.add("all");
+        for (KickReason reason : KickReason.values()) {
+            labels.add(reason.label());
+        }
+        labels.add("action");
+        return labels;
+    }
+
+    /**
+     * Mod IDs that appear in the verdicts still held, for command suggestions
+     */
+    public Set<String> recentMods() {
+        Set<String> mods = new TreeSet<>();
+        for (Violation violation : recent(violation -> true, CAPACITY)) {
+            mods.addAll(violation.mods());
+        }
+        return mods;
+    }
+
+    /**
+     * Verdicts recorded since startup, including those already overwritten
+     */
+    public long getRecordedCount() {
+        return next.get();
+    }
+
+    public int capacity() {
+        return CAPACITY;
+    }
+
+    private String intern(String mod) {
+        String existing = interned.get(mod);
+        if (existing != null) {
+            return existing;
+        }
+        // Clients choose their mod IDs, so the table stops growing instead of trusting them
+        if (interned.size() >= MAX_INTERNED) {
+            return mod;
+        }
+        existing = interned.putIfAbsent(mod, mod);
+        return existing != null ? existing : mod;
+    }
+
+    /**
+     * One preallocated ring entry. {@code version} is odd while a writer fills the slot and
+     * {@code 2 * position + 2} once the verdict at that position is complete.
+     */
+    private static final class Slot {
+        private volatile long version = -1;
+        private long time;
+        private UUID player;
+        private String name;
+        private KickReason reason;
+        private String action;
+        private final String[] mods = new String[MAX_MODS];
+        private int modCount;
+    }
+}
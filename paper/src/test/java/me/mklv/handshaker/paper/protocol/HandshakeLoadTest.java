@@ -0,0 +1,790 @@
+package me.mklv.handshaker.paper.protocol;
+
+import io.papermc.paper.threadedregions.scheduler.EntityScheduler;
+import io.papermc.paper.threadedregions.scheduler.GlobalRegionScheduler;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import me.mklv.handshaker.paper.HandShakerPlugin;
+import me.mklv.handshaker.paper.api.HandshakeResult;
+import me.mklv.handshaker.paper.configs.ConfigManager;
+import me.mklv.handshaker.paper.utils.*;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.messaging.StandardMessenger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Offline load test for sizing hardware. A synthetic client fleet joins through the real
+ * {@link PluginProtocolHandler} with Bukkit stubbed out underneath: payloads come in through the plugin
+ * messenger on a simulated server thread, so every join takes the path a real one does, through the rate
+ * limiter, the admission queue and its tick budget, duplicate fingerprints, challenge tokens and nonces,
+ * signature checks on the CPU pool, the rules, the history database and the audit log.
+ * <p>
+ * Clients arrive on a fixed schedule and latency is measured from the scheduled arrival to the verdict or
+ * kick, so a handler that falls behind shows up as latency instead of as a slower arrival rate. A share of
+ * the fleet misbehaves with invalid signatures, replayed, malformed or flooded payloads. Signatures use a
+ * throwaway key, and config, history and audit log live in a scratch folder that is deleted afterwards;
+ * pass a server's config folder to judge the fleet by its rules instead of the defaults.
+ * <p>
+ * Run it with {@code ./gradlew :paper:handshakeLoadTest}, optionally with
+ * {@code -PloadTestArgs="<clients> <joins per second> [config folder]"}; the default is 1000 clients at 50 joins/s.
+ * <p>
+ * {@code -PloadTestArgs="replay <capture file> [speed] [config folder]"} replays a payload capture instead.
+ * Each captured player joins as a client of its own when its first payload was recorded, and its payloads
+ * go through the same handler at their recorded times, divided by the speed; signatures are checked against
+ * the bundled public.cer, as on the server that captured them. A relative capture path is resolved against
+ * the paper folder. Challenge tokens are bound to the server and player they were issued to, so a captured
+ * one is swapped for the token issued to the replaying client; a token that was replayed across players in
+ * the capture is therefore not caught again. Everything else, nonces of older clients and undecodable
+ * payloads included, is sent as captured.
+ */
+public class HandshakeLoadTest {
+    private static final int DEFAULT_CLIENTS = 1000;
+    private static final int DEFAULT_JOINS_PER_SECOND = 50;
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    // Share of clients that misbehave, in percent; the rest send a valid handshake
+    private static final int INVALID_SIGNATURE_PERCENT = 5;
+    private static final int DUPLICATE_PERCENT = 3;
+    private static final int MALFORMED_PERCENT = 2;
+    private static final int FLOOD_PERCENT = 1;
+    // Share of clients too old for challenge tokens, which send their own random nonces instead
+    private static final int LEGACY_PERCENT = 20;
+    private static final int FLOOD_PAYLOADS = 48;
+    private static final int MIN_MODS = 20;
+    private static final int MAX_MODS = 150;
+
+    private static final String[] COMMON_MODS = {
+            "fabric-api", "fabricloader", "minecraft", "java", "sodium", "lithium", "iris", "indium",
+            "modmenu", "cloth-config", "architectury", "fabric-language-kotlin", "yet_another_config_lib_v3",
+            "ferritecore", "krypton", "c2me", "entityculling", "immediatelyfast", "moreculling", "dynamic_fps",
+            "lambdynlights", "continuity", "sodium-extra", "reeses-sodium-options", "betterf3", "appleskin",
+            "jei", "rei", "emi", "jade", "wthit", "xaerominimap", "xaeroworldmap", "journeymap", "voicechat",
+            "zoomify", "mousetweaks", "inventoryprofilesnext", "libipn", "shulkerboxtooltip", "betterstats",
+            "capes", "skinlayers3d", "notenoughanimations", "entity_model_features", "entity_texture_features",
+            "puzzle", "exordium", "debugify", "modernfix", "memoryleakfix", "noisium", "nvidium", "starlight",
+            "chat_heads", "controlling", "searchables", "fallingleaves", "visuality", "particle_rain",
+            "ambientsounds", "presencefootsteps", "sound_physics_remastered", "waystones", "balm", "trinkets",
+            "accessories", "owo", "geckolib", "cardinal-components", "playeranimator", "bettercombat",
+            "create", "flywheel", "forgeconfigapiport", "resourcefulconfig", "resourcefullib", "patchouli",
+            "botania", "terrablender", "biomesoplenty", "supplementaries", "moonlight", "amendments",
+            "farmersdelight", "polymer", "styledchat", "worldedit", "axiom", "litematica", "malilib",
+            "minihud", "tweakeroo", "itemscroller", "freecam", "replaymod", "fabrishot", "screenshot_viewer"
+    };
+
+    private enum Behavior {
+        VALID,
+        INVALID_SIGNATURE,
+        DUPLICATE,
+        MALFORMED,
+        FLOOD,
+        // Sends what a captured player sent, at the recorded times
+        REPLAY
+    }
+
+    private record Packet(String channel, byte[] data) {}
+
+    /**
+     * A captured payload and when to send it, in nanoseconds from the start of the replay
+     */
+    private record Send(Client client, PayloadCapture.Entry entry, long offset) {}
+
+    /**
+     * The nonce a captured payload ends with, and where it starts
+     */
+    private record Nonce(int start, String value) {}
+
+    /**
+     * {@code count} clients, joins per second sustained until the last verdict, latency from the scheduled
+     * arrival, heap retained across the run and history syncs per second until the last one landed
+     */
+    private record Report(int count, double perSecond, double p50Millis, double p99Millis, double maxMillis,
+                          long heapGrowthBytes, long dbWrites, double dbWritesPerSecond, Map<String, Long> outcomes) {
+        void print() {
+            System.out.printf(Locale.ROOT, "Joins:     %d at %.1f joins/s sustained%n", count, perSecond);
+            System.out.printf(Locale.ROOT, "Verdicts:  p50 %.2f ms  p99 %.2f ms  max %.2f ms%n", p50Millis, p99Millis, maxMillis);
+            System.out.println("Outcomes:  " + outcomes);
+            System.out.printf(Locale.ROOT, "Heap:      %+.1f MB retained%n", heapGrowthBytes / (1024.0 * 1024.0));
+            System.out.printf(Locale.ROOT, "History:   %d syncs at %.1f syncs/s%n", dbWrites, dbWritesPerSecond);
+        }
+    }
+
+    private final File dataFolder;
+    private final Logger logger;
+    private final HandShakerExecutors executors = new HandShakerExecutors();
+    private final HandshakeMetrics metrics = new HandshakeMetrics();
+    private final ViolationLog violations = new ViolationLog();
+    private final Map<UUID, ClientInfo> clients = new ConcurrentHashMap<>();
+    private final Map<UUID, Client> online = new ConcurrentHashMap<>();
+    private final StandardMessenger messenger = new StandardMessenger();
+    private final ServerThread serverThread = new ServerThread();
+    // Stands in for the network threads: pre-login and the client's side of the connection
+    private final ExecutorService network = Executors.newFixedThreadPool(2,
+            Thread.ofPlatform().name("Netty-", 0).daemon(true).factory());
+    private final PayloadDecoder decoder;
+    private final KeyPair keys = generateKeys();
+    private final String jarHash = sha256Hex("handshaker-loadtest-client.jar");
+    private final byte[] validSignature = sign(keys, jarHash);
+    private ConfigManager config;
+    private AuditLog audit;
+    private PlayerHistoryDatabase db;
+    private PluginProtocolHandler handler;
+
+    private HandshakeLoadTest(File dataFolder, Logger logger) {
+        this.dataFolder = dataFolder;
+        this.logger = logger;
+        this.decoder = new PayloadDecoder(logger);
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean replay = args.length > 0 && args[0].equals("replay");
+        if (replay && args.length < 2) {
+            System.err.println("Usage: replay <capture file> [speed] [config folder]");
+            return;
+        }
+        int configArg = replay ? 3 : 2;
+        Path configFolder = args.length > configArg ? Path.of(args[configArg]) : null;
+        Logger logger = Logger.getLogger("HandShaker");
+        // Kicks are counted in the report; a warning per misbehaving client would drown it
+        logger.setLevel(Level.SEVERE);
+
+        Path scratch = Files.createTempDirectory("handshaker-loadtest");
+        try {
+            if (configFolder != null) {
+                copyConfig(configFolder, scratch);
+            }
+            HandshakeLoadTest test = new HandshakeLoadTest(scratch.toFile(), logger);
+            test.start(replay);
+            try {
+                String setup = test.config.getPlayerdbStorage() + " history, "
+                        + (configFolder != null ? "rules from " + configFolder : "default rules");
+                if (replay) {
+                    File file = new File(args[1]);
+                    double speed = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+                    PayloadCapture.Capture capture = PayloadCapture.read(file);
+                    System.out.println("Replaying " + capture.entries().size() + " payloads from " + file.getName()
+                            + " at " + speed + "x speed, " + setup
+                            + (capture.truncated() ? " (the file ends mid-record; replaying the complete ones)" : ""));
+                    test.replay(capture.entries(), speed).print();
+                } else {
+                    int clientCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CLIENTS;
+                    int joinsPerSecond = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_JOINS_PER_SECOND;
+                    System.out.println(clientCount + " clients at " + joinsPerSecond + " joins/s, " + setup);
+                    test.run(clientCount, joinsPerSecond).print();
+                }
+            } finally {
+                test.stop();
+            }
+        } finally {
+            deleteRecursively(scratch);
+        }
+    }
+
+    /**
+     * Sets up the plugin around the handler the way {@code onEnable} does, on stubs instead of a server.
+     * A replay checks the captured signatures against the bundled public.cer, as the server that captured
+     * them did; synthetic clients sign with the throwaway key.
+     */
+    private void start(boolean bundledCertificate) throws ReflectiveOperationException {
+        Server server = server();
+        // Bukkit.setServer also logs the server's build info, which only a real server can provide
+        Field field = Bukkit.class.getDeclaredField("server");
+        field.setAccessible(true);
+        field.set(null, server);
+
+        HandShakerPlugin plugin = mock(HandShakerPlugin.class);
+        when(plugin.getServer()).thenReturn(server);
+        when(plugin.getLogger()).thenReturn(logger);
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        when(plugin.getExecutors()).thenReturn(executors);
+        when(plugin.getMetrics()).thenReturn(metrics);
+        when(plugin.getViolationLog()).thenReturn(violations);
+
+        config = new ConfigManager(plugin);
+        config.load();
+        when(plugin.getConfigManager()).thenReturn(config);
+        audit = new AuditLog(new File(dataFolder, "logs/audit.jsonl"), e -> logger.warning("Audit log stopped: " + e.getMessage()));
+        if (config.isAuditLog()) {
+            audit.start();
+        }
+        when(plugin.getAuditLog()).thenReturn(audit);
+        when(plugin.getPayloadCapture()).thenReturn(new PayloadCapture(new File(dataFolder, "captures"),
+                config.getCaptureMaxMegabytes() * 1024L * 1024L, reason -> {}));
+        // Always on, whatever playerdb-enabled says: the history writes are part of what is measured
+        db = new PlayerHistoryDatabase(dataFolder, logger, true, config.getPlayerdbStorage(), executors.io());
+        db.whenReady().join();
+        when(plugin.getPlayerHistoryDb()).thenReturn(db);
+
+        handler = bundledCertificate ? new PluginProtocolHandler(plugin, clients)
+                : new PluginProtocolHandler(plugin, clients, keys.getPublic());
+        handler.registerPluginChannels();
+        serverThread.start();
+    }
+
+    private void stop() throws InterruptedException {
+        handler.unregisterPluginChannels();
+        handler.shutdown();
+        executors.shutdown(30, TimeUnit.SECONDS);
+        db.close();
+        audit.stop();
+        serverThread.stop();
+        network.shutdownNow();
+    }
+
+    private Report run(int count, int joinsPerSecond) throws InterruptedException {
+        Client[] fleet = generateFleet(count);
+        long interval = 1_000_000_000L / Math.max(1, joinsPerSecond);
+        for (int i = 0; i < count; i++) {
+            fleet[i].offset = i * interval;
+        }
+        return drive(fleet, List.of());
+    }
+
+    private Report replay(List<PayloadCapture.Entry> capture, double speed) throws InterruptedException {
+        // Clients too old for challenge tokens never send one
+        Set<Long> challenged = new HashSet<>();
+        for (PayloadCapture.Entry entry : capture) {
+            Nonce nonce = nonce(entry);
+            if (nonce != null && HandshakeChallenge.isToken(nonce.value())) {
+                challenged.add(entry.player());
+            }
+        }
+        Map<Long, Client> players = new LinkedHashMap<>();
+        List<Send> sends = new ArrayList<>(capture.size());
+        for (PayloadCapture.Entry entry : capture) {
+            long offset = (long) (entry.offsetMicros() * 1000 / speed);
+            Client client = players.computeIfAbsent(entry.player(), pseudonym -> {
+                // Name-based UUIDs are version 3; version 0 would count as a Bedrock player
+                String name = "Replay" + players.size();
+                Client joining = new Client(UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)), name,
+                        Behavior.REPLAY, !challenged.contains(pseudonym), "", null);
+                joining.offset = offset;
+                return joining;
+            });
+            sends.add(new Send(client, entry, offset));
+        }
+        if (players.isEmpty()) {
+            throw new IllegalArgumentException("The capture holds no payloads");
+        }
+        return drive(players.values().toArray(Client[]::new), sends);
+    }
+
+    /**
+     * Joins the fleet at each client's offset and sends the captured payloads at theirs, then waits for
+     * every verdict. Both lists are in time order.
+     */
+    private Report drive(Client[] fleet, List<Send> sends) throws InterruptedException {
+        int count = fleet.length;
+        System.gc();
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        int joined = 0;
+        int sent = 0;
+        while (joined < count || sent < sends.size()) {
+            boolean join = sent == sends.size() || joined < count && fleet[joined].offset <= sends.get(sent).offset();
+            long due = start + (join ? fleet[joined].offset : sends.get(sent).offset());
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (join) {
+                Client client = fleet[joined++];
+                client.arrival = due;
+                // Pre-login runs on the network thread, the join on the server thread
+                network.execute(() -> {
+                    handler.warmUp(client.uuid, client.name);
+                    serverThread.execute(() -> join(client));
+                });
+            } else {
+                Send send = sends.get(sent++);
+                Client client = send.client();
+                // Chained, so a client's payloads arrive in the order they were captured
+                client.sending = client.sending.thenRun(() -> serverThread.execute(() -> {
+                    if (client.connected) {
+                        messenger.dispatchIncomingMessage(client.player, channelName(send.entry().channel()),
+                                withToken(send.entry(), client.challengeToken));
+                    }
+                }));
+            }
+        }
+
+        CompletableFuture<?>[] outcomes = Arrays.stream(fleet).map(client -> client.outcome).toArray(CompletableFuture<?>[]::new);
+        try {
+            // Every client gets a verdict by its handshake timeout, unless the queue is still behind
+            CompletableFuture.allOf(outcomes).get(config.getHandshakeTimeoutSeconds() * 10L + 60, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            for (Client client : fleet) {
+                client.finish("no_verdict");
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        // The last history syncs may still be in flight
+        executors.shutdown(60, TimeUnit.SECONDS);
+        long writeNanos = System.nanoTime() - start;
+        System.gc();
+        long heapGrowth = usedHeap() - heapBefore;
+
+        long[] latencies = new long[count];
+        Map<String, Long> counts = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            latencies[i] = fleet[i].latency;
+            counts.merge(fleet[i].outcome.join(), 1L, Long::sum);
+        }
+        Arrays.sort(latencies);
+        long written = metrics.getCount(HandshakeMetrics.Stage.DB_SYNC);
+        return new Report(count, count / (elapsedNanos / 1e9),
+                percentile(latencies, 0.5), percentile(latencies, 0.99), latencies[count - 1] / 1e6,
+                heapGrowth, written, written / (writeNanos / 1e9), counts);
+    }
+
+    /**
+     * What the join listener does, then the client answers from the network thread
+     */
+    private void join(Client client) {
+        online.put(client.uuid, client);
+        handler.sendChallenge(client.player);
+        handler.startHandshake(client.player);
+        handler.getHandshakeResult(client.uuid).whenComplete((result, e) -> client.finish(e != null ? "cancelled" : label(result)));
+        client.joined.complete(null);
+        if (client.behavior == Behavior.REPLAY) {
+            return;
+        }
+        network.execute(() -> {
+            if (client.behavior == Behavior.DUPLICATE && client.previous != null) {
+                // The previous client's bytes again, nonces and challenge token included
+                client.previous.packets.thenAccept(client.packets::complete);
+            } else {
+                client.packets.complete(packets(client));
+            }
+            client.packets.thenAccept(packets -> serverThread.execute(() -> {
+                for (Packet packet : packets) {
+                    if (!client.connected) {
+                        break;
+                    }
+                    messenger.dispatchIncomingMessage(client.player, packet.channel(), packet.data());
+                }
+            }));
+        });
+    }
+
+    /**
+     * What the quit listener does after a kick
+     */
+    private void kicked(Client client) {
+        if (!client.connected) {
+            return;
+        }
+        client.connected = false;
+        List<ViolationLog.Violation> last = violations.recent(violation -> violation.player().equals(client.uuid), 1);
+        client.finish(last.isEmpty() ? "kicked" : last.get(0).reasonLabel());
+        handler.cancelHandshake(client.uuid);
+        clients.remove(client.uuid);
+        online.remove(client.uuid);
+    }
+
+    private static String label(HandshakeResult result) {
+        return switch (result.verdict()) {
+            case ALLOWED -> "allowed";
+            case BYPASSED -> "bypassed";
+            case KICKED -> result.kickReason() != null ? result.kickReason().label() : "kicked";
+        };
+    }
+
+    /**
+     * The payloads a client sends once it has joined: its mod list and integrity payload, under the
+     * challenge token if it received one
+     */
+    private List<Packet> packets(Client client) {
+        String token = client.challengeToken;
+        String modListNonce = token != null ? token : UUID.randomUUID().toString();
+        String integrityNonce = token != null ? token : UUID.randomUUID().toString();
+        byte[] modList = concat(encodeString(client.mods), encodeString(sha256Hex(client.mods)), encodeString(modListNonce));
+        byte[] signature = validSignature;
+        if (client.behavior == Behavior.INVALID_SIGNATURE) {
+            signature = new byte[validSignature.length];
+            ThreadLocalRandom.current().nextBytes(signature);
+        }
+        byte[] integrity = concat(encodeBytes(signature), encodeString(jarHash), encodeString(integrityNonce));
+
+        return switch (client.behavior) {
+            case MALFORMED -> List.of(new Packet(HandShakerPlugin.MODS_CHANNEL, Arrays.copyOf(modList, modList.length / 2)),
+                    new Packet(HandShakerPlugin.INTEGRITY_CHANNEL, integrity));
+            case FLOOD -> Collections.nCopies(FLOOD_PAYLOADS, new Packet(HandShakerPlugin.MODS_CHANNEL, modList));
+            default -> List.of(new Packet(HandShakerPlugin.MODS_CHANNEL, modList), new Packet(HandShakerPlugin.INTEGRITY_CHANNEL, integrity));
+        };
+    }
+
+    private static String channelName(PayloadCapture.Channel channel) {
+        return switch (channel) {
+            case MOD_LIST -> HandShakerPlugin.MODS_CHANNEL;
+            case INTEGRITY -> HandShakerPlugin.INTEGRITY_CHANNEL;
+            case VELTON -> HandShakerPlugin.VELTON_CHANNEL;
+        };
+    }
+
+    /**
+     * The nonce is the last field of every handshake payload. Null if the payload doesn't decode that far.
+     */
+    private Nonce nonce(PayloadCapture.Entry entry) {
+        byte[] payload = entry.payload();
+        int fields = entry.channel() == PayloadCapture.Channel.VELTON ? 2 : 3;
+        int offset = 0;
+        for (int i = 0; i < fields - 1; i++) {
+            PayloadDecoder.DecodeResult field = decoder.decodeByteArrayWithOffset(payload, offset);
+            if (field == null) {
+                return null;
+            }
+            offset = field.offset;
+        }
+        PayloadDecoder.DecodeResult nonce = decoder.decodeStringWithOffset(payload, offset);
+        return nonce != null && nonce.offset == payload.length ? new Nonce(offset, (String) nonce.value) : null;
+    }
+
+    /**
+     * The captured payload with its challenge token swapped for the one this client was issued
+     */
+    private byte[] withToken(PayloadCapture.Entry entry, String token) {
+        Nonce nonce = nonce(entry);
+        if (token == null || nonce == null || !HandshakeChallenge.isToken(nonce.value())) {
+            return entry.payload();
+        }
+        return concat(Arrays.copyOf(entry.payload(), nonce.start()), encodeString(token));
+    }
+
+    private Client[] generateFleet(int count) {
+        List<String> configuredMods = List.copyOf(config.getModConfigMap().keySet());
+        Random random = new Random(count);
+        Client[] fleet = new Client[count];
+        for (int i = 0; i < count; i++) {
+            int roll = random.nextInt(100);
+            Behavior behavior = roll < INVALID_SIGNATURE_PERCENT ? Behavior.INVALID_SIGNATURE
+                    : roll < INVALID_SIGNATURE_PERCENT + DUPLICATE_PERCENT ? Behavior.DUPLICATE
+                    : roll < INVALID_SIGNATURE_PERCENT + DUPLICATE_PERCENT + MALFORMED_PERCENT ? Behavior.MALFORMED
+                    : roll < INVALID_SIGNATURE_PERCENT + DUPLICATE_PERCENT + MALFORMED_PERCENT + FLOOD_PERCENT ? Behavior.FLOOD
+                    : Behavior.VALID;
+
+            Set<String> mods = new LinkedHashSet<>();
+            mods.add("hand-shaker");
+            int modCount = MIN_MODS + random.nextInt(MAX_MODS - MIN_MODS + 1);
+            for (int j = 0; j < modCount; j++) {
+                mods.add(COMMON_MODS[random.nextInt(COMMON_MODS.length)]);
+            }
+            if (!configuredMods.isEmpty() && random.nextInt(10) == 0) {
+                mods.add(configuredMods.get(random.nextInt(configuredMods.size())));
+            }
+            // Name-based UUIDs are version 3; version 0 would count as a Bedrock player
+            String name = "LoadTest" + i;
+            fleet[i] = new Client(UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)), name, behavior,
+                    random.nextInt(100) < LEGACY_PERCENT, String.join(",", mods), i > 0 ? fleet[i - 1] : null);
+        }
+        return fleet;
+    }
+
+    /**
+     * One simulated client and the {@link Player} the handler sees for it
+     */
+    private final class Client {
+        private final UUID uuid;
+        private final String name;
+        private final Behavior behavior;
+        private final boolean legacy;
+        private final String mods;
+        private final Client previous;
+        private final Player player;
+        private final CompletableFuture<List<Packet>> packets = new CompletableFuture<>();
+        private final CompletableFuture<String> outcome = new CompletableFuture<>();
+        private final CompletableFuture<Void> joined = new CompletableFuture<>();
+        private CompletableFuture<Void> sending = joined;
+        private volatile boolean connected = true;
+        private volatile String challengeToken;
+        // When the client joins, in nanoseconds from the start of the run
+        private long offset;
+        private long arrival;
+        private long latency;
+
+        private Client(UUID uuid, String name, Behavior behavior, boolean legacy, String mods, Client previous) {
+            this.uuid = uuid;
+            this.name = name;
+            this.behavior = behavior;
+            this.legacy = legacy;
+            this.mods = mods;
+            this.previous = previous;
+            Set<String> channels = legacy ? Set.of() : Set.of(HandShakerPlugin.CHALLENGE_CHANNEL, HandShakerPlugin.VERDICT_CHANNEL);
+            EntityScheduler scheduler = proxy(EntityScheduler.class, Map.of(
+                    "run", args -> {
+                        @SuppressWarnings("unchecked")
+                        Consumer<ScheduledTask> task = (Consumer<ScheduledTask>) args[1];
+                        Runnable retired = (Runnable) args[2];
+                        // Like Folia, work for a player who is gone runs the retired callback instead
+                        serverThread.execute(() -> {
+                            if (connected) {
+                                task.accept(null);
+                            } else if (retired != null) {
+                                retired.run();
+                            }
+                        });
+                        return null;
+                    }));
+            this.player = proxy(Player.class, Map.of(
+                    "getUniqueId", args -> this.uuid,
+                    "getName", args -> this.name,
+                    "isOnline", args -> connected,
+                    "getListeningPluginChannels", args -> channels,
+                    "hasPermission", args -> false,
+                    "getScheduler", args -> scheduler,
+                    "sendPluginMessage", args -> {
+                        if (HandShakerPlugin.CHALLENGE_CHANNEL.equals(args[1])) {
+                            challengeToken = decoder.decodeString((byte[]) args[2]);
+                        }
+                        return null;
+                    },
+                    "kick", args -> {
+                        kicked(this);
+                        return null;
+                    }));
+        }
+
+        private synchronized void finish(String label) {
+            if (outcome.isDone()) {
+                return;
+            }
+            latency = System.nanoTime() - arrival;
+            outcome.complete(label);
+        }
+    }
+
+    /**
+     * The main thread: the global region's repeating tasks every 50 ms tick, and queued work such as
+     * incoming packets and entity scheduler tasks in between
+     */
+    private final class ServerThread implements Executor {
+        private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+        private final List<Consumer<ScheduledTask>> repeating = new CopyOnWriteArrayList<>();
+        private final Thread thread = new Thread(this::loop, "Server thread");
+        private volatile boolean running = true;
+
+        @Override
+        public void execute(Runnable task) {
+            queue.add(task);
+        }
+
+        private boolean isCurrent() {
+            return Thread.currentThread() == thread;
+        }
+
+        private ScheduledTask repeat(Consumer<ScheduledTask> task) {
+            repeating.add(task);
+            return proxy(ScheduledTask.class, Map.of("cancel", args -> {
+                repeating.remove(task);
+                return ScheduledTask.CancelledState.CANCELLED_BY_CALLER;
+            }));
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        private void stop() throws InterruptedException {
+            running = false;
+            thread.join();
+        }
+
+        private void loop() {
+            long nextTick = System.nanoTime();
+            try {
+                while (running) {
+                    long wait = nextTick - System.nanoTime();
+                    if (wait <= 0) {
+                        for (Consumer<ScheduledTask> task : repeating) {
+                            runSafely(() -> task.accept(null));
+                        }
+                        // A tick that overran is followed by the next one right away, as on a lagging server
+                        nextTick = Math.max(nextTick + TICK_NANOS, System.nanoTime() - TICK_NANOS);
+                        continue;
+                    }
+                    Runnable task = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (task != null) {
+                        runSafely(task);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void runSafely(Runnable task) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Task failed on the server thread", e);
+            }
+        }
+    }
+
+    /**
+     * The parts of the server the handler and config use: the messenger, schedulers, player lookup and a
+     * plugin manager that drops events
+     */
+    private Server server() {
+        GlobalRegionScheduler global = proxy(GlobalRegionScheduler.class, Map.of(
+                "runAtFixedRate", args -> {
+                    @SuppressWarnings("unchecked")
+                    Consumer<ScheduledTask> task = (Consumer<ScheduledTask>) args[1];
+                    return serverThread.repeat(task);
+                },
+                "run", args -> {
+                    @SuppressWarnings("unchecked")
+                    Consumer<ScheduledTask> task = (Consumer<ScheduledTask>) args[1];
+                    serverThread.execute(() -> task.accept(null));
+                    return null;
+                },
+                "execute", args -> {
+                    serverThread.execute((Runnable) args[1]);
+                    return null;
+                }));
+        PluginManager plugins = proxy(PluginManager.class, Map.of(
+                "callEvent", args -> null,
+                "getPlugin", args -> null));
+        return proxy(Server.class, Map.of(
+                "getLogger", args -> logger,
+                "getMessenger", args -> messenger,
+                "getGlobalRegionScheduler", args -> global,
+                "getPluginManager", args -> plugins,
+                "isPrimaryThread", args -> serverThread.isCurrent(),
+                "isOwnedByCurrentRegion", args -> serverThread.isCurrent(),
+                "getPlayer", args -> {
+                    Client client = args[0] instanceof UUID uuid ? online.get(uuid) : null;
+                    return client != null ? client.player : null;
+                },
+                // Action commands are dispatched into the void
+                "getConsoleSender", args -> null,
+                "dispatchCommand", args -> true));
+    }
+
+    /**
+     * An implementation of {@code type} that answers the named methods and fails on any other, so a
+     * handler change that needs more of the server shows up here instead of as a silent null
+     */
+    private static <T> T proxy(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (self, method, args) -> {
+            Function<Object[], Object> answer = answers.get(method.getName());
+            if (answer != null) {
+                return answer.apply(args != null ? args : new Object[0]);
+            }
+            return switch (method.getName()) {
+                case "equals" -> self == args[0];
+                case "hashCode" -> System.identityHashCode(self);
+                case "toString" -> type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(self));
+                default -> throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName() + " is not simulated");
+            };
+        }));
+    }
+
+    private static void copyConfig(Path from, Path to) throws IOException {
+        try (Stream<Path> files = Files.list(from)) {
+            for (Path file : files.filter(path -> path.getFileName().toString().endsWith(".yml")).toList()) {
+                Files.copy(file, to.resolve(file.getFileName()));
+            }
+        }
+    }
+
+    private static KeyPair generateKeys() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("RSA not available", e);
+        }
+    }
+
+    private static byte[] sign(KeyPair keys, String jarHash) {
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(keys.getPrivate());
+            signature.update(jarHash.getBytes(StandardCharsets.UTF_8));
+            return signature.sign();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not sign the load-test JAR hash", e);
+        }
+    }
+
+    private static String sha256Hex(String input) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(input.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static byte[] encodeString(String value) {
+        return encodeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Length-prefixed with a VarInt, as the client writes it
+     */
+    private static byte[] encodeBytes(byte[] value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(value.length + 5);
+        int length = value.length;
+        while ((length & ~0x7F) != 0) {
+            out.write((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.write(length);
+        out.writeBytes(value);
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        int rank = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, rank)] / 1e6;
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package me.mklv.handshaker.paper.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventLogHistoryStorageTest extends HistoryStorageTestBase {
+
+    @Override
+    protected HistoryStorage create(Path directory) {
+        return new EventLogHistoryStorage(directory.toFile(), LOGGER);
+    }
+
+    @Test
+    void recoversFromASegmentCutOffMidRecord() throws Exception {
+        UUID alice = UUID.randomUUID();
+        UUID bob = UUID.randomUUID();
+        storage.syncPlayerMods(alice, "Alice", Set.of("sodium", "lithium"), null);
+        storage.syncPlayerMods(bob, "Bob", Set.of("iris"), null);
+
+        // What a crash leaves behind: the segment as written so far and no snapshot after it
+        Path crashed = crashCopy();
+        Path segment = onlySegment(crashed);
+        int end = logEnd(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(end - 3);
+        }
+
+        HistoryStorage recovered = create(crashed);
+        recovered.open();
+        try {
+            assertEquals(Set.of("sodium", "lithium"), recovered.getActiveMods(alice));
+            // Bob's name made it to disk, his only mod was the record that got cut
+            assertEquals(List.of("Bob"), recovered.getPlayerNames(bob));
+            assertTrue(recovered.getActiveMods(bob).isEmpty());
+
+            // New events go where the cut record was, and survive the next restart
+            assertTrue(recovered.syncPlayerMods(bob, "Bob", Set.of("jei"), null));
+        } finally {
+            recovered.close();
+        }
+
+        recovered = create(crashed);
+        recovered.open();
+        try {
+            assertEquals(Set.of("sodium", "lithium"), recovered.getActiveMods(alice));
+            assertEquals(Set.of("jei"), recovered.getActiveMods(bob));
+            assertEquals(Map.of("sodium", 1, "lithium", 1, "jei", 1), recovered.getModPopularity());
+        } finally {
+            recovered.close();
+        }
+    }
+
+    @Test
+    void stopsReplayingAtATornRecord() throws Exception {
+        UUID alice = UUID.randomUUID();
+        UUID bob = UUID.randomUUID();
+        storage.syncPlayerMods(alice, "Alice", Set.of("sodium"), null);
+        storage.syncPlayerMods(bob, "Bob", Set.of("iris"), null);
+
+        Path crashed = crashCopy();
+        Path segment = onlySegment(crashed);
+        int end = logEnd(segment);
+        // The length made it to disk but the last bytes of the record did not
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0}), end - 2);
+        }
+
+        HistoryStorage recovered = create(crashed);
+        recovered.open();
+        try {
+            assertEquals(Set.of("sodium"), recovered.getActiveMods(alice));
+            assertTrue(recovered.getActiveMods(bob).isEmpty());
+            assertEquals(1, recovered.getUniqueActivePlayers());
+        } finally {
+            recovered.close();
+        }
+    }
+
+    @Test
+    void replaysTheTailAfterASnapshot() throws Exception {
+        UUID alice = UUID.randomUUID();
+        UUID bob = UUID.randomUUID();
+        storage.syncPlayerMods(alice, "Alice", Set.of("sodium", "lithium"), null);
+        // Closing writes a snapshot; the events after it only exist in the log
+        reopen();
+        storage.syncPlayerMods(alice, "Alice", Set.of("sodium"), null);
+        storage.syncPlayerMods(bob, "Bob", Set.of("iris"), null);
+
+        HistoryStorage recovered = create(crashCopy());
+        recovered.open();
+        try {
+            assertEquals(Set.of("sodium"), recovered.getActiveMods(alice));
+            assertEquals(Set.of("iris"), recovered.getActiveMods(bob));
+            assertEquals(2, recovered.getPlayerHistory(alice).size());
+        } finally {
+            recovered.close();
+        }
+    }
+
+    /**
+     * Copies the log directory while the storage is still open, as if the server died right now
+     */
+    private Path crashCopy() throws IOException {
+        Path copy = Files.createDirectory(directory.resolve("crashed"));
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Files.copy(file, copy.resolve(file.getFileName()));
+            }
+        }
+        return copy;
+    }
+
+    private static Path onlySegment(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.filter(file -> file.getFileName().toString().startsWith("segment-")).toList();
+            assertEquals(1, segments.size());
+            return segments.get(0);
+        }
+    }
+
+    /**
+     * Offset just past the last record, found by following the length prefixes
+     */
+    private static int logEnd(Path segment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        int position = 0;
+        while (position + 4 <= buffer.limit() && buffer.getInt(position) != 0) {
+            position += buffer.getInt(position);
+        }
+        assertTrue(position > 0);
+        return position;
+    }
+}
@@ -0,0 +1,104 @@
+package me.mklv.handshaker.paper.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HandshakeAdmissionTest {
+
+    @Test
+    void runsAtMostConcurrencyPerTick() {
+        HandshakeAdmission admission = new HandshakeAdmission();
+        admission.setLimits(3, 100, 1_000);
+        AtomicInteger ran = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            admission.submit(UUID.randomUUID(), ran::incrementAndGet);
+        }
+
+        admission.tick();
+        assertEquals(3, ran.get());
+        admission.tick();
+        assertEquals(6, ran.get());
+    }
+
+    @Test
+    void overrunIsCarriedToTheNextTick() {
+        HandshakeAdmission admission = new HandshakeAdmission();
+        admission.setLimits(10, 100, 5);
+        AtomicInteger ran = new AtomicInteger();
+        admission.submit(UUID.randomUUID(), () -> busy(12));
+        for (int i = 0; i < 5; i++) {
+            admission.submit(UUID.randomUUID(), ran::incrementAndGet);
+        }
+
+        admission.tick();
+        assertEquals(0, ran.get(), "the budget ran out on the first payload");
+        // 7 ms or more over budget: the next tick is used up too
+        assertTrue(ticksUntil(admission, () -> ran.get() == 5) >= 2);
+    }
+
+    @Test
+    void dispatchedWorkIsChargedWhereItRuns() {
+        HandshakeAdmission admission = new HandshakeAdmission();
+        admission.setLimits(10, 100, 5);
+        // Stands in for a region scheduler: dispatch only records the task, it runs later
+        List<Runnable> region = new ArrayList<>();
+        UUID player = UUID.randomUUID();
+        for (int i = 0; i < 3; i++) {
+            admission.submit(player, () -> busy(4), region::add);
+        }
+
+        admission.tick();
+        assertEquals(3, region.size(), "dispatching takes no budget");
+        assertTrue(admission.isPending(player), "work is pending until it has run");
+
+        region.forEach(Runnable::run);
+        assertFalse(admission.isPending(player));
+
+        AtomicInteger ran = new AtomicInteger();
+        admission.submit(UUID.randomUUID(), ran::incrementAndGet);
+        admission.tick();
+        assertEquals(0, ran.get(), "the region's 12 ms are charged to this tick");
+        assertTrue(admission.getLastTickMillis() >= 12);
+        // The 7 ms or more over budget carry into the next tick as well
+        assertTrue(ticksUntil(admission, () -> ran.get() == 1) >= 2);
+    }
+
+    @Test
+    void forgottenPlayersWorkIsSkipped() {
+        HandshakeAdmission admission = new HandshakeAdmission();
+        UUID player = UUID.randomUUID();
+        AtomicInteger ran = new AtomicInteger();
+        admission.submit(player, ran::incrementAndGet);
+        assertTrue(admission.isPending(player));
+        admission.forget(player);
+
+        admission.tick();
+        assertEquals(0, ran.get());
+        assertEquals(0, admission.getQueueDepth());
+    }
+
+    private static int ticksUntil(HandshakeAdmission admission, BooleanSupplier done) {
+        int ticks = 0;
+        while (!done.getAsBoolean()) {
+            assertTrue(ticks < 100, "work never ran");
+            admission.tick();
+            ticks++;
+        }
+        return ticks;
+    }
+
+    private static void busy(long millis) {
+        long until = System.nanoTime() + millis * 1_000_000;
+        while (System.nanoTime() < until) {
+            LockSupport.parkNanos(100_000);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package me.mklv.handshaker.paper.utils;
+
+import me.mklv.handshaker.paper.utils.PlayerHistoryDatabase.ModHistoryEntry;
+import me.mklv.handshaker.paper.utils.PlayerHistoryDatabase.ModPopularityEntry;
+import me.mklv.handshaker.paper.utils.PlayerHistoryDatabase.PlayerModInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round trips every {@link HistoryStorage} has to get right, run once per backend
+ */
+abstract class HistoryStorageTestBase {
+    protected static final Logger LOGGER = Logger.getLogger("HistoryStorageTest");
+
+    @TempDir
+    protected Path directory;
+    protected HistoryStorage storage;
+
+    protected abstract HistoryStorage create(Path directory);
+
+    @BeforeEach
+    void openStorage() throws Exception {
+        storage = create(directory);
+        storage.open();
+    }
+
+    @AfterEach
+    void closeStorage() {
+        storage.close();
+    }
+
+    protected void reopen() throws Exception {
+        storage.close();
+        storage = create(directory);
+        storage.open();
+    }
+
+    @Test
+    void syncRecordsAddedAndRemovedMods() {
+        UUID alice = UUID.randomUUID();
+        assertTrue(storage.syncPlayerMods(alice, "Alice", Set.of("sodium", "lithium", "iris"), null));
+        assertEquals(Set.of("sodium", "lithium", "iris"), storage.getActiveMods(alice));
+
+        assertTrue(storage.syncPlayerMods(alice, "Alice", Set.of("sodium", "iris", "jei"), storage.getActiveMods(alice)));
+        assertEquals(Set.of("sodium", "iris", "jei"), storage.getActiveMods(alice));
+
+        List<ModHistoryEntry> history = storage.getPlayerHistory(alice);
+        assertEquals(4, history.size());
+        for (ModHistoryEntry entry : history) {
+            assertNotNull(entry.addedDate());
+            assertEquals(entry.modName().equals("lithium"), entry.removedDate() != null, entry.modName());
+        }
+        assertEquals(List.of("Alice"), storage.getPlayerNames(alice));
+    }
+
+    @Test
+    void syncTracksNamesAndCounts() {
+        UUID alice = UUID.randomUUID();
+        UUID bob = UUID.randomUUID();
+        storage.syncPlayerMods(alice, "Alice", Set.of("sodium", "lithium"), null);
+        storage.syncPlayerMods(bob, "Bob", Set.of("sodium"), null);
+        storage.syncPlayerMods(bob, "Bobby", Set.of(), null);
+
+        assertEquals(List.of("Bobby"), storage.getPlayerNames(bob));
+        assertTrue(storage.getPlayerNames(UUID.randomUUID()).isEmpty());
+        assertEquals(1, storage.getUniqueActivePlayers());
+        assertEquals(2, storage.getActiveModCount());
+        assertEquals(Map.of("sodium", 1, "lithium", 1), storage.getModPopularity());
+
+        List<PlayerModInfo> sodium = storage.getPlayersWithMod("sodium");
+        assertEquals(2, sodium.size());
+        assertEquals(alice, sodium.get(0).uuid(), "active players come first");
+        assertTrue(sodium.get(0).isActive());
+        assertFalse(sodium.get(1).isActive());
+        assertEquals("Bobby", sodium.get(1).currentName());
+    }
+
+    @Test
+    void historyPagesWalkEveryRowOnce() {
+        UUID alice = UUID.randomUUID();
+        Set<String> mods = new HashSet<>();
+        for (int i = 0; i < 25; i++) {
+            mods.add("mod-" + (char) ('a' + i));
+        }
+        // Added in the same second, so the pages have to break ties on the mod name
+        storage.syncPlayerMods(alice, "Alice", mods, null);
+
+        List<String> paged = new ArrayList<>();
+        ModHistoryEntry after = null;
+        for (int page = 0; page < 10; page++) {
+            List<ModHistoryEntry> entries = storage.getPlayerHistoryPage(alice, after, 10);
+            if (entries.isEmpty()) break;
+            entries.forEach(entry -> paged.add(entry.modName()));
+            after = entries.get(entries.size() - 1);
+        }
+
+        List<String> expected = storage.getPlayerHistory(alice).stream()
+            .sorted(Comparator.comparing(ModHistoryEntry::addedDate).thenComparing(ModHistoryEntry::modName).reversed())
+            .map(ModHistoryEntry::modName)
+            .toList();
+        assertEquals(25, expected.size());
+        assertEquals(expected, paged);
+        assertTrue(storage.getPlayerHistoryPage(UUID.randomUUID(), null, 10).isEmpty());
+    }
+
+    @Test
+    void popularityPagesFollowTheFullRanking() {
+        // mod-i is used by i players, with a few ties at the bottom
+        for (int player = 0; player < 12; player++) {
+            Set<String> mods = new HashSet<>();
+            for (int i = player + 1; i <= 12; i++) {
+                mods.add("mod-" + i);
+            }
+            mods.add(player % 2 == 0 ? "even" : "odd");
+            storage.syncPlayerMods(UUID.randomUUID(), "Player" + player, mods, null);
+        }
+
+        List<ModPopularityEntry> ranking = new ArrayList<>();
+        storage.getModPopularity().forEach((mod, count) -> ranking.add(new ModPopularityEntry(mod, count)));
+        assertEquals(14, ranking.size());
+        assertEquals(14, storage.getActiveModCount());
+
+        List<ModPopularityEntry> paged = new ArrayList<>();
+        ModPopularityEntry after = null;
+        for (int page = 0; page < 10; page++) {
+            List<ModPopularityEntry> entries = storage.getModPopularityPage(after, 5);
+            if (entries.isEmpty()) break;
+            paged.addAll(entries);
+            after = entries.get(entries.size() - 1);
+        }
+        assertEquals(ranking, paged);
+        assertEquals(new ModPopularityEntry("mod-12", 12), paged.get(0));
+        // Equal counts are ordered by name
+        assertEquals(List.of("even", "mod-6", "odd"), paged.subList(6, 9).stream().map(ModPopularityEntry::modName).toList());
+    }
+
+    @Test
+    void playersWithModPagesAreOrderedByUuid() {
+        Set<UUID> players = new HashSet<>();
+        for (int i = 0; i < 23; i++) {
+            UUID uuid = UUID.randomUUID();
+            players.add(uuid);
+            storage.syncPlayerMods(uuid, "Player" + i, Set.of("sodium"), null);
+        }
+        storage.syncPlayerMods(UUID.randomUUID(), "Other", Set.of("iris"), null);
+
+        List<String> paged = new ArrayList<>();
+        UUID after = null;
+        for (int page = 0; page < 10; page++) {
+            List<PlayerModInfo> entries = storage.getPlayersWithModPage("sodium", after, 10);
+            if (entries.isEmpty()) break;
+            entries.forEach(info -> paged.add(info.uuid().toString()));
+            after = entries.get(entries.size() - 1).uuid();
+        }
+
+        List<String> expected = players.stream().map(UUID::toString).sorted().toList();
+        assertEquals(expected, paged);
+        assertEquals(23, storage.getPlayersWithMod("sodium").size());
+        assertTrue(storage.getPlayersWithModPage("missing", null, 10).isEmpty());
+    }
+
+    @Test
+    void stateSurvivesAReopen() throws Exception {
+        UUID alice = UUID.randomUUID();
+        UUID bob = UUID.randomUUID();
+        storage.syncPlayerMods(alice, "Alice", Set.of("sodium", "lithium"), null);
+        storage.syncPlayerMods(alice, "Alice", Set.of("sodium"), null);
+        storage.syncPlayerMods(bob, "Bob", Set.of("sodium", "iris"), null);
+        List<ModHistoryEntry> history = sortedHistory(alice);
+
+        reopen();
+
+        assertEquals(Set.of("sodium"), storage.getActiveMods(alice));
+        assertEquals(Set.of("sodium", "iris"), storage.getActiveMods(bob));
+        assertEquals(history, sortedHistory(alice));
+        assertEquals(Map.of("sodium", 2, "iris", 1), storage.getModPopularity());
+        assertEquals(2, storage.getUniqueActivePlayers());
+        assertEquals(List.of("Bob"), storage.getPlayerNames(bob));
+
+        // And keeps taking writes afterwards
+        assertTrue(storage.syncPlayerMods(bob, "Bob", Set.of("iris"), null));
+        assertEquals(Map.of("sodium", 1, "iris", 1), storage.getModPopularity());
+    }
+
+    protected List<ModHistoryEntry> sortedHistory(UUID uuid) {
+        List<ModHistoryEntry> history = new ArrayList<>(storage.getPlayerHistory(uuid));
+        history.sort(Comparator.comparing(ModHistoryEntry::modName));
+        return history;
+    }
+}
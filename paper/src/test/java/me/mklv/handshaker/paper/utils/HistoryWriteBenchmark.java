@@ -0,0 +1,408 @@
+package me.mklv.handshaker.paper.utils;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Write throughput of the player history database under concurrent joins. A number of threads each
+ * sync their own players over and over, the way {@code syncPlayerMods} calls pile up on the async
+ * scheduler when a lot of players join at once, against two setups on a scratch file:
+ * <ul>
+ *   <li>{@code pooled}: the setup before the WAL writer, five pooled connections on a database in the
+ *   default rollback journal mode, preparing every statement on each sync</li>
+ *   <li>{@code wal}: {@link SqliteHistoryStorage}, one WAL writer with cached statements</li>
+ * </ul>
+ * Each run reports completed syncs per second, failed syncs (SQLITE_BUSY once the busy timeout runs
+ * out) and the slowest sync.
+ * <p>
+ * Then both storage backends, {@link SqliteHistoryStorage} and {@link EventLogHistoryStorage}, take the
+ * same seeded stream of mod events from one thread, as the database's executor hands them over: a
+ * player's first sync adds their mods and later ones swap a few, until the stream has added or removed
+ * the requested number of mods. The store is then reopened, which for the event log loads the snapshot
+ * written on close, and read back with the queries the commands run: every player's active mods and
+ * first history page, and every mod's popularity and first page of players. Only the storage calls are
+ * timed, and active mods that don't match what was written are counted.
+ * <p>
+ * Run it with {@code ./gradlew :paper:historyWriteBenchmark}, optionally with
+ * {@code -PbenchmarkArgs="<threads> <syncs per thread> <mod events>"}; the default is 50 threads doing
+ * 200 syncs, then 1,000,000 mod events.
+ */
+public class HistoryWriteBenchmark {
+    private static final int DEFAULT_THREADS = 50;
+    private static final int DEFAULT_SYNCS_PER_THREAD = 200;
+    private static final long DEFAULT_EVENTS = 1_000_000;
+    private static final int EVENT_PLAYERS = 20_000;
+    private static final int MAX_SWAPS = 3;
+    private static final int PAGE_SIZE = 10;
+    private static final long EVENT_SEED = 42;
+    private static final int PLAYERS_PER_THREAD = 20;
+    private static final int MODS = 120;
+    private static final int MIN_MODS = 20;
+    private static final int MAX_MODS = 60;
+
+    private interface Writer extends AutoCloseable {
+        boolean sync(UUID uuid, String playerName, Set<String> mods);
+
+        @Override
+        void close();
+    }
+
+    private record Result(String setup, long syncs, long failures, long elapsedNanos, long slowestNanos) {
+        void print() {
+            double seconds = elapsedNanos / 1_000_000_000.0;
+            System.out.printf(Locale.ROOT, "%-7s %8d syncs in %7.2fs  %9.1f syncs/s  %6d failed  slowest %8.1f ms%n",
+                    setup, syncs, seconds, syncs / seconds, failures, slowestNanos / 1_000_000.0);
+        }
+    }
+
+    /**
+     * One storage through the event workload: mod events written and the time spent writing them, the
+     * time to reopen the store, and the reads after it with the active mod sets that came back wrong
+     */
+    private record EventResult(String setup, long events, long syncs, long failures, long writeNanos, long slowestNanos,
+                               long reopenNanos, long reads, long readNanos, long mismatches, long diskBytes) {
+        void print() {
+            double writeSeconds = writeNanos / 1_000_000_000.0;
+            double readSeconds = readNanos / 1_000_000_000.0;
+            System.out.printf(Locale.ROOT, "%-8s write %8d events in %7.2fs  %9.1f events/s  %6d failed  slowest %8.1f ms%n",
+                    setup, events, writeSeconds, events / writeSeconds, failures, slowestNanos / 1_000_000.0);
+            System.out.printf(Locale.ROOT, "%-8s read  %8d reads  in %7.2fs  %9.1f reads/s   %6d wrong   reopen %8.1f ms  %7.1f MB on disk%n",
+                    setup, reads, readSeconds, reads / readSeconds, mismatches, reopenNanos / 1_000_000.0,
+                    diskBytes / (1024.0 * 1024.0));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_THREADS;
+        int syncsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SYNCS_PER_THREAD;
+        long events = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_EVENTS;
+        Logger logger = Logger.getLogger("HistoryWriteBenchmark");
+        // Failed syncs are counted below; one warning per SQLITE_BUSY would drown the report
+        logger.setLevel(Level.SEVERE);
+
+        System.out.println(threads + " threads x " + syncsPerThread + " syncs, " + PLAYERS_PER_THREAD + " players per thread");
+        Path scratch = Files.createTempDirectory("handshaker-history-bench");
+        try {
+            try (Writer pooled = pooled(scratch.resolve("pooled.db").toFile(), logger)) {
+                run("pooled", pooled, threads, syncsPerThread).print();
+            }
+            SqliteHistoryStorage storage = new SqliteHistoryStorage(scratch.resolve("wal.db").toFile(), logger);
+            storage.open();
+            try (Writer wal = wal(storage)) {
+                run("wal", wal, threads, syncsPerThread).print();
+            }
+
+            System.out.println();
+            System.out.println(events + " mod events over " + EVENT_PLAYERS + " players, then reopened and read back");
+            File sqlite = scratch.resolve("events-sqlite").resolve("history.db").toFile();
+            runEvents("sqlite", () -> new SqliteHistoryStorage(sqlite, logger), sqlite.getParentFile(), events).print();
+            File eventLog = scratch.resolve("events-eventlog").toFile();
+            runEvents("eventlog", () -> new EventLogHistoryStorage(eventLog, logger), eventLog, events).print();
+        } finally {
+            deleteRecursively(scratch);
+        }
+    }
+
+    private static Result run(String setup, Writer writer, int threads, int syncsPerThread) throws InterruptedException {
+        String[] mods = new String[MODS];
+        for (int i = 0; i < MODS; i++) {
+            mods[i] = "mod-" + i;
+        }
+
+        LongAdder syncs = new LongAdder();
+        LongAdder failures = new LongAdder();
+        long[] slowest = new long[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            UUID[] players = new UUID[PLAYERS_PER_THREAD];
+            for (int p = 0; p < players.length; p++) {
+                players[p] = UUID.randomUUID();
+            }
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < syncsPerThread; i++) {
+                        UUID player = players[i % players.length];
+                        // A fresh random mod set each time, so every sync both adds and removes mods
+                        Set<String> current = new HashSet<>();
+                        int count = random.nextInt(MIN_MODS, MAX_MODS + 1);
+                        while (current.size() < count) {
+                            current.add(mods[random.nextInt(mods.length)]);
+                        }
+                        long begin = System.nanoTime();
+                        boolean synced = writer.sync(player, "Player" + index + "_" + (i % players.length), current);
+                        slowest[index] = Math.max(slowest[index], System.nanoTime() - begin);
+                        if (synced) {
+                            syncs.increment();
+                        } else {
+                            failures.increment();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, setup + "-" + t);
+            thread.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        return new Result(setup, syncs.sum(), failures.sum(), elapsed, Arrays.stream(slowest).max().orElse(0));
+    }
+
+    private static EventResult runEvents(String setup, Supplier<HistoryStorage> factory, File directory, long events)
+            throws Exception {
+        String[] mods = new String[MODS];
+        for (int i = 0; i < MODS; i++) {
+            mods[i] = "mod-" + i;
+        }
+        // Seeded, so every storage gets the same syncs
+        Random random = new Random(EVENT_SEED);
+        UUID[] players = new UUID[EVENT_PLAYERS];
+        List<Set<String>> active = new ArrayList<>(EVENT_PLAYERS);
+        for (int p = 0; p < EVENT_PLAYERS; p++) {
+            players[p] = new UUID(random.nextLong(), random.nextLong());
+            active.add(Set.of());
+        }
+
+        HistoryStorage storage = factory.get();
+        storage.open();
+        long written = 0;
+        long syncs = 0;
+        long failures = 0;
+        long writeNanos = 0;
+        long slowest = 0;
+        while (written < events) {
+            int p = random.nextInt(EVENT_PLAYERS);
+            Set<String> before = active.get(p);
+            Set<String> current = new HashSet<>(before);
+            if (before.isEmpty()) {
+                int count = MIN_MODS + random.nextInt(MAX_MODS - MIN_MODS + 1);
+                while (current.size() < count) {
+                    current.add(mods[random.nextInt(MODS)]);
+                }
+            } else {
+                List<String> installed = new ArrayList<>(before);
+                for (int swaps = 1 + random.nextInt(MAX_SWAPS); swaps > 0; swaps--) {
+                    current.remove(installed.get(random.nextInt(installed.size())));
+                    current.add(mods[random.nextInt(MODS)]);
+                }
+            }
+            long begin = System.nanoTime();
+            boolean synced = storage.syncPlayerMods(players[p], "Player" + p, current, null);
+            long took = System.nanoTime() - begin;
+            writeNanos += took;
+            slowest = Math.max(slowest, took);
+            syncs++;
+            if (!synced) {
+                failures++;
+                continue;
+            }
+            int added = 0;
+            for (String mod : current) {
+                if (!before.contains(mod)) {
+                    added++;
+                }
+            }
+            written += added + before.size() - (current.size() - added);
+            active.set(p, current);
+        }
+        storage.close();
+
+        long begin = System.nanoTime();
+        storage = factory.get();
+        storage.open();
+        long reopenNanos = System.nanoTime() - begin;
+
+        long reads = 0;
+        long mismatches = 0;
+        begin = System.nanoTime();
+        for (int p = 0; p < EVENT_PLAYERS; p++) {
+            if (!active.get(p).equals(storage.getActiveMods(players[p]))) {
+                mismatches++;
+            }
+            storage.getPlayerHistoryPage(players[p], null, PAGE_SIZE);
+            reads += 2;
+        }
+        storage.getModPopularity();
+        storage.getUniqueActivePlayers();
+        reads += 2;
+        for (String mod : mods) {
+            storage.getPlayersWithModPage(mod, null, PAGE_SIZE);
+            reads++;
+        }
+        long readNanos = System.nanoTime() - begin;
+        storage.close();
+
+        return new EventResult(setup, written, syncs, failures, writeNanos, slowest, reopenNanos, reads, readNanos,
+                mismatches, directorySize(directory.toPath()));
+    }
+
+    private static Writer wal(SqliteHistoryStorage storage) {
+        return new Writer() {
+            @Override
+            public boolean sync(UUID uuid, String playerName, Set<String> mods) {
+                return storage.syncPlayerMods(uuid, playerName, mods, null);
+            }
+
+            @Override
+            public void close() {
+                storage.close();
+            }
+        };
+    }
+
+    /**
+     * The history database as it was before the WAL writer: same tables, a five-connection pool,
+     * default journal mode and statements prepared per sync
+     */
+    private static Writer pooled(File dbFile, Logger logger) throws SQLException {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:sqlite:" + dbFile.getAbsolutePath());
+        config.setMaximumPoolSize(5);
+        config.setConnectionTimeout(30000);
+        config.setIdleTimeout(600000);
+        config.setMaxLifetime(1800000);
+        HikariDataSource dataSource = new HikariDataSource(config);
+
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS player_names (
+                    uuid TEXT PRIMARY KEY,
+                    current_name TEXT NOT NULL,
+                    first_seen TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    last_seen TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                )
+                """);
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS mod_history (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    player_uuid TEXT NOT NULL,
+                    mod_name TEXT NOT NULL,
+                    added_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    removed_date TIMESTAMP,
+                    FOREIGN KEY (player_uuid) REFERENCES player_names(uuid),
+                    UNIQUE(player_uuid, mod_name, added_date)
+                )
+                """);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_mod_history_uuid ON mod_history(player_uuid)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_mod_history_mod ON mod_history(mod_name)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_mod_history_active ON mod_history(removed_date) WHERE removed_date IS NULL");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_player_uuid ON player_names(uuid)");
+        }
+
+        return new Writer() {
+            @Override
+            public boolean sync(UUID uuid, String playerName, Set<String> currentMods) {
+                try (Connection conn = dataSource.getConnection()) {
+                    conn.setAutoCommit(false);
+                    try {
+                        try (PreparedStatement ps = conn.prepareStatement("""
+                            INSERT INTO player_names (uuid, current_name, first_seen, last_seen)
+                            VALUES (?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
+                            ON CONFLICT(uuid) DO UPDATE SET
+                                current_name = excluded.current_name,
+                                last_seen = CURRENT_TIMESTAMP
+                            """)) {
+                            ps.setString(1, uuid.toString());
+                            ps.setString(2, playerName);
+                            ps.executeUpdate();
+                        }
+
+                        Set<String> dbActiveMods = new HashSet<>();
+                        try (PreparedStatement ps = conn.prepareStatement("SELECT mod_name FROM mod_history WHERE player_uuid = ? AND removed_date IS NULL")) {
+                            ps.setString(1, uuid.toString());
+                            ResultSet rs = ps.executeQuery();
+                            while (rs.next()) {
+                                dbActiveMods.add(rs.getString("mod_name"));
+                            }
+                        }
+
+                        Set<String> newMods = new HashSet<>(currentMods);
+                        newMods.removeAll(dbActiveMods);
+                        Set<String> removedMods = new HashSet<>(dbActiveMods);
+                        removedMods.removeAll(currentMods);
+
+                        if (!newMods.isEmpty()) {
+                            try (PreparedStatement ps = conn.prepareStatement("""
+                                INSERT INTO mod_history (player_uuid, mod_name, added_date, removed_date)
+                                VALUES (?, ?, CURRENT_TIMESTAMP, NULL)
+                                ON CONFLICT(player_uuid, mod_name, added_date) DO NOTHING
+                                """)) {
+                                for (String mod : newMods) {
+                                    ps.setString(1, uuid.toString());
+                                    ps.setString(2, mod);
+                                    ps.addBatch();
+                                }
+                                ps.executeBatch();
+                            }
+                        }
+
+                        if (!removedMods.isEmpty()) {
+                            try (PreparedStatement ps = conn.prepareStatement("UPDATE mod_history SET removed_date = CURRENT_TIMESTAMP WHERE player_uuid = ? AND mod_name = ? AND removed_date IS NULL")) {
+                                for (String mod : removedMods) {
+                                    ps.setString(1, uuid.toString());
+                                    ps.setString(2, mod);
+                                    ps.addBatch();
+                                }
+                                ps.executeBatch();
+                            }
+                        }
+
+                        conn.commit();
+                        return true;
+                    } catch (SQLException e) {
+                        conn.rollback();
+                        logger.warning("Failed to sync player mods: " + e.getMessage());
+                        return false;
+                    }
+                } catch (SQLException e) {
+                    logger.warning("Database connection failed: " + e.getMessage());
+                    return false;
+                }
+            }
+
+            @Override
+            public void close() {
+                dataSource.close();
+            }
+        };
+    }
+
+    private static long directorySize(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
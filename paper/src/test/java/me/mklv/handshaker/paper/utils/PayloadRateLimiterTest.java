@@ -0,0 +1,60 @@
+package me.mklv.handshaker.paper.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PayloadRateLimiterTest {
+    private static final String CHANNEL = "hand-shaker:mods";
+
+    @Test
+    void floodIsFlaggedForAKickOnce() {
+        PayloadRateLimiter limiter = new PayloadRateLimiter();
+        limiter.setLimits(2, 60, 3);
+        UUID player = UUID.randomUUID();
+
+        assertEquals(PayloadRateLimiter.Result.ALLOWED, limiter.tryAcquire(player, CHANNEL));
+        assertEquals(PayloadRateLimiter.Result.ALLOWED, limiter.tryAcquire(player, CHANNEL));
+        assertEquals(PayloadRateLimiter.Result.DROPPED, limiter.tryAcquire(player, CHANNEL));
+        assertEquals(PayloadRateLimiter.Result.DROPPED, limiter.tryAcquire(player, CHANNEL));
+        assertEquals(PayloadRateLimiter.Result.ABUSE, limiter.tryAcquire(player, CHANNEL));
+        for (int i = 0; i < 50; i++) {
+            assertEquals(PayloadRateLimiter.Result.DROPPED, limiter.tryAcquire(player, CHANNEL));
+        }
+        assertEquals(1, limiter.getKickCount());
+        assertEquals(53, limiter.getDroppedCount());
+    }
+
+    @Test
+    void newFloodAfterRefillIsFlaggedAgain() throws InterruptedException {
+        PayloadRateLimiter limiter = new PayloadRateLimiter();
+        limiter.setLimits(1, 1, 2);
+        UUID player = UUID.randomUUID();
+
+        limiter.tryAcquire(player, CHANNEL);
+        limiter.tryAcquire(player, CHANNEL);
+        assertEquals(PayloadRateLimiter.Result.ABUSE, limiter.tryAcquire(player, CHANNEL));
+
+        Thread.sleep(1100);
+        assertEquals(PayloadRateLimiter.Result.ALLOWED, limiter.tryAcquire(player, CHANNEL));
+        limiter.tryAcquire(player, CHANNEL);
+        assertEquals(PayloadRateLimiter.Result.ABUSE, limiter.tryAcquire(player, CHANNEL));
+        assertEquals(2, limiter.getKickCount());
+    }
+
+    @Test
+    void expiringIdleBucketsChangesNoOutcome() throws InterruptedException {
+        PayloadRateLimiter limiter = new PayloadRateLimiter();
+        limiter.setLimits(1, 1, 5);
+        UUID player = UUID.randomUUID();
+
+        limiter.tryAcquire(player, CHANNEL);
+        assertEquals(PayloadRateLimiter.Result.DROPPED, limiter.tryAcquire(player, CHANNEL));
+        Thread.sleep(1100);
+        limiter.expireIdle();
+        assertEquals(PayloadRateLimiter.Result.ALLOWED, limiter.tryAcquire(player, CHANNEL));
+        assertEquals(PayloadRateLimiter.Result.DROPPED, limiter.tryAcquire(player, CHANNEL));
+    }
+}
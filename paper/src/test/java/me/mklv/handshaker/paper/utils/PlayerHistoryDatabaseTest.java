@@ -0,0 +1,67 @@
+package me.mklv.handshaker.paper.utils;
+
+import me.mklv.handshaker.paper.utils.PlayerHistoryDatabase.Page;
+import me.mklv.handshaker.paper.utils.PlayerHistoryDatabase.PlayerModInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlayerHistoryDatabaseTest {
+    @TempDir
+    Path directory;
+    private PlayerHistoryDatabase db;
+
+    @BeforeEach
+    void open() {
+        db = new PlayerHistoryDatabase(directory.toFile(), Logger.getLogger("PlayerHistoryDatabaseTest"), true,
+                PlayerHistoryDatabase.STORAGE_EVENT_LOG, Runnable::run);
+        assertTrue(db.isReady());
+    }
+
+    @AfterEach
+    void close() {
+        db.close();
+    }
+
+    @Test
+    void firstPageOfAModDropsItsOldCursors() {
+        for (int i = 10; i < 16; i++) {
+            db.syncPlayerMods(new UUID(0, i), "Player" + i, Set.of("sodium"));
+        }
+        db.syncPlayerMods(new UUID(0, 20), "Iris", Set.of("iris"));
+        assertEquals(List.of(14L, 15L), ids(db.getPlayersWithModPage("sodium", 3, 2)));
+        assertEquals(List.of(20L), ids(db.getPlayersWithModPage("iris", 1, 2)));
+
+        // Sorts ahead of everyone, so every page boundary shifts by one
+        db.syncPlayerMods(new UUID(0, 1), "Early", Set.of("sodium"));
+        assertEquals(List.of(1L, 10L), ids(db.getPlayersWithModPage("sodium", 1, 2)));
+        assertEquals(List.of(13L, 14L), ids(db.getPlayersWithModPage("sodium", 3, 2)));
+        assertTrue(db.getPlayersWithModPage("sodium", 3, 2).hasMore());
+    }
+
+    @Test
+    void firstPageOfPopularityDropsOldCursors() {
+        for (int i = 0; i < 4; i++) {
+            db.syncPlayerMods(UUID.randomUUID(), "Player" + i, Set.of("a", "b", "c", "d"));
+        }
+        assertEquals("c", db.getModPopularityPage(2, 2).entries().get(0).modName());
+
+        db.syncPlayerMods(UUID.randomUUID(), "Late", Set.of("d"));
+        assertEquals("d", db.getModPopularityPage(1, 2).entries().get(0).modName());
+        assertEquals(List.of("b", "c"), db.getModPopularityPage(2, 2).entries().stream()
+                .map(PlayerHistoryDatabase.ModPopularityEntry::modName).toList());
+    }
+
+    private static List<Long> ids(Page<PlayerModInfo> page) {
+        return page.entries().stream().map(info -> info.uuid().getLeastSignificantBits()).toList();
+    }
+}
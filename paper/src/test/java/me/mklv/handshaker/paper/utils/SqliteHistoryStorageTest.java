@@ -0,0 +1,11 @@
+package me.mklv.handshaker.paper.utils;
+
+import java.nio.file.Path;
+
+class SqliteHistoryStorageTest extends HistoryStorageTestBase {
+
+    @Override
+    protected HistoryStorage create(Path directory) {
+        return new SqliteHistoryStorage(directory.resolve("hand-shaker-history.db").toFile(), LOGGER);
+    }
+}
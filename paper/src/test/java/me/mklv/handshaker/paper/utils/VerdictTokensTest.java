@@ -0,0 +1,240 @@
+package me.mklv.handshaker.paper.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Moves a client between backends the way a proxy would: the token it holds goes first, then its mod
+ * list, then its integrity payload, and whatever token the backend hands out replaces the old one.
+ */
+class VerdictTokensTest {
+    private static final String SECRET = "shared-secret";
+    private static final String JAR = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+    private static final Set<String> MODS = Set.of("fabric-api", "hand-shaker", "sodium");
+
+    private final UUID player = UUID.randomUUID();
+    private VerdictTokens lobby;
+    private VerdictTokens survival;
+
+    @BeforeEach
+    void setUp() {
+        lobby = backend(SECRET, 300, 1);
+        survival = backend(SECRET, 300, 1);
+    }
+
+    @Test
+    void tokenIssuedOnOneBackendIsAcceptedOnAnother() {
+        ProxyStandIn proxy = new ProxyStandIn(player);
+        assertFalse(proxy.connect(lobby, MODS, JAR), "first join runs the signature check");
+        assertNotNull(proxy.token);
+
+        assertTrue(proxy.connect(survival, MODS, JAR), "second backend skips the signature check");
+        assertEquals(1, survival.getAcceptedCount());
+        assertEquals(0, survival.getRejectedCount());
+    }
+
+    @Test
+    void modIdsAreComparedAsASet() {
+        ProxyStandIn proxy = new ProxyStandIn(player);
+        proxy.connect(lobby, MODS, JAR);
+        assertTrue(proxy.connect(survival, List.of("Sodium", "hand-shaker", "fabric-api", "sodium"), JAR));
+    }
+
+    @Test
+    void tokenIsAcceptedOnlyOncePerBackend() {
+        ProxyStandIn proxy = new ProxyStandIn(player);
+        proxy.connect(lobby, MODS, JAR);
+        String token = proxy.token;
+        assertTrue(proxy.connect(survival, MODS, JAR));
+
+        // Reconnecting with the very same token
+        proxy.token = token;
+        assertFalse(proxy.connect(survival, MODS, JAR));
+        assertEquals(1, survival.getRejectedCount());
+    }
+
+    @Test
+    void tokenFromATokenKeepsItsExpiry() {
+        ProxyStandIn proxy = new ProxyStandIn(player);
+        proxy.connect(lobby, MODS, JAR);
+        long issuedAt = expiresAt(proxy.token);
+        assertTrue(proxy.connect(survival, MODS, JAR));
+        assertEquals(issuedAt, expiresAt(proxy.token), "a token accepted elsewhere is not renewed");
+
+        // A signature check run on the backend itself does start a fresh lifetime
+        VerdictTokens hub = backend(SECRET, 600, 1);
+        proxy.token = null;
+        proxy.connect(hub, MODS, JAR);
+        assertTrue(expiresAt(proxy.token) > issuedAt);
+    }
+
+    @Test
+    void noTokenWithoutAVerifiedJar() {
+        ProxyStandIn proxy = new ProxyStandIn(player);
+        proxy.signatureValid = false;
+        proxy.connect(lobby, MODS, JAR);
+        assertNull(proxy.token);
+        assertEquals(0, lobby.getIssuedCount());
+    }
+
+    @Test
+    void noTokenWhileDisabled() {
+        VerdictTokens disabled = backend("", 300, 1);
+        assertFalse(disabled.isEnabled());
+        ProxyStandIn proxy = new ProxyStandIn(player);
+        proxy.connect(disabled, MODS, JAR);
+        assertNull(proxy.token);
+    }
+
+    @Test
+    void rejectsTokenSignedWithAnotherSecret() {
+        ProxyStandIn proxy = new ProxyStandIn(player);
+        proxy.connect(backend("other-secret", 300, 1), MODS, JAR);
+        assertFalse(survival.present(player, proxy.token));
+        assertFalse(proxy.connect(survival, MODS, JAR));
+    }
+
+    @Test
+    void rejectsTamperedToken() {
+        ProxyStandIn proxy = new ProxyStandIn(player);
+        proxy.connect(lobby, MODS, JAR);
+        String token = proxy.token;
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+        assertFalse(survival.present(player, tampered));
+        assertFalse(survival.present(player, "hv1.garbage"));
+        assertFalse(survival.present(player, null));
+    }
+
+    @Test
+    void rejectsExpiredToken() {
+        String expired = sign(SECRET, player + "|" + VerdictTokens.modSetHash(MODS) + "|" + JAR + "|1|"
+                + (System.currentTimeMillis() - 1000));
+        assertFalse(survival.present(player, expired));
+
+        String valid = sign(SECRET, player + "|" + VerdictTokens.modSetHash(MODS) + "|" + JAR + "|1|"
+                + (System.currentTimeMillis() + 60_000));
+        assertTrue(survival.present(player, valid), "the hand-signed token itself is well formed");
+    }
+
+    @Test
+    void rejectsTokenFromAPreviousGeneration() {
+        ProxyStandIn proxy = new ProxyStandIn(player);
+        proxy.connect(lobby, MODS, JAR);
+        survival.configure(SECRET, 300, 2);
+        assertFalse(survival.present(player, proxy.token));
+        assertFalse(proxy.connect(survival, MODS, JAR));
+    }
+
+    @Test
+    void rejectsTokenForAnotherPlayer() {
+        ProxyStandIn proxy = new ProxyStandIn(player);
+        proxy.connect(lobby, MODS, JAR);
+        assertFalse(survival.present(UUID.randomUUID(), proxy.token));
+    }
+
+    @Test
+    void rejectsTokenWhenModSetChanged() {
+        ProxyStandIn proxy = new ProxyStandIn(player);
+        proxy.connect(lobby, MODS, JAR);
+        assertFalse(proxy.connect(survival, Set.of("fabric-api", "hand-shaker", "xray"), JAR));
+        assertEquals(0, survival.getAcceptedCount());
+        assertEquals(1, survival.getRejectedCount());
+    }
+
+    @Test
+    void rejectsTokenWhenJarChanged() {
+        ProxyStandIn proxy = new ProxyStandIn(player);
+        proxy.connect(lobby, MODS, JAR);
+        assertFalse(proxy.connect(survival, MODS, JAR.replace('9', '8')));
+        assertEquals(0, survival.getAcceptedCount());
+        assertEquals(1, survival.getRejectedCount());
+    }
+
+    @Test
+    void integrityWithoutAMatchingModListIsNotSkipped() {
+        ProxyStandIn proxy = new ProxyStandIn(player);
+        proxy.connect(lobby, MODS, JAR);
+        assertTrue(survival.present(player, proxy.token));
+        // Integrity payload arriving before any mod list
+        assertFalse(survival.acceptIntegrity(player, JAR));
+    }
+
+    @Test
+    void forgetDropsAPresentedToken() {
+        ProxyStandIn proxy = new ProxyStandIn(player);
+        proxy.connect(lobby, MODS, JAR);
+        assertTrue(survival.present(player, proxy.token));
+        survival.forget(player);
+        survival.modListReceived(player, MODS);
+        assertFalse(survival.acceptIntegrity(player, JAR));
+    }
+
+    private static VerdictTokens backend(String secret, long ttlSeconds, long generation) {
+        VerdictTokens tokens = new VerdictTokens();
+        tokens.configure(secret, ttlSeconds, generation);
+        return tokens;
+    }
+
+    private static long expiresAt(String token) {
+        String body = token.substring(VerdictTokens.TOKEN_PREFIX.length(), token.indexOf('.', VerdictTokens.TOKEN_PREFIX.length()));
+        String[] fields = new String(Base64.getUrlDecoder().decode(body), StandardCharsets.UTF_8).split("\\|");
+        return Long.parseLong(fields[4]);
+    }
+
+    private static String sign(String secret, String claims) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            byte[] body = claims.getBytes(StandardCharsets.UTF_8);
+            Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+            return VerdictTokens.TOKEN_PREFIX + encoder.encodeToString(body) + "." + encoder.encodeToString(mac.doFinal(body));
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * The client side of a proxy network, reduced to the token it carries between backends
+     */
+    private static final class ProxyStandIn {
+        private final UUID player;
+        private String token;
+        private boolean signatureValid = true;
+
+        private ProxyStandIn(UUID player) {
+            this.player = player;
+        }
+
+        /**
+         * Runs one handshake against a backend, in the order the client sends its payloads
+         * @return True if the backend skipped the signature check on the strength of a token
+         */
+        private boolean connect(VerdictTokens backend, java.util.Collection<String> mods, String jarHash) {
+            if (token != null) {
+                backend.present(player, token);
+            }
+            backend.modListReceived(player, mods);
+            boolean skipped = backend.acceptIntegrity(player, jarHash);
+            if (!skipped) {
+                // Stands in for the RSA check the backend runs itself
+                backend.jarChecked(player, jarHash, signatureValid);
+            }
+            String issued = backend.issue(player, mods);
+            if (issued != null) {
+                token = issued;
+            }
+            backend.forget(player);
+            return skipped;
+        }
+    }
+}